@@ -0,0 +1,120 @@
+package nl.inl.blacklab.benchmarks;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import nl.inl.blacklab.contentstore.BlockCodec;
+import nl.inl.blacklab.contentstore.ContentStore;
+import nl.inl.blacklab.contentstore.ContentStoreFixedBlockReader;
+import nl.inl.blacklab.contentstore.ContentStoreFixedBlockWriter;
+import nl.inl.blacklab.exceptions.BlackLabRuntimeException;
+import nl.inl.blacklab.exceptions.ErrorOpeningIndex;
+import nl.inl.util.UtilsForTesting;
+
+/**
+ * Retrieving snippets from the content store, as done for KWICs and
+ * highlighted document views, for each block codec.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ContentStoreBenchmark {
+
+    /** How many documents to retrieve snippets from per invocation */
+    private static final int DOCS_PER_INVOCATION = 100;
+
+    @Param({ "deflate", "lz4", "zstd" })
+    public String codec;
+
+    /** How many snippets to retrieve per document */
+    @Param({ "1", "20" })
+    public int snippetsPerDoc;
+
+    /** Length of each snippet in characters */
+    @Param({ "500" })
+    public int snippetLength;
+
+    /**
+     * Size of the decompressed block cache in bytes.
+     *
+     * Every invocation retrieves the same snippets, so with the cache enabled all
+     * blocks are cached after warm-up; 0 measures the codec's decompression speed.
+     */
+    @Param({ "0", "" + ContentStoreFixedBlockReader.DEFAULT_BLOCK_CACHE_SIZE_BYTES })
+    public long blockCacheSizeBytes;
+
+    private File dir;
+
+    private ContentStore contentStore;
+
+    private int[] contentIds;
+
+    private int[][] starts;
+
+    private int[][] ends;
+
+    @Setup(Level.Trial)
+    public void setUp(SyntheticCorpus corpus) throws ErrorOpeningIndex {
+        ContentStoreFixedBlockReader.setBlockCacheSizeBytes(blockCacheSizeBytes);
+
+        // Convert the corpus' content store to the codec we want to benchmark
+        File source = new File(corpus.index().indexDirectory(), "cs_" + corpus.field().name());
+        dir = UtilsForTesting.createBlackLabTestDir("ContentStoreBenchmark");
+        FileUtils.deleteQuietly(dir); // convert() creates it
+        ContentStoreFixedBlockWriter.convert(source, dir, BlockCodec.fromName(codec));
+        contentStore = ContentStore.open(dir, false, false);
+
+        List<Integer> ids = new ArrayList<>(contentStore.idSet());
+        if (ids.isEmpty())
+            throw new BlackLabRuntimeException("Content store is empty: " + source);
+        Random random = new Random(1);
+        contentIds = new int[DOCS_PER_INVOCATION];
+        starts = new int[DOCS_PER_INVOCATION][snippetsPerDoc];
+        ends = new int[DOCS_PER_INVOCATION][snippetsPerDoc];
+        for (int i = 0; i < DOCS_PER_INVOCATION; i++) {
+            contentIds[i] = ids.get(random.nextInt(ids.size()));
+            int docLength = contentStore.docLength(contentIds[i]);
+            for (int j = 0; j < snippetsPerDoc; j++) {
+                starts[i][j] = random.nextInt(Math.max(1, docLength - snippetLength));
+                ends[i][j] = Math.min(docLength, starts[i][j] + snippetLength);
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (contentStore != null)
+            contentStore.close();
+        FileUtils.deleteQuietly(dir);
+        ContentStoreFixedBlockReader.setBlockCacheSizeBytes(ContentStoreFixedBlockReader.DEFAULT_BLOCK_CACHE_SIZE_BYTES);
+    }
+
+    @Benchmark
+    public void retrieveParts(Blackhole blackhole) {
+        for (int i = 0; i < contentIds.length; i++) {
+            blackhole.consume(contentStore.retrieveParts(contentIds[i], starts[i], ends[i]));
+        }
+    }
+}
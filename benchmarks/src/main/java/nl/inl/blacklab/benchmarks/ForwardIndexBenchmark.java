@@ -0,0 +1,81 @@
+package nl.inl.blacklab.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import nl.inl.blacklab.forwardindex.AnnotationForwardIndex;
+import nl.inl.blacklab.forwardindex.FiidLookup;
+import nl.inl.blacklab.search.indexmetadata.Annotation;
+
+/**
+ * Retrieving snippets from the forward index, as done for sorting, grouping and
+ * KWICs.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ForwardIndexBenchmark {
+
+    /** How many documents to retrieve snippets from per invocation */
+    private static final int DOCS_PER_INVOCATION = 100;
+
+    /** How many snippets to retrieve per document */
+    @Param({ "1", "20" })
+    public int snippetsPerDoc;
+
+    /** Length of each snippet in tokens */
+    @Param({ "11" })
+    public int snippetLength;
+
+    private AnnotationForwardIndex forwardIndex;
+
+    private int[] fiids;
+
+    private int[][] starts;
+
+    private int[][] ends;
+
+    @Setup(Level.Trial)
+    public void setUp(SyntheticCorpus corpus) {
+        Annotation word = corpus.annotation("word");
+        forwardIndex = corpus.index().annotationForwardIndex(word);
+        FiidLookup fiidLookup = FiidLookup.get(corpus.index().reader(), word);
+        Random random = new Random(1);
+        int maxDoc = corpus.index().reader().maxDoc();
+        fiids = new int[DOCS_PER_INVOCATION];
+        starts = new int[DOCS_PER_INVOCATION][snippetsPerDoc];
+        ends = new int[DOCS_PER_INVOCATION][snippetsPerDoc];
+        for (int i = 0; i < DOCS_PER_INVOCATION; i++) {
+            fiids[i] = fiidLookup.get(random.nextInt(maxDoc));
+            int docLength = forwardIndex.docLength(fiids[i]);
+            for (int j = 0; j < snippetsPerDoc; j++) {
+                starts[i][j] = random.nextInt(Math.max(1, docLength - snippetLength));
+                ends[i][j] = Math.min(docLength, starts[i][j] + snippetLength);
+            }
+        }
+    }
+
+    @Benchmark
+    public void retrievePartsInt(Blackhole blackhole) {
+        for (int i = 0; i < fiids.length; i++) {
+            blackhole.consume(forwardIndex.retrievePartsInt(fiids[i], starts[i], ends[i]));
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package nl.inl.blacklab.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import nl.inl.blacklab.exceptions.WildcardTermTooBroad;
+import nl.inl.blacklab.resultproperty.HitProperty;
+import nl.inl.blacklab.resultproperty.HitPropertyContextWords;
+import nl.inl.blacklab.search.indexmetadata.MatchSensitivity;
+import nl.inl.blacklab.search.results.Hits;
+
+/**
+ * Sorting hits on (part of) their context, as done for a sorted page of hits.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HitsSortBenchmark {
+
+    /** Query whose hits we sort */
+    @Param({ "[pos='adj'] [pos='nou']" })
+    public String query;
+
+    /** Which context words to sort on (see HitPropertyContextWords) */
+    @Param({ "H", "L1-3", "R1" })
+    public String contextWords;
+
+    @Param({ "INSENSITIVE" })
+    public MatchSensitivity sensitivity;
+
+    private Hits hits;
+
+    private HitProperty sortBy;
+
+    @Setup(Level.Trial)
+    public void setUp(SyntheticCorpus corpus) throws WildcardTermTooBroad {
+        hits = corpus.index().find(corpus.query(query));
+        hits.size(); // fetch all hits now, so we only measure sorting
+        sortBy = new HitPropertyContextWords(corpus.index(), corpus.annotation("word"), sensitivity, contextWords);
+    }
+
+    @Benchmark
+    public Hits sort() {
+        Hits sorted = hits.sort(sortBy);
+        sorted.size();
+        return sorted;
+    }
+}
@@ -0,0 +1,65 @@
+package nl.inl.blacklab.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import nl.inl.blacklab.exceptions.WildcardTermTooBroad;
+import nl.inl.blacklab.search.BlackLabIndex;
+import nl.inl.blacklab.search.lucene.BLSpanQuery;
+import nl.inl.blacklab.search.lucene.optimize.ClauseCombinerNfa;
+
+/**
+ * Executing queries where (part of) the query may be resolved by matching an
+ * NFA against the forward index, with and without NFA matching, so we can see
+ * if it still pays off.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NfaBenchmark {
+
+    @Param({ "[pos='art'] 'ba.*'", "'ba' []{1,3} 'de'", "[lemma='ba|de|ki'] [word='.*en']+" })
+    public String query;
+
+    /** Use NFA matching wherever possible, or not at all? */
+    @Param({ "true", "false" })
+    public boolean useNfa;
+
+    private BlackLabIndex index;
+
+    private BLSpanQuery spanQuery;
+
+    @Setup(Level.Trial)
+    public void setUp(SyntheticCorpus corpus) {
+        // (the threshold is used when the query is rewritten, i.e. each time we execute it)
+        ClauseCombinerNfa.setNfaThreshold(useNfa ? ClauseCombinerNfa.MAX_NFA_MATCHING : ClauseCombinerNfa.NO_NFA_MATCHING);
+        index = corpus.index();
+        spanQuery = corpus.query(query);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        ClauseCombinerNfa.setNfaThreshold(ClauseCombinerNfa.DEFAULT_NFA_THRESHOLD);
+    }
+
+    @Benchmark
+    public int countHits() throws WildcardTermTooBroad {
+        return index.find(spanQuery).size();
+    }
+}
@@ -0,0 +1,189 @@
+package nl.inl.blacklab.benchmarks;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import nl.inl.blacklab.exceptions.BlackLabRuntimeException;
+import nl.inl.blacklab.exceptions.DocumentFormatNotFound;
+import nl.inl.blacklab.exceptions.ErrorOpeningIndex;
+import nl.inl.blacklab.exceptions.InvalidQuery;
+import nl.inl.blacklab.index.DocumentFormats;
+import nl.inl.blacklab.index.Indexer;
+import nl.inl.blacklab.mocks.DocIndexerExample;
+import nl.inl.blacklab.queryParser.corpusql.CorpusQueryLanguageParser;
+import nl.inl.blacklab.search.BlackLab;
+import nl.inl.blacklab.search.BlackLabIndex;
+import nl.inl.blacklab.search.indexmetadata.AnnotatedField;
+import nl.inl.blacklab.search.indexmetadata.Annotation;
+import nl.inl.blacklab.search.lucene.BLSpanQuery;
+import nl.inl.blacklab.search.results.QueryInfo;
+import nl.inl.util.UtilsForTesting;
+
+/**
+ * A generated corpus that all benchmarks run against.
+ *
+ * Documents are in the format of {@link DocIndexerExample} (word, lemma and part
+ * of speech per token, sentence tags). Words are drawn from a fixed vocabulary
+ * with a Zipf distribution, like in natural language, so there are a few very
+ * frequent terms and a long tail of rare ones. The same parameters always
+ * produce the same corpus.
+ */
+@State(Scope.Benchmark)
+public class SyntheticCorpus {
+
+    /** Name we register DocIndexerExample under */
+    private static final String FORMAT = "benchmark-example";
+
+    /** Parts of speech we assign to vocabulary words */
+    private static final String[] PARTS_OF_SPEECH = { "nou", "vrb", "adj", "art", "pre", "adv", "pro", "con" };
+
+    /** Syllables we build vocabulary words from */
+    private static final String[] SYLLABLES = { "ba", "de", "ki", "lo", "mu", "na", "pe", "ri", "so", "ta",
+            "ve", "wi", "zo", "an", "el", "ik", "on", "ur", "ch", "st" };
+
+    /** Seed for the random generator, so runs are comparable */
+    private static final long SEED = 1_234_567;
+
+    @Param({ "2000" })
+    public int numberOfDocs;
+
+    @Param({ "1000" })
+    public int tokensPerDoc;
+
+    @Param({ "50000" })
+    public int vocabularySize;
+
+    private File indexDir;
+
+    private BlackLabIndex index;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        indexDir = UtilsForTesting.createBlackLabTestDir("Benchmarks");
+        DocumentFormats.registerFormat(FORMAT, DocIndexerExample.class);
+        Random random = new Random(SEED);
+        Vocabulary vocabulary = new Vocabulary(random, vocabularySize);
+        try {
+            Indexer indexer = Indexer.createNewIndex(indexDir, FORMAT);
+            try {
+                for (int i = 0; i < numberOfDocs; i++) {
+                    String doc = generateDocument(random, vocabulary);
+                    indexer.index("doc" + (i + 1), doc.getBytes(StandardCharsets.UTF_8));
+                }
+            } finally {
+                indexer.close();
+            }
+            index = BlackLab.open(indexDir);
+        } catch (DocumentFormatNotFound | ErrorOpeningIndex e) {
+            throw BlackLabRuntimeException.wrap(e);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (index != null)
+            index.close();
+        FileUtils.deleteQuietly(indexDir);
+    }
+
+    private String generateDocument(Random random, Vocabulary vocabulary) {
+        StringBuilder doc = new StringBuilder("<doc>");
+        int tokens = 0;
+        while (tokens < tokensPerDoc) {
+            int sentenceLength = Math.min(5 + random.nextInt(20), tokensPerDoc - tokens);
+            doc.append("<s>");
+            for (int i = 0; i < sentenceLength; i++) {
+                int wordIndex = vocabulary.randomWordIndex(random);
+                String word = vocabulary.words[wordIndex];
+                if (i == 0)
+                    word = Character.toUpperCase(word.charAt(0)) + word.substring(1);
+                doc.append("<w l='").append(vocabulary.lemmas[wordIndex])
+                        .append("' p='").append(vocabulary.partsOfSpeech[wordIndex]).append("'>")
+                        .append(word).append("</w>")
+                        .append(i == sentenceLength - 1 ? "." : " ");
+            }
+            doc.append("</s> ");
+            tokens += sentenceLength;
+        }
+        return doc.append("</doc>").toString();
+    }
+
+    public BlackLabIndex index() {
+        return index;
+    }
+
+    public AnnotatedField field() {
+        return index.mainAnnotatedField();
+    }
+
+    public Annotation annotation(String name) {
+        return field().annotation(name);
+    }
+
+    /**
+     * Parse a Corpus Query Language query.
+     *
+     * @param cql query to parse
+     * @return the query
+     */
+    public BLSpanQuery query(String cql) {
+        try {
+            return CorpusQueryLanguageParser.parse(cql).toQuery(QueryInfo.create(index));
+        } catch (InvalidQuery e) {
+            throw BlackLabRuntimeException.wrap(e);
+        }
+    }
+
+    /** The words of our corpus, with their lemmas, parts of speech and frequencies. */
+    private static class Vocabulary {
+
+        final String[] words;
+
+        final String[] lemmas;
+
+        final String[] partsOfSpeech;
+
+        /** Cumulative Zipf probabilities, for picking a word */
+        private final double[] cumulative;
+
+        Vocabulary(Random random, int size) {
+            words = new String[size];
+            lemmas = new String[size];
+            partsOfSpeech = new String[size];
+            cumulative = new double[size];
+            double total = 0;
+            for (int i = 0; i < size; i++) {
+                // Word number i in base SYLLABLES.length, so words are unique; plus an inflection
+                StringBuilder lemma = new StringBuilder();
+                int n = i;
+                do {
+                    lemma.append(SYLLABLES[n % SYLLABLES.length]);
+                    n /= SYLLABLES.length;
+                } while (n > 0);
+                lemmas[i] = lemma.toString();
+                words[i] = random.nextInt(4) == 0 ? lemmas[i] + "en" : lemmas[i];
+                partsOfSpeech[i] = PARTS_OF_SPEECH[random.nextInt(PARTS_OF_SPEECH.length)];
+                total += 1.0 / (i + 1);
+                cumulative[i] = total;
+            }
+            for (int i = 0; i < size; i++) {
+                cumulative[i] /= total;
+            }
+        }
+
+        int randomWordIndex(Random random) {
+            int i = Arrays.binarySearch(cumulative, random.nextDouble());
+            return Math.min(i < 0 ? -i - 1 : i, words.length - 1);
+        }
+    }
+}
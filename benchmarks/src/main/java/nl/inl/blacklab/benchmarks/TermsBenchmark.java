@@ -0,0 +1,78 @@
+package nl.inl.blacklab.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.collections.api.set.primitive.MutableIntSet;
+import org.eclipse.collections.impl.set.mutable.primitive.IntHashSet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import nl.inl.blacklab.forwardindex.Terms;
+import nl.inl.blacklab.search.indexmetadata.MatchSensitivity;
+
+/**
+ * Looking up terms in the forward index terms list, as done when matching
+ * queries against the forward index and when sorting or grouping.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TermsBenchmark {
+
+    /** How many terms to look up per invocation */
+    private static final int LOOKUPS_PER_INVOCATION = 1000;
+
+    @Param({ "SENSITIVE", "INSENSITIVE" })
+    public MatchSensitivity sensitivity;
+
+    private Terms terms;
+
+    private String[] termStrings;
+
+    private int[] termIds;
+
+    private final MutableIntSet results = new IntHashSet();
+
+    @Setup(Level.Trial)
+    public void setUp(SyntheticCorpus corpus) {
+        terms = corpus.index().annotationForwardIndex(corpus.annotation("word")).terms();
+        Random random = new Random(1);
+        termStrings = new String[LOOKUPS_PER_INVOCATION];
+        termIds = new int[LOOKUPS_PER_INVOCATION];
+        for (int i = 0; i < LOOKUPS_PER_INVOCATION; i++) {
+            termIds[i] = random.nextInt(terms.numberOfTerms());
+            termStrings[i] = terms.get(random.nextInt(terms.numberOfTerms()));
+        }
+    }
+
+    @Benchmark
+    public void indexOf(Blackhole blackhole) {
+        for (String term: termStrings) {
+            results.clear();
+            terms.indexOf(results, term, sensitivity);
+            blackhole.consume(results.size());
+        }
+    }
+
+    @Benchmark
+    public void idToSortPosition(Blackhole blackhole) {
+        for (int termId: termIds) {
+            blackhole.consume(terms.idToSortPosition(termId, sensitivity));
+        }
+    }
+}
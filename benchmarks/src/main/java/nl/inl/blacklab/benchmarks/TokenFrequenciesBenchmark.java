@@ -0,0 +1,63 @@
+package nl.inl.blacklab.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import nl.inl.blacklab.resultproperty.HitProperty;
+import nl.inl.blacklab.resultproperty.HitPropertyHitText;
+import nl.inl.blacklab.resultproperty.HitPropertyMultiple;
+import nl.inl.blacklab.search.indexmetadata.MatchSensitivity;
+import nl.inl.blacklab.search.results.HitGroups;
+import nl.inl.blacklab.search.results.HitGroupsTokenFrequencies;
+import nl.inl.blacklab.searches.SearchHits;
+
+/**
+ * Grouping all tokens in the corpus by annotation value(s), using the token
+ * frequencies fast path (e.g. for word frequency lists).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class TokenFrequenciesBenchmark {
+
+    /** Annotation(s) to group on, separated by commas */
+    @Param({ "word", "lemma,pos" })
+    public String groupBy;
+
+    private SearchHits search;
+
+    private HitProperty property;
+
+    @Setup(Level.Trial)
+    public void setUp(SyntheticCorpus corpus) {
+        search = corpus.index().search(corpus.field(), false).find(corpus.query("[]"), corpus.index().searchSettings());
+        String[] annotationNames = groupBy.split(",");
+        HitProperty[] props = new HitProperty[annotationNames.length];
+        for (int i = 0; i < annotationNames.length; i++) {
+            props[i] = new HitPropertyHitText(corpus.index(), corpus.annotation(annotationNames[i]), MatchSensitivity.INSENSITIVE);
+        }
+        property = props.length == 1 ? props[0] : new HitPropertyMultiple(props);
+        if (!HitGroupsTokenFrequencies.canUse(false, search, property))
+            throw new IllegalStateException("Can't use token frequencies fast path for " + groupBy);
+    }
+
+    @Benchmark
+    public HitGroups tokenFrequencies() {
+        return HitGroupsTokenFrequencies.get(search, property);
+    }
+}
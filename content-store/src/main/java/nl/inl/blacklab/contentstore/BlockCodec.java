@@ -0,0 +1,252 @@
+package nl.inl.blacklab.contentstore;
+
+import java.io.IOException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import com.github.luben.zstd.Zstd;
+
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Exception;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4SafeDecompressor;
+
+/**
+ * Compresses and decompresses the fixed-size blocks of a content store.
+ *
+ * Available codecs:
+ * - deflate: java.util.zip (the only codec in version 1 content stores)
+ * - lz4: very fast decompression, lower compression ratio (good for latency)
+ * - zstd: high compression ratio, still fast decompression (good for archival corpora)
+ *
+ * Codecs themselves are stateless; encoders and decoders are not thread-safe and
+ * should be used by one thread at a time.
+ */
+public abstract class BlockCodec {
+
+    /** The codec used by version 1 content stores. */
+    public static final BlockCodec DEFLATE = new BlockCodecDeflate();
+
+    /** Fast codec, for minimal latency. */
+    public static final BlockCodec LZ4 = new BlockCodecLz4();
+
+    /** High-ratio codec, for archival corpora. */
+    public static final BlockCodec ZSTD = new BlockCodecZstd();
+
+    /**
+     * Get a codec by name.
+     *
+     * @param name codec name (deflate, lz4 or zstd)
+     * @return the codec
+     */
+    public static BlockCodec fromName(String name) {
+        switch (name.trim().toLowerCase()) {
+        case "deflate":
+            return DEFLATE;
+        case "lz4":
+            return LZ4;
+        case "zstd":
+            return ZSTD;
+        default:
+            throw new IllegalArgumentException("Unknown content store block codec: " + name);
+        }
+    }
+
+    /** Compresses blocks. Not thread-safe. */
+    public interface Encoder {
+        /**
+         * Compress data.
+         *
+         * @param input data to compress
+         * @param offset where the data starts
+         * @param length length of the data
+         * @param output where to write the compressed data
+         * @param outputOffset where to start writing
+         * @param maxOutputLength maximum number of bytes to write
+         * @return length of the compressed data, or -1 if it didn't fit
+         */
+        int encode(byte[] input, int offset, int length, byte[] output, int outputOffset, int maxOutputLength);
+
+        /** Free any resources held by the encoder. */
+        default void close() {
+            // NOP
+        }
+    }
+
+    /** Decompresses blocks. Not thread-safe. */
+    public interface Decoder {
+        /**
+         * Decompress data.
+         *
+         * @param input compressed data
+         * @param offset where the compressed data starts
+         * @param length length of the compressed data
+         * @param output where to write the decompressed data
+         * @return length of the decompressed data
+         * @throws IOException if the data could not be decompressed
+         */
+        int decode(byte[] input, int offset, int length, byte[] output) throws IOException;
+
+        /** Free any resources held by the decoder. */
+        default void close() {
+            // NOP
+        }
+    }
+
+    /**
+     * Get the name of this codec, as written to the content store.
+     *
+     * @return codec name
+     */
+    public abstract String getName();
+
+    /**
+     * Create a new encoder.
+     *
+     * @return encoder
+     */
+    public abstract Encoder createEncoder();
+
+    /**
+     * Create a new decoder.
+     *
+     * @return decoder
+     */
+    public abstract Decoder createDecoder();
+
+    @Override
+    public String toString() {
+        return getName();
+    }
+
+    /** Codec using java.util.zip's Deflater and Inflater. */
+    private static class BlockCodecDeflate extends BlockCodec {
+
+        @Override
+        public String getName() {
+            return "deflate";
+        }
+
+        @Override
+        public Encoder createEncoder() {
+            return new Encoder() {
+                private final Deflater compresser = new Deflater();
+
+                @Override
+                public int encode(byte[] input, int offset, int length, byte[] output, int outputOffset, int maxOutputLength) {
+                    compresser.reset();
+                    compresser.setInput(input, offset, length);
+                    compresser.finish();
+                    int compressedDataLength = compresser.deflate(output, outputOffset, maxOutputLength, Deflater.FULL_FLUSH);
+                    if (!compresser.finished())
+                        return -1; // insufficient space
+                    return compressedDataLength;
+                }
+
+                @Override
+                public void close() {
+                    compresser.end();
+                }
+            };
+        }
+
+        @Override
+        public Decoder createDecoder() {
+            return new Decoder() {
+                private final Inflater decompresser = new Inflater();
+
+                @Override
+                public int decode(byte[] input, int offset, int length, byte[] output) throws IOException {
+                    try {
+                        decompresser.reset();
+                        decompresser.setInput(input, offset, length);
+                        int resultLength = decompresser.inflate(output);
+                        if (resultLength <= 0) {
+                            throw new IOException("Error, inflate returned " + resultLength);
+                        }
+                        if (!decompresser.finished()) {
+                            // This shouldn't happen because our max block size prevents it
+                            throw new IOException("Unzip buffer size insufficient");
+                        }
+                        return resultLength;
+                    } catch (DataFormatException e) {
+                        throw new IOException(e);
+                    }
+                }
+
+                @Override
+                public void close() {
+                    decompresser.end();
+                }
+            };
+        }
+    }
+
+    /** Codec using LZ4 (fastest available implementation). */
+    private static class BlockCodecLz4 extends BlockCodec {
+
+        @Override
+        public String getName() {
+            return "lz4";
+        }
+
+        @Override
+        public Encoder createEncoder() {
+            LZ4Compressor compressor = LZ4Factory.fastestInstance().fastCompressor();
+            return (input, offset, length, output, outputOffset, maxOutputLength) -> {
+                try {
+                    return compressor.compress(input, offset, length, output, outputOffset, maxOutputLength);
+                } catch (LZ4Exception e) {
+                    return -1; // insufficient space
+                }
+            };
+        }
+
+        @Override
+        public Decoder createDecoder() {
+            LZ4SafeDecompressor decompressor = LZ4Factory.fastestInstance().safeDecompressor();
+            return (input, offset, length, output) -> {
+                try {
+                    return decompressor.decompress(input, offset, length, output, 0, output.length);
+                } catch (LZ4Exception e) {
+                    throw new IOException(e);
+                }
+            };
+        }
+    }
+
+    /** Codec using Zstandard. */
+    private static class BlockCodecZstd extends BlockCodec {
+
+        /**
+         * Compression level to use. Higher levels don't gain much for small blocks
+         * but do make indexing a lot slower.
+         */
+        private static final int COMPRESSION_LEVEL = 9;
+
+        @Override
+        public String getName() {
+            return "zstd";
+        }
+
+        @Override
+        public Encoder createEncoder() {
+            return (input, offset, length, output, outputOffset, maxOutputLength) -> {
+                long result = Zstd.compressByteArray(output, outputOffset, maxOutputLength, input, offset, length,
+                        COMPRESSION_LEVEL);
+                return Zstd.isError(result) ? -1 : (int) result;
+            };
+        }
+
+        @Override
+        public Decoder createDecoder() {
+            return (input, offset, length, output) -> {
+                long result = Zstd.decompressByteArray(output, 0, output.length, input, offset, length);
+                if (Zstd.isError(result))
+                    throw new IOException("Error decompressing block: " + Zstd.getErrorName(result));
+                return (int) result;
+            };
+        }
+    }
+}
@@ -32,6 +32,20 @@ public abstract class ContentStore {
     static final Charset DEFAULT_CHARSET = Charset.forName("utf-8");
 
     public static ContentStore open(File indexXmlDir, boolean indexMode, boolean create) throws ErrorOpeningIndex {
+        return open(indexXmlDir, indexMode, create, null);
+    }
+
+    /**
+     * Open a content store.
+     *
+     * @param indexXmlDir content store directory
+     * @param indexMode open for writing?
+     * @param create create a new content store?
+     * @param codec if creating, block codec to use, or null for a version 1 (deflate) content store
+     * @return the content store
+     * @throws ErrorOpeningIndex if the content store could not be opened
+     */
+    public static ContentStore open(File indexXmlDir, boolean indexMode, boolean create, BlockCodec codec) throws ErrorOpeningIndex {
         String type;
         if (create)
             type = "fixedblock";
@@ -41,7 +55,7 @@ public abstract class ContentStore {
         }
         if (type.equals("fixedblock")) {
             if (indexMode)
-                return new ContentStoreFixedBlockWriter(indexXmlDir, create);
+                return new ContentStoreFixedBlockWriter(indexXmlDir, create, codec);
             if (create)
                 throw new UnsupportedOperationException("create == true, but not in index mode");
             return new ContentStoreFixedBlockReader(indexXmlDir);
@@ -7,6 +7,7 @@ import java.nio.Buffer;
 import java.nio.ByteBuffer;
 import java.nio.IntBuffer;
 import java.nio.channels.FileChannel;
+import java.nio.file.Files;
 import java.util.Set;
 
 import org.eclipse.collections.api.map.primitive.MutableIntObjectMap;
@@ -14,8 +15,10 @@ import org.eclipse.collections.impl.factory.primitive.IntObjectMaps;
 import org.eclipse.collections.impl.list.mutable.primitive.IntArrayList;
 
 import nl.inl.blacklab.exceptions.BlackLabRuntimeException;
+import nl.inl.blacklab.exceptions.ErrorOpeningIndex;
 import nl.inl.util.CollUtil;
 import nl.inl.util.SimpleResourcePool;
+import nl.inl.util.VersionFile;
 
 public abstract class ContentStoreFixedBlock extends ContentStoreDirAbstract {
 
@@ -27,9 +30,27 @@ public abstract class ContentStoreFixedBlock extends ContentStoreDirAbstract {
     /**
      * Version of this type of content store. Written to version file and detected
      * when opening.
+     *
+     * Version 1 always uses the deflate codec for its blocks. This is still the
+     * version we create by default.
      */
     protected static final String CURRENT_VERSION = "1";
 
+    /**
+     * Version of this type of content store that supports different block codecs.
+     *
+     * Each block starts with the length of the encoded data (an unsigned short),
+     * because not all codecs can detect the end of the encoded data themselves.
+     * The codec used is stored in a separate file.
+     */
+    protected static final String VERSION_CODEC = "2";
+
+    /** Name of the file containing the codec name (version 2 only) */
+    protected static final String CODEC_FILE_NAME = "codec.dat";
+
+    /** Size of the block header in version 2 (length of the encoded data) */
+    protected static final int BLOCK_HEADER_SIZE_BYTES_V2 = 2;
+
     /** Name of the table of contents file */
     protected static final String TOC_FILE_NAME = "toc.dat";
 
@@ -212,6 +233,12 @@ public abstract class ContentStoreFixedBlock extends ContentStoreDirAbstract {
 
     protected boolean initialized = false;
 
+    /** Codec used to compress our blocks */
+    protected BlockCodec codec = BlockCodec.DEFLATE;
+
+    /** Number of bytes at the start of each block before the encoded data (0 for version 1) */
+    protected int blockHeaderSizeBytes = 0;
+
     protected ContentStoreFixedBlock(File dir) {
         super(dir);
         tocFile = new File(dir, TOC_FILE_NAME);
@@ -333,8 +360,59 @@ public abstract class ContentStoreFixedBlock extends ContentStoreDirAbstract {
         return toc.get(id).entryLengthCharacters;
     }
 
-    protected void setStoreType() {
-        setStoreType(CONTENT_STORE_TYPE_NAME, CURRENT_VERSION);
+    /**
+     * Write the store type and version (and codec if applicable).
+     *
+     * @param codec codec to use, or null to create a version 1 store (which always uses deflate)
+     */
+    protected void setStoreType(BlockCodec codec) {
+        if (codec == null) {
+            setStoreType(CONTENT_STORE_TYPE_NAME, CURRENT_VERSION);
+            this.codec = BlockCodec.DEFLATE;
+            blockHeaderSizeBytes = 0;
+        } else {
+            setStoreType(CONTENT_STORE_TYPE_NAME, VERSION_CODEC);
+            try {
+                Files.write(new File(dir, CODEC_FILE_NAME).toPath(), codec.getName().getBytes(DEFAULT_CHARSET));
+            } catch (IOException e) {
+                throw BlackLabRuntimeException.wrap(e);
+            }
+            this.codec = codec;
+            blockHeaderSizeBytes = BLOCK_HEADER_SIZE_BYTES_V2;
+        }
+    }
+
+    /**
+     * Determine the version and codec of an existing content store.
+     *
+     * @throws ErrorOpeningIndex if the version is not supported
+     */
+    protected void readStoreType() throws ErrorOpeningIndex {
+        VersionFile vf = getStoreTypeVersion(dir);
+        String version = vf.getVersion();
+        if (CURRENT_VERSION.equals(version)) {
+            codec = BlockCodec.DEFLATE;
+            blockHeaderSizeBytes = 0;
+        } else if (VERSION_CODEC.equals(version)) {
+            try {
+                String codecName = new String(Files.readAllBytes(new File(dir, CODEC_FILE_NAME).toPath()), DEFAULT_CHARSET);
+                codec = BlockCodec.fromName(codecName);
+            } catch (IOException | IllegalArgumentException e) {
+                throw new ErrorOpeningIndex("Could not determine content store codec (" + dir + ")", e);
+            }
+            blockHeaderSizeBytes = BLOCK_HEADER_SIZE_BYTES_V2;
+        } else {
+            throw new ErrorOpeningIndex("Unsupported content store version " + version + " (" + dir + ")");
+        }
+    }
+
+    /**
+     * Get the codec used to compress our blocks.
+     *
+     * @return the codec
+     */
+    public BlockCodec getCodec() {
+        return codec;
     }
 
 
@@ -16,15 +16,19 @@
 package nl.inl.blacklab.contentstore;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.Buffer;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.channels.FileChannel.MapMode;
 import java.nio.charset.Charset;
-import java.util.zip.DataFormatException;
-import java.util.zip.Inflater;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 
 import net.jcip.annotations.NotThreadSafe;
 import nl.inl.blacklab.exceptions.BlackLabRuntimeException;
@@ -35,10 +39,16 @@ import nl.inl.util.SimpleResourcePool;
  * Store string content by id in a compound file and a TOC file. Quickly
  * retrieve (parts of) the string content.
  *
- * Stores files in a file containing fixed-length (4K) blocks of zipped UTF-8. A
+ * Stores files in a file containing fixed-length (4K) blocks of compressed UTF-8
+ * (see {@link BlockCodec}). A
  * file allocation table keeps track of each file's blocks as well as the
  * character offset associated with each block so we can quickly access the
  * data. Free blocks will be re-used to save space.
+ *
+ * Blocks are read from the contents file using positional reads and decompressed
+ * using a decoder from a small pool, so multiple threads can retrieve content
+ * concurrently without locking. Decompressed blocks may be kept in a cache shared
+ * by all content stores (see {@link #setBlockCacheSizeBytes(long)}).
  * 
  * Thread-safety: not thread-safe in index mode, but thread-safe while searching
  */
@@ -46,7 +56,85 @@ import nl.inl.util.SimpleResourcePool;
 public class ContentStoreFixedBlockReader extends ContentStoreFixedBlock {
     //private static final Logger logger = LogManager.getLogger(ContentStoreDirFixedBlock.class);
 
-    SimpleResourcePool<Inflater> decompresserPool;
+    /** Approximate memory overhead of a cached block, in addition to its characters */
+    private static final int CACHED_BLOCK_OVERHEAD_BYTES = 80;
+
+    /** Default size of the decompressed block cache (0 = no cache) */
+    public static final long DEFAULT_BLOCK_CACHE_SIZE_BYTES = 64_000_000L;
+
+    /** Used to give each reader a unique id, so we can cache blocks from all readers together */
+    private static final AtomicInteger nextReaderId = new AtomicInteger();
+
+    /**
+     * Cache of decompressed blocks, shared by all readers, or null if disabled.
+     *
+     * Keys consist of the reader id (high 32 bits) and block number (low 32 bits).
+     */
+    private static volatile Cache<Long, String> blockCache = createBlockCache(DEFAULT_BLOCK_CACHE_SIZE_BYTES);
+
+    /**
+     * Set the maximum size of the decompressed block cache.
+     *
+     * The cache is shared by all content stores that are opened for reading. If
+     * the size is changed, any blocks cached so far are discarded.
+     *
+     * @param maxSizeBytes maximum cache size in bytes (approximate), or 0 to disable the cache
+     */
+    public static synchronized void setBlockCacheSizeBytes(long maxSizeBytes) {
+        Cache<Long, String> oldCache = blockCache;
+        blockCache = createBlockCache(maxSizeBytes);
+        if (oldCache != null)
+            oldCache.invalidateAll();
+    }
+
+    private static Cache<Long, String> createBlockCache(long maxSizeBytes) {
+        if (maxSizeBytes <= 0)
+            return null;
+        return Caffeine.newBuilder()
+                .maximumWeight(maxSizeBytes)
+                .weigher((Long key, String block) -> CACHED_BLOCK_OVERHEAD_BYTES + block.length() * Character.BYTES)
+                .build();
+    }
+
+    /** Our unique id, used in block cache keys */
+    private final int readerId = nextReaderId.incrementAndGet();
+
+    /** The contents file channel. Only used for positional reads, which are thread-safe. */
+    private FileChannel contentsFileChannel;
+
+    /**
+     * A decoder plus the buffers needed to read and decompress one block.
+     *
+     * Not thread-safe; acquired from {@link #blockDecoderPool} for the duration of one block read.
+     */
+    private class BlockDecoder {
+        /** Decompresses our blocks */
+        final BlockCodec.Decoder decoder = codec.createDecoder();
+
+        /** Buffer to read compressed blocks into */
+        final ByteBuffer readBuffer = ByteBuffer.allocate(BLOCK_SIZE_BYTES);
+
+        /** Buffer to decompress blocks into (one larger to detect when buffer space was insufficient) */
+        final byte[] zipbuf = new byte[MAX_BLOCK_SIZE_BYTES + 1];
+    }
+
+    /**
+     * Pool of block decoders.
+     *
+     * Bounded, so we don't keep a decoder and its buffers alive for each thread
+     * that ever read from us (e.g. when searches run on virtual threads).
+     */
+    private final SimpleResourcePool<BlockDecoder> blockDecoderPool = new SimpleResourcePool<BlockDecoder>(POOL_SIZE) {
+        @Override
+        public BlockDecoder createResource() {
+            return new BlockDecoder();
+        }
+
+        @Override
+        public void destroyResource(BlockDecoder resource) {
+            resource.decoder.close();
+        }
+    };
 
     /**
      * @param dir content store dir
@@ -58,23 +146,17 @@ public class ContentStoreFixedBlockReader extends ContentStoreFixedBlock {
             throw new ErrorOpeningIndex("Dir doesn't exist: " + dir);
         if (!tocFile.exists())
             throw new ErrorOpeningIndex("Toc file doesn't exist: " + tocFile);
-
-        decompresserPool = new SimpleResourcePool<Inflater>(POOL_SIZE) {
-            @Override
-            public Inflater createResource() {
-                return new Inflater();
-            }
-
-            @Override
-            public void destroyResource(Inflater resource) {
-                resource.end();
-            }
-        };
+        readStoreType();
     }
     
     @Override
     protected void performInitialization() {
         readToc();
+        try {
+            contentsFileChannel = FileChannel.open(contentsFile.toPath(), StandardOpenOption.READ);
+        } catch (IOException e) {
+            throw BlackLabRuntimeException.wrap(e);
+        }
     }
 
     @Override
@@ -94,8 +176,17 @@ public class ContentStoreFixedBlockReader extends ContentStoreFixedBlock {
     public void close() {
         if (!initialized)
             initialize();
-        decompresserPool.close();
+        blockDecoderPool.close();
         closeMappedToc();
+        try {
+            if (contentsFileChannel != null)
+                contentsFileChannel.close();
+        } catch (IOException e) {
+            throw BlackLabRuntimeException.wrap(e);
+        }
+        Cache<Long, String> cache = blockCache;
+        if (cache != null)
+            cache.asMap().keySet().removeIf(key -> (int) (key >>> 32) == readerId);
         super.close();
     }
 
@@ -114,7 +205,7 @@ public class ContentStoreFixedBlockReader extends ContentStoreFixedBlock {
     }
 
     @Override
-    public synchronized String[] retrieveParts(int contentId, int[] start, int[] end) {
+    public String[] retrieveParts(int contentId, int[] start, int[] end) {
         if (!initialized)
             initialize();
         try {
@@ -131,72 +222,48 @@ public class ContentStoreFixedBlockReader extends ContentStoreFixedBlock {
             // Create array for results
             String[] result = new String[n];
 
-            // Open the file
-            try (FileInputStream fileInputStream = new FileInputStream(contentsFile)) {
-                try (FileChannel fileChannel = fileInputStream.getChannel()) {
-                    // Retrieve the strings requested
-                    for (int i = 0; i < n; i++) {
-                        int a = start[i];
-                        int b = end[i];
-
-                        if (a == -1)
-                            a = 0;
-                        if (b == -1)
-                            b = e.entryLengthCharacters;
-
-                        // Check values
-                        if (a < 0 || b < 0) {
-                            throw new IllegalArgumentException("Illegal values, start = " + a + ", end = " + b);
-                        }
-                        if (a > e.entryLengthCharacters || b > e.entryLengthCharacters) {
-                            throw new IllegalArgumentException("Value(s) out of range, start = " + a
-                                    + ", end = " + b + ", content length = " + e.entryLengthCharacters);
-                        }
-                        if (b <= a) {
-                            throw new IllegalArgumentException(
-                                    "Tried to read empty or negative length snippet (from " + a
-                                            + " to " + b + ")");
-                        }
-
-                        // 1 - determine what blocks to read
-                        int firstBlock = -1, lastBlock = -1;
-                        int bl = 0;
-                        int charOffset = -1;
-                        for (int offs : e.blockCharOffsets) {
-                            if (offs <= a) {
-                                firstBlock = bl; // last block that starts before a
-                                charOffset = offs;
-                            }
-                            if (offs > b && lastBlock == -1) {
-                                lastBlock = bl - 1; // first block that ends after b
-                                break;
-                            }
-                            bl++;
-                        }
-                        if (lastBlock == -1)
-                            lastBlock = bl - 1; // last available block
-
-                        // 2 - read and decode blocks
-                        StringBuilder decoded = new StringBuilder();
-                        for (int j = firstBlock; j <= lastBlock; j++) {
-                            long blockNum = e.getBlockNumber(j);
-                            long readStartOffset = blockNum * BLOCK_SIZE_BYTES;
-                            int bytesToRead = BLOCK_SIZE_BYTES;
-                            ByteBuffer buffer = ByteBuffer.allocate(bytesToRead);
-                            int bytesRead = fileChannel.read(buffer, readStartOffset);
-                            if (bytesRead < bytesToRead) {
-                                // Apparently, something went wrong.
-                                throw new BlackLabRuntimeException("Not enough bytes read, " + bytesRead
-                                        + " < " + bytesToRead);
-                            }
-                            String decodedBlock = decodeBlock(buffer.array(), 0, bytesRead);
-                            decoded.append(decodedBlock);
-                        }
-
-                        // 3 - take just what we need
-                        int firstChar = a - charOffset;
-                        result[i] = decoded.substring(firstChar, firstChar + b - a);
+            // Retrieve the strings requested
+            for (int i = 0; i < n; i++) {
+                int a = start[i];
+                int b = end[i];
+
+                if (a == -1)
+                    a = 0;
+                if (b == -1)
+                    b = e.entryLengthCharacters;
+
+                // Check values
+                if (a < 0 || b < 0) {
+                    throw new IllegalArgumentException("Illegal values, start = " + a + ", end = " + b);
+                }
+                if (a > e.entryLengthCharacters || b > e.entryLengthCharacters) {
+                    throw new IllegalArgumentException("Value(s) out of range, start = " + a
+                            + ", end = " + b + ", content length = " + e.entryLengthCharacters);
+                }
+                if (b <= a) {
+                    throw new IllegalArgumentException(
+                            "Tried to read empty or negative length snippet (from " + a
+                                    + " to " + b + ")");
+                }
+
+                // 1 - determine what blocks to read
+                int firstBlock = blockContainingChar(e.blockCharOffsets, a);
+                int lastBlock = blockContainingChar(e.blockCharOffsets, b - 1);
+                int charOffset = e.blockCharOffsets[firstBlock];
+                int firstChar = a - charOffset;
+
+                // 2 - read and decode blocks
+                if (firstBlock == lastBlock) {
+                    // Everything we need is in one block
+                    result[i] = getBlock(e.getBlockNumber(firstBlock)).substring(firstChar, firstChar + b - a);
+                } else {
+                    StringBuilder decoded = new StringBuilder();
+                    for (int j = firstBlock; j <= lastBlock; j++) {
+                        decoded.append(getBlock(e.getBlockNumber(j)));
                     }
+
+                    // 3 - take just what we need
+                    result[i] = decoded.substring(firstChar, firstChar + b - a);
                 }
             }
             return result;
@@ -205,32 +272,93 @@ public class ContentStoreFixedBlockReader extends ContentStoreFixedBlock {
         }
     }
 
+    /**
+     * Find the block containing the specified character.
+     *
+     * @param blockCharOffsets first character stored in each block (ascending)
+     * @param charPos the character we're looking for
+     * @return index of the last block starting at or before charPos
+     */
+    private static int blockContainingChar(int[] blockCharOffsets, int charPos) {
+        int i = Arrays.binarySearch(blockCharOffsets, charPos);
+        return i >= 0 ? i : -i - 2;
+    }
+
+    /**
+     * Get a decompressed block, from the cache if possible.
+     *
+     * @param blockNumber block to get
+     * @return the decompressed block
+     * @throws IOException on error
+     */
+    private String getBlock(int blockNumber) throws IOException {
+        Cache<Long, String> cache = blockCache;
+        if (cache == null)
+            return readBlock(blockNumber);
+        long key = ((long) readerId << 32) | blockNumber;
+        String block = cache.getIfPresent(key);
+        if (block == null) {
+            block = readBlock(blockNumber);
+            cache.put(key, block);
+        }
+        return block;
+    }
+
+    /**
+     * Read and decompress a block from the contents file.
+     *
+     * @param blockNumber block to read
+     * @return the decompressed block
+     * @throws IOException on error
+     */
+    private String readBlock(int blockNumber) throws IOException {
+        long readStartOffset = (long) blockNumber * BLOCK_SIZE_BYTES;
+        BlockDecoder blockDecoder = blockDecoderPool.acquire();
+        try {
+            ByteBuffer buffer = blockDecoder.readBuffer;
+            ((Buffer)buffer).clear();
+            int bytesRead = 0;
+            while (buffer.hasRemaining()) {
+                int n = contentsFileChannel.read(buffer, readStartOffset + bytesRead);
+                if (n < 0)
+                    break;
+                bytesRead += n;
+            }
+            if (bytesRead < BLOCK_SIZE_BYTES) {
+                // Apparently, something went wrong.
+                throw new BlackLabRuntimeException("Not enough bytes read, " + bytesRead
+                        + " < " + BLOCK_SIZE_BYTES);
+            }
+            if (blockHeaderSizeBytes == 0) {
+                // Version 1: the decoder will find the end of the encoded data itself
+                return decodeBlock(blockDecoder, buffer.array(), 0, bytesRead);
+            }
+            int encodedLength = buffer.getShort(0) & 0xFFFF;
+            return decodeBlock(blockDecoder, buffer.array(), blockHeaderSizeBytes, encodedLength);
+        } finally {
+            blockDecoderPool.release(blockDecoder);
+        }
+    }
+
     protected String decodeBlock(byte[] buf, int offset, int length) throws IOException {
         if (!initialized)
             initialize();
+        BlockDecoder blockDecoder = blockDecoderPool.acquire();
         try {
-            // unzip block
-            Inflater decompresser = decompresserPool.acquire();
-            byte[] zipbuf = zipbufPool.acquire();
-            try {
-                decompresser.reset();
-                decompresser.setInput(buf, offset, length);
-                int resultLength = decompresser.inflate(zipbuf);
-                if (resultLength <= 0) {
-                    throw new IOException("Error, inflate returned " + resultLength);
-                }
-                if (!decompresser.finished()) {
-                    // This shouldn't happen because our max block size prevents it
-                    throw new IOException("Unzip buffer size insufficient");
-                }
-                return new String(zipbuf, 0, resultLength, DEFAULT_CHARSET);
-            } finally {
-                decompresserPool.release(decompresser);
-                zipbufPool.release(zipbuf);
-            }
-        } catch (DataFormatException e) {
-            throw new IOException(e);
+            return decodeBlock(blockDecoder, buf, offset, length);
+        } finally {
+            blockDecoderPool.release(blockDecoder);
+        }
+    }
+
+    private String decodeBlock(BlockDecoder blockDecoder, byte[] buf, int offset, int length) throws IOException {
+        byte[] zipbuf = blockDecoder.zipbuf;
+        int resultLength = blockDecoder.decoder.decode(buf, offset, length, zipbuf);
+        if (resultLength > MAX_BLOCK_SIZE_BYTES) {
+            // This shouldn't happen because our max block size prevents it
+            throw new IOException("Unzip buffer size insufficient");
         }
+        return new String(zipbuf, 0, resultLength, DEFAULT_CHARSET);
     }
 
     @Override
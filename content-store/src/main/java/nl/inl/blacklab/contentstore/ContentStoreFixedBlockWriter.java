@@ -28,7 +28,7 @@ import java.nio.channels.FileChannel.MapMode;
 import java.nio.charset.Charset;
 import java.nio.charset.CharsetDecoder;
 import java.util.Arrays;
-import java.util.zip.Deflater;
+import java.util.Set;
 
 import org.eclipse.collections.api.iterator.IntIterator;
 import org.eclipse.collections.impl.list.mutable.primitive.IntArrayList;
@@ -36,13 +36,13 @@ import org.eclipse.collections.impl.list.mutable.primitive.IntArrayList;
 import net.jcip.annotations.NotThreadSafe;
 import nl.inl.blacklab.exceptions.BlackLabRuntimeException;
 import nl.inl.blacklab.exceptions.ErrorOpeningIndex;
-import nl.inl.util.SimpleResourcePool;
 
 /**
  * Store string content by id in a compound file and a TOC file. Quickly
  * retrieve (parts of) the string content.
  *
- * Stores files in a file containing fixed-length (4K) blocks of zipped UTF-8. A
+ * Stores files in a file containing fixed-length (4K) blocks of compressed UTF-8
+ * (see {@link BlockCodec}). A
  * file allocation table keeps track of each file's blocks as well as the
  * character offset associated with each block so we can quickly access the
  * data. Free blocks will be re-used to save space.
@@ -119,7 +119,8 @@ public class ContentStoreFixedBlockWriter extends ContentStoreFixedBlock {
     /** Used to pad blocks that are less than BLOCK_SIZE long */
     private byte[] blockPadding = new byte[BLOCK_SIZE_BYTES];
 
-    SimpleResourcePool<Deflater> compresserPool;
+    /** Encoder for our blocks (created when needed) */
+    private BlockCodec.Encoder encoder;
 
     /**
      * @param dir content store dir
@@ -127,6 +128,17 @@ public class ContentStoreFixedBlockWriter extends ContentStoreFixedBlock {
      * @throws ErrorOpeningIndex
      */
     public ContentStoreFixedBlockWriter(File dir, boolean create) throws ErrorOpeningIndex {
+        this(dir, create, null);
+    }
+
+    /**
+     * @param dir content store dir
+     * @param create if true, create a new content store
+     * @param codec if creating, block codec to use, or null to create a version 1 (deflate) store.
+     *              Ignored if not creating.
+     * @throws ErrorOpeningIndex
+     */
+    public ContentStoreFixedBlockWriter(File dir, boolean create, BlockCodec codec) throws ErrorOpeningIndex {
         super(dir);
         if (!dir.exists() && !dir.mkdir())
             throw new ErrorOpeningIndex("Could not create dir: " + dir);
@@ -154,8 +166,10 @@ public class ContentStoreFixedBlockWriter extends ContentStoreFixedBlock {
                     throw new ErrorOpeningIndex("Could not delete data file: " + f);
             }
         }
-        if (tocFile.exists())
+        if (tocFile.exists()) {
+            readStoreType();
             readToc();
+        }
         tocModified = false;
         if (create) {
             try {
@@ -165,22 +179,44 @@ public class ContentStoreFixedBlockWriter extends ContentStoreFixedBlock {
             }
             if (tocFile.exists() && !tocFile.delete())
                 throw new ErrorOpeningIndex("Could not delete file: " + tocFile);
-            setStoreType();
+            setStoreType(codec);
         }
         blockIndicesWhileStoring = new IntArrayList();
         blockCharOffsetsWhileStoring = new IntArrayList();
+    }
 
-        compresserPool = new SimpleResourcePool<Deflater>(POOL_SIZE) {
-            @Override
-            public Deflater createResource() {
-                return new Deflater();
-            }
-
-            @Override
-            public void destroyResource(Deflater resource) {
-                resource.end();
+    /**
+     * Write a copy of an existing content store using the specified codec.
+     *
+     * Content store ids are preserved, so the Lucene index referring to them
+     * doesn't need to change. Deleted entries are copied as deleted, empty entries.
+     *
+     * @param sourceDir content store to convert
+     * @param destDir where to write the converted content store
+     * @param codec block codec for the converted content store
+     * @throws ErrorOpeningIndex if either content store could not be opened
+     */
+    public static void convert(File sourceDir, File destDir, BlockCodec codec) throws ErrorOpeningIndex {
+        ContentStore source = ContentStore.open(sourceDir, false, false);
+        try {
+            ContentStoreFixedBlockWriter dest = new ContentStoreFixedBlockWriter(destDir, true, codec);
+            try {
+                Set<Integer> ids = source.idSet();
+                int maxId = ids.stream().mapToInt(Integer::intValue).max().orElse(0);
+                for (int id = 1; id <= maxId; id++) {
+                    boolean keep = ids.contains(id) && !source.isDeleted(id);
+                    int newId = dest.store(keep && source.docLength(id) > 0 ? source.retrieve(id) : "");
+                    if (newId != id)
+                        throw new BlackLabRuntimeException("Content store id changed during conversion: " + id + " became " + newId);
+                    if (!keep)
+                        dest.delete(newId);
+                }
+            } finally {
+                dest.close();
             }
-        };
+        } finally {
+            source.close();
+        }
     }
 
     /**
@@ -240,7 +276,10 @@ public class ContentStoreFixedBlockWriter extends ContentStoreFixedBlock {
      */
     @Override
     public void close() {
-        compresserPool.close();
+        if (encoder != null) {
+            encoder.close();
+            encoder = null;
+        }
         closeContentsFile();
         if (tocModified) {
             writeToc();
@@ -493,7 +532,9 @@ public class ContentStoreFixedBlockWriter extends ContentStoreFixedBlock {
         if (length > available)
             length = available;
 
-        Deflater compresser = compresserPool.acquire();
+        if (encoder == null)
+            encoder = codec.createEncoder();
+        int maxEncodedLength = BLOCK_SIZE_BYTES - blockHeaderSizeBytes;
         byte[] zipbuf = zipbufPool.acquire();
         boolean doMinCheck = true;
         try {
@@ -517,26 +558,27 @@ public class ContentStoreFixedBlockWriter extends ContentStoreFixedBlock {
                 }
 
                 // Compress
-                compresser.reset();
-                compresser.setInput(encoded);
-                compresser.finish();
-                int compressedDataLength = compresser.deflate(zipbuf, 0, zipbuf.length, Deflater.FULL_FLUSH);
-                if (compressedDataLength <= 0) {
-                    throw new BlackLabRuntimeException("Error, deflate returned " + compressedDataLength);
+                int compressedDataLength = encoder.encode(encoded, 0, encoded.length, zipbuf, blockHeaderSizeBytes,
+                        zipbuf.length - blockHeaderSizeBytes);
+                if (compressedDataLength == 0) {
+                    throw new BlackLabRuntimeException("Error, " + codec + " encoder returned " + compressedDataLength);
                 }
-                if (compressedDataLength == zipbuf.length) {
-                    throw new BlackLabRuntimeException(
-                            "Error, deflate returned size of zipbuf, this indicates insufficient space");
+                if (compressedDataLength < 0) {
+                    // Didn't even fit in our zip buffer (incompressible data?)
+                    // Halve the uncompressed data length and try again.
+                    length = Math.max(1, length / 2);
+                    doMinCheck = false;
+                    continue;
                 }
 
                 // Check the size
 //				float waste = (float)(BLOCK_SIZE_BYTES - compressedDataLength) / BLOCK_SIZE_BYTES;
 //				float ratio = (float)length / compressedDataLength;
 
-                if (compressedDataLength > BLOCK_SIZE_BYTES) {
+                if (compressedDataLength > maxEncodedLength) {
                     // Compressed block too large.
                     // Shrink the uncompressed data length by 5% more than what we expect to be required.
-                    float shrinkFactor = 1.0f + (1.05f * (compressedDataLength - BLOCK_SIZE_BYTES)) / BLOCK_SIZE_BYTES;
+                    float shrinkFactor = 1.0f + (1.05f * (compressedDataLength - maxEncodedLength)) / maxEncodedLength;
                     //logger.debug("Block size too large, retrying. Char length: " + length + ", encoded length: " +
                     // compressedDataLength + " > " + BLOCK_SIZE_BYTES + ", shrinkFactor: " + shrinkFactor);
                     length = (int) (length / shrinkFactor);
@@ -547,7 +589,7 @@ public class ContentStoreFixedBlockWriter extends ContentStoreFixedBlock {
                     // Compressed block too small.
                     // Grow the uncompressed data length by 5% less than what we expect is possible.
                     float growFactor = 1.0f
-                            + (0.95f * (BLOCK_SIZE_BYTES - compressedDataLength)) / compressedDataLength;
+                            + (0.95f * (maxEncodedLength - compressedDataLength)) / compressedDataLength;
                     //logger.debug("Block size too small, retrying. Char length: " + length + ", encoded length: " +
                     // compressedDataLength + " < " + MINIMUM_ACCEPTABLE_BLOCK_SIZE + ", growFactor: " + growFactor);
                     length = (int) (length * growFactor);
@@ -560,11 +602,15 @@ public class ContentStoreFixedBlockWriter extends ContentStoreFixedBlock {
                     // NOTE: do not delete from unwrittenContents here,
                     // call site needs to know how much we advanced in the buffer to calculate how much uncompressed data was used
                     this.unwrittenIndex += length;
-                    return Arrays.copyOfRange(zipbuf, 0, compressedDataLength);
+                    if (blockHeaderSizeBytes > 0) {
+                        // Version 2: record length of encoded data at the start of the block
+                        zipbuf[0] = (byte) (compressedDataLength >>> 8);
+                        zipbuf[1] = (byte) compressedDataLength;
+                    }
+                    return Arrays.copyOfRange(zipbuf, 0, blockHeaderSizeBytes + compressedDataLength);
                 }
             }
         } finally {
-            compresserPool.release(compresser);
             zipbufPool.release(zipbuf);
         }
     }
@@ -0,0 +1,93 @@
+package nl.inl.blacklab.forwardindex;
+
+import java.io.IOException;
+
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.NoMergePolicy;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.RAMDirectory;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import nl.inl.blacklab.mocks.MockAnnotation;
+import nl.inl.blacklab.search.indexmetadata.Annotation;
+
+public class TestFiidLookup {
+
+    private static final String FIID_FIELD = "fiid";
+
+    /** Fiids of the documents in the segment with DocValues */
+    private static final int[] FIIDS_DOC_VALUES = { 10, 11, 12 };
+
+    /** Fiids of the documents in the segment without DocValues */
+    private static final int[] FIIDS_STORED = { 20, 21 };
+
+    private final Annotation annotation = new MockAnnotation("word") {
+        @Override
+        public String forwardIndexIdField() {
+            return FIID_FIELD;
+        }
+    };
+
+    private Directory dir;
+
+    private DirectoryReader reader;
+
+    private static void addSegment(IndexWriter writer, int[] fiids, boolean docValues) throws IOException {
+        for (int fiid: fiids) {
+            Document doc = new Document();
+            if (docValues)
+                doc.add(new NumericDocValuesField(FIID_FIELD, fiid));
+            doc.add(new StoredField(FIID_FIELD, fiid));
+            writer.addDocument(doc);
+        }
+        writer.commit();
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        dir = new RAMDirectory();
+        IndexWriterConfig config = new IndexWriterConfig(new StandardAnalyzer());
+        config.setMergePolicy(NoMergePolicy.INSTANCE);
+        try (IndexWriter writer = new IndexWriter(dir, config)) {
+            addSegment(writer, FIIDS_DOC_VALUES, true);
+            addSegment(writer, FIIDS_STORED, false);
+        }
+        reader = DirectoryReader.open(dir);
+        Assert.assertEquals(2, reader.leaves().size());
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        reader.close();
+        dir.close();
+    }
+
+    @Test
+    public void testSegmentWithoutDocValues() {
+        FiidLookup lookup = FiidLookup.get(reader, annotation);
+        int docId = 0;
+        for (int fiid: FIIDS_DOC_VALUES)
+            Assert.assertEquals(fiid, lookup.get(docId++));
+        for (int fiid: FIIDS_STORED)
+            Assert.assertEquals(fiid, lookup.get(docId++));
+    }
+
+    @Test
+    public void testSharedAndDroppedOnClose() throws IOException {
+        FiidLookup lookup = FiidLookup.get(reader, annotation);
+        Assert.assertSame(lookup, FiidLookup.get(reader, annotation));
+        Assert.assertTrue(FiidLookup.hasLookups(reader));
+        reader.close();
+        Assert.assertFalse(FiidLookup.hasLookups(reader));
+    }
+
+}
@@ -16,6 +16,9 @@
 package nl.inl.blacklab.search;
 
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
 
 import org.apache.lucene.search.DocIdSetIterator;
 import org.apache.lucene.search.spans.Spans;
@@ -24,6 +27,9 @@ import org.junit.Test;
 
 import nl.inl.blacklab.mocks.MockBlackLabIndex;
 import nl.inl.blacklab.mocks.MockSpans;
+import nl.inl.blacklab.resultproperty.HitProperty;
+import nl.inl.blacklab.resultproperty.HitPropertyDocumentId;
+import nl.inl.blacklab.resultproperty.HitPropertyHitPosition;
 import nl.inl.blacklab.search.results.Hit;
 import nl.inl.blacklab.search.results.Hits;
 
@@ -65,4 +71,37 @@ public class TestHits {
         Assert.assertEquals(Spans.NO_MORE_POSITIONS, spans.nextStartPosition());
     }
 
+    @Test
+    public void testSortManyHits() {
+        // Enough hits to extract keys, sort and merge in parallel
+        int n = 50_000;
+        Random random = new Random(1);
+        int[] aDoc = new int[n], aStart = new int[n], aEnd = new int[n];
+        for (int i = 0; i < n; i++) {
+            aDoc[i] = random.nextInt(100);
+            aStart[i] = random.nextInt(1000);
+            aEnd[i] = aStart[i] + 1 + random.nextInt(3);
+        }
+        try (MockBlackLabIndex index = new MockBlackLabIndex()) {
+            Hits hits = Hits.fromArrays(index.createDefaultQueryInfo(), aDoc, aStart, aEnd);
+            assertSorted(hits, new HitPropertyDocumentId(), Comparator.comparingInt(i -> aDoc[i]));
+            assertSorted(hits, new HitPropertyDocumentId().reverse(), Comparator.comparingInt(i -> -aDoc[i]));
+            assertSorted(hits, new HitPropertyHitPosition(),
+                    Comparator.<Integer>comparingInt(i -> aStart[i]).thenComparingInt(i -> aEnd[i]));
+        }
+    }
+
+    private static void assertSorted(Hits hits, HitProperty prop, Comparator<Integer> expectedOrder) {
+        // Expected: a stable sort of the original hits
+        Integer[] expected = new Integer[hits.size()];
+        for (int i = 0; i < expected.length; i++)
+            expected[i] = i;
+        Arrays.sort(expected, expectedOrder);
+        Hits sorted = hits.sort(prop);
+        Assert.assertEquals(hits.size(), sorted.size());
+        for (int i = 0; i < expected.length; i++) {
+            Assert.assertEquals(prop.serialize(), hits.get(expected[i]), sorted.get(i));
+        }
+    }
+
 }
@@ -0,0 +1,71 @@
+package nl.inl.blacklab.search;
+
+import java.util.Arrays;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import nl.inl.blacklab.config.BLConfigWarmUp;
+import nl.inl.blacklab.testutil.TestIndex;
+
+public class TestPageCacheWarmer {
+
+    static TestIndex testIndex;
+
+    @BeforeClass
+    public static void setUp() {
+        testIndex = new TestIndex();
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        PageCacheWarmer.setSettings(new BLConfigWarmUp());
+        if (testIndex != null)
+            testIndex.close();
+    }
+
+    private static void setSettings(boolean enabled, int maxSizeMegs) {
+        BLConfigWarmUp settings = new BLConfigWarmUp();
+        settings.setEnabled(enabled);
+        settings.setPriority(Arrays.asList("fi:word", "fi:*", "cs"));
+        settings.setMaxSizeMegs(maxSizeMegs);
+        settings.setRewarmIntervalSec(0);
+        PageCacheWarmer.setSettings(settings);
+    }
+
+    @Test
+    public void testWarm() throws InterruptedException {
+        setSettings(true, 0);
+        PageCacheWarmer warmer = new PageCacheWarmer();
+        try {
+            warmer.add(testIndex.index());
+            Assert.assertEquals(1, warmer.numberOfIndexes());
+            long deadline = System.currentTimeMillis() + 10000;
+            while (warmer.bytesTargeted() == 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            Assert.assertTrue(warmer.bytesTargeted() > 0);
+            Assert.assertTrue(warmer.residentBytes() <= warmer.bytesTargeted());
+
+            warmer.remove(testIndex.index());
+            Assert.assertEquals(0, warmer.numberOfIndexes());
+            Assert.assertEquals(0, warmer.residentBytes());
+        } finally {
+            warmer.close();
+        }
+    }
+
+    @Test
+    public void testDisabled() {
+        setSettings(false, 0);
+        PageCacheWarmer warmer = new PageCacheWarmer();
+        try {
+            warmer.add(testIndex.index());
+            Assert.assertEquals(0, warmer.numberOfIndexes());
+        } finally {
+            warmer.close();
+        }
+    }
+}
@@ -1,7 +1,12 @@
 package nl.inl.blacklab.search;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.lucene.index.Term;
 import org.apache.lucene.search.TermQuery;
@@ -13,6 +18,7 @@ import org.junit.Test;
 
 import nl.inl.blacklab.forwardindex.Terms;
 import nl.inl.blacklab.resultproperty.HitProperty;
+import nl.inl.blacklab.resultproperty.HitPropertyDocumentId;
 import nl.inl.blacklab.resultproperty.HitPropertyHitText;
 import nl.inl.blacklab.resultproperty.HitPropertyLeftContext;
 import nl.inl.blacklab.resultproperty.HitPropertyMultiple;
@@ -22,7 +28,10 @@ import nl.inl.blacklab.search.indexmetadata.Annotation;
 import nl.inl.blacklab.search.indexmetadata.MatchSensitivity;
 import nl.inl.blacklab.search.lucene.BLSpanTermQuery;
 import nl.inl.blacklab.search.lucene.SpanQueryFiltered;
+import nl.inl.blacklab.search.results.ContextSize;
+import nl.inl.blacklab.search.results.HitGroup;
 import nl.inl.blacklab.search.results.Hits;
+import nl.inl.blacklab.search.results.SampleParameters;
 import nl.inl.blacklab.testutil.TestIndex;
 
 public class TestSearches {
@@ -429,11 +438,129 @@ public class TestSearches {
         Hits hits = testIndex.find("A:'aap'");
         Assert.assertEquals(5, hits.size());
         Assert.assertTrue(hits.hasCapturedGroups());
-        Span[] group = hits.capturedGroups().get(hits.get(0));
+        Span[] group = hits.capturedGroups().get(0);
         Assert.assertNotNull(group);
         Assert.assertEquals(1, group.length);
         Assert.assertEquals(2, group[0].start());
         Assert.assertEquals(3, group[0].end());
     }
 
+    @Test
+    public void testCompactHits() {
+        String[] queries = { "'the'", "A:[] [word='the' | word='aap']", "[]" };
+        HitProperty sortBy = new HitPropertyHitText(testIndex.index(), MatchSensitivity.SENSITIVE);
+        for (String query: queries) {
+            List<String> expected = testIndex.findConc(query);
+            List<String> expectedSorted = testIndex.findConc(query, sortBy);
+            Hits.setCompactSourceHits(true);
+            try {
+                Assert.assertEquals(expected, testIndex.findConc(query));
+                Assert.assertEquals(expectedSorted, testIndex.findConc(query, sortBy));
+            } finally {
+                Hits.setCompactSourceHits(false);
+            }
+        }
+    }
+
+    private static void assertCaptureGroupsAligned(Hits hits) {
+        Assert.assertTrue(hits.hasCapturedGroups());
+        for (int i = 0; i < hits.size(); i++) {
+            // A captures the first word of the hit
+            Span[] group = hits.capturedGroups().get(i);
+            Assert.assertEquals(hits.get(i).start(), group[0].start());
+            Assert.assertEquals(hits.get(i).start() + 1, group[0].end());
+        }
+    }
+
+    @Test
+    public void testCaptureGroupsDerived() {
+        Hits hits = testIndex.find("A:[] [word='the' | word='aap']");
+        Assert.assertTrue(hits.size() > 2);
+        assertCaptureGroupsAligned(hits);
+        Hits sorted = hits.sort(new HitPropertyHitText(testIndex.index(), MatchSensitivity.INSENSITIVE));
+        assertCaptureGroupsAligned(sorted);
+        assertCaptureGroupsAligned(sorted.window(1, 2));
+        HitProperty prop = new HitPropertyHitText(testIndex.index(), MatchSensitivity.INSENSITIVE);
+        HitGroup group = hits.group(prop, -1).get(0);
+        assertCaptureGroupsAligned(group.storedResults());
+        assertCaptureGroupsAligned(hits.filter(prop, group.identity()));
+        assertCaptureGroupsAligned(hits.sample(SampleParameters.fixedNumber(2, 1)));
+        assertCaptureGroupsAligned(hits.getHitsInDoc(hits.get(hits.size() - 1).doc()));
+    }
+
+    @Test
+    public void testWindowOnUnreadHits() {
+        // The window must fetch the hits it needs, even if no hits have been read yet
+        Hits expected = testIndex.find(" [] ");
+        int n = expected.size();
+        Hits window = testIndex.find(" [] ").window(2, 3);
+        Assert.assertEquals(3, window.size());
+        for (int i = 0; i < 3; i++)
+            Assert.assertEquals(expected.get(2 + i), window.get(i));
+        Assert.assertTrue(window.windowStats().hasNext());
+        Assert.assertEquals(1, testIndex.find(" [] ").window(n - 1, 5).size());
+        Assert.assertEquals(0, testIndex.find(" [] ").window(n, 5).size());
+    }
+
+    @Test
+    public void testFilterUnreadHits() {
+        // Filtering must fetch hits from a source that hasn't read any hits yet
+        // (filter on a property that doesn't need contexts, as those would read all hits first)
+        HitProperty prop = new HitPropertyDocumentId();
+        HitGroup group = testIndex.find(" 'the' ").group(prop, -1).get(0);
+        Hits expected = group.storedResults();
+        Hits filtered = testIndex.find(" 'the' ").filter(prop, group.identity());
+        Assert.assertEquals(expected.size(), filtered.size());
+        for (int i = 0; i < expected.size(); i++)
+            Assert.assertEquals(expected.get(i), filtered.get(i));
+    }
+
+    @Test
+    public void testCollocations() {
+        Hits hits = testIndex.find(" 'the' ");
+        TermFrequencyList collocations = hits.collocations(null, ContextSize.get(1), MatchSensitivity.INSENSITIVE);
+        Assert.assertEquals(7, collocations.size());
+        for (String word: Arrays.asList("quick", "over", "lazy", "may", "force", "is", "question"))
+            Assert.assertEquals(1, collocations.frequency(word));
+
+        collocations = hits.collocations(null, ContextSize.get(1), MatchSensitivity.SENSITIVE);
+        Assert.assertEquals(1, collocations.frequency("May"));
+        Assert.assertEquals(0, collocations.frequency("may"));
+    }
+
+    @Test
+    public void testCollocationsOverlappingContexts() {
+        Hits hits = testIndex.find(" 'mier' ");
+        TermFrequencyList collocations = hits.collocations(null, ContextSize.get(1), MatchSensitivity.INSENSITIVE);
+        Assert.assertEquals(3, collocations.size());
+        Assert.assertEquals("mier", collocations.get(0).term);
+        Assert.assertEquals(4, collocations.get(0).frequency);
+        Assert.assertEquals(2, collocations.frequency("aap"));
+        Assert.assertEquals(2, collocations.frequency("noot"));
+    }
+
+    @Test
+    public void testConcurrentHitsFetching() throws Exception {
+        // Several threads request (different numbers of) hits at the same time; while one thread
+        // fetches hits, the others wait for it and must wake up and see the correct hits
+        Hits expected = testIndex.find(" [] ");
+        for (int attempt = 0; attempt < 10; attempt++) {
+            Hits hits = testIndex.find(" [] ");
+            ExecutorService threads = Executors.newFixedThreadPool(4);
+            try {
+                List<Future<Object>> results = new ArrayList<>();
+                for (int i = 0; i < 8; i++) {
+                    final int index = i;
+                    results.add(threads.submit(() -> index % 2 == 0 ? hits.size() : hits.window(0, index + 1).get(index)));
+                }
+                for (int i = 0; i < results.size(); i++) {
+                    Object result = results.get(i).get(10, TimeUnit.SECONDS);
+                    Assert.assertEquals(i % 2 == 0 ? expected.size() : expected.get(i), result);
+                }
+            } finally {
+                threads.shutdownNow();
+            }
+        }
+    }
+
 }
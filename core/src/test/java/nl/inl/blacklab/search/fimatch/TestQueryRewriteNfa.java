@@ -103,8 +103,40 @@ public class TestQueryRewriteNfa {
 
     @Test
     public void testRewritePrefix() {
+        // (b.* matches 'be' and 'brown', which occur less often than 'aap', so they are the anchor)
         assertRewriteResult("\"a.*\" \"b.*\" \"c.*\"",
-                "FISEQ(TERM(contents%word@i:aap), NFA:#1:REGEX(b.*,#2:REGEX(c.*,DANGLING)), 1)");
+                "FISEQ(FISEQ(OR(TERM(contents%word@i:be), TERM(contents%word@i:brown)), NFA:#1:REGEX(a.*,DANGLING), -1), NFA:#1:REGEX(c.*,DANGLING), 1)");
+    }
+
+    @Test
+    public void testPlan() throws InvalidQuery {
+        BLSpanQuery q = getPatternFromCql("'n.*' 'mier'").toQuery(QueryInfo.create(index));
+        QueryExplanation.PlanNode plan = index.explain(q).plan();
+        Assert.assertEquals(QueryExplanation.PlanNode.FISEQ, plan.matchedUsing());
+        QueryExplanation.PlanNode anchor = plan.children().get(0);
+        Assert.assertEquals(QueryExplanation.PlanNode.REVERSE, anchor.matchedUsing());
+        Assert.assertEquals(4, anchor.estimatedNumberOfHits()); // 'noot' 3 times, 'not' once
+        Assert.assertEquals(QueryExplanation.PlanNode.FORWARD, plan.children().get(1).matchedUsing());
+    }
+
+    @Test
+    public void testPlanSegments() throws InvalidQuery {
+        BLSpanQuery q = getPatternFromCql("'n.*' 'mier'").toQuery(QueryInfo.create(index));
+        QueryExplanation.PlanNode plan = index.explain(q).plan();
+        Assert.assertEquals(index.reader().leaves().size(), plan.segmentsUsingNfa());
+        Assert.assertEquals(0, plan.segmentsUsingJoin());
+
+        // Explicitly requested FISEQ, but NFA matching isn't worth it
+        ClauseCombinerNfa.setNfaThreshold(1);
+        try {
+            q = getPatternFromCql("_FI2('noot', 'mier')").toQuery(QueryInfo.create(index));
+            plan = index.explain(q).plan();
+            Assert.assertEquals(QueryExplanation.PlanNode.FISEQ, plan.matchedUsing());
+            Assert.assertEquals(0, plan.segmentsUsingNfa());
+            Assert.assertEquals(index.reader().leaves().size(), plan.segmentsUsingJoin());
+        } finally {
+            ClauseCombinerNfa.setNfaThreshold(ClauseCombinerNfa.MAX_NFA_MATCHING);
+        }
     }
 
 }
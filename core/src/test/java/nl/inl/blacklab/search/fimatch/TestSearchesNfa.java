@@ -9,7 +9,9 @@ import org.junit.Assert;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import nl.inl.blacklab.search.lucene.SpanQueryFiSeq;
 import nl.inl.blacklab.search.lucene.optimize.ClauseCombinerNfa;
+import nl.inl.blacklab.search.results.Hits;
 import nl.inl.blacklab.testutil.TestIndex;
 
 public class TestSearchesNfa {
@@ -148,6 +150,37 @@ public class TestSearchesNfa {
         Assert.assertEquals(expected, testIndex.findConc("\".*E\" \"quick\""));
     }
 
+    @Test
+    public void testLazyTermMatching() {
+        // Don't check all terms beforehand, as we do for huge lexicons
+        int maxTermsToPrecompile = NfaStateMultiTermPattern.getMaxTermsToPrecompile();
+        NfaStateMultiTermPattern.setMaxTermsToPrecompile(0);
+        try {
+            expected = Arrays.asList("[The quick] brown", "May [the Force] be");
+            Assert.assertEquals(expected, testIndex.findConc(" 'the' '.*c.' "));
+            expected = Arrays.asList("[May the Force be with] you");
+            Assert.assertEquals(expected, testIndex.findConc(" 'May' '(?-i).*e'{2,3} 'with' "));
+        } finally {
+            NfaStateMultiTermPattern.setMaxTermsToPrecompile(maxTermsToPrecompile);
+        }
+    }
+
+    @Test
+    public void testWithoutDfa() {
+        // The NFA interpreter should find the same hits as the compiled DFA
+        List<String> queries = Arrays.asList(" 'May' 'the' ('force' 'be' 'with') 'you' ", " 'the' '.*c.' ",
+                " 'May' 'the' []{0,2} 'Force' ", " 'mier' []{1,2} 'noot' 'noot' ", " 'May' '.*e'+ 'with' ");
+        for (String query : queries) {
+            List<String> withDfa = testIndex.findConc(query);
+            Dfa.setEnabled(false);
+            try {
+                Assert.assertEquals(query, withDfa, testIndex.findConc(query));
+            } finally {
+                Dfa.setEnabled(true);
+            }
+        }
+    }
+
     @Test
     public void testNegation() {
         expected = Arrays.asList("mier [mier noot noot aap] aap");
@@ -161,4 +194,36 @@ public class TestSearchesNfa {
 //		Assert.assertEquals(expected, testIndex.findConc(" 'mier' 'aap' 'noot' "));
 //	}
 
+    @Test
+    public void testMatchingStats() {
+        // The FISEQ in the executed query records how it matched each segment
+        Hits hits = testIndex.find(" _FI2('May', 'the') ");
+        Assert.assertEquals(1, hits.size());
+        List<SpanQueryFiSeq> fiSeqs = SpanQueryFiSeq.findIn(hits.executedQuery());
+        Assert.assertEquals(1, fiSeqs.size());
+        SpanQueryFiSeq.MatchingStats stats = fiSeqs.get(0).getMatchingStats();
+        int segments = testIndex.index().reader().leaves().size();
+        Assert.assertEquals(segments, stats.segmentsMatchedUsingNfa());
+        Assert.assertEquals(0, stats.segmentsMatchedUsingJoin());
+        Assert.assertEquals(0, stats.anchorHitsEstimated()); // NFA matching is always used, so we don't estimate
+        Assert.assertEquals(1, stats.anchorHitsFound());
+
+        // Derived hits don't know the executed query
+        Assert.assertNull(hits.window(0, 1).executedQuery());
+    }
+
+    @Test
+    public void testJoinInsteadOfNfa() {
+        // If NFA matching doesn't seem worth it for a segment, the anchor and NFA query hits are joined instead
+        ClauseCombinerNfa.setNfaThreshold(1);
+        try {
+            expected = Arrays.asList("[May the] Force");
+            Assert.assertEquals(expected, testIndex.findConc(" _FI2('May', 'the') "));
+            expected = Arrays.asList("[May the Force] be");
+            Assert.assertEquals(expected, testIndex.findConc(" _FI1('May' 'the', 'force') "));
+        } finally {
+            ClauseCombinerNfa.setNfaThreshold(ClauseCombinerNfa.MAX_NFA_MATCHING);
+        }
+    }
+
 }
@@ -1,19 +1,42 @@
 package nl.inl.blacklab.search.grouping;
 
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 import org.junit.AfterClass;
 import org.junit.Assert;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import it.unimi.dsi.fastutil.ints.IntArrays;
+import nl.inl.blacklab.forwardindex.FiidLookup;
 import nl.inl.blacklab.forwardindex.Terms;
 import nl.inl.blacklab.mocks.MockTerms;
+import nl.inl.blacklab.resultproperty.DocPropertyStoredField;
 import nl.inl.blacklab.resultproperty.HitProperty;
 import nl.inl.blacklab.resultproperty.HitPropertyContextWords;
+import nl.inl.blacklab.resultproperty.HitPropertyDoc;
+import nl.inl.blacklab.resultproperty.HitPropertyDocumentStoredField;
+import nl.inl.blacklab.resultproperty.HitPropertyHitPosition;
 import nl.inl.blacklab.resultproperty.HitPropertyHitText;
+import nl.inl.blacklab.resultproperty.HitPropertyLeftContext;
+import nl.inl.blacklab.resultproperty.HitPropertyMultiple;
+import nl.inl.blacklab.resultproperty.HitPropertyRightContext;
+import nl.inl.blacklab.resultproperty.HitPropertyWordLeft;
+import nl.inl.blacklab.resultproperty.HitPropertyWordRight;
+import nl.inl.blacklab.resultproperty.HitSortKeys;
+import nl.inl.blacklab.resultproperty.PropertyValue;
 import nl.inl.blacklab.resultproperty.PropertyValueContextWords;
 import nl.inl.blacklab.search.BlackLabIndex;
 import nl.inl.blacklab.search.indexmetadata.Annotation;
 import nl.inl.blacklab.search.indexmetadata.MatchSensitivity;
+import nl.inl.blacklab.search.results.Contexts;
+import nl.inl.blacklab.search.results.DocResult;
+import nl.inl.blacklab.search.results.DocResults;
+import nl.inl.blacklab.search.results.Hit;
 import nl.inl.blacklab.search.results.HitGroup;
 import nl.inl.blacklab.search.results.HitGroups;
 import nl.inl.blacklab.search.results.Hits;
@@ -94,6 +117,105 @@ public class TestHitProperties {
         Assert.assertEquals(1, group.size());
     }
 
+    @Test
+    public void testHitPropDocumentStoredField() {
+        Hits hits = testIndex.find(" 'the' ");
+        HitProperty p = new HitPropertyDocumentStoredField(index, "fromInputFile");
+        HitGroups g = hits.group(p, Results.NO_LIMIT);
+        int total = 0;
+        for (HitGroup group: g) {
+            for (Hit hit: group.storedResults()) {
+                Assert.assertEquals(index.doc(hit.doc()).luceneDoc().get("fromInputFile"), group.identity().toString());
+            }
+            total += group.size();
+        }
+        Assert.assertEquals(hits.size(), total);
+    }
+
+    @Test
+    public void testDocPropStoredFieldSort() {
+        DocResults docs = testIndex.find(" 'the' ").perDocResults(Results.NO_LIMIT);
+        DocPropertyStoredField p = new DocPropertyStoredField(index, "fromInputFile");
+        List<String> expected = new ArrayList<>();
+        for (DocResult doc: docs)
+            expected.add(index.doc(doc.identity().id()).luceneDoc().get("fromInputFile"));
+        expected.sort(Comparator.reverseOrder());
+        List<String> actual = new ArrayList<>();
+        for (DocResult doc: docs.sort(p.reverse()))
+            actual.add(p.get(doc).toString());
+        Assert.assertEquals(expected, actual);
+    }
+
+    /**
+     * Check that sorting by (extracted) sort keys gives the same result as sorting
+     * using compare().
+     */
+    private static void assertSortKeysConsistent(Hits hits, HitProperty p) {
+        List<Annotation> requiredContext = p.needsContext();
+        HitProperty withContext = p.copyWith(hits, requiredContext == null ? null :
+                new Contexts(hits, requiredContext, p.needsContextSize(index), FiidLookup.getList(requiredContext, index.reader())));
+        int[] expected = new int[hits.size()];
+        for (int i = 0; i < expected.length; i++)
+            expected[i] = i;
+        IntArrays.mergeSort(expected, withContext);
+        int[] actual = HitSortKeys.sortedIndices(withContext, hits.size(), index.blackLab().searchExecutorService());
+        Assert.assertNotNull(actual);
+        Assert.assertArrayEquals(p.serialize(), expected, actual);
+    }
+
+    @Test
+    public void testSortKeys() {
+        Hits hits = testIndex.find(" [] ");
+        Annotation lemma = index.mainAnnotatedField().annotation("lemma");
+        HitProperty[] props = {
+            new HitPropertyHitText(index, MatchSensitivity.INSENSITIVE),
+            new HitPropertyLeftContext(index, lemma, MatchSensitivity.SENSITIVE),
+            new HitPropertyRightContext(index, wordAnnotation, MatchSensitivity.INSENSITIVE).reverse(),
+            new HitPropertyWordLeft(index, wordAnnotation, MatchSensitivity.SENSITIVE),
+            new HitPropertyWordRight(index, wordAnnotation, MatchSensitivity.INSENSITIVE),
+            new HitPropertyContextWords(index, wordAnnotation, MatchSensitivity.SENSITIVE, "L1;H1;R1-2"),
+            new HitPropertyDocumentStoredField(index, "fromInputFile").reverse(),
+            new HitPropertyMultiple(new HitPropertyDocumentStoredField(index, "fromInputFile").reverse(), new HitPropertyDoc(index), new HitPropertyHitPosition()),
+            new HitPropertyMultiple(new HitPropertyWordRight(index), new HitPropertyWordLeft(index)).reverse(),
+        };
+        for (HitProperty p: props) {
+            assertSortKeysConsistent(hits, p);
+        }
+    }
+
+    private static void assertGroupKeysConsistent(Hits hits, HitProperty p) {
+        List<Annotation> requiredContext = p.needsContext();
+        HitProperty withContext = p.copyWith(hits, requiredContext == null ? null :
+                new Contexts(hits, requiredContext, p.needsContextSize(index), FiidLookup.getList(requiredContext, index.reader())));
+        Map<PropertyValue, Integer> expected = new HashMap<>();
+        for (int i = 0; i < hits.size(); i++)
+            expected.merge(withContext.get(i), 1, Integer::sum);
+        HitGroups groups = hits.group(p, 2);
+        Assert.assertEquals(p.serialize(), expected.size(), groups.size());
+        for (HitGroup group: groups) {
+            Assert.assertEquals(p.serialize(), expected.get(group.identity()), (Integer) group.size());
+            Assert.assertEquals(p.serialize(), Math.min(2, group.size()), group.numberOfStoredResults());
+        }
+    }
+
+    @Test
+    public void testGroupKeys() {
+        Hits hits = testIndex.find(" [] ");
+        HitProperty[] props = {
+            new HitPropertyHitText(index, MatchSensitivity.INSENSITIVE),
+            new HitPropertyLeftContext(index, wordAnnotation, MatchSensitivity.SENSITIVE),
+            new HitPropertyWordLeft(index, wordAnnotation, MatchSensitivity.SENSITIVE),
+            new HitPropertyWordRight(index, wordAnnotation, MatchSensitivity.INSENSITIVE),
+            new HitPropertyContextWords(index, wordAnnotation, MatchSensitivity.SENSITIVE, "L1;H1;R1-2"),
+            new HitPropertyHitPosition(),
+            new HitPropertyDocumentStoredField(index, "fromInputFile"),
+            new HitPropertyMultiple(new HitPropertyDocumentStoredField(index, "fromInputFile"), new HitPropertyWordRight(index)),
+        };
+        for (HitProperty p: props) {
+            assertGroupKeysConsistent(hits, p);
+        }
+    }
+
     @Test
     public void testTermSerialization() {
         String[] words = { "aap", "~", "~~", "" };
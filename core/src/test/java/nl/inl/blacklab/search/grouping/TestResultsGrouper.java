@@ -15,6 +15,8 @@
  *******************************************************************************/
 package nl.inl.blacklab.search.grouping;
 
+import java.util.Random;
+
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.similarities.BM25Similarity;
 import org.junit.Assert;
@@ -26,6 +28,7 @@ import nl.inl.blacklab.mocks.MockBlackLabIndex;
 import nl.inl.blacklab.resultproperty.HitProperty;
 import nl.inl.blacklab.resultproperty.HitPropertyDocumentId;
 import nl.inl.blacklab.resultproperty.PropertyValueInt;
+import nl.inl.blacklab.search.results.Hit;
 import nl.inl.blacklab.search.results.HitGroup;
 import nl.inl.blacklab.search.results.HitGroups;
 import nl.inl.blacklab.search.results.Hits;
@@ -62,4 +65,43 @@ public class TestResultsGrouper {
         PropertyValueInt three = new PropertyValueInt(3);
         Assert.assertEquals(1, grouper.get(three).size());
     }
+
+    @Test
+    public void testGrouperManyHits() {
+        // Enough hits to group ranges of hits in parallel and merge the results
+        MockBlackLabIndex index = new MockBlackLabIndex();
+        IndexSearcher indexSearcher = Mockito.mock(IndexSearcher.class);
+        Mockito.when(indexSearcher.getSimilarity(ArgumentMatchers.anyBoolean())).thenReturn(new BM25Similarity());
+        index.setIndexSearcher(indexSearcher);
+
+        int n = 50_000, numberOfDocs = 10;
+        Random random = new Random(1);
+        int[] aDoc = new int[n], aStart = new int[n], aEnd = new int[n];
+        int[] expectedSize = new int[numberOfDocs];
+        for (int i = 0; i < n; i++) {
+            aDoc[i] = random.nextInt(numberOfDocs);
+            aStart[i] = i;
+            aEnd[i] = i + 1;
+            expectedSize[aDoc[i]]++;
+        }
+        Hits hits = Hits.fromArrays(QueryInfo.create(index), aDoc, aStart, aEnd);
+        HitGroups groups = hits.group(new HitPropertyDocumentId(), 100);
+
+        Assert.assertEquals(numberOfDocs, groups.size());
+        for (int doc = 0; doc < numberOfDocs; doc++) {
+            HitGroup group = groups.get(new PropertyValueInt(doc));
+            Assert.assertEquals(expectedSize[doc], group.size());
+            Assert.assertEquals(100, group.storedResults().size());
+
+            // Stored hits are the first hits in this doc, in their original order
+            int stored = 0;
+            for (int i = 0; stored < 100; i++) {
+                if (aDoc[i] == doc) {
+                    Hit hit = group.storedResults().get(stored);
+                    Assert.assertEquals(aStart[i], hit.start());
+                    stored++;
+                }
+            }
+        }
+    }
 }
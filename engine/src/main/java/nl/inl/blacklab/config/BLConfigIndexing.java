@@ -19,6 +19,8 @@ public class BLConfigIndexing {
 
     int maxNumberOfIndicesPerUser = 10;
 
+    String contentStoreCodec = null;
+
     public boolean isDownloadAllowed() {
         return downloadAllowed;
     }
@@ -80,4 +82,12 @@ public class BLConfigIndexing {
         this.maxNumberOfIndicesPerUser = maxNumberOfIndicesPerUser;
     }
 
+    public String getContentStoreCodec() {
+        return contentStoreCodec;
+    }
+
+    public void setContentStoreCodec(String contentStoreCodec) {
+        this.contentStoreCodec = contentStoreCodec;
+    }
+
 }
\ No newline at end of file
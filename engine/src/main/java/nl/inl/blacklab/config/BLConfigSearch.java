@@ -16,6 +16,12 @@ public class BLConfigSearch {
     
     long fiMatchFactor = ClauseCombinerNfa.DEFAULT_NFA_THRESHOLD;
 
+    int contentStoreBlockCacheSizeMegs = 64;
+
+    BLConfigWarmUp warmUp = new BLConfigWarmUp();
+
+    boolean compactHits = false;
+
     public BLConfigCollator getCollator() {
         return collator;
     }
@@ -56,6 +62,30 @@ public class BLConfigSearch {
         this.fiMatchFactor = fiMatchFactor;
     }
 
+    public int getContentStoreBlockCacheSizeMegs() {
+        return contentStoreBlockCacheSizeMegs;
+    }
+
+    public void setContentStoreBlockCacheSizeMegs(int contentStoreBlockCacheSizeMegs) {
+        this.contentStoreBlockCacheSizeMegs = contentStoreBlockCacheSizeMegs;
+    }
+
+    public BLConfigWarmUp getWarmUp() {
+        return warmUp;
+    }
+
+    public void setWarmUp(BLConfigWarmUp warmUp) {
+        this.warmUp = warmUp;
+    }
+
+    public boolean isCompactHits() {
+        return compactHits;
+    }
+
+    public void setCompactHits(boolean compactHits) {
+        this.compactHits = compactHits;
+    }
+
     /**
      * Apply the search configuration settings to an opened index.
      *
@@ -0,0 +1,58 @@
+package nl.inl.blacklab.config;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Settings for keeping index files in the operating system's page cache.
+ *
+ * See {@link nl.inl.blacklab.search.PageCacheWarmer}.
+ */
+public class BLConfigWarmUp {
+    boolean enabled = false;
+
+    /**
+     * What to warm, in order of priority:
+     * "fi:NAME" for the forward index of an annotation,
+     * "fi:*" for all remaining forward indexes,
+     * "cs" for the content stores,
+     * "lucene" for the Lucene index files.
+     */
+    List<String> priority = Arrays.asList("fi:word", "fi:lemma", "fi:pos");
+
+    int maxSizeMegs = 0;
+
+    int rewarmIntervalSec = 300;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public List<String> getPriority() {
+        return priority;
+    }
+
+    public void setPriority(List<String> priority) {
+        this.priority = priority;
+    }
+
+    public int getMaxSizeMegs() {
+        return maxSizeMegs;
+    }
+
+    public void setMaxSizeMegs(int maxSizeMegs) {
+        this.maxSizeMegs = maxSizeMegs;
+    }
+
+    public int getRewarmIntervalSec() {
+        return rewarmIntervalSec;
+    }
+
+    public void setRewarmIntervalSec(int rewarmIntervalSec) {
+        this.rewarmIntervalSec = rewarmIntervalSec;
+    }
+}
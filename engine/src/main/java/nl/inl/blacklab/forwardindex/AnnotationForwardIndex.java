@@ -6,6 +6,7 @@ import nl.inl.util.VersionFile;
 import org.apache.lucene.document.Document;
 
 import java.io.File;
+import java.nio.IntBuffer;
 import java.text.Collator;
 import java.util.List;
 import java.util.Set;
@@ -20,6 +21,7 @@ public abstract class AnnotationForwardIndex {
      * Supported versions:
      * 4. Large terms file support
      * 5. New collators
+     * 6. Memory-mappable terms file
      *
      * Older versions, no longer supported:
      * 1. Initial version.
@@ -30,7 +32,7 @@ public abstract class AnnotationForwardIndex {
     /**
      * Current forward index format version
      */
-    private static final String CURRENT_VERSION = "5";
+    private static final String CURRENT_VERSION = "6";
 
     /** The number of cached fiids we check to see if this field is set anywhere. */
     static final int NUMBER_OF_CACHE_ENTRIES_TO_CHECK = 1000;
@@ -102,7 +104,9 @@ public abstract class AnnotationForwardIndex {
         if (!indexMode || !create) {
             // We're opening an existing forward index. Check version.
             if (!VersionFile.isTypeVersion(dir, "fi", CURRENT_VERSION)) {
-                if (VersionFile.isTypeVersion(dir, "fi", "4")) {
+                if (VersionFile.isTypeVersion(dir, "fi", "5")) {
+                    version = "5";
+                } else if (VersionFile.isTypeVersion(dir, "fi", "4")) {
                     version = "4";
                 } else {
                     throw new IllegalArgumentException("Not a forward index or unsupported version: "
@@ -124,10 +128,13 @@ public abstract class AnnotationForwardIndex {
         case "5":
             // Large terms file, new collators
             break;
+        case "6":
+            // Memory-mappable terms file, new collators
+            break;
         }
         Collators collators = new Collators(collator, collVersion);
         if (indexMode)
-            fi = new AnnotationForwardIndexWriter(annotation, dir, collators, create);
+            fi = new AnnotationForwardIndexWriter(annotation, dir, collators, create, version.equals("6"));
         else {
             if (create)
                 throw new UnsupportedOperationException("create == true, but not in index mode!");
@@ -250,6 +257,54 @@ public abstract class AnnotationForwardIndex {
      */
     public abstract List<int[]> retrievePartsInt(int fiid, int[] start, int[] end);
 
+    /**
+     * Retrieve a part of the specified content into a caller-supplied array.
+     *
+     * Unlike {@link #retrievePartsInt(int, int[], int[])}, implementations
+     * don't need to allocate anything, so this can be used in inner loops.
+     * The default implementation isn't allocation-free; subclasses should override.
+     *
+     * As with retrievePartsInt, -1 may be used for start and end, and end will be
+     * clamped to the document length. Use {@link #docLength(int)} to make sure
+     * dest is large enough.
+     *
+     * @param fiid forward index document id
+     * @param start the starting point of the part to retrieve (in words) (-1 for
+     *            start of document)
+     * @param end the end point (i.e. first token beyond) of the part to retrieve
+     *            (in words) (-1 for end of document)
+     * @param dest array to copy the token ids to
+     * @param destOffset where in dest to start copying to
+     * @return number of token ids copied, or -1 if the document was deleted
+     */
+    public int retrievePart(int fiid, int start, int end, int[] dest, int destOffset) {
+        List<int[]> parts = retrievePartsInt(fiid, new int[] { start }, new int[] { end });
+        if (parts == null)
+            return -1;
+        int[] part = parts.get(0);
+        System.arraycopy(part, 0, dest, destOffset, part.length);
+        return part.length;
+    }
+
+    /**
+     * Retrieve a part of the specified content as a read-only view.
+     *
+     * Implementations backed by a memory-mapped file return a view directly into
+     * the mapping, so nothing is copied. Index 0 of the view corresponds to start.
+     * The default implementation wraps a copy; subclasses should override.
+     *
+     * @param fiid forward index document id
+     * @param start the starting point of the part to retrieve (in words) (-1 for
+     *            start of document)
+     * @param end the end point (i.e. first token beyond) of the part to retrieve
+     *            (in words) (-1 for end of document)
+     * @return view of the token ids, or null if the document was deleted
+     */
+    public IntBuffer retrievePartView(int fiid, int start, int end) {
+        List<int[]> parts = retrievePartsInt(fiid, new int[] { start }, new int[] { end });
+        return parts == null ? null : IntBuffer.wrap(parts.get(0)).asReadOnlyBuffer();
+    }
+
     /**
      * Get the Terms object in order to translate ids to token strings
      * 
@@ -40,10 +40,16 @@ class AnnotationForwardIndexReader extends AnnotationForwardIndex {
     protected static final Logger logger = LogManager.getLogger(AnnotationForwardIndexReader.class);
 
     /** Mapping into the tokens file */
-    private List<ByteBuffer> tokensFileChunks = null;
+    private ByteBuffer[] tokensFileChunks = null;
 
-    /** Offsets of the mappings into the token file */
-    private List<Long> tokensFileChunkOffsetBytes = null;
+    /** Int views on the mappings into the tokens file (only used with absolute reads) */
+    private IntBuffer[] tokensFileChunksInt = null;
+
+    /** Offsets of the mappings into the token file (in ints) */
+    private long[] tokensFileChunkOffsets = null;
+
+    /** Index of the tokens file chunk to read each document from (-1 if none) */
+    private int[] chunkOfDoc = null;
 
     /** Collators to use for terms file */
     private Collators collators;
@@ -103,21 +109,14 @@ class AnnotationForwardIndexReader extends AnnotationForwardIndex {
             // document start, documents of up to 2G tokens can be processed. We could get around
             // this limitation by reading from multiple chunks, but this would make the code
             // more complex.
-            tokensFileChunks = new ArrayList<>();
-            tokensFileChunkOffsetBytes = new ArrayList<>();
+            List<ByteBuffer> chunks = new ArrayList<>();
+            List<Long> chunkOffsetsBytes = new ArrayList<>();
             long mappedBytes = 0;
             long tokenFileEndBytes = tokenFileEndPosition * SIZEOF_INT;
             while (mappedBytes < tokenFileEndBytes) {
                 // Find the last TOC entry start point that's also in the previous mapping
                 // (or right the first byte after the previous mapping).
-
                 // Look for the largest entryOffset that's no larger than mappedBytes.
-                int mapNextChunkFrom = -1;
-                for (int i = 0; i < offset.length; i++) {
-                    if (offset[i] <= mappedBytes && (mapNextChunkFrom < 0 || offset[i] > offset[mapNextChunkFrom]))
-                        mapNextChunkFrom = i;
-                }
-
                 // Uses binary search.
                 int min = 0, max = offset.length;
                 while (max - min > 1) {
@@ -138,10 +137,18 @@ class AnnotationForwardIndexReader extends AnnotationForwardIndex {
 
                 ByteBuffer mapping = tokensFileChannel.map(FileChannel.MapMode.READ_ONLY, startOfNextMappingBytes,
                         sizeBytes);
-                tokensFileChunks.add(mapping);
-                tokensFileChunkOffsetBytes.add(startOfNextMappingBytes);
+                chunks.add(mapping);
+                chunkOffsetsBytes.add(startOfNextMappingBytes);
                 mappedBytes = startOfNextMappingBytes + sizeBytes;
             }
+            tokensFileChunks = chunks.toArray(new ByteBuffer[0]);
+            tokensFileChunksInt = new IntBuffer[tokensFileChunks.length];
+            tokensFileChunkOffsets = new long[tokensFileChunks.length];
+            for (int i = 0; i < tokensFileChunks.length; i++) {
+                tokensFileChunksInt[i] = tokensFileChunks[i].asIntBuffer();
+                tokensFileChunkOffsets[i] = chunkOffsetsBytes.get(i) / SIZEOF_INT;
+            }
+            determineChunkOfDocs();
         } catch (FileNotFoundException e1) {
             throw BlackLabRuntimeException.wrap(e1);
         } catch (IOException e1) {
@@ -153,6 +160,30 @@ class AnnotationForwardIndexReader extends AnnotationForwardIndex {
         initialized = true;
     }
 
+    /**
+     * Determine which tokens file chunk to read each document from.
+     *
+     * This way, we don't need to search the chunks every time we retrieve
+     * a snippet.
+     */
+    private void determineChunkOfDocs() {
+        chunkOfDoc = new int[offset.length];
+        for (int i = 0; i < offset.length; i++) {
+            // Find the last chunk starting at or before this document
+            int chunk = Arrays.binarySearch(tokensFileChunkOffsets, offset[i]);
+            if (chunk < 0)
+                chunk = -chunk - 2;
+            // Check that the entire document fits in this chunk
+            // (may not be true for documents larger than the chunk size)
+            if (chunk >= 0) {
+                long endInChunk = offset[i] + length[i] - tokensFileChunkOffsets[chunk];
+                if (endInChunk > tokensFileChunksInt[chunk].capacity())
+                    chunk = -1;
+            }
+            chunkOfDoc[i] = chunk;
+        }
+    }
+
     @Override
     public void close() {
         // NOP
@@ -216,149 +247,133 @@ class AnnotationForwardIndexReader extends AnnotationForwardIndex {
         List<int[]> result = new ArrayList<>(n);
 
         for (int i = 0; i < n; i++) {
-            int start = starts[i]; // don't modify the start/end array contents!
-            int end = ends[i];
-            
-            if (start == -1)
-                start = 0;
-            if (end == -1)
-                end = length[fiid];
-            if (start < 0 || end < 0) {
-                throw new IllegalArgumentException("Illegal values, start = " + start + ", end = "
-                        + end);
-            }
-            if (end > length[fiid]) // Can happen while making KWICs because we don't know the
-                                   // doc length until here
-                end = length[fiid];
-            if (start > length[fiid] || end > length[fiid]) {
-                throw new IllegalArgumentException("Value(s) out of range, start = " + start
-                        + ", end = " + end + ", content length = " + length[fiid]);
-            }
-            if (end <= start) {
-                throw new IllegalArgumentException(
-                        "Tried to read empty or negative length snippet (from " + start
-                                + " to " + end + ")");
-            }
-
-            // Get an IntBuffer to read the desired content
-            IntBuffer ib = null;
-
-            // The tokens file has has been mapped to memory.
-            // Get an int buffer into the file.
-
-            // Figure out which chunk to access.
-            ByteBuffer whichChunk = null;
-            long chunkOffsetBytes = -1;
-            long entryOffsetBytes = offset[fiid] * SIZEOF_INT;
-            for (int j = 0; j < tokensFileChunkOffsetBytes.size(); j++) {
-                long offsetBytes = tokensFileChunkOffsetBytes.get(j);
-                ByteBuffer buffer = tokensFileChunks.get(j);
-                if (offsetBytes <= entryOffsetBytes + start * SIZEOF_INT
-                        && offsetBytes + buffer.capacity() >= entryOffsetBytes + end
-                                * SIZEOF_INT) {
-                    // This one!
-                    whichChunk = buffer;
-                    chunkOffsetBytes = offsetBytes;
-                    break;
-                }
-            }
-
-            if (whichChunk == null) {
-                throw new BlackLabRuntimeException("Tokens file chunk containing document not found. fiid = " + fiid);
-            }
-            ((Buffer)whichChunk).position((int) (offset[fiid] * SIZEOF_INT - chunkOffsetBytes));
-            ib = whichChunk.asIntBuffer();
-
-            int snippetLength = end - start;
-            int[] snippet = new int[snippetLength];
-
-            // The file is mem-mapped (search mode).
-            // Position us at the correct place in the file.
-            ib.position(start);
-            ib.get(snippet);
+            int start = starts[i] == -1 ? 0 : starts[i]; // don't modify the start/end array contents!
+            int end = snippetEnd(fiid, start, ends[i]);
+            int[] snippet = new int[end - start];
+            copyTokens(fiid, start, end, snippet, 0);
             result.add(snippet);
         }
 
         return result;
     }
-    
-    public List<int[]> retrievePartsIntAllocationless(int fiid, int[] starts, int[] ends, List<int[]> ret) {
+
+    @Override
+    public int retrievePart(int fiid, int start, int end, int[] dest, int destOffset) {
         if (!initialized)
             initialize();
 
         if (deleted[fiid] != 0)
-            return null;
+            return -1;
 
-        int n = starts.length;
-        if (n != ends.length)
-            throw new IllegalArgumentException("start and end must be of equal length");
-        List<int[]> result = new ArrayList<>(n);
+        if (start == -1)
+            start = 0;
+        end = snippetEnd(fiid, start, end);
+        copyTokens(fiid, start, end, dest, destOffset);
+        return end - start;
+    }
 
-        for (int i = 0; i < n; i++) {
-            int start = starts[i]; // don't modify the start/end array contents!
-            int end = ends[i];
-            
-            if (start == -1)
-                start = 0;
-            if (end == -1)
-                end = length[fiid];
-            if (start < 0 || end < 0) {
-                throw new IllegalArgumentException("Illegal values, start = " + start + ", end = "
-                        + end);
-            }
-            if (end > length[fiid]) // Can happen while making KWICs because we don't know the
-                                   // doc length until here
-                end = length[fiid];
-            if (start > length[fiid] || end > length[fiid]) {
-                throw new IllegalArgumentException("Value(s) out of range, start = " + start
-                        + ", end = " + end + ", content length = " + length[fiid]);
-            }
-            if (end <= start) {
-                throw new IllegalArgumentException(
-                        "Tried to read empty or negative length snippet (from " + start
-                                + " to " + end + ")");
-            }
+    @Override
+    public IntBuffer retrievePartView(int fiid, int start, int end) {
+        if (!initialized)
+            initialize();
 
-            // Get an IntBuffer to read the desired content
-            IntBuffer ib = null;
-
-            // The tokens file has has been mapped to memory.
-            // Get an int buffer into the file.
-
-            // Figure out which chunk to access.
-            ByteBuffer whichChunk = null;
-            long chunkOffsetBytes = -1;
-            long entryOffsetBytes = offset[fiid] * SIZEOF_INT;
-            for (int j = 0; j < tokensFileChunkOffsetBytes.size(); j++) {
-                long offsetBytes = tokensFileChunkOffsetBytes.get(j);
-                ByteBuffer buffer = tokensFileChunks.get(j);
-                if (offsetBytes <= entryOffsetBytes + start * SIZEOF_INT
-                        && offsetBytes + buffer.capacity() >= entryOffsetBytes + end
-                                * SIZEOF_INT) {
-                    // This one!
-                    whichChunk = buffer;
-                    chunkOffsetBytes = offsetBytes;
-                    break;
-                }
-            }
+        if (deleted[fiid] != 0)
+            return null;
 
-            if (whichChunk == null) {
-                throw new BlackLabRuntimeException("Tokens file chunk containing document not found. fiid = " + fiid);
-            }
-            ((Buffer)whichChunk).position((int) (offset[fiid] * SIZEOF_INT - chunkOffsetBytes));
-            ib = whichChunk.asIntBuffer();
+        if (start == -1)
+            start = 0;
+        end = snippetEnd(fiid, start, end);
+        int docStart = docStartInChunk(fiid);
+        IntBuffer view = tokensFileChunksInt[docChunk(fiid)].duplicate();
+        ((Buffer)view).limit(docStart + end);
+        ((Buffer)view).position(docStart + start);
+        return view.slice();
+    }
 
-            int snippetLength = end - start;
-            int[] snippet = new int[snippetLength];
+    @Override
+    public int getToken(int fiid, int pos) {
+        if (!initialized)
+            initialize();
 
-            // The file is mem-mapped (search mode).
-            // Position us at the correct place in the file.
-            ib.position(start);
-            ib.get(snippet);
-            result.add(snippet);
+        if (pos < 0 || pos >= length[fiid]) {
+            throw new IllegalArgumentException("Value out of range, pos = " + pos + ", content length = "
+                    + length[fiid]);
         }
+        return tokensFileChunksInt[docChunk(fiid)].get(docStartInChunk(fiid) + pos);
+    }
 
-        return result;
+    /**
+     * Check the requested snippet and determine its (clamped) end.
+     *
+     * @param fiid forward index id of the document
+     * @param start start of the snippet (already converted from -1 if necessary)
+     * @param end requested end of the snippet, or -1 for end of document
+     * @return actual end of the snippet
+     */
+    private int snippetEnd(int fiid, int start, int end) {
+        if (end == -1)
+            end = length[fiid];
+        if (start < 0 || end < 0) {
+            throw new IllegalArgumentException("Illegal values, start = " + start + ", end = "
+                    + end);
+        }
+        if (end > length[fiid]) // Can happen while making KWICs because we don't know the
+                               // doc length until here
+            end = length[fiid];
+        if (start > length[fiid]) {
+            throw new IllegalArgumentException("Value(s) out of range, start = " + start
+                    + ", end = " + end + ", content length = " + length[fiid]);
+        }
+        if (end <= start) {
+            throw new IllegalArgumentException(
+                    "Tried to read empty or negative length snippet (from " + start
+                            + " to " + end + ")");
+        }
+        return end;
+    }
+
+    /**
+     * Copy tokens from the mapped tokens file into an array.
+     *
+     * Only uses absolute reads on the shared buffer, so this is thread-safe and
+     * doesn't allocate anything.
+     *
+     * @param fiid forward index id of the document
+     * @param start first token to copy
+     * @param end token after the last token to copy
+     * @param dest where to copy the tokens
+     * @param destOffset offset in dest to start copying to
+     */
+    private void copyTokens(int fiid, int start, int end, int[] dest, int destOffset) {
+        IntBuffer ib = tokensFileChunksInt[docChunk(fiid)];
+        int from = docStartInChunk(fiid) + start;
+        int n = end - start;
+        for (int i = 0; i < n; i++) {
+            dest[destOffset + i] = ib.get(from + i);
+        }
+    }
+
+    /**
+     * Which tokens file chunk contains this document?
+     *
+     * @param fiid forward index id of the document
+     * @return chunk index
+     */
+    private int docChunk(int fiid) {
+        int chunk = chunkOfDoc[fiid];
+        if (chunk < 0)
+            throw new BlackLabRuntimeException("Tokens file chunk containing document not found. fiid = " + fiid);
+        return chunk;
+    }
+
+    /**
+     * Where does this document start in its chunk?
+     *
+     * @param fiid forward index id of the document
+     * @return start of the document in its chunk (in ints)
+     */
+    private int docStartInChunk(int fiid) {
+        return (int) (offset[fiid] - tokensFileChunkOffsets[chunkOfDoc[fiid]]);
     }
 
     @Override
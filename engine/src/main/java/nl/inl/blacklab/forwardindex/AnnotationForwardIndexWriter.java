@@ -67,7 +67,7 @@ class AnnotationForwardIndexWriter extends AnnotationForwardIndex {
     /** Deleted TOC entries. Always sorted by size. */
     List<TocEntry> deletedTocEntries = new ArrayList<>();
 
-    AnnotationForwardIndexWriter(Annotation annotation, File dir, Collators collators, boolean create) {
+    AnnotationForwardIndexWriter(Annotation annotation, File dir, Collators collators, boolean create, boolean mappedTermsFile) {
         super(annotation, dir, collators);
 
         if (!dir.exists()) {
@@ -88,10 +88,10 @@ class AnnotationForwardIndexWriter extends AnnotationForwardIndex {
         try {
             if (tocFile.exists()) {
                 readToc();
-                terms = Terms.openForWriting(collators, termsFile);
+                terms = Terms.openForWriting(collators, termsFile, mappedTermsFile);
                 tocModified = false;
             } else {
-                terms = Terms.openForWriting(collators, null);
+                terms = Terms.openForWriting(collators, null, mappedTermsFile);
                 if (!tokensFile.createNewFile())
                     throw new BlackLabRuntimeException("Could not create file: " + tokensFile);
                 tocModified = true;
@@ -283,7 +283,7 @@ class AnnotationForwardIndexWriter extends AnnotationForwardIndex {
     }
 
     @Override
-    public synchronized int addDocument(List<String> content, List<Integer> posIncr) {
+    public int addDocument(List<String> content, List<Integer> posIncr) {
         // Calculate the total number of tokens we need to store, based on the number
         // of positions (we store 1 token per position, regardless of whether we have
         // none, one or multiple values for that position)
@@ -299,6 +299,45 @@ class AnnotationForwardIndexWriter extends AnnotationForwardIndex {
             }
         }
 
+        // Look up the token ids
+        // (we do this before synchronizing, so indexing threads can do this concurrently)
+        int[] tokenIds = new int[numberOfTokens];
+        int tokenIdsIndex = 0;
+        Iterator<String> contentIt = content.iterator();
+        Iterator<Integer> posIncrIt = posIncr == null ? null : posIncr.iterator();
+        int emptyStringTokenId = posIncrIt != null ? terms.indexOf("") : -1;
+        while (contentIt.hasNext()) {
+            String token = contentIt.next();
+            int pi = posIncrIt == null ? 1 : posIncrIt.next();
+            if (pi == 0)
+                continue; // we only store the first token at any position
+            if (pi > 1) {
+                // Skipped a few tokens; add empty tokens for these positions
+                for (int i = 0; i < pi - 1; i++) {
+                    tokenIds[tokenIdsIndex] = emptyStringTokenId;
+                    tokenIdsIndex++;
+                }
+            }
+
+            tokenIds[tokenIdsIndex] = terms.indexOf(token);
+            tokenIdsIndex++;
+        }
+        if (tokenIdsIndex != numberOfTokens)
+            throw new BlackLabRuntimeException(
+                    "tokenIdsIndex != numberOfTokens (" + tokenIdsIndex + " != " + numberOfTokens + ")");
+
+        return addDocument(tokenIds);
+    }
+
+    /**
+     * Store a document's token ids in the forward index.
+     *
+     * @param tokenIds the document's token ids
+     * @return the new document's forward index id (fiid)
+     */
+    private synchronized int addDocument(int[] tokenIds) {
+        int numberOfTokens = tokenIds.length;
+
         // Decide where we're going to store this document,
         // and update ToC
         TocEntry gap = findBestFittingGap(numberOfTokens);
@@ -369,31 +408,6 @@ class AnnotationForwardIndexWriter extends AnnotationForwardIndex {
                 tokenFileEndPosition = end;
 
             // Write the token ids
-            // (first fill the buffer, then write the buffer in 1 call)
-            int[] tokenIds = new int[numberOfTokens];
-            int tokenIdsIndex = 0;
-            Iterator<String> contentIt = content.iterator();
-            Iterator<Integer> posIncrIt = posIncr == null ? null : posIncr.iterator();
-            int emptyStringTokenId = posIncrIt != null ? terms.indexOf("") : -1;
-            while (contentIt.hasNext()) {
-                String token = contentIt.next();
-                int pi = posIncrIt == null ? 1 : posIncrIt.next();
-                if (pi == 0)
-                    continue; // we only store the first token at any position
-                if (pi > 1) {
-                    // Skipped a few tokens; add empty tokens for these positions
-                    for (int i = 0; i < pi - 1; i++) {
-                        tokenIds[tokenIdsIndex] = emptyStringTokenId;
-                        tokenIdsIndex++;
-                    }
-                }
-
-                tokenIds[tokenIdsIndex] = terms.indexOf(token);
-                tokenIdsIndex++;
-            }
-            if (tokenIdsIndex != numberOfTokens)
-                throw new BlackLabRuntimeException(
-                        "tokenIdsIndex != numberOfTokens (" + tokenIdsIndex + " != " + numberOfTokens + ")");
             writeBuffer.put(tokenIds);
 
             return newDocumentFiid;
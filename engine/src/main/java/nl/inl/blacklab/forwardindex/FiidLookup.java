@@ -2,9 +2,11 @@ package nl.inl.blacklab.forwardindex;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.TreeMap;
 
 import org.apache.lucene.index.IndexReader;
@@ -18,9 +20,62 @@ import nl.inl.blacklab.search.indexmetadata.Annotation;
 
 /**
  * Class for looking up forward index id, using DocValues or stored fields.
+ *
+ * If the fiids are available as DocValues, they are read once into a dense
+ * table covering the whole reader (4 bytes per document), so a lookup is a
+ * single array access. Instances are immutable after construction and shared
+ * between all users of the same reader and annotation; get one using
+ * {@link #get(IndexReader, Annotation)}.
  */
 public class FiidLookup {
 
+    /** Value in our table for documents that have no DocValues */
+    private static final int NO_VALUE = -1;
+
+    /** Lookups per reader, keyed by fiid field name. Entries are removed when the reader is closed. */
+    private static final Map<IndexReader, Map<String, FiidLookup>> lookupsPerReader = new IdentityHashMap<>();
+
+    /**
+     * Get the fiid lookup for an annotation.
+     *
+     * The lookup is created the first time it is requested for this reader, and
+     * reused after that.
+     *
+     * @param reader index reader
+     * @param annotation annotation to look up forward index ids for
+     * @return the fiid lookup
+     */
+    public static FiidLookup get(IndexReader reader, Annotation annotation) {
+        Map<String, FiidLookup> lookups;
+        synchronized (lookupsPerReader) {
+            lookups = lookupsPerReader.get(reader);
+            if (lookups == null) {
+                lookups = new HashMap<>();
+                lookupsPerReader.put(reader, lookups);
+                reader.addReaderClosedListener(r -> {
+                    synchronized (lookupsPerReader) {
+                        lookupsPerReader.remove(r);
+                    }
+                });
+            }
+        }
+        synchronized (lookups) {
+            return lookups.computeIfAbsent(annotation.forwardIndexIdField(), __ -> new FiidLookup(reader, annotation));
+        }
+    }
+
+    /**
+     * Do we have lookups for this reader? (used for testing)
+     *
+     * @param reader index reader
+     * @return true if we do
+     */
+    static boolean hasLookups(IndexReader reader) {
+        synchronized (lookupsPerReader) {
+            return lookupsPerReader.containsKey(reader);
+        }
+    }
+
     /**
      * Index reader, for getting documents (for translating from Lucene doc id to
      * fiid)
@@ -33,14 +88,16 @@ public class FiidLookup {
      */
     private String fiidFieldName;
 
-    /** The DocValues per segment (keyed by docBase) */
-    private Map<Integer, NumericDocValues> cachedFiids;
+    /** The fiid per Lucene document id ({@link #NO_VALUE} if not in DocValues), or null if we have no DocValues */
+    private int[] fiids;
 
-    public FiidLookup(IndexReader reader, Annotation annotation) {
+    private FiidLookup(IndexReader reader, Annotation annotation) {
         this.fiidFieldName = annotation.forwardIndexIdField();
         this.reader = reader;
-        cachedFiids = new TreeMap<>();
         try {
+            int[] table = new int[reader.maxDoc()];
+            Arrays.fill(table, NO_VALUE);
+            boolean haveDocValues = false;
             for (LeafReaderContext rc : reader.leaves()) {
                 LeafReader r = rc.reader();
                 NumericDocValues numericDocValues = r.getNumericDocValues(fiidFieldName);
@@ -53,18 +110,20 @@ public class FiidLookup {
                     numericDocValues = uninv.getNumericDocValues(fiidFieldName);
                 }
                 if (numericDocValues != null) {
-                    cachedFiids.put(rc.docBase, numericDocValues);
+                    haveDocValues = true;
+                    int maxDoc = r.maxDoc();
+                    for (int i = 0; i < maxDoc; i++) {
+                        table[rc.docBase + i] = (int) numericDocValues.get(i);
+                    }
                 }
             }
-            if (cachedFiids.isEmpty()) {
-                // We don't actually have DocValues.
-                cachedFiids = null;
-            } else {
+            if (haveDocValues) {
+                fiids = table;
                 // See if there are actual values stored
                 // [this check was introduced when we used the old FieldCache, no longer necessary?]
                 int numToCheck = Math.min(AnnotationForwardIndex.NUMBER_OF_CACHE_ENTRIES_TO_CHECK, reader.maxDoc());
                 if (!hasFiids(numToCheck))
-                    cachedFiids = null;
+                    fiids = null;
             }
         } catch (IOException e) {
             BlackLabRuntimeException.wrap(e);
@@ -72,23 +131,10 @@ public class FiidLookup {
     }
 
     public int get(int docId) {
-        if (cachedFiids != null) {
-            // Find the fiid in the correct segment
-            Entry<Integer, NumericDocValues> prev = null;
-            for (Entry<Integer, NumericDocValues> e : cachedFiids.entrySet()) {
-                Integer docBase = e.getKey();
-                if (docBase > docId) {
-                    // Previous segment (the highest docBase lower than docId) is the right one
-                    Integer prevDocBase = prev.getKey();
-                    NumericDocValues prevDocValues = prev.getValue();
-                    return (int)prevDocValues.get(docId - prevDocBase);
-                }
-                prev = e;
-            }
-            // Last segment is the right one
-            Integer prevDocBase = prev.getKey();
-            NumericDocValues prevDocValues = prev.getValue();
-            return (int)prevDocValues.get(docId - prevDocBase);
+        if (fiids != null) {
+            int fiid = fiids[docId];
+            if (fiid != NO_VALUE)
+                return fiid;
         }
 
         // Not cached; find fiid by reading stored value from Document now
@@ -118,7 +164,7 @@ public class FiidLookup {
             return null; // HitPoperty.needsContext() can return null
         List<FiidLookup> fiidLookups = new ArrayList<>();
         for (Annotation annotation: annotations) {
-            fiidLookups.add(annotation == null ? null : new FiidLookup(reader, annotation));
+            fiidLookups.add(annotation == null ? null : get(reader, annotation));
         }
         return fiidLookups;
     }
@@ -1,7 +1,9 @@
 package nl.inl.blacklab.forwardindex;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -9,7 +11,6 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
-import java.util.concurrent.ExecutorService;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -38,30 +39,33 @@ public class ForwardIndexImplSeparate implements ForwardIndex {
 
     private Map<Annotation, AnnotationForwardIndex> fis = new HashMap<>();
 
-    private ExecutorService executorService;
-
     public ForwardIndexImplSeparate(BlackLabIndex index, AnnotatedField field) {
         this.index = index;
         this.field = field;
-        executorService = index.blackLab().initializationExecutorService();
+
+        // Initialize the forward indexes in the background (in parallel).
+        // Common annotations go first, so they're likely to be ready when the first queries arrive.
+        List<Annotation> annotations = new ArrayList<>();
         for (Annotation annotation: field.annotations()) {
-            if (!annotation.hasForwardIndex())
-                continue;
+            if (annotation.hasForwardIndex())
+                annotations.add(annotation);
+        }
+        annotations.sort(Comparator.comparing(a -> !buildTermIndexesOnInit(a)));
+        for (Annotation annotation: annotations) {
             AnnotationForwardIndex afi = get(annotation);
-            if (AUTO_INIT_FORWARD_INDEXES) {
-                executorService.execute(new Runnable() {
-                    @Override
-                    public void run() {
-                        //logger.debug("START initialize AFI: " + annotation.name());
-                        afi.initialize();
-                        //logger.debug("END   initialize AFI: " + annotation.name());
-                    }
-                });
-            }
+            if (AUTO_INIT_FORWARD_INDEXES)
+                index.initialization().submit("forward index " + annotation, afi::initialize);
         }
     }
 
-    private static File determineAfiDir(File indexDir, Annotation annotation) {
+    /**
+     * Determine the directory of an annotation's forward index.
+     *
+     * @param indexDir index directory
+     * @param annotation annotation
+     * @return forward index directory
+     */
+    public static File determineAfiDir(File indexDir, Annotation annotation) {
         return new File(indexDir, "fi_" + annotation.luceneFieldPrefix());
     }
 
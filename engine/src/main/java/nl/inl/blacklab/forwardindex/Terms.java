@@ -201,12 +201,33 @@ public abstract class Terms {
         return idToSortPosition(termId1, sensitivity) - idToSortPosition(termId2, sensitivity);
     }
 
+    /**
+     * Open a terms file for reading.
+     *
+     * Files in the memory-mappable format are simply mapped; files in the older
+     * block-based format are read into memory.
+     *
+     * @param collators collators to use
+     * @param termsFile terms file
+     * @param buildTermIndexesOnInit whether to build term indexes right away or lazily
+     * @return the terms
+     */
     public static Terms openForReading(Collators collators, File termsFile, boolean buildTermIndexesOnInit) {
+        if (TermsReaderMapped.isMappedFormat(termsFile))
+            return new TermsReaderMapped(collators, termsFile);
         return new TermsReader(collators, termsFile, buildTermIndexesOnInit);
     }
 
-    public static Terms openForWriting(Collators collators, File termsFile) {
-        return new TermsWriter(collators, termsFile);
+    /**
+     * Open terms for writing.
+     *
+     * @param collators collators to use
+     * @param termsFile existing terms file to read, or null to start empty
+     * @param mappedFormat write the memory-mappable format? (otherwise block-based)
+     * @return the terms
+     */
+    public static Terms openForWriting(Collators collators, File termsFile, boolean mappedFormat) {
+        return new TermsWriter(collators, termsFile, mappedFormat);
     }
 
     public abstract boolean termsEqual(int[] termId, MatchSensitivity sensitivity);
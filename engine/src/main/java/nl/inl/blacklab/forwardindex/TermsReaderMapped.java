@@ -0,0 +1,270 @@
+package nl.inl.blacklab.forwardindex;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.text.Collator;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.eclipse.collections.api.set.primitive.MutableIntSet;
+
+import net.jcip.annotations.ThreadSafe;
+import nl.inl.blacklab.exceptions.BlackLabRuntimeException;
+import nl.inl.blacklab.search.indexmetadata.MatchSensitivity;
+
+/**
+ * Reads a terms file in the memory-mappable format.
+ *
+ * Unlike {@link TermsReader}, this doesn't read the terms into memory and build
+ * lookup structures when opening. All of those are written to the terms file at
+ * index time, so opening just maps the file, and the terms don't take up any
+ * heap space. This makes a big difference for annotations with many millions of
+ * terms.
+ *
+ * The file consists of a header followed by a number of sections (see
+ * file-formats.md). Each section is mapped separately, in chunks (see
+ * {@link MappedSection}), so sections may be larger than 2 GB.
+ */
+@ThreadSafe
+class TermsReaderMapped extends Terms {
+
+    protected static final Logger logger = LogManager.getLogger(TermsReaderMapped.class);
+
+    /**
+     * Identifies a terms file in this format. The block-based format starts with the
+     * number of terms, which is never negative, so the formats can't be confused.
+     */
+    static final int MAGIC = 0xB1AC7E53;
+
+    /** Current version of this format */
+    static final int FORMAT_VERSION = 1;
+
+    /** Size of the header in bytes: magic, format version, number of terms, chunk size */
+    static final int HEADER_SIZE = 4 * BYTES_PER_INT;
+
+    /** Number of bytes per long */
+    static final int BYTES_PER_LONG = Long.SIZE / Byte.SIZE;
+
+    /** Offset of each term's string in the char data section (plus one entry for the end of the last term) */
+    private final MappedSection termId2CharDataOffset;
+
+    /** Sensitive sort position for each term id */
+    private final MappedSection termId2SensitivePosition;
+
+    /** Insensitive sort position for each term id (terms that are insensitively equal have the same position) */
+    private final MappedSection termId2InsensitivePosition;
+
+    /** Term ids in sensitive sort order */
+    private final MappedSection sensitivePosition2TermId;
+
+    /** Term ids in insensitive sort order (terms that are insensitively equal are adjacent) */
+    private final MappedSection insensitivePosition2TermId;
+
+    /** The term strings (UTF-8) */
+    private final MappedSection termCharData;
+
+    /**
+     * Is this file in the memory-mappable format?
+     *
+     * @param termsFile the terms file
+     * @return true if it's in the memory-mappable format, false if it's in the
+     *         block-based format
+     */
+    static boolean isMappedFormat(File termsFile) {
+        if (termsFile.length() < BYTES_PER_INT)
+            return false;
+        try (DataInputStream is = new DataInputStream(new FileInputStream(termsFile))) {
+            return is.readInt() == MAGIC;
+        } catch (IOException e) {
+            throw BlackLabRuntimeException.wrap(e);
+        }
+    }
+
+    TermsReaderMapped(Collators collators, File termsFile) {
+        this.collator = collators.get(MatchSensitivity.SENSITIVE);
+        this.collatorInsensitive = collators.get(MatchSensitivity.INSENSITIVE);
+
+        try (RandomAccessFile raf = new RandomAccessFile(termsFile, "r");
+                FileChannel fc = raf.getChannel()) {
+            ByteBuffer header = fc.map(MapMode.READ_ONLY, 0, HEADER_SIZE);
+            if (header.getInt() != MAGIC)
+                throw new BlackLabRuntimeException("Not a memory-mappable terms file: " + termsFile);
+            int version = header.getInt();
+            if (version != FORMAT_VERSION)
+                throw new BlackLabRuntimeException("Unsupported terms file version " + version + ": " + termsFile);
+            numberOfTerms = header.getInt();
+            int chunkSizeShift = header.getInt();
+
+            long n = numberOfTerms;
+            long offset = HEADER_SIZE;
+            termId2CharDataOffset = new MappedSection(fc, offset, (n + 1) * BYTES_PER_LONG, chunkSizeShift);
+            offset += (n + 1) * BYTES_PER_LONG;
+            termId2SensitivePosition = new MappedSection(fc, offset, n * BYTES_PER_INT, chunkSizeShift);
+            offset += n * BYTES_PER_INT;
+            termId2InsensitivePosition = new MappedSection(fc, offset, n * BYTES_PER_INT, chunkSizeShift);
+            offset += n * BYTES_PER_INT;
+            sensitivePosition2TermId = new MappedSection(fc, offset, n * BYTES_PER_INT, chunkSizeShift);
+            offset += n * BYTES_PER_INT;
+            insensitivePosition2TermId = new MappedSection(fc, offset, n * BYTES_PER_INT, chunkSizeShift);
+            offset += n * BYTES_PER_INT;
+            termCharData = new MappedSection(fc, offset, termId2CharDataOffset.getLong(n), chunkSizeShift);
+        } catch (IOException e) {
+            throw BlackLabRuntimeException.wrap(e);
+        }
+        logger.debug("Mapped terms file " + termsFile + " (" + numberOfTerms + " terms)");
+    }
+
+    @Override
+    public void clear() {
+        throw new UnsupportedOperationException("Not in write mode");
+    }
+
+    @Override
+    public void write(File termsFile) {
+        throw new UnsupportedOperationException("Not in write mode");
+    }
+
+    @Override
+    public int indexOf(String term) {
+        int sortPosition = findSortPosition(term, MatchSensitivity.SENSITIVE);
+        return sortPosition < 0 ? -1 : sensitivePosition2TermId.getInt(sortPosition);
+    }
+
+    @Override
+    public void indexOf(MutableIntSet results, String term, MatchSensitivity sensitivity) {
+        int sortPosition = findSortPosition(term, sensitivity);
+        if (sortPosition < 0) {
+            results.add(-1);
+            return;
+        }
+        if (sensitivity.isCaseSensitive()) {
+            // Sensitive sort positions are unique
+            results.add(sensitivePosition2TermId.getInt(sortPosition));
+            return;
+        }
+        // Insensitively equal terms are adjacent, and their sort position is that of the first one
+        int groupStart = termId2InsensitivePosition.getInt(insensitivePosition2TermId.getInt(sortPosition));
+        for (int i = groupStart; i < numberOfTerms; i++) {
+            int termId = insensitivePosition2TermId.getInt(i);
+            if (termId2InsensitivePosition.getInt(termId) != groupStart)
+                break;
+            results.add(termId);
+        }
+    }
+
+    /**
+     * Find (one of) the sort position(s) of a term using binary search.
+     *
+     * @param term term to find
+     * @param sensitivity whether to search sensitively or insensitively
+     * @return a sort position of a matching term, or -1 if not found
+     */
+    private int findSortPosition(String term, MatchSensitivity sensitivity) {
+        final Collator coll = sensitivity.isCaseSensitive() ? this.collator : this.collatorInsensitive;
+        final MappedSection sortPosition2TermId = sensitivity.isCaseSensitive() ? sensitivePosition2TermId : insensitivePosition2TermId;
+        int l = 0;
+        int r = numberOfTerms - 1;
+        while (l <= r) {
+            final int sortPositionToCheck = l + (r - l) / 2;
+            final int result = coll.compare(term, get(sortPosition2TermId.getInt(sortPositionToCheck)));
+            if (result == 0)
+                return sortPositionToCheck;
+            if (result < 0)
+                r = sortPositionToCheck - 1;
+            else
+                l = sortPositionToCheck + 1;
+        }
+        return -1;
+    }
+
+    @Override
+    public int numberOfTerms() {
+        return numberOfTerms;
+    }
+
+    @Override
+    public int idToSortPosition(int id, MatchSensitivity sensitivity) {
+        if (id < 0 || id >= numberOfTerms)
+            return -1;
+        return sensitivity.isCaseSensitive() ? termId2SensitivePosition.getInt(id) : termId2InsensitivePosition.getInt(id);
+    }
+
+    @Override
+    public String get(int id) {
+        if (id >= numberOfTerms || id < 0)
+            return "";
+        long start = termId2CharDataOffset.getLong(id);
+        int length = (int) (termId2CharDataOffset.getLong(id + 1L) - start);
+        byte[] bytes = new byte[length];
+        termCharData.get(start, bytes);
+        return new String(bytes, DEFAULT_CHARSET);
+    }
+
+    @Override
+    public boolean termsEqual(int[] termId, MatchSensitivity sensitivity) {
+        if (termId.length < 2)
+            return true;
+        int first = idToSortPosition(termId[0], sensitivity);
+        for (int i = 1; i < termId.length; i++) {
+            if (idToSortPosition(termId[i], sensitivity) != first)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * A section of the terms file, memory-mapped in chunks.
+     *
+     * A single mapping can't be larger than 2 GB, so we map larger sections in
+     * several chunks. The chunk size is a power of two (so we can find the chunk by
+     * shifting) and a multiple of 8, so ints and longs never straddle two chunks.
+     * Only absolute reads are used, so this is thread-safe.
+     */
+    static class MappedSection {
+
+        private final ByteBuffer[] chunks;
+
+        private final int chunkSizeShift;
+
+        private final long chunkOffsetMask;
+
+        MappedSection(FileChannel fc, long start, long length, int chunkSizeShift) throws IOException {
+            this.chunkSizeShift = chunkSizeShift;
+            long chunkSize = 1L << chunkSizeShift;
+            chunkOffsetMask = chunkSize - 1;
+            chunks = new ByteBuffer[(int) ((length + chunkSize - 1) >> chunkSizeShift)];
+            for (int i = 0; i < chunks.length; i++) {
+                long chunkStart = (long) i << chunkSizeShift;
+                chunks[i] = fc.map(MapMode.READ_ONLY, start + chunkStart, Math.min(chunkSize, length - chunkStart));
+            }
+        }
+
+        int getInt(long index) {
+            long pos = index * BYTES_PER_INT;
+            return chunks[(int) (pos >> chunkSizeShift)].getInt((int) (pos & chunkOffsetMask));
+        }
+
+        long getLong(long index) {
+            long pos = index * BYTES_PER_LONG;
+            return chunks[(int) (pos >> chunkSizeShift)].getLong((int) (pos & chunkOffsetMask));
+        }
+
+        /**
+         * Read bytes, which may straddle two chunks.
+         *
+         * @param pos position to start reading
+         * @param dest where to read to (fills the whole array)
+         */
+        void get(long pos, byte[] dest) {
+            for (int i = 0; i < dest.length; i++, pos++) {
+                dest[i] = chunks[(int) (pos >> chunkSizeShift)].get((int) (pos & chunkOffsetMask));
+            }
+        }
+    }
+}
@@ -1,14 +1,17 @@
 
 package nl.inl.blacklab.forwardindex;
 
-import net.jcip.annotations.NotThreadSafe;
+import net.jcip.annotations.ThreadSafe;
 import nl.inl.blacklab.exceptions.BlackLabRuntimeException;
 import nl.inl.blacklab.search.indexmetadata.MatchSensitivity;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.eclipse.collections.api.set.primitive.MutableIntSet;
 
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.nio.Buffer;
@@ -19,8 +22,9 @@ import java.nio.channels.FileChannel.MapMode;
 import java.text.CollationKey;
 import java.util.Arrays;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.Map;
-import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Keeps a first-come-first-serve list of unique terms. Each term gets a unique
@@ -30,9 +34,14 @@ import java.util.TreeMap;
  * This version of the class stores the terms in a more efficient way so it
  * saves and loads faster, and includes the case-insensitive sorting order.
  *
- * This implementation is not thread-safe.
+ * Depending on the forward index version, the terms file is written in the
+ * block-based format (read by {@link TermsReader}) or the memory-mappable format
+ * (read by {@link TermsReaderMapped}).
+ *
+ * This implementation is thread-safe, and looking up existing terms doesn't
+ * block, so multiple indexing threads can use it concurrently.
  */
-@NotThreadSafe
+@ThreadSafe
 class TermsWriter extends Terms {
 
     protected static final Logger logger = LogManager.getLogger(TermsWriter.class);
@@ -47,48 +56,83 @@ class TermsWriter extends Terms {
     private static final int NUM_SORT_BUFFERS = 4;
 
     /**
-     * Mapping from term to its unique index number. We use a SortedMap because we
-     * wish to store the sorted index numbers later (to speed up sorting).
+     * Mapping from term to its unique index number. Terms that the (sensitive)
+     * collator considers equal get the same index number. We sort this when writing
+     * the terms file, to store the sort positions (to speed up sorting).
+     *
+     * Only accessed while synchronized on this object.
      */
     Map<CollationKey, Integer> termIndex;
 
+    /**
+     * Mapping from exact term string to its index number.
+     *
+     * This lets us quickly look up terms we've seen before without locking or
+     * computing a collation key. Only terms we haven't seen before take the slow,
+     * synchronized path through termIndex.
+     */
+    private final Map<String, Integer> termIndexByString = new ConcurrentHashMap<>();
+
     /**
      * The maximum block size to use while writing the terms file. Usually around
      * the limit of 2GB, but for testing, we can set this to a lower value.
      */
     private int maxBlockSize = DEFAULT_MAX_BLOCK_SIZE;
 
-    TermsWriter(Collators collators, File termsFile) {
+    /** Write the terms file in the memory-mappable format? (otherwise block-based) */
+    private final boolean mappedFormat;
+
+    TermsWriter(Collators collators, File termsFile, boolean mappedFormat) {
+        this.mappedFormat = mappedFormat;
         this.collator = collators.get(MatchSensitivity.SENSITIVE);
         this.collatorInsensitive = collators.get(MatchSensitivity.INSENSITIVE);
 
-        // Index mode: create a SortedMap based on the specified Collator.
-        // (used later to get the terms in sort order)
-        this.termIndex = new TreeMap<>();
+        // Index mode: create a map based on the specified Collator.
+        // (sorted later to get the terms in sort order)
+        this.termIndex = new HashMap<>();
 
         if (termsFile != null && termsFile.exists())
-            read(termsFile);
+            read(collators, termsFile);
 
         // We need to find id for term quickly while indexing
         // Build the case-sensitive term index.
         for (int i = 0; i < numberOfTerms; i++) {
             termIndex.put(collator.getCollationKey(terms[i]), i);
+            termIndexByString.put(terms[i], i);
         }
         terms = null; // useless in index mode because we can't add to it, and we don't need it anyway
     }
 
     @Override
     public int indexOf(String term) {
-        synchronized (this) {
-            // Yes, use the available term index.
-            CollationKey key = this.collator.getCollationKey(term);
-            Integer index = termIndex.get(key);
-            if (index != null)
-                return index;
+        // Have we seen this exact string before? (doesn't block)
+        Integer index = termIndexByString.get(term);
+        if (index != null)
+            return index;
+        return addTerm(term);
+    }
+
+    /**
+     * Look up or add a term we haven't seen this exact string for before.
+     *
+     * @param term the term
+     * @return the term's index number
+     */
+    private synchronized int addTerm(String term) {
+        // Another thread may have just added it
+        Integer index = termIndexByString.get(term);
+        if (index != null)
+            return index;
+
+        // The collator may consider it equal to a term we already have
+        CollationKey key = this.collator.getCollationKey(term);
+        index = termIndex.get(key);
+        if (index == null) {
             index = termIndex.size();
             termIndex.put(key, index);
-            return index;
         }
+        termIndexByString.put(term, index);
+        return index;
     }
 
     @Override
@@ -104,10 +148,22 @@ class TermsWriter extends Terms {
     @Override
     public synchronized void clear() {
         termIndex.clear();
+        termIndexByString.clear();
     }
 
-    private synchronized void read(File termsFile) {
+    private synchronized void read(Collators collators, File termsFile) {
         termIndex.clear();
+        termIndexByString.clear();
+        if (TermsReaderMapped.isMappedFormat(termsFile)) {
+            // Get the terms from the memory-mapped file
+            Terms reader = new TermsReaderMapped(collators, termsFile);
+            numberOfTerms = reader.numberOfTerms();
+            terms = new String[numberOfTerms];
+            for (int i = 0; i < numberOfTerms; i++) {
+                terms[i] = reader.get(i);
+            }
+            return;
+        }
         try {
             try (RandomAccessFile raf = new RandomAccessFile(termsFile, "r")) {
                 try (FileChannel fc = raf.getChannel()) {
@@ -122,16 +178,111 @@ class TermsWriter extends Terms {
 
     @Override
     public synchronized void write(File termsFile) {
+        if (mappedFormat)
+            writeMapped(termsFile);
+        else
+            writeBlockBased(termsFile);
+    }
+
+    /**
+     * Write the terms file in the memory-mappable format.
+     *
+     * All the lookup structures are precomputed, so {@link TermsReaderMapped} can
+     * simply map them. See file-formats.md for the layout.
+     *
+     * @param termsFile where to write the terms file
+     */
+    private void writeMapped(File termsFile) {
+        int n = termIndex.size();
+
+        // Sort the terms sensitively. The sorted ids are the sensitive sort order.
+        @SuppressWarnings("unchecked")
+        Map.Entry<CollationKey, Integer>[] sortedTerms = termIndex.entrySet().toArray(new Map.Entry[0]);
+        Arrays.parallelSort(sortedTerms, Map.Entry.comparingByKey());
+        terms = new String[n];
+        int[] sensitivePosition2TermId = new int[n];
+        int[] termId2SensitivePosition = new int[n];
+        for (int i = 0; i < n; i++) {
+            int id = sortedTerms[i].getValue();
+            terms[id] = sortedTerms[i].getKey().getSourceString();
+            sensitivePosition2TermId[i] = id;
+            termId2SensitivePosition[id] = i;
+        }
+
+        // Sort insensitively (faster because already partially sorted). Terms that are
+        // insensitively equal get the sort position of the first of them.
+        Integer[] insensitive = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            insensitive[i] = sensitivePosition2TermId[i];
+        }
+        Arrays.sort(insensitive, (a, b) -> collatorInsensitive.compare(terms[a], terms[b]));
+        int[] insensitivePosition2TermId = new int[n];
+        int[] termId2InsensitivePosition = new int[n];
+        int sortPos = 0;
+        for (int i = 0; i < n; i++) {
+            if (i > 0 && collatorInsensitive.compare(terms[insensitive[i - 1]], terms[insensitive[i]]) != 0)
+                sortPos = i;
+            insensitivePosition2TermId[i] = insensitive[i];
+            termId2InsensitivePosition[insensitive[i]] = sortPos;
+        }
+
+        // Use the largest power of two that fits in a block as the chunk size (see TermsReaderMapped)
+        int chunkSizeShift = Math.max(3, 31 - Integer.numberOfLeadingZeros(maxBlockSize));
+        if (chunkSizeShift > 30)
+            chunkSizeShift = 30;
+
+        try (DataOutputStream os = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(termsFile)))) {
+            os.writeInt(TermsReaderMapped.MAGIC);
+            os.writeInt(TermsReaderMapped.FORMAT_VERSION);
+            os.writeInt(n);
+            os.writeInt(chunkSizeShift);
+            byte[][] termBytes = new byte[n][];
+            long offset = 0;
+            for (int i = 0; i < n; i++) {
+                os.writeLong(offset);
+                termBytes[i] = terms[i].getBytes(DEFAULT_CHARSET);
+                offset += termBytes[i].length;
+            }
+            os.writeLong(offset);
+            writeInts(os, termId2SensitivePosition);
+            writeInts(os, termId2InsensitivePosition);
+            writeInts(os, sensitivePosition2TermId);
+            writeInts(os, insensitivePosition2TermId);
+            for (byte[] b: termBytes) {
+                os.write(b);
+            }
+        } catch (IOException e) {
+            throw BlackLabRuntimeException.wrap(e);
+        }
+    }
+
+    private static void writeInts(DataOutputStream os, int[] values) throws IOException {
+        for (int value: values) {
+            os.writeInt(value);
+        }
+    }
+
+    /**
+     * Write the terms file in the block-based format.
+     *
+     * @param termsFile where to write the terms file
+     */
+    private void writeBlockBased(File termsFile) {
         try {
             // Open the terms file
             try (RandomAccessFile raf = new RandomAccessFile(termsFile, "rw")) {
                 try (FileChannel fc = raf.getChannel()) {
                     int n = termIndex.size();
 
+                    // Sort the terms, so we can store the sort positions below
+                    @SuppressWarnings("unchecked")
+                    Map.Entry<CollationKey, Integer>[] sortedTerms = termIndex.entrySet().toArray(new Map.Entry[0]);
+                    Arrays.parallelSort(sortedTerms, Map.Entry.comparingByKey());
+
                     // Fill the terms[] array
                     terms = new String[n];
                     long termStringsByteSize = 0;
-                    for (Map.Entry<CollationKey, Integer> entry : termIndex.entrySet()) {
+                    for (Map.Entry<CollationKey, Integer> entry : sortedTerms) {
                         String term = entry.getKey().getSourceString();
                         terms[entry.getValue()] = term;
                         termStringsByteSize += term.getBytes(DEFAULT_CHARSET).length;
@@ -231,13 +382,13 @@ class TermsWriter extends Terms {
                         fc.truncate(fileLength);
 
                     // Write the case-sensitive sort order
-                    // Because termIndex is a SortedMap, values are returned in key-sorted order.
-                    // In other words, the index numbers are in order of sorted terms, so the id
-                    // for 'aardvark' comes before the id for 'ape', etc.
+                    // Because sortedTerms is sorted by key, the index numbers are in order of
+                    // sorted terms, so the id for 'aardvark' comes before the id for 'ape', etc.
                     int i = 0;
                     int[] sortPositionPerId = new int[n];
                     Integer[] insensitive = new Integer[n];
-                    for (int id : termIndex.values()) {
+                    for (Map.Entry<CollationKey, Integer> entry : sortedTerms) {
+                        int id = entry.getValue();
                         sortPositionPerId[id] = i;
                         insensitive[i] = id; // fill this so we can re-sort later, faster b/c already partially sorted
                         i++;
@@ -24,7 +24,6 @@ import nl.inl.blacklab.search.results.DocResult;
 import nl.inl.util.LuceneUtil;
 import nl.inl.util.StringUtil;
 import org.apache.commons.lang3.StringUtils;
-import org.apache.commons.lang3.tuple.Pair;
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.index.*;
 import org.apache.lucene.queryparser.classic.ParseException;
@@ -36,14 +35,15 @@ import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
-import java.util.Map.Entry;
-import java.util.TreeMap;
 
 /**
  * For grouping DocResult objects by the value of a stored field in the Lucene
  * documents. The field name is given when instantiating this class, and might
  * be "author", "year", and such.
+ *
+ * If the field has DocValues, sorting and grouping use dense ordinals that are
+ * built once per index reader (see {@link DocValuesOrdinals}), so they compare
+ * ints instead of strings.
  */
 public class DocPropertyStoredField extends DocProperty {
     //private static final Logger logger = LogManager.getLogger(DocPropertyStoredField.class);
@@ -54,10 +54,18 @@ public class DocPropertyStoredField extends DocProperty {
     /** Display name for the field */
     private String friendlyName;
 
-    /** The DocValues per segment (keyed by docBase), or null if we don't have docValues. New indexes all have SortedSetDocValues, but some very old indexes may still contain regular SortedDocValues! */
-    private Map<Integer, Pair<SortedDocValues, SortedSetDocValues>> docValues = null;
+    /** The index segments (their docBases are used to find the right segment for a docId) */
+    private List<LeafReaderContext> leaves;
+
+    /** The DocValues per segment (indexed by leaf ord), or null if we don't have docValues. Entries can be null if a segment has no values. New indexes all have SortedSetDocValues, but some very old indexes may still contain regular SortedDocValues! */
+    private SortedSetDocValues[] sortedSetDocValues = null;
+    /** Per segment, if we have an old index that has SortedDocValues. */
+    private SortedDocValues[] sortedDocValues = null;
     /** Null unless the field is numeric. */
-    private Map<Integer, NumericDocValues> numericDocValues = null;
+    private NumericDocValues[] numericDocValues = null;
+
+    /** Dense ordinals for sorting and grouping (built on first use; shared per reader), or null if not built yet */
+    private volatile DocValuesOrdinals ordinals = null;
 
     /** Our index */
     private BlackLabIndex index;
@@ -67,6 +75,11 @@ public class DocPropertyStoredField extends DocProperty {
         this.index = prop.index;
         this.fieldName = prop.fieldName;
         this.friendlyName = prop.friendlyName;
+        this.leaves = prop.leaves;
+        this.sortedSetDocValues = prop.sortedSetDocValues;
+        this.sortedDocValues = prop.sortedDocValues;
+        this.numericDocValues = prop.numericDocValues;
+        this.ordinals = prop.ordinals;
     }
 
     public DocPropertyStoredField(BlackLabIndex index, String fieldName) {
@@ -80,38 +93,40 @@ public class DocPropertyStoredField extends DocProperty {
 
         try {
             if (index.reader() != null) { // skip for MockIndex (testing)
+                leaves = index.reader().leaves();
                 if (index.metadataField(fieldName).type().equals(FieldType.NUMERIC)) {
-                    numericDocValues = new TreeMap<>();
-                    for (LeafReaderContext rc : index.reader().leaves()) {
-                        LeafReader r = rc.reader();
+                    numericDocValues = new NumericDocValues[leaves.size()];
+                    for (LeafReaderContext rc : leaves) {
                         // NOTE: can be null! This is valid and indicates the documents in this segment does not contain any values for this field.
-                        NumericDocValues values = r.getNumericDocValues(fieldName);
-                        numericDocValues.put(rc.docBase, values);
+                        numericDocValues[rc.ord] = rc.reader().getNumericDocValues(fieldName);
                     }
-                } else { // regular string doc values.
-                    docValues = new TreeMap<>();
-                    for (LeafReaderContext rc : index.reader().leaves()) {
+                } else if (!leaves.isEmpty()) { // regular string doc values.
+                    sortedSetDocValues = new SortedSetDocValues[leaves.size()];
+                    sortedDocValues = new SortedDocValues[leaves.size()];
+                    for (LeafReaderContext rc : leaves) {
                         LeafReader r = rc.reader();
                         // NOTE: can be null! This is valid and indicates the documents in this segment does not contain any values for this field.
-                        SortedSetDocValues sortedSetDocValues = r.getSortedSetDocValues(fieldName);
-                        SortedDocValues sortedDocValues = r.getSortedDocValues(fieldName);
-                        if (sortedSetDocValues != null || sortedDocValues != null) {
-                            docValues.put(rc.docBase, Pair.of(sortedDocValues, sortedSetDocValues));
-                        } else {
-                            docValues.put(rc.docBase, null);
-                        }
-                    }
-                    if (docValues.isEmpty()) {
-                        // We don't actually have DocValues.
-                        docValues = null;
+                        sortedSetDocValues[rc.ord] = r.getSortedSetDocValues(fieldName);
+                        sortedDocValues[rc.ord] = r.getSortedDocValues(fieldName);
                     }
                 }
             }
         } catch (IOException e) {
-            BlackLabRuntimeException.wrap(e);
+            throw BlackLabRuntimeException.wrap(e);
         }
     }
 
+    /**
+     * Get the dense ordinals for this field, if we have DocValues.
+     *
+     * @return the ordinals, or null if we don't have DocValues
+     */
+    private DocValuesOrdinals ordinals() {
+        if (ordinals == null && (sortedSetDocValues != null || numericDocValues != null))
+            ordinals = DocValuesOrdinals.get(index.reader(), fieldName, numericDocValues != null);
+        return ordinals;
+    }
+
     /**
      * Get the raw values straight from lucene.
      * The returned array is in whichever order the values were originally added to the document.
@@ -120,55 +135,35 @@ public class DocPropertyStoredField extends DocProperty {
      * @return
      */
     public String[] get(int docId) {
-        if  (docValues != null) {
-            // Find the fiid in the correct segment
-            Entry<Integer, Pair<SortedDocValues, SortedSetDocValues>> target = null;
-            for (Entry<Integer, Pair<SortedDocValues, SortedSetDocValues>> e : this.docValues.entrySet()) {
-                if (e.getKey() > docId) { break; }
-                target = e;
-            }
-
+        if (sortedSetDocValues != null) {
+            // Find the correct segment
+            int leaf = ReaderUtil.subIndex(docId, leaves);
+            int segmentDocId = docId - leaves.get(leaf).docBase;
             final List<String> ret = new ArrayList<>();
-            if (target != null) {
-                final Integer targetDocBase = target.getKey();
-                final Pair<SortedDocValues, SortedSetDocValues> targetDocValues = target.getValue();
-                if (targetDocValues != null) {
-                    SortedDocValues a = targetDocValues.getLeft();
-                    SortedSetDocValues b = targetDocValues.getRight();
-                    if (a != null) { // old index, only one value
-                        BytesRef val = a.get(docId - targetDocBase);
-                        ret.add(new String(val.bytes, val.offset, val.length, StandardCharsets.UTF_8));
-                    } else { // newer index, (possibly) multiple values.
-                        b.setDocument(docId - targetDocBase);
-                        for (long ord = b.nextOrd(); ord != SortedSetDocValues.NO_MORE_ORDS; ord = b.nextOrd()) {
-                            BytesRef val = b.lookupOrd(ord);
-                            ret.add(new String(val.bytes, val.offset, val.length, StandardCharsets.UTF_8));
-                        }
-                    }
+            SortedDocValues a = sortedDocValues[leaf];
+            SortedSetDocValues b = sortedSetDocValues[leaf];
+            if (a != null) { // old index, only one value
+                BytesRef val = a.get(segmentDocId);
+                ret.add(new String(val.bytes, val.offset, val.length, StandardCharsets.UTF_8));
+            } else if (b != null) { // newer index, (possibly) multiple values.
+                b.setDocument(segmentDocId);
+                for (long ord = b.nextOrd(); ord != SortedSetDocValues.NO_MORE_ORDS; ord = b.nextOrd()) {
+                    BytesRef val = b.lookupOrd(ord);
+                    ret.add(new String(val.bytes, val.offset, val.length, StandardCharsets.UTF_8));
                 }
-                // If no docvalues for this segment - no values were indexed for this field (in this segment).
-                // So returning the empty array is good.
             }
+            // If no docvalues for this segment - no values were indexed for this field (in this segment).
+            // So returning the empty array is good.
             return ret.toArray(new String[ret.size()]);
         } else if (numericDocValues != null) {
-            // Find the fiid in the correct segment
-            Entry<Integer, NumericDocValues> target = null;
-            for (Entry<Integer, NumericDocValues> e : this.numericDocValues.entrySet()) {
-                if (e.getKey() > docId) { break; }
-                target = e;
-            }
-
-            final List<String> ret = new ArrayList<>();
-            if (target != null) {
-                final Integer targetDocBase = target.getKey();
-                final NumericDocValues targetDocValues = target.getValue();
-                if (targetDocValues != null) {
-                    ret.add(Long.toString(targetDocValues.get(docId - targetDocBase)));
-                }
-                // If no docvalues for this segment - no values were indexed for this field (in this segment).
-                // So returning the empty array is good.
-            }
-            return ret.toArray(new String[ret.size()]);
+            // Find the correct segment
+            int leaf = ReaderUtil.subIndex(docId, leaves);
+            NumericDocValues values = numericDocValues[leaf];
+            // If no docvalues for this segment - no values were indexed for this field (in this segment).
+            // So returning the empty array is good.
+            if (values == null)
+                return new String[0];
+            return new String[] { Long.toString(values.get(docId - leaves.get(leaf).docBase)) };
         }
 
         // We don't have DocValues; just get the property from the document.
@@ -197,10 +192,57 @@ public class DocPropertyStoredField extends DocProperty {
     /** Get the values as PropertyValue. */
     @Override
     public PropertyValueString get(DocResult result) {
+        DocValuesOrdinals o = ordinals();
+        if (o != null)
+            return o.get(result.identity().id());
         String[] values = get(result.identity());
         return fromArray(values);
     }
 
+    /**
+     * Get the values as PropertyValue.
+     *
+     * @param docId document id
+     * @return the values, joined
+     */
+    public PropertyValueString getPropertyValue(int docId) {
+        DocValuesOrdinals o = ordinals();
+        return o != null ? o.get(docId) : fromArray(get(docId));
+    }
+
+    /**
+     * Can we determine sort ranks for this field (i.e. does it have DocValues)?
+     *
+     * @return true if {@link #sortRank(int)} is supported
+     */
+    boolean hasSortRanks() {
+        return ordinals() != null;
+    }
+
+    /**
+     * Get the sort rank of a document's value.
+     *
+     * Documents whose values compare equal have the same rank.
+     *
+     * @param docId document id
+     * @return the sort rank
+     */
+    int sortRank(int docId) {
+        return ordinals().sortRank(docId);
+    }
+
+    /**
+     * Get the id of a document's value.
+     *
+     * Documents have the same value id if and only if their values are equal.
+     *
+     * @param docId document id
+     * @return the value id
+     */
+    int valueId(int docId) {
+        return ordinals().valueId(docId);
+    }
+
     /** Get the first value. The empty string is returned if there are no values for this document */
     public String getFirstValue(DocResult result) {
         return getFirstValue(result.identity());
@@ -230,6 +272,9 @@ public class DocPropertyStoredField extends DocProperty {
      * @return 0 if equal, negative if a < b, positive if a > b.
      */
     public int compare(int docId1, int docId2) {
+        DocValuesOrdinals o = ordinals();
+        if (o != null)
+            return o.compare(docId1, docId2) * (reverse ? -1 : 1);
         return fromArray(get(docId1)).compareTo(fromArray(get(docId2))) * (reverse ? -1 : 1);
     }
 
@@ -242,6 +287,9 @@ public class DocPropertyStoredField extends DocProperty {
      */
     @Override
     public int compare(DocResult a, DocResult b) {
+        DocValuesOrdinals o = ordinals();
+        if (o != null)
+            return o.compare(a.identity().id(), b.identity().id()) * (reverse ? -1 : 1);
         PropertyValue v1 = get(a);
         PropertyValue v2 = get(b);
         return v1.compareTo(v2) * (reverse ? -1 : 1);
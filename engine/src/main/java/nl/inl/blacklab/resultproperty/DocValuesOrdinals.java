@@ -0,0 +1,201 @@
+package nl.inl.blacklab.resultproperty;
+
+import java.io.IOException;
+import java.text.CollationKey;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.index.SortedDocValues;
+import org.apache.lucene.index.SortedSetDocValues;
+
+import net.jcip.annotations.ThreadSafe;
+import nl.inl.blacklab.exceptions.BlackLabRuntimeException;
+
+/**
+ * The values of a metadata field for all documents in an index reader, as
+ * dense ordinals.
+ *
+ * Every document is mapped to the id of its (joined) value, and every value has
+ * a sort rank, so sorting and grouping documents by this field only compares
+ * ints. Strings are only needed for the distinct values, which are read from
+ * the DocValues once when building.
+ *
+ * Instances are cached per reader and field (see {@link #get(IndexReader, String, boolean)}),
+ * so they're shared by all searches on the same index.
+ */
+@ThreadSafe
+class DocValuesOrdinals {
+
+    private static final Logger logger = LogManager.getLogger(DocValuesOrdinals.class);
+
+    /** Cached ordinals per reader and field. Readers are weakly referenced, so closed readers don't leak. */
+    private static final Map<IndexReader, Map<String, DocValuesOrdinals>> cache = new WeakHashMap<>();
+
+    /**
+     * Get the ordinals for a metadata field, building them if necessary.
+     *
+     * @param reader index reader
+     * @param fieldName metadata field
+     * @param numeric whether the field has NumericDocValues
+     * @return the ordinals
+     */
+    static DocValuesOrdinals get(IndexReader reader, String fieldName, boolean numeric) {
+        Map<String, DocValuesOrdinals> perField;
+        synchronized (cache) {
+            perField = cache.computeIfAbsent(reader, r -> new ConcurrentHashMap<>());
+        }
+        return perField.computeIfAbsent(fieldName, f -> new DocValuesOrdinals(reader, f, numeric));
+    }
+
+    /** Value id for each document id */
+    private final int[] docValueId;
+
+    /** Sort rank for each value id (values that compare equal have the same rank) */
+    private final int[] valueRank;
+
+    /** Each value (multiple values joined like {@link DocPropertyStoredField#fromArray(String[])} does) */
+    private final PropertyValueString[] values;
+
+    private DocValuesOrdinals(IndexReader reader, String fieldName, boolean numeric) {
+        long start = System.currentTimeMillis();
+        docValueId = new int[reader.maxDoc()];
+        Map<String, Integer> valueIds = new HashMap<>();
+        List<String> valueList = new ArrayList<>();
+        try {
+            for (LeafReaderContext rc: reader.leaves()) {
+                String[] segmentDocValues = numeric ? numericValues(rc.reader(), fieldName) : stringValues(rc.reader(), fieldName);
+                for (int i = 0; i < segmentDocValues.length; i++) {
+                    docValueId[rc.docBase + i] = valueIds.computeIfAbsent(segmentDocValues[i], v -> {
+                        valueList.add(v);
+                        return valueList.size() - 1;
+                    });
+                }
+            }
+        } catch (IOException e) {
+            throw BlackLabRuntimeException.wrap(e);
+        }
+
+        // Determine the sort rank of each value, using the same collator as PropertyValueString
+        int n = valueList.size();
+        values = new PropertyValueString[n];
+        CollationKey[] keys = new CollationKey[n];
+        Integer[] sorted = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            values[i] = new PropertyValueString(valueList.get(i));
+            keys[i] = PropertyValue.collator.getCollationKey(valueList.get(i));
+            sorted[i] = i;
+        }
+        Arrays.sort(sorted, Comparator.comparing(i -> keys[i]));
+        valueRank = new int[n];
+        int rank = 0;
+        for (int i = 0; i < n; i++) {
+            if (i > 0 && keys[sorted[i]].compareTo(keys[sorted[i - 1]]) != 0)
+                rank++;
+            valueRank[sorted[i]] = rank;
+        }
+        logger.debug("Built ordinals for metadata field " + fieldName + " (" + n + " distinct values, "
+                + docValueId.length + " docs) in " + (System.currentTimeMillis() - start) + "ms");
+    }
+
+    /**
+     * Get the (joined) value of a string field for each document in a segment.
+     *
+     * Each segment term is converted to a string only once, so single-valued
+     * documents share their value strings.
+     */
+    private static String[] stringValues(LeafReader r, String fieldName) throws IOException {
+        String[] result = new String[r.maxDoc()];
+        // New indexes all have SortedSetDocValues, but some very old indexes may still contain SortedDocValues
+        SortedDocValues sorted = r.getSortedDocValues(fieldName);
+        SortedSetDocValues sortedSet = sorted == null ? r.getSortedSetDocValues(fieldName) : null;
+        long valueCount = sorted != null ? sorted.getValueCount() : sortedSet != null ? sortedSet.getValueCount() : 0;
+        String[] terms = new String[(int) valueCount];
+        List<String> docValues = new ArrayList<>();
+        for (int doc = 0; doc < result.length; doc++) {
+            if (sorted != null) {
+                int ord = sorted.getOrd(doc);
+                if (ord >= 0 && terms[ord] == null)
+                    terms[ord] = sorted.lookupOrd(ord).utf8ToString();
+                result[doc] = ord < 0 ? "" : terms[ord];
+            } else if (sortedSet != null) {
+                docValues.clear();
+                sortedSet.setDocument(doc);
+                for (long ord = sortedSet.nextOrd(); ord != SortedSetDocValues.NO_MORE_ORDS; ord = sortedSet.nextOrd()) {
+                    if (terms[(int) ord] == null)
+                        terms[(int) ord] = sortedSet.lookupOrd(ord).utf8ToString();
+                    docValues.add(terms[(int) ord]);
+                }
+                result[doc] = docValues.size() == 1 ? docValues.get(0) : DocPropertyStoredField.fromArray(docValues.toArray(new String[0])).toString();
+            } else {
+                // No values were indexed for this field in this segment
+                result[doc] = "";
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Get the value of a numeric field for each document in a segment.
+     */
+    private static String[] numericValues(LeafReader r, String fieldName) throws IOException {
+        String[] result = new String[r.maxDoc()];
+        NumericDocValues values = r.getNumericDocValues(fieldName);
+        for (int doc = 0; doc < result.length; doc++) {
+            result[doc] = values == null ? "" : Long.toString(values.get(doc));
+        }
+        return result;
+    }
+
+    /**
+     * Get the (joined) value for a document.
+     *
+     * @param docId document id
+     * @return the value
+     */
+    PropertyValueString get(int docId) {
+        return values[docValueId[docId]];
+    }
+
+    /**
+     * Get the id of a document's value.
+     *
+     * @param docId document id
+     * @return the value id
+     */
+    int valueId(int docId) {
+        return docValueId[docId];
+    }
+
+    /**
+     * Get the sort rank of a document's value.
+     *
+     * @param docId document id
+     * @return the sort rank
+     */
+    int sortRank(int docId) {
+        return valueRank[docValueId[docId]];
+    }
+
+    /**
+     * Compare two documents by their values.
+     *
+     * @param docId1 first document
+     * @param docId2 second document
+     * @return 0 if equal, negative if a < b, positive if a > b.
+     */
+    int compare(int docId1, int docId2) {
+        return Integer.compare(valueRank[docValueId[docId1]], valueRank[docValueId[docId2]]);
+    }
+}
@@ -226,6 +226,82 @@ public abstract class HitProperty implements ResultProperty<Hit>, IntComparator
 //    @Override
 //    public abstract int compare(int a, int b);
 
+    /**
+     * Can this property produce sort keys?
+     *
+     * Sort keys allow {@link HitSortKeys} to extract a compact key for each hit
+     * once, then sort by comparing those, instead of calling compare() (which
+     * may have to look up contexts and sort positions again) for every
+     * comparison.
+     *
+     * @return true if {@link #sortKeyLength(int)} and {@link #sortKey(int, int[], int)} are supported
+     */
+    protected boolean hasSortKeys() {
+        return false;
+    }
+
+    /**
+     * Get the length of the sort key for a hit.
+     *
+     * @param hitIndex hit index
+     * @return number of ints in the sort key
+     */
+    protected int sortKeyLength(int hitIndex) {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Write the sort key for a hit.
+     *
+     * Sort keys are compared as sequences of ints (if one is a prefix of the
+     * other, the shorter one comes first). The result must be consistent with
+     * {@link #compare(int, int)}, disregarding reverse.
+     *
+     * @param hitIndex hit index
+     * @param dest where to write the key
+     * @param offset where in dest to start writing ({@link #sortKeyLength(int)} ints)
+     */
+    protected void sortKey(int hitIndex, int[] dest, int offset) {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Can this property produce group keys?
+     *
+     * Group keys allow hits to be grouped by comparing and hashing ints, only
+     * creating a PropertyValue for each group instead of for each hit. Two hits
+     * must have equal group keys if and only if their values (see
+     * {@link #get(int)}) are equal.
+     *
+     * By default, the sort key is used as the group key.
+     *
+     * @return true if {@link #groupKeyLength(int)} and {@link #groupKey(int, int[], int)} are supported
+     */
+    protected boolean hasGroupKeys() {
+        return hasSortKeys();
+    }
+
+    /**
+     * Get the length of the group key for a hit.
+     *
+     * @param hitIndex hit index
+     * @return number of ints in the group key
+     */
+    protected int groupKeyLength(int hitIndex) {
+        return sortKeyLength(hitIndex);
+    }
+
+    /**
+     * Write the group key for a hit.
+     *
+     * @param hitIndex hit index
+     * @param dest where to write the key
+     * @param offset where in dest to start writing ({@link #groupKeyLength(int)} ints)
+     */
+    protected void groupKey(int hitIndex, int[] dest, int offset) {
+        sortKey(hitIndex, dest, offset);
+    }
+
     /**
      * Retrieve context from which field(s) prior to sorting/grouping on this
      * property?
@@ -99,6 +99,28 @@ public abstract class HitPropertyContextBase extends HitProperty {
     public List<Annotation> needsContext() {
         return Arrays.asList(annotation);
     }
+
+    @Override
+    protected boolean hasSortKeys() {
+        return true;
+    }
+
+    /**
+     * Write the sort positions of a stretch of context words to a sort key.
+     *
+     * @param context context array for the hit
+     * @param first index of the first word (relative to the start of the context)
+     * @param length number of words
+     * @param direction 1 to go right, -1 to go left
+     * @param dest where to write the sort positions
+     * @param offset where in dest to start writing
+     */
+    protected void sortPositions(int[] context, int first, int length, int direction, int[] dest, int offset) {
+        int contextStart = context[Contexts.LENGTH_INDEX] * contextIndices.getInt(0) + Contexts.NUMBER_OF_BOOKKEEPING_INTS;
+        for (int i = 0; i < length; i++) {
+            dest[offset + i] = terms.idToSortPosition(context[contextStart + first + i * direction], sensitivity);
+        }
+    }
     
     @Override
     public List<MatchSensitivity> getSensitivities() {
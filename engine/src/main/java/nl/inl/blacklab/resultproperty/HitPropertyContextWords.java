@@ -195,6 +195,9 @@ public class HitPropertyContextWords extends HitProperty {
 
     private List<ContextPart> words;
 
+    /** Terms for our annotation (looked up when first needed for sort keys) */
+    private Terms terms;
+
     int totalWords;
 
     HitPropertyContextWords(HitPropertyContextWords prop, Hits hits, Contexts contexts, boolean invert) {
@@ -273,13 +276,26 @@ public class HitPropertyContextWords extends HitProperty {
 
     @Override
     public PropertyValueContextWords get(int hitIndex) {
+        int[] dest = new int[totalWords];
+        boolean allPartsReversed = contextWords(hitIndex, dest, 0);
+        return new PropertyValueContextWords(index, annotation, sensitivity, dest, allPartsReversed);
+    }
+
+    /**
+     * Get the term ids of the context words for a hit.
+     *
+     * @param hitIndex hit index
+     * @param dest (out) term ids (totalWords of them, padded with Terms.NO_TERM)
+     * @param offset where in dest to start writing
+     * @return true if all parts are reversed (for display)
+     */
+    private boolean contextWords(int hitIndex, int[] dest, int offset) {
         int[] context = contexts.get(hitIndex);
         int contextHitStart = context[Contexts.HIT_START_INDEX];
         int contextRightStart = context[Contexts.RIGHT_START_INDEX];
         int contextLength = context[Contexts.LENGTH_INDEX];
 
-        int[] dest = new int[totalWords];
-        int destIndex = 0;
+        int destIndex = offset;
         boolean allPartsReversed = true;
         for (ContextPart ctxPart : words) {
             // Determine anchor position, direction to move in, and edge of part (left/hit/right)
@@ -339,10 +355,34 @@ public class HitPropertyContextWords extends HitProperty {
                 destIndex++;
             }
         }
-        return new PropertyValueContextWords(index, annotation, sensitivity, dest, allPartsReversed);
+        return allPartsReversed;
+    }
+
+    @Override
+    public int compare(int indexA, int indexB) {
+        int cmp = get(indexA).compareTo(get(indexB));
+        return reverse ? -cmp : cmp;
+    }
+
+    @Override
+    protected boolean hasSortKeys() {
+        return true;
     }
 
-    // OPT: provide specific compare() method that compares contexts in-place
+    @Override
+    protected int sortKeyLength(int hitIndex) {
+        return totalWords;
+    }
+
+    @Override
+    protected void sortKey(int hitIndex, int[] dest, int offset) {
+        if (terms == null)
+            terms = index.annotationForwardIndex(annotation).terms();
+        contextWords(hitIndex, dest, offset);
+        for (int i = offset; i < offset + totalWords; i++) {
+            dest[i] = terms.idToSortPosition(dest[i], sensitivity);
+        }
+    }
 
     @Override
     public List<Annotation> needsContext() {
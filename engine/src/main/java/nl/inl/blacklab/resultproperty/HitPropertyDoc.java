@@ -65,6 +65,21 @@ public class HitPropertyDoc extends HitProperty {
         return reverse ? docB - docA : docA - docB;
     }
 
+    @Override
+    protected boolean hasSortKeys() {
+        return true;
+    }
+
+    @Override
+    protected int sortKeyLength(int hitIndex) {
+        return 1;
+    }
+
+    @Override
+    protected void sortKey(int hitIndex, int[] dest, int offset) {
+        dest[offset] = hits.hitsArrays().doc(hitIndex);
+    }
+
     @Override
     public String serialize() {
         return serializeReverse() + "doc";
@@ -57,7 +57,7 @@ public class HitPropertyDocumentStoredField extends HitProperty {
 
     @Override
     public PropertyValueString get(int result) {
-        return DocPropertyStoredField.fromArray(docPropStoredField.get(hits.hitsArrays().doc(result)));
+        return docPropStoredField.getPropertyValue(hits.hitsArrays().doc(result));
     }
 
     @Override
@@ -68,6 +68,27 @@ public class HitPropertyDocumentStoredField extends HitProperty {
         return reverse ? -result : result;
     }
 
+    @Override
+    protected boolean hasSortKeys() {
+        return docPropStoredField.hasSortRanks();
+    }
+
+    @Override
+    protected int sortKeyLength(int hitIndex) {
+        return 1;
+    }
+
+    @Override
+    protected void sortKey(int hitIndex, int[] dest, int offset) {
+        dest[offset] = docPropStoredField.sortRank(hits.hitsArrays().doc(hitIndex));
+    }
+
+    @Override
+    protected void groupKey(int hitIndex, int[] dest, int offset) {
+        // Values with the same sort rank may still be different
+        dest[offset] = docPropStoredField.valueId(hits.hitsArrays().doc(hitIndex));
+    }
+
     @Override
     public String name() {
         return "document: " + docPropStoredField.name();
@@ -67,6 +67,34 @@ public class HitPropertyHitPosition extends HitProperty {
         return reverse ? startB - startA : startA - startB;
     }
 
+    @Override
+    protected boolean hasSortKeys() {
+        return true;
+    }
+
+    @Override
+    protected int sortKeyLength(int hitIndex) {
+        return 2;
+    }
+
+    @Override
+    protected void sortKey(int hitIndex, int[] dest, int offset) {
+        HitsArrays ha = hits.hitsArrays();
+        dest[offset] = ha.start(hitIndex);
+        dest[offset + 1] = ha.end(hitIndex);
+    }
+
+    @Override
+    protected int groupKeyLength(int hitIndex) {
+        // Our value is just the start position
+        return 1;
+    }
+
+    @Override
+    protected void groupKey(int hitIndex, int[] dest, int offset) {
+        dest[offset] = hits.hitsArrays().start(hitIndex);
+    }
+
     @Override
     public String serialize() {
         return serializeReverse() + "hitposition";
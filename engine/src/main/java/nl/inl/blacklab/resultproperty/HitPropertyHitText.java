@@ -116,6 +116,19 @@ public class HitPropertyHitText extends HitPropertyContextBase {
         return reverse ? -1 : 1; // a longer than b => a > b
     }
 
+    @Override
+    protected int sortKeyLength(int hitIndex) {
+        int[] context = contexts.get(hitIndex);
+        return context[Contexts.RIGHT_START_INDEX] - context[Contexts.HIT_START_INDEX];
+    }
+
+    @Override
+    protected void sortKey(int hitIndex, int[] dest, int offset) {
+        int[] context = contexts.get(hitIndex);
+        int hitStart = context[Contexts.HIT_START_INDEX];
+        sortPositions(context, hitStart, context[Contexts.RIGHT_START_INDEX] - hitStart, 1, dest, offset);
+    }
+
     @Override
     public boolean isDocPropOrHitText() {
         return true;
@@ -121,6 +121,19 @@ public class HitPropertyLeftContext extends HitPropertyContextBase {
         return reverse ? -1 : 1; // a longer than b => a > b
     }
 
+    @Override
+    protected int sortKeyLength(int hitIndex) {
+        return contexts.get(hitIndex)[Contexts.HIT_START_INDEX];
+    }
+
+    @Override
+    protected void sortKey(int hitIndex, int[] dest, int offset) {
+        // Compared starting at the end, like compare() does
+        int[] context = contexts.get(hitIndex);
+        int hitStart = context[Contexts.HIT_START_INDEX];
+        sortPositions(context, hitStart - 1, hitStart, -1, dest, offset);
+    }
+
     @Override
     public boolean isDocPropOrHitText() {
         return false;
@@ -117,6 +117,19 @@ public class HitPropertyRightContext extends HitPropertyContextBase {
         return reverse ? -1 : 1; // a longer than b => a > b
     }
 
+    @Override
+    protected int sortKeyLength(int hitIndex) {
+        int[] context = contexts.get(hitIndex);
+        return context[Contexts.LENGTH_INDEX] - context[Contexts.RIGHT_START_INDEX];
+    }
+
+    @Override
+    protected void sortKey(int hitIndex, int[] dest, int offset) {
+        int[] context = contexts.get(hitIndex);
+        int rightStart = context[Contexts.RIGHT_START_INDEX];
+        sortPositions(context, rightStart, context[Contexts.LENGTH_INDEX] - rightStart, 1, dest, offset);
+    }
+
     @Override
     public boolean isDocPropOrHitText() {
         return false;
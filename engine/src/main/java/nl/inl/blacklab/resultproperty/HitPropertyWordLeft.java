@@ -98,6 +98,36 @@ public class HitPropertyWordLeft extends HitPropertyContextBase {
         return reverse ? -cmp : cmp;
     }
 
+    @Override
+    protected int sortKeyLength(int hitIndex) {
+        // No word to the left sorts first
+        return contexts.get(hitIndex)[Contexts.HIT_START_INDEX] <= 0 ? 0 : 1;
+    }
+
+    @Override
+    protected void sortKey(int hitIndex, int[] dest, int offset) {
+        int[] context = contexts.get(hitIndex);
+        int hitStart = context[Contexts.HIT_START_INDEX];
+        if (hitStart > 0)
+            sortPositions(context, hitStart - 1, 1, 1, dest, offset);
+    }
+
+    @Override
+    protected int groupKeyLength(int hitIndex) {
+        // Like get(), use Terms.NO_TERM if there's no word
+        return 1;
+    }
+
+    @Override
+    protected void groupKey(int hitIndex, int[] dest, int offset) {
+        int[] context = contexts.get(hitIndex);
+        int hitStart = context[Contexts.HIT_START_INDEX];
+        if (hitStart > 0)
+            sortPositions(context, hitStart - 1, 1, 1, dest, offset);
+        else
+            dest[offset] = Terms.NO_TERM;
+    }
+
     @Override
     public boolean isDocPropOrHitText() {
         return false;
@@ -90,6 +90,37 @@ public class HitPropertyWordRight extends HitPropertyContextBase {
         return reverse ? -cmp : cmp;
     }
 
+    @Override
+    protected int sortKeyLength(int hitIndex) {
+        // No word to the right sorts first
+        int[] context = contexts.get(hitIndex);
+        return context[Contexts.LENGTH_INDEX] <= context[Contexts.RIGHT_START_INDEX] ? 0 : 1;
+    }
+
+    @Override
+    protected void sortKey(int hitIndex, int[] dest, int offset) {
+        int[] context = contexts.get(hitIndex);
+        int rightStart = context[Contexts.RIGHT_START_INDEX];
+        if (context[Contexts.LENGTH_INDEX] > rightStart)
+            sortPositions(context, rightStart, 1, 1, dest, offset);
+    }
+
+    @Override
+    protected int groupKeyLength(int hitIndex) {
+        // Like get(), use Terms.NO_TERM if there's no word
+        return 1;
+    }
+
+    @Override
+    protected void groupKey(int hitIndex, int[] dest, int offset) {
+        int[] context = contexts.get(hitIndex);
+        int rightStart = context[Contexts.RIGHT_START_INDEX];
+        if (context[Contexts.LENGTH_INDEX] > rightStart)
+            sortPositions(context, rightStart, 1, 1, dest, offset);
+        else
+            dest[offset] = Terms.NO_TERM;
+    }
+
     @Override
     public boolean isDocPropOrHitText() {
         return false;
@@ -0,0 +1,399 @@
+package nl.inl.blacklab.resultproperty;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.stream.IntStream;
+
+import it.unimi.dsi.fastutil.ints.IntArrays;
+import nl.inl.blacklab.exceptions.BlackLabRuntimeException;
+import nl.inl.blacklab.exceptions.InterruptedSearch;
+import nl.inl.blacklab.search.SearchExecutor;
+import nl.inl.blacklab.search.SearchExecutor.RangeTask;
+
+/**
+ * Compact sort or group keys for all hits, for sorting and grouping.
+ *
+ * Sorting by calling {@link HitProperty#compare(int, int)} means looking up
+ * contexts and converting term ids to sort positions again for every one of the
+ * n log n comparisons, and grouping by calling {@link HitProperty#get(int)}
+ * creates a PropertyValue for every hit. Instead, we extract a key (e.g. the
+ * sort positions of the context words) for each hit once, and sort or group by
+ * comparing and hashing those.
+ *
+ * For sorting, keys consisting of a single int (e.g. document id or a metadata
+ * field's sort rank) are packed into longs together with the hit index and
+ * sorted as primitives. Other keys are sorted using a comparator on the extracted
+ * keys. Hits with equal keys stay in their original order.
+ *
+ * If there are enough hits, keys are extracted and sorted in parallel, as subtasks
+ * of the current search on the {@link SearchExecutor}: the hits are divided into
+ * ranges that are sorted separately, after which the sorted ranges are merged.
+ */
+public class HitSortKeys {
+
+    /** Minimum number of hits to process per parallel subtask (fewer hits don't pay off) */
+    public static final int MIN_HITS_PER_TASK = 5_000;
+
+    /** How often to check if we've been interrupted while processing hits (must be a power of two) */
+    private static final int CHECK_INTERRUPT_INTERVAL = 1024;
+
+    /** The keys of a single (non-compound) property for all hits */
+    private static class Column {
+
+        /** Compare descending? */
+        final boolean reverse;
+
+        /** Start of each hit's key in keys (plus one entry for the end of the last key) */
+        final int[] offsets;
+
+        /** The keys for all hits */
+        final int[] keys;
+
+        Column(HitProperty prop, boolean reverse, int numberOfHits, boolean forGrouping, SearchExecutor executor) {
+            this.reverse = reverse;
+            offsets = new int[numberOfHits + 1];
+            inRanges(executor, numberOfHits, (from, to) -> {
+                for (int i = from; i < to; i++) {
+                    checkInterrupted(i);
+                    offsets[i + 1] = forGrouping ? prop.groupKeyLength(i) : prop.sortKeyLength(i);
+                }
+                return null;
+            });
+            for (int i = 0; i < numberOfHits; i++) {
+                offsets[i + 1] += offsets[i];
+            }
+            keys = new int[offsets[numberOfHits]];
+            inRanges(executor, numberOfHits, (from, to) -> {
+                for (int i = from; i < to; i++) {
+                    checkInterrupted(i);
+                    if (forGrouping)
+                        prop.groupKey(i, keys, offsets[i]);
+                    else
+                        prop.sortKey(i, keys, offsets[i]);
+                }
+                return null;
+            });
+        }
+
+        int compare(int a, int b) {
+            int cmp = Arrays.compare(keys, offsets[a], offsets[a + 1], keys, offsets[b], offsets[b + 1]);
+            return reverse ? -cmp : cmp;
+        }
+
+        boolean equal(int a, int b) {
+            return Arrays.equals(keys, offsets[a], offsets[a + 1], keys, offsets[b], offsets[b + 1]);
+        }
+
+        int hash(int a) {
+            int h = 1;
+            for (int i = offsets[a]; i < offsets[a + 1]; i++)
+                h = 31 * h + keys[i];
+            return h;
+        }
+
+        boolean isSingleInt() {
+            return keys.length == offsets.length - 1 && IntStream.range(0, offsets.length - 1).allMatch(i -> offsets[i] == i);
+        }
+    }
+
+    /**
+     * Process ranges of hits, in parallel if there's enough of them.
+     *
+     * @param executor executor to run subtasks on, or null to use only the calling thread
+     * @param numberOfHits number of hits
+     * @param task processes a range of hits
+     * @return results for each range, in order
+     */
+    private static <T> List<T> inRanges(SearchExecutor executor, int numberOfHits, RangeTask<T> task) {
+        if (executor == null)
+            return Collections.singletonList(task.process(0, numberOfHits));
+        try {
+            return executor.invokeInRanges(numberOfHits, MIN_HITS_PER_TASK, task);
+        } catch (InterruptedException e) {
+            throw new InterruptedSearch(e);
+        } catch (ExecutionException e) {
+            throw BlackLabRuntimeException.wrap(e.getCause());
+        }
+    }
+
+    /**
+     * Run subtasks in parallel.
+     *
+     * @param executor executor to run them on
+     * @param tasks subtasks to run
+     */
+    private static void invokeAll(SearchExecutor executor, List<Callable<Void>> tasks) {
+        try {
+            executor.invokeAllParallel(tasks);
+        } catch (InterruptedException e) {
+            throw new InterruptedSearch(e);
+        } catch (ExecutionException e) {
+            throw BlackLabRuntimeException.wrap(e.getCause());
+        }
+    }
+
+    /**
+     * Every so often, check if the search was cancelled.
+     *
+     * @param hitIndex the hit we're processing
+     */
+    private static void checkInterrupted(int hitIndex) {
+        if ((hitIndex & (CHECK_INTERRUPT_INTERVAL - 1)) == 0 && Thread.currentThread().isInterrupted())
+            throw new InterruptedSearch();
+    }
+
+    /**
+     * Determine the properties to extract keys for, flattening compound properties.
+     *
+     * @param prop property to sort or group by
+     * @param reverse whether an enclosing property is reversed
+     * @param forGrouping whether we need group keys (or sort keys)
+     * @param result (out) properties to sort by, in order of precedence
+     * @param reverseResult (out) whether to compare descending for each
+     * @return false if (part of) the property doesn't support keys
+     */
+    private static boolean flatten(HitProperty prop, boolean reverse, boolean forGrouping, List<HitProperty> result, List<Boolean> reverseResult) {
+        if (prop instanceof HitPropertyMultiple) {
+            for (HitProperty child: prop.props()) {
+                if (!flatten(child, reverse != prop.isReverse(), forGrouping, result, reverseResult))
+                    return false;
+            }
+            return true;
+        }
+        if (forGrouping ? !prop.hasGroupKeys() : !prop.hasSortKeys())
+            return false;
+        result.add(prop);
+        reverseResult.add(reverse != prop.isReverse());
+        return true;
+    }
+
+    /**
+     * Extract sort keys for all hits, if the property supports that.
+     *
+     * @param prop property to sort by (with Hits and Contexts set)
+     * @param numberOfHits number of hits
+     * @param executor executor to run subtasks on, or null to use only the calling thread
+     * @return the sort keys, or null if the property doesn't support sort keys
+     */
+    public static HitSortKeys forSorting(HitProperty prop, int numberOfHits, SearchExecutor executor) {
+        return extract(prop, numberOfHits, false, executor);
+    }
+
+    /**
+     * Extract group keys for all hits, if the property supports that.
+     *
+     * @param prop property to group by (with Hits and Contexts set)
+     * @param numberOfHits number of hits
+     * @param executor executor to run subtasks on, or null to use only the calling thread
+     * @return the group keys, or null if the property doesn't support group keys
+     */
+    public static HitSortKeys forGrouping(HitProperty prop, int numberOfHits, SearchExecutor executor) {
+        return extract(prop, numberOfHits, true, executor);
+    }
+
+    private static HitSortKeys extract(HitProperty prop, int numberOfHits, boolean forGrouping, SearchExecutor executor) {
+        List<HitProperty> props = new ArrayList<>();
+        List<Boolean> reverse = new ArrayList<>();
+        if (!flatten(prop, false, forGrouping, props, reverse))
+            return null;
+        Column[] columns = new Column[props.size()];
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = new Column(props.get(i), reverse.get(i), numberOfHits, forGrouping, executor);
+        }
+        return new HitSortKeys(columns, numberOfHits, executor);
+    }
+
+    /**
+     * Sort hits using sort keys, if the property supports that.
+     *
+     * @param prop property to sort by (with Hits and Contexts set)
+     * @param numberOfHits number of hits to sort
+     * @param executor executor to run subtasks on, or null to use only the calling thread
+     * @return hit indices in sorted order, or null if the property doesn't support sort keys
+     */
+    public static int[] sortedIndices(HitProperty prop, int numberOfHits, SearchExecutor executor) {
+        HitSortKeys keys = forSorting(prop, numberOfHits, executor);
+        return keys == null ? null : keys.sortedIndices();
+    }
+
+    /** Keys per (non-compound) property, in order of precedence */
+    private final Column[] columns;
+
+    /** Number of hits */
+    private final int numberOfHits;
+
+    /** Executor to run subtasks on, or null to use only the calling thread */
+    private final SearchExecutor executor;
+
+    private HitSortKeys(Column[] columns, int numberOfHits, SearchExecutor executor) {
+        this.columns = columns;
+        this.numberOfHits = numberOfHits;
+        this.executor = executor;
+    }
+
+    /**
+     * @return number of hits we have keys for
+     */
+    public int size() {
+        return numberOfHits;
+    }
+
+    /**
+     * Sort the hits by their keys.
+     *
+     * @return hit indices in sorted order
+     */
+    public int[] sortedIndices() {
+        if (columns.length == 1 && columns[0].isSingleInt()) {
+            // Pack key and hit index into a long and sort those (ties are broken by hit index)
+            Column column = columns[0];
+            long[] packed = new long[numberOfHits];
+            List<int[]> runs = inRanges(executor, numberOfHits, (from, to) -> {
+                for (int i = from; i < to; i++) {
+                    checkInterrupted(i);
+                    int key = column.reverse ? ~column.keys[i] : column.keys[i];
+                    packed[i] = ((long) key << 32) | i;
+                }
+                Arrays.sort(packed, from, to);
+                return new int[] { from, to };
+            });
+            long[] sorted = mergeRuns(packed, runs.size() > 1 ? new long[numberOfHits] : null, runs, HitSortKeys::merge);
+            int[] indices = new int[numberOfHits];
+            for (int i = 0; i < numberOfHits; i++) {
+                indices[i] = (int) sorted[i];
+            }
+            return indices;
+        }
+
+        int[] indices = new int[numberOfHits];
+        List<int[]> runs = inRanges(executor, numberOfHits, (from, to) -> {
+            for (int i = from; i < to; i++)
+                indices[i] = i;
+            IntArrays.quickSort(indices, from, to, this::compareWithTieBreak);
+            return new int[] { from, to };
+        });
+        return mergeRuns(indices, runs.size() > 1 ? new int[numberOfHits] : null, runs, this::merge);
+    }
+
+    /** Merges two adjacent sorted runs from one array into the same positions in another. */
+    @FunctionalInterface
+    private interface RunMerger<A> {
+        void merge(A source, int from, int middle, int to, A dest);
+    }
+
+    /**
+     * Merge sorted runs into one, merging pairs of runs in parallel.
+     *
+     * @param array array containing the sorted runs
+     * @param buffer array of the same length to use while merging (may be null if there's only one run)
+     * @param runs start and end of each run, in order
+     * @param merger merges two runs
+     * @return the sorted array (either array or buffer)
+     */
+    private <A> A mergeRuns(A array, A buffer, List<int[]> runs, RunMerger<A> merger) {
+        A source = array, dest = buffer;
+        while (runs.size() > 1) {
+            List<int[]> mergedRuns = new ArrayList<>();
+            List<Callable<Void>> tasks = new ArrayList<>();
+            for (int i = 0; i < runs.size(); i += 2) {
+                int from = runs.get(i)[0];
+                int middle = runs.get(i)[1];
+                int to = i + 1 < runs.size() ? runs.get(i + 1)[1] : middle; // (odd run out is just copied)
+                mergedRuns.add(new int[] { from, to });
+                A s = source, d = dest;
+                tasks.add(() -> {
+                    merger.merge(s, from, middle, to, d);
+                    return null;
+                });
+            }
+            invokeAll(executor, tasks);
+            runs = mergedRuns;
+            A swap = source;
+            source = dest;
+            dest = swap;
+        }
+        return source;
+    }
+
+    private static void merge(long[] source, int from, int middle, int to, long[] dest) {
+        int a = from, b = middle;
+        for (int i = from; i < to; i++) {
+            if (b >= to || a < middle && source[a] <= source[b])
+                dest[i] = source[a++];
+            else
+                dest[i] = source[b++];
+        }
+    }
+
+    private void merge(int[] source, int from, int middle, int to, int[] dest) {
+        int a = from, b = middle;
+        for (int i = from; i < to; i++) {
+            checkInterrupted(i);
+            if (b >= to || a < middle && compareWithTieBreak(source[a], source[b]) <= 0)
+                dest[i] = source[a++];
+            else
+                dest[i] = source[b++];
+        }
+    }
+
+    /**
+     * Compare the keys of two hits; if they're equal, compare the hit indices.
+     *
+     * @param a first hit index
+     * @param b second hit index
+     * @return 0 if the same hit, negative if a < b, positive if a > b.
+     */
+    private int compareWithTieBreak(int a, int b) {
+        int cmp = compare(a, b);
+        return cmp == 0 ? Integer.compare(a, b) : cmp;
+    }
+
+    /**
+     * Compare the keys of two hits.
+     *
+     * @param a first hit index
+     * @param b second hit index
+     * @return 0 if equal, negative if a < b, positive if a > b.
+     */
+    public int compare(int a, int b) {
+        for (Column column: columns) {
+            int cmp = column.compare(a, b);
+            if (cmp != 0)
+                return cmp;
+        }
+        return 0;
+    }
+
+    /**
+     * Are the keys of two hits equal?
+     *
+     * @param a first hit index
+     * @param b second hit index
+     * @return true if the keys are equal
+     */
+    public boolean equal(int a, int b) {
+        for (Column column: columns) {
+            if (!column.equal(a, b))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Get the hash code of a hit's key.
+     *
+     * @param a hit index
+     * @return hash code
+     */
+    public int hash(int a) {
+        int h = 1;
+        for (Column column: columns) {
+            h = 31 * h + column.hash(a);
+        }
+        return h;
+    }
+}
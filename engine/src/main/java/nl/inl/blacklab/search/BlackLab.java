@@ -2,12 +2,16 @@ package nl.inl.blacklab.search;
 
 import nl.inl.blacklab.config.BLConfigIndexing;
 import nl.inl.blacklab.config.BLConfigLog;
+import nl.inl.blacklab.config.BLConfigSearch;
 import nl.inl.blacklab.config.BlackLabConfig;
+import nl.inl.blacklab.contentstore.BlockCodec;
+import nl.inl.blacklab.contentstore.ContentStoreFixedBlockReader;
 import nl.inl.blacklab.exceptions.ErrorOpeningIndex;
 import nl.inl.blacklab.index.DownloadCache;
 import nl.inl.blacklab.index.PluginManager;
 import nl.inl.blacklab.index.ZipHandleManager;
 import nl.inl.blacklab.indexers.config.ConfigInputFormat;
+import nl.inl.blacklab.search.results.Hits;
 import nl.inl.util.FileUtil;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -285,6 +289,14 @@ public final class BlackLab {
             if (indexing.getDownloadCacheDir() != null)
                     DownloadCache.setDir(new File(indexing.getDownloadCacheDir()));
             ZipHandleManager.setMaxOpen(indexing.getZipFilesMaxOpen());
+            if (indexing.getContentStoreCodec() != null)
+                BlackLabIndexImpl.setContentStoreCodec(BlockCodec.fromName(indexing.getContentStoreCodec()));
+
+            // Search settings
+            BLConfigSearch search = blackLabConfig.getSearch();
+            ContentStoreFixedBlockReader.setBlockCacheSizeBytes(search.getContentStoreBlockCacheSizeMegs() * 1_000_000L);
+            PageCacheWarmer.setSettings(search.getWarmUp());
+            Hits.setCompactSourceHits(search.isCompactHits());
             
             // Plugins settings
             PluginManager.initPlugins(blackLabConfig.getPlugins());
@@ -5,8 +5,9 @@ import java.io.File;
 import java.util.IdentityHashMap;
 import java.util.Map;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.logging.log4j.ThreadContext;
@@ -32,32 +33,43 @@ public final class BlackLabEngine implements Closeable {
      */
     private Map<IndexReader, BlackLabIndex> searcherFromIndexReader = new IdentityHashMap<>();
 
-    /** Thread on which we run initializations (opening forward indexes, etc.).
-     *  Single-threaded because these kinds of initializations are memory and CPU heavy. */
-    private ExecutorService initializationExecutorService = null;
+    /** Default number of threads on which we run initializations */
+    public static final int DEFAULT_INITIALIZATION_THREADS = 2;
 
-    /** Threads on which we run searches. This pool is not limited in size,
-     *  but new top-level searches (i.e. not started by other searches) are queued
+    /** How long idle initialization threads are kept around */
+    private static final int INITIALIZATION_THREAD_KEEP_ALIVE_SEC = 60;
+
+    /** Threads on which we run initializations (opening forward indexes, etc.).
+     *  Bounded because these kinds of initializations can be memory and CPU heavy.
+     *  Threads exit when idle, as there's usually nothing to do after indexes have been opened. */
+    private ThreadPoolExecutor initializationExecutorService = null;
+
+    /** Threads on which we run searches. This pool is bounded (searchThreads * maxThreadsPerSearch
+     *  threads); searches and their subtasks are queued by priority until a thread is available.
+     *  Also, new top-level searches (i.e. not started by other searches) are queued
      *  until server load is deemed low enough that they can start.
      */
-    private ExecutorService searchExecutorService = null;
+    private SearchExecutor searchExecutorService = null;
 
     /** How many threads may a single search use? */
     private int maxThreadsPerSearch;
 
-    AtomicInteger threadCounter = new AtomicInteger(1);
+    /** Keeps important index files in the page cache (if enabled) */
+    private PageCacheWarmer pageCacheWarmer = new PageCacheWarmer();
 
     BlackLabEngine(int searchThreads, int maxThreadsPerSearch) {
-        initializationExecutorService = Executors.newSingleThreadExecutor();
-        this.searchExecutorService = Executors.newCachedThreadPool(new ThreadFactory() {
-			@Override
-			public Thread newThread(Runnable runnable) {
-				Thread worker = Executors.defaultThreadFactory().newThread(runnable);
-				int threadNumber = threadCounter.getAndUpdate(i -> (i + 1) % 10000);
-				worker.setName("SearchThread-" + threadNumber);
-                return worker;
-            }
-		});
+        initializationExecutorService = new ThreadPoolExecutor(DEFAULT_INITIALIZATION_THREADS,
+                DEFAULT_INITIALIZATION_THREADS, INITIALIZATION_THREAD_KEEP_ALIVE_SEC, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>());
+        initializationExecutorService.allowCoreThreadTimeOut(true);
+        AtomicInteger threadCounter = new AtomicInteger(1);
+        initializationExecutorService.setThreadFactory(runnable -> {
+            Thread worker = new Thread(runnable, "InitializationThread-" + threadCounter.getAndIncrement());
+            worker.setDaemon(true);
+            return worker;
+        });
+        int poolSize = Math.max(1, searchThreads) * Math.max(1, maxThreadsPerSearch);
+        searchExecutorService = new SearchExecutor(poolSize, maxThreadsPerSearch, "SearchThread-");
 
         this.maxThreadsPerSearch = maxThreadsPerSearch;
     }
@@ -72,6 +84,7 @@ public final class BlackLabEngine implements Closeable {
             initializationExecutorService.shutdownNow();
             initializationExecutorService = null;
         }
+        pageCacheWarmer.close();
         for (BlackLabIndex index: searcherFromIndexReader.values()) {
             index.close();
         }
@@ -158,7 +171,28 @@ public final class BlackLabEngine implements Closeable {
         return initializationExecutorService;
     }
 
-    public ExecutorService searchExecutorService() {
+    /**
+     * Set how many index components (forward indexes, content stores) may be
+     * initialized at the same time.
+     *
+     * @param initializationThreads number of initialization threads
+     */
+    public void setInitializationThreads(int initializationThreads) {
+        int n = Math.max(1, initializationThreads);
+        if (n > initializationExecutorService.getMaximumPoolSize()) {
+            initializationExecutorService.setMaximumPoolSize(n);
+            initializationExecutorService.setCorePoolSize(n);
+        } else {
+            initializationExecutorService.setCorePoolSize(n);
+            initializationExecutorService.setMaximumPoolSize(n);
+        }
+    }
+
+    public PageCacheWarmer pageCacheWarmer() {
+        return pageCacheWarmer;
+    }
+
+    public SearchExecutor searchExecutorService() {
         return searchExecutorService;
     }
 
@@ -415,4 +415,14 @@ public interface BlackLabIndex extends Closeable {
      */
     BlackLabEngine blackLab();
 
+    /**
+     * Get the background initialization of this index's components.
+     *
+     * Forward indexes and content stores are initialized in the background after
+     * opening the index. This can be used to report progress.
+     *
+     * @return background initialization
+     */
+    IndexInitialization initialization();
+
 }
@@ -4,6 +4,7 @@ import nl.inl.blacklab.analysis.BLDutchAnalyzer;
 import nl.inl.blacklab.analysis.BLNonTokenizingAnalyzer;
 import nl.inl.blacklab.analysis.BLStandardAnalyzer;
 import nl.inl.blacklab.analysis.BLWhitespaceAnalyzer;
+import nl.inl.blacklab.contentstore.BlockCodec;
 import nl.inl.blacklab.contentstore.ContentStore;
 import nl.inl.blacklab.contentstore.ContentStoresManager;
 import nl.inl.blacklab.exceptions.*;
@@ -12,6 +13,7 @@ import nl.inl.blacklab.forwardindex.ForwardIndex;
 import nl.inl.blacklab.indexers.config.ConfigInputFormat;
 import nl.inl.blacklab.search.indexmetadata.*;
 import nl.inl.blacklab.search.lucene.BLSpanQuery;
+import nl.inl.blacklab.search.lucene.optimize.IndexStatistics;
 import nl.inl.blacklab.search.results.*;
 import nl.inl.blacklab.searches.SearchCache;
 import nl.inl.blacklab.searches.SearchCacheDummy;
@@ -79,6 +81,9 @@ public class BlackLabIndexImpl implements BlackLabIndexWriter {
      */
     static boolean traceQueryExecution = false;
 
+    /** Block codec for new content stores, or null for version 1 (deflate) content stores */
+    private static BlockCodec contentStoreCodec = null;
+
     /** The collator to use for sorting. Defaults to English collator. */
     private static Collator defaultCollator = Collator.getInstance(new Locale("en", "GB"));
 
@@ -214,6 +219,16 @@ public class BlackLabIndexImpl implements BlackLabIndexWriter {
         BlackLabIndexImpl.traceQueryExecution = traceQueryExecution;
     }
 
+    /**
+     * Set the block codec to use for new content stores.
+     *
+     * @param contentStoreCodec codec to use, or null to create version 1 (deflate) content stores
+     */
+    public static void setContentStoreCodec(BlockCodec contentStoreCodec) {
+        logger.debug("Content store codec: " + contentStoreCodec);
+        BlackLabIndexImpl.contentStoreCodec = contentStoreCodec;
+    }
+
     public static boolean traceOptimization() {
         return traceOptimization;
     }
@@ -233,6 +248,9 @@ public class BlackLabIndexImpl implements BlackLabIndexWriter {
     /** BlackLab instance used to create us */
     private BlackLabEngine blackLab;
 
+    /** Initializes our forward indexes and content stores in the background */
+    private IndexInitialization initialization;
+
     /** The collator to use for sorting. Defaults to English collator. */
     private Collator collator = BlackLabIndexImpl.defaultCollator;
 
@@ -316,6 +334,7 @@ public class BlackLabIndexImpl implements BlackLabIndexWriter {
      */
     BlackLabIndexImpl(BlackLabEngine blackLab, File indexDir, boolean indexMode, boolean createNewIndex, ConfigInputFormat config) throws ErrorOpeningIndex {
         this.blackLab = blackLab;
+        initialization = new IndexInitialization(blackLab.initializationExecutorService());
         searchSettings = SearchSettings.defaults();
         try {
             this.indexMode = indexMode;
@@ -355,6 +374,7 @@ public class BlackLabIndexImpl implements BlackLabIndexWriter {
      */
     BlackLabIndexImpl(BlackLabEngine blackLab, File indexDir, boolean indexMode, boolean createNewIndex, File indexTemplateFile) throws ErrorOpeningIndex {
         this.blackLab = blackLab;
+        initialization = new IndexInitialization(blackLab.initializationExecutorService());
         searchSettings = SearchSettings.defaults();
         this.indexMode = indexMode;
 
@@ -442,7 +462,7 @@ public class BlackLabIndexImpl implements BlackLabIndexWriter {
         try {
             IndexReader indexReader = reader();
             query.setQueryInfo(QueryInfo.create(this, fieldFromQuery(query), true));
-            return new QueryExplanation(query, query.optimize(indexReader).rewrite(indexReader));
+            return new QueryExplanation(query, query.optimize(indexReader).rewrite(indexReader), indexReader);
         } catch (IOException e) {
             throw BlackLabRuntimeException.wrap(e);
         }
@@ -484,14 +504,7 @@ public class BlackLabIndexImpl implements BlackLabIndexWriter {
 
         // Start reading the content store's TOC in the background, so it doesn't
         // trigger on the first search
-        blackLab.initializationExecutorService().execute(new Runnable() {
-            @Override
-            public void run() {
-                //logger.debug("START initialize CS: " + field.name());
-                contentStore.initialize();
-                //logger.debug("END   initialize CS: " + field.name());
-            }
-        });
+        initialization.submit("content store " + field.name(), contentStore::initialize);
     }
 
     @Override
@@ -616,6 +629,13 @@ public class BlackLabIndexImpl implements BlackLabIndexWriter {
         // so we can find the corresponding BlackLabIndex object from within Lucene code
         blackLab.registerSearcher(reader, this);
 
+        if (!indexMode) {
+            // Gather the statistics the query optimizer uses to estimate the number of hits
+            if (traceIndexOpening)
+                logger.debug("  Gathering index statistics...");
+            IndexStatistics.get(reader);
+        }
+
         // Detect and open the ContentStore for the contents field
         if (!createNewIndex) {
             if (traceIndexOpening)
@@ -666,6 +686,10 @@ public class BlackLabIndexImpl implements BlackLabIndexWriter {
                     }
                 }
             }
+
+            // Keep important files in the page cache, if configured
+            if (!indexMode)
+                blackLab.pageCacheWarmer().add(this);
         }
     }
 
@@ -700,6 +724,7 @@ public class BlackLabIndexImpl implements BlackLabIndexWriter {
     public void close() {
         try {
             if (blackLab != null) {
+                blackLab.pageCacheWarmer().remove(this);
                 blackLab.removeSearcher(this);
                 blackLab = null;
             }
@@ -752,7 +777,7 @@ public class BlackLabIndexImpl implements BlackLabIndexWriter {
 
     protected ContentStore openContentStore(Field field) throws ErrorOpeningIndex {
         File contentStoreDir = new File(indexLocation, "cs_" + field.name());
-        ContentStore contentStore = ContentStore.open(contentStoreDir, indexMode, isEmptyIndex);
+        ContentStore contentStore = ContentStore.open(contentStoreDir, indexMode, isEmptyIndex, contentStoreCodec);
         registerContentStore(field, contentStore);
         return contentStore;
     }
@@ -971,6 +996,11 @@ public class BlackLabIndexImpl implements BlackLabIndexWriter {
         return this.getClass().getSimpleName() + "(" + indexLocation + ")";
     }
 
+    @Override
+    public IndexInitialization initialization() {
+        return initialization;
+    }
+
     @Override
     public BlackLabEngine blackLab() {
         return blackLab;
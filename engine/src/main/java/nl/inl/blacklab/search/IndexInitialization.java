@@ -0,0 +1,89 @@
+package nl.inl.blacklab.search;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Initializes the components of an index (forward indexes, content stores) in
+ * the background, and keeps track of progress.
+ *
+ * Opening an index doesn't wait for these initializations. Components that
+ * haven't been initialized yet initialize themselves on first use, so a query
+ * only has to wait for the components it actually needs.
+ *
+ * The initializations run on the BlackLabEngine's initialization thread pool,
+ * which is shared by all indexes, so the number of components initializing at
+ * the same time is bounded.
+ */
+public class IndexInitialization {
+
+    private static final Logger logger = LogManager.getLogger(IndexInitialization.class);
+
+    /** Where to run initializations */
+    private final ExecutorService executorService;
+
+    /** Number of components submitted for initialization */
+    private final AtomicInteger componentsTotal = new AtomicInteger();
+
+    /** Number of components whose initialization has finished */
+    private final AtomicInteger componentsInitialized = new AtomicInteger();
+
+    public IndexInitialization(ExecutorService executorService) {
+        this.executorService = executorService;
+    }
+
+    /**
+     * Initialize a component in the background.
+     *
+     * @param description description of the component (for logging)
+     * @param initialize task that initializes the component
+     */
+    public void submit(String description, Runnable initialize) {
+        componentsTotal.incrementAndGet();
+        try {
+            executorService.execute(() -> {
+                try {
+                    initialize.run();
+                } catch (RuntimeException e) {
+                    // The component will try again on first use, and report the error then
+                    logger.error("Error initializing " + description, e);
+                } finally {
+                    componentsInitialized.incrementAndGet();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Engine is shutting down; component will initialize on first use, if any
+            componentsInitialized.incrementAndGet();
+        }
+    }
+
+    /**
+     * @return number of components submitted for initialization
+     */
+    public int componentsTotal() {
+        return componentsTotal.get();
+    }
+
+    /**
+     * @return number of components whose initialization has finished
+     */
+    public int componentsInitialized() {
+        return componentsInitialized.get();
+    }
+
+    /**
+     * @return true if all submitted components have been initialized
+     */
+    public boolean isDone() {
+        return componentsInitialized.get() >= componentsTotal.get();
+    }
+
+    @Override
+    public String toString() {
+        return "IndexInitialization(" + componentsInitialized() + "/" + componentsTotal() + ")";
+    }
+}
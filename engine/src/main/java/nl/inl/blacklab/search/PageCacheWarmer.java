@@ -0,0 +1,304 @@
+package nl.inl.blacklab.search;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import nl.inl.blacklab.config.BLConfigWarmUp;
+import nl.inl.blacklab.forwardindex.ForwardIndexImplSeparate;
+import nl.inl.blacklab.search.indexmetadata.AnnotatedField;
+import nl.inl.blacklab.search.indexmetadata.Annotation;
+
+/**
+ * Keeps important index files in the operating system's page cache.
+ *
+ * Sorting, grouping and generating KWICs need fast random access to the forward
+ * indexes and content stores, which is slow if those have to be read from disk.
+ * We map the files and touch all their pages, in a configurable order of
+ * priority (e.g. the word and lemma forward indexes first), optionally up to a
+ * maximum size. We touch them again periodically, so they stay in the cache
+ * even if other files are read in the meantime.
+ *
+ * This replaces the external vmtouch tool we used to recommend. Unlike vmtouch,
+ * we can't lock pages in memory (that requires native code and root privileges);
+ * regularly touching them works well enough in practice.
+ *
+ * Runs on a single background thread, so warming doesn't compete with searches
+ * for more than one core's worth of I/O.
+ */
+public class PageCacheWarmer {
+
+    private static final Logger logger = LogManager.getLogger(PageCacheWarmer.class);
+
+    /** Size of the file regions we map separately and check residency for */
+    private static final int CHUNK_SIZE = 16 * 1024 * 1024;
+
+    /** Warm-up settings (shared by all engines; set from the BlackLab config) */
+    private static BLConfigWarmUp settings = new BLConfigWarmUp();
+
+    public static synchronized void setSettings(BLConfigWarmUp settings) {
+        PageCacheWarmer.settings = settings;
+    }
+
+    private static synchronized BLConfigWarmUp settings() {
+        return settings;
+    }
+
+    /** A file we keep warm, mapped in chunks. */
+    private static class WarmFile {
+
+        private final File file;
+
+        private final long length;
+
+        /** Mapped chunks of the file, or null if we haven't warmed it yet */
+        private volatile MappedByteBuffer[] chunks;
+
+        WarmFile(File file) {
+            this.file = file;
+            this.length = file.length();
+        }
+
+        /**
+         * Read all pages of the file into the page cache.
+         *
+         * @throws IOException if the file couldn't be mapped
+         */
+        void warm() throws IOException {
+            if (chunks == null) {
+                MappedByteBuffer[] mapped = new MappedByteBuffer[(int) ((length + CHUNK_SIZE - 1) / CHUNK_SIZE)];
+                try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+                        FileChannel fc = raf.getChannel()) {
+                    for (int i = 0; i < mapped.length; i++) {
+                        long start = (long) i * CHUNK_SIZE;
+                        mapped[i] = fc.map(MapMode.READ_ONLY, start, Math.min(CHUNK_SIZE, length - start));
+                    }
+                }
+                chunks = mapped;
+            }
+            for (MappedByteBuffer chunk: chunks) {
+                if (Thread.currentThread().isInterrupted())
+                    return;
+                chunk.load();
+            }
+        }
+
+        /**
+         * Estimate how much of the file is in the page cache.
+         *
+         * @return number of bytes in chunks that are fully resident
+         */
+        long residentBytes() {
+            MappedByteBuffer[] c = chunks;
+            if (c == null)
+                return 0;
+            long resident = 0;
+            for (MappedByteBuffer chunk: c) {
+                if (chunk.isLoaded())
+                    resident += chunk.capacity();
+            }
+            return resident;
+        }
+
+        @Override
+        public String toString() {
+            return file.toString();
+        }
+    }
+
+    /** The files to keep warm for an index, in order of priority. */
+    private static class IndexFiles {
+
+        final BlackLabIndex index;
+
+        final List<WarmFile> files;
+
+        IndexFiles(BlackLabIndex index, List<WarmFile> files) {
+            this.index = index;
+            this.files = files;
+        }
+    }
+
+    /** Indexes to keep warm, in the order they were opened */
+    private final List<IndexFiles> indexes = new ArrayList<>();
+
+    /** Thread that does the warming, or null if not started yet */
+    private ScheduledExecutorService executorService = null;
+
+    /** Bytes we tried to keep warm during the last pass (i.e. within the maximum size) */
+    private volatile long bytesTargeted = 0;
+
+    /**
+     * Start keeping an index's files warm (if enabled).
+     *
+     * @param index index to keep warm
+     */
+    public synchronized void add(BlackLabIndex index) {
+        BLConfigWarmUp s = settings();
+        if (!s.isEnabled())
+            return;
+        indexes.add(new IndexFiles(index, filesToWarm(index, s.getPriority())));
+        if (executorService == null) {
+            executorService = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "PageCacheWarmer");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            });
+            if (s.getRewarmIntervalSec() > 0) {
+                executorService.scheduleWithFixedDelay(this::warmAll, s.getRewarmIntervalSec(),
+                        s.getRewarmIntervalSec(), TimeUnit.SECONDS);
+            }
+        }
+        // Warm the new index now (files that are already warm are skipped quickly)
+        executorService.execute(this::warmAll);
+    }
+
+    /**
+     * Stop keeping an index's files warm.
+     *
+     * @param index index that is being closed
+     */
+    public synchronized void remove(BlackLabIndex index) {
+        indexes.removeIf(f -> f.index == index);
+    }
+
+    /**
+     * Stop warming and release all mappings.
+     */
+    public synchronized void close() {
+        if (executorService != null) {
+            executorService.shutdownNow();
+            executorService = null;
+        }
+        indexes.clear();
+    }
+
+    /**
+     * Determine the files to keep warm for an index, in order of priority.
+     *
+     * @param index the index
+     * @param priority what to warm, in order of priority (see {@link BLConfigWarmUp})
+     * @return files to warm
+     */
+    private static List<WarmFile> filesToWarm(BlackLabIndex index, List<String> priority) {
+        File indexDir = index.indexDirectory();
+        Set<File> dirsOrFiles = new LinkedHashSet<>();
+        for (String item: priority) {
+            if (item.startsWith("fi:")) {
+                String annotationName = item.substring(3);
+                for (AnnotatedField field: index.annotatedFields()) {
+                    for (Annotation annotation: field.annotations()) {
+                        if (annotation.hasForwardIndex() && (annotationName.equals("*") || annotation.name().equals(annotationName)))
+                            dirsOrFiles.add(ForwardIndexImplSeparate.determineAfiDir(indexDir, annotation));
+                    }
+                }
+            } else if (item.equals("cs")) {
+                for (AnnotatedField field: index.annotatedFields()) {
+                    if (field.hasContentStore())
+                        dirsOrFiles.add(new File(indexDir, "cs_" + field.name()));
+                }
+            } else if (item.equals("lucene")) {
+                File[] files = indexDir.listFiles(f -> f.isFile() && !f.getName().equals("write.lock"));
+                if (files != null)
+                    dirsOrFiles.addAll(Arrays.asList(files));
+            } else {
+                logger.warn("Unknown warm-up priority item (ignoring): " + item);
+            }
+        }
+        List<WarmFile> result = new ArrayList<>();
+        for (File f: dirsOrFiles) {
+            File[] files = f.isDirectory() ? f.listFiles(File::isFile) : new File[] { f };
+            if (files == null)
+                continue;
+            for (File file: files) {
+                if (file.length() > 0)
+                    result.add(new WarmFile(file));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Warm all files for all indexes, in order of priority, up to the maximum size.
+     */
+    private void warmAll() {
+        List<IndexFiles> toWarm;
+        synchronized (this) {
+            toWarm = new ArrayList<>(indexes);
+        }
+        long maxBytes = settings().getMaxSizeMegs() * 1_000_000L;
+        long start = System.currentTimeMillis();
+        long targeted = 0;
+        for (IndexFiles indexFiles: toWarm) {
+            for (WarmFile file: indexFiles.files) {
+                if (Thread.currentThread().isInterrupted())
+                    return;
+                if (maxBytes > 0 && targeted + file.length > maxBytes)
+                    continue; // doesn't fit; maybe a smaller file does
+                try {
+                    file.warm();
+                    targeted += file.length;
+                } catch (IOException e) {
+                    logger.warn("Could not warm file " + file + ": " + e.getMessage());
+                }
+            }
+        }
+        bytesTargeted = targeted;
+        if (logger.isDebugEnabled()) {
+            logger.debug("Page cache warm-up pass took " + (System.currentTimeMillis() - start) + "ms, "
+                    + targeted / 1_000_000 + " MB targeted, " + residentBytes() / 1_000_000 + " MB resident");
+        }
+    }
+
+    /**
+     * @return number of bytes we try to keep warm (within the maximum size)
+     */
+    public long bytesTargeted() {
+        return bytesTargeted;
+    }
+
+    /**
+     * Estimate how many bytes of the files we've warmed are currently in the page
+     * cache.
+     *
+     * Checked per chunk of 16 MB, which only counts if it's fully resident, so this
+     * is a lower bound.
+     *
+     * @return estimated number of resident bytes
+     */
+    public long residentBytes() {
+        List<IndexFiles> warmed;
+        synchronized (this) {
+            warmed = new ArrayList<>(indexes);
+        }
+        long resident = 0;
+        for (IndexFiles indexFiles: warmed) {
+            for (WarmFile file: indexFiles.files) {
+                resident += file.residentBytes();
+            }
+        }
+        return resident;
+    }
+
+    /**
+     * @return number of indexes we keep warm
+     */
+    public synchronized int numberOfIndexes() {
+        return indexes.size();
+    }
+}
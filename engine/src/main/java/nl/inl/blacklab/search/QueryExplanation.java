@@ -1,22 +1,160 @@
 package nl.inl.blacklab.search;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
+
+import nl.inl.blacklab.exceptions.BlackLabRuntimeException;
 import nl.inl.blacklab.search.lucene.BLSpanQuery;
+import nl.inl.blacklab.search.lucene.SpanQueryFiSeq;
 
 /**
  * Object used to explain how a SpanQuery is rewritten.
  */
 public class QueryExplanation {
 
+    /**
+     * How part of the rewritten query will be matched, and the estimates the
+     * optimizer based that decision on.
+     */
+    public static class PlanNode {
+
+        /** Matched using the reverse index (i.e. Lucene postings) */
+        public static final String REVERSE = "reverse";
+
+        /** Matched using the forward index, as (part of) an NFA */
+        public static final String FORWARD = "forward";
+
+        /** Anchor matched using the reverse index, the rest using an NFA */
+        public static final String FISEQ = "fiseq";
+
+        private final BLSpanQuery query;
+
+        private final String matchedUsing;
+
+        private final long estimatedNumberOfHits;
+
+        private final int forwardMatchingCost;
+
+        private final List<PlanNode> children;
+
+        private int segmentsUsingNfa = 0;
+
+        private int segmentsUsingJoin = 0;
+
+        PlanNode(BLSpanQuery query, boolean partOfNfa, IndexReader reader) {
+            this.query = query;
+            boolean isFiSeq = query instanceof SpanQueryFiSeq;
+            matchedUsing = partOfNfa ? FORWARD : (isFiSeq ? FISEQ : REVERSE);
+            estimatedNumberOfHits = query.reverseMatchingCost(reader);
+            forwardMatchingCost = query.forwardMatchingCost();
+            if (matchedUsing.equals(FISEQ)) {
+                // Determine how each index segment will be matched (based on estimates only)
+                SpanQueryFiSeq fiSeq = (SpanQueryFiSeq) query;
+                try {
+                    for (LeafReaderContext context: reader.leaves()) {
+                        if (fiSeq.useNfa(context))
+                            segmentsUsingNfa++;
+                        else
+                            segmentsUsingJoin++;
+                    }
+                } catch (IOException e) {
+                    throw BlackLabRuntimeException.wrap(e);
+                }
+            }
+            List<BLSpanQuery> clauses = query.getChildren();
+            List<PlanNode> nodes = new ArrayList<>(clauses.size());
+            for (int i = 0; i < clauses.size(); i++) {
+                // (the second child of a FISEQ is the query its NFA was made from)
+                boolean childPartOfNfa = partOfNfa || isFiSeq && i > 0;
+                nodes.add(new PlanNode(clauses.get(i), childPartOfNfa, reader));
+            }
+            children = Collections.unmodifiableList(nodes);
+        }
+
+        /**
+         * @return the query this node represents
+         */
+        public BLSpanQuery query() {
+            return query;
+        }
+
+        /**
+         * How will this query be matched?
+         *
+         * @return {@link #REVERSE}, {@link #FORWARD} or {@link #FISEQ}
+         */
+        public String matchedUsing() {
+            return matchedUsing;
+        }
+
+        /**
+         * @return estimated number of hits (see {@link BLSpanQuery#reverseMatchingCost(IndexReader)})
+         */
+        public long estimatedNumberOfHits() {
+            return estimatedNumberOfHits;
+        }
+
+        /**
+         * @return estimated cost of NFA matching (see {@link BLSpanQuery#forwardMatchingCost()})
+         */
+        public int forwardMatchingCost() {
+            return forwardMatchingCost;
+        }
+
+        public List<PlanNode> children() {
+            return children;
+        }
+
+        /**
+         * For a FISEQ: in how many index segments will we use NFA matching?
+         *
+         * @return number of segments, or 0 if this is not a FISEQ
+         */
+        public int segmentsUsingNfa() {
+            return segmentsUsingNfa;
+        }
+
+        /**
+         * For a FISEQ: in how many index segments will we join the anchor hits with
+         * the hits for the NFA query instead of using NFA matching?
+         *
+         * @return number of segments, or 0 if this is not a FISEQ
+         */
+        public int segmentsUsingJoin() {
+            return segmentsUsingJoin;
+        }
+    }
+
     private BLSpanQuery spanQuery;
 
     private BLSpanQuery rewrittenQuery;
 
+    private PlanNode plan;
+
     public QueryExplanation(BLSpanQuery spanQuery, BLSpanQuery rewrittenQuery) {
         super();
         this.spanQuery = spanQuery;
         this.rewrittenQuery = rewrittenQuery;
     }
 
+    /**
+     * Construct a query explanation, including how the rewritten query will be
+     * matched.
+     *
+     * @param spanQuery original query
+     * @param rewrittenQuery rewritten query
+     * @param reader index reader, for estimating the number of hits
+     */
+    public QueryExplanation(BLSpanQuery spanQuery, BLSpanQuery rewrittenQuery, IndexReader reader) {
+        this(spanQuery, rewrittenQuery);
+        plan = new PlanNode(rewrittenQuery, false, reader);
+    }
+
     public BLSpanQuery originalQuery() {
         return spanQuery;
     }
@@ -24,4 +162,13 @@ public class QueryExplanation {
     public BLSpanQuery rewrittenQuery() {
         return rewrittenQuery;
     }
+
+    /**
+     * Get how the rewritten query will be matched.
+     *
+     * @return the root of the query plan, or null if not available
+     */
+    public PlanNode plan() {
+        return plan;
+    }
 }
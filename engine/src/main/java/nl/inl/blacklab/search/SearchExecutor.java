@@ -0,0 +1,399 @@
+package nl.inl.blacklab.search;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded thread pool on which all searches and their subtasks run.
+ *
+ * The number of threads is fixed, so load spikes don't lead to thousands of threads
+ * competing for the CPU. Waiting tasks are kept in a priority queue, so interactive
+ * requests (e.g. a page of hits) get the next free thread before background tasks
+ * (e.g. counting the total number of hits). Tasks with the same priority run in
+ * the order they were submitted.
+ *
+ * Because the pool is bounded, a task must never simply wait for another task that
+ * is still queued; all threads might be doing just that. Two mechanisms prevent this:
+ * <ul>
+ * <li>{@link #invokeAllParallel(List)} has the calling thread work on the subtasks as
+ * well; other threads (at most {@link #maxThreadsPerSearch()} in total, including the
+ * calling thread) take subtasks from the same queue until it is empty.</li>
+ * <li>{@link #runIfQueued(Future)} lets a task that needs the result of another task
+ * run that task itself if no other thread has picked it up yet.</li>
+ * </ul>
+ *
+ * Optionally, when running on a JDK that supports them, top-level search jobs
+ * (see {@link #submitJob(Runnable, Priority)}) can each run on their own virtual
+ * thread instead. Jobs spend much of their time waiting for other jobs, which is
+ * almost free on a virtual thread. Their subtasks still run on the bounded pool.
+ */
+public class SearchExecutor extends ThreadPoolExecutor {
+
+    /** Priority of a task. Tasks with a higher priority are started first. */
+    public enum Priority {
+        /** A user is waiting for this (e.g. a page of hits) */
+        INTERACTIVE,
+
+        /** Default priority */
+        NORMAL,
+
+        /** Nobody is waiting for this right now (e.g. counting the total number of hits) */
+        BACKGROUND
+    }
+
+    /** How long may idle threads be kept around? */
+    private static final long KEEP_ALIVE_SEC = 60;
+
+    /** Priority of the task the current thread is running (subtasks inherit this) */
+    private static final ThreadLocal<Priority> currentPriority = ThreadLocal.withInitial(() -> Priority.NORMAL);
+
+    /** Used to keep tasks of the same priority in submission order */
+    private final AtomicLong nextSequenceNumber = new AtomicLong();
+
+    /** How many threads may a single search use? */
+    private final int maxThreadsPerSearch;
+
+    /** Our worker threads (so we can recognize them) */
+    private final ThreadGroup workerThreads = new ThreadGroup("SearchThreads");
+
+    /** If not null, top-level search jobs each get their own virtual thread from this executor */
+    private ExecutorService virtualThreadExecutor = null;
+
+    /**
+     * Create the executor.
+     *
+     * @param numberOfThreads maximum number of threads in the pool
+     * @param maxThreadsPerSearch maximum number of threads a single search may use
+     * @param threadNamePrefix prefix for worker thread names
+     */
+    public SearchExecutor(int numberOfThreads, int maxThreadsPerSearch, String threadNamePrefix) {
+        super(Math.max(1, numberOfThreads), Math.max(1, numberOfThreads), KEEP_ALIVE_SEC, TimeUnit.SECONDS,
+                new PriorityBlockingQueue<>());
+        this.maxThreadsPerSearch = Math.max(1, maxThreadsPerSearch);
+        allowCoreThreadTimeOut(true);
+        AtomicInteger threadCounter = new AtomicInteger(1);
+        setThreadFactory(runnable -> {
+            Thread worker = new Thread(workerThreads, runnable);
+            worker.setDaemon(false);
+            int threadNumber = threadCounter.getAndUpdate(i -> (i + 1) % 10000);
+            worker.setName(threadNamePrefix + threadNumber);
+            return worker;
+        });
+    }
+
+    /**
+     * How many threads may a single search use?
+     *
+     * @return maximum number of threads per search
+     */
+    public int maxThreadsPerSearch() {
+        return maxThreadsPerSearch;
+    }
+
+    /**
+     * Run top-level search jobs on virtual threads, if the JDK supports them.
+     *
+     * @param useVirtualThreads whether to use virtual threads for top-level jobs
+     * @return true if virtual threads will be used, false if not (disabled or not supported)
+     */
+    public synchronized boolean setUseVirtualThreads(boolean useVirtualThreads) {
+        if (useVirtualThreads && virtualThreadExecutor == null) {
+            try {
+                // (use reflection, so we still compile for and run on older JDKs)
+                Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+                virtualThreadExecutor = (ExecutorService) method.invoke(null);
+            } catch (ReflectiveOperationException e) {
+                // Not supported on this JDK
+                return false;
+            }
+        } else if (!useVirtualThreads && virtualThreadExecutor != null) {
+            virtualThreadExecutor.shutdown(); // running jobs will finish
+            virtualThreadExecutor = null;
+        }
+        return virtualThreadExecutor != null;
+    }
+
+    /**
+     * Are top-level search jobs run on virtual threads?
+     *
+     * @return true if they are
+     */
+    public boolean isUsingVirtualThreads() {
+        return virtualThreadExecutor != null;
+    }
+
+    /**
+     * Submit a top-level search job.
+     *
+     * If virtual threads are enabled, the job runs on its own virtual thread
+     * right away; its priority still applies to the subtasks it submits to our
+     * thread pool. Otherwise, it is queued for our thread pool.
+     *
+     * @param job job to run
+     * @param priority job priority
+     * @return future for the job
+     */
+    public Future<?> submitJob(Runnable job, Priority priority) {
+        ExecutorService virtual = virtualThreadExecutor;
+        if (virtual == null)
+            return submit(job, priority);
+        return virtual.submit(() -> {
+            // Make sure subtasks inherit the job's priority, like they do on our pool
+            Priority previous = currentPriority.get();
+            currentPriority.set(priority);
+            try {
+                job.run();
+            } finally {
+                currentPriority.set(previous);
+            }
+        });
+    }
+
+    /**
+     * Get the priority of the task the current thread is running.
+     *
+     * Tasks submitted without an explicit priority get this priority.
+     *
+     * @return current priority (NORMAL if not running a search task)
+     */
+    public static Priority currentPriority() {
+        return currentPriority.get();
+    }
+
+    @Override
+    public void shutdown() {
+        setUseVirtualThreads(false);
+        super.shutdown();
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        synchronized (this) {
+            if (virtualThreadExecutor != null) {
+                virtualThreadExecutor.shutdownNow();
+                virtualThreadExecutor = null;
+            }
+        }
+        return super.shutdownNow();
+    }
+
+    /**
+     * Is the current thread one of our worker threads?
+     *
+     * @return true if it is
+     */
+    public boolean isWorkerThread() {
+        return Thread.currentThread().getThreadGroup() == workerThreads;
+    }
+
+    /**
+     * Submit a task with the specified priority.
+     *
+     * @param task task to run
+     * @param priority task priority
+     * @return future for the task
+     */
+    public Future<?> submit(Runnable task, Priority priority) {
+        PrioritizedTask<Void> ftask = new PrioritizedTask<>(Executors.callable(task, null), priority);
+        execute(ftask);
+        return ftask;
+    }
+
+    /**
+     * Submit a task with the specified priority.
+     *
+     * @param task task to run
+     * @param priority task priority
+     * @param <T> result type
+     * @return future for the task
+     */
+    public <T> Future<T> submit(Callable<T> task, Priority priority) {
+        PrioritizedTask<T> ftask = new PrioritizedTask<>(task, priority);
+        execute(ftask);
+        return ftask;
+    }
+
+    @Override
+    protected <T> RunnableFuture<T> newTaskFor(Callable<T> callable) {
+        return new PrioritizedTask<>(callable, currentPriority.get());
+    }
+
+    @Override
+    protected <T> RunnableFuture<T> newTaskFor(Runnable runnable, T value) {
+        return new PrioritizedTask<>(Executors.callable(runnable, value), currentPriority.get());
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        // Our queue can only contain prioritized tasks
+        super.execute(command instanceof PrioritizedTask ? command : newTaskFor(command, null));
+    }
+
+    /**
+     * Run the subtasks of a search in parallel and return their results.
+     *
+     * The calling thread works on the subtasks as well, and at most
+     * {@link #maxThreadsPerSearch()} threads (including the calling thread) work
+     * on them at the same time. Each thread takes the next subtask from a shared
+     * queue as soon as it's done with the previous one, so it doesn't matter much
+     * if some subtasks take longer than others.
+     *
+     * If the calling thread is interrupted or a subtask throws an exception, the
+     * remaining subtasks are cancelled.
+     *
+     * @param tasks subtasks to run
+     * @param <T> result type
+     * @return results of the subtasks, in the same order
+     * @throws InterruptedException if the calling thread was interrupted
+     * @throws ExecutionException if a subtask threw an exception
+     */
+    public <T> List<T> invokeAllParallel(List<? extends Callable<T>> tasks) throws InterruptedException, ExecutionException {
+        List<FutureTask<T>> futures = new ArrayList<>(tasks.size());
+        for (Callable<T> task: tasks) {
+            futures.add(new FutureTask<>(task));
+        }
+        Queue<FutureTask<T>> toDo = new ConcurrentLinkedQueue<>(futures);
+        Runnable worker = () -> {
+            FutureTask<T> task;
+            while ((task = toDo.poll()) != null) {
+                task.run();
+            }
+        };
+
+        // Enlist the help of other threads (if possible), then help out ourselves
+        List<Future<?>> helpers = new ArrayList<>();
+        int numberOfHelpers = Math.min(maxThreadsPerSearch, tasks.size()) - 1;
+        Priority priority = currentPriority.get();
+        try {
+            for (int i = 0; i < numberOfHelpers; i++) {
+                helpers.add(submit(worker, priority));
+            }
+            worker.run();
+
+            // Wait for any subtasks still running on other threads
+            List<T> results = new ArrayList<>(futures.size());
+            for (FutureTask<T> future: futures) {
+                results.add(future.get());
+            }
+            return results;
+        } finally {
+            toDo.clear(); // no-op unless we were interrupted or a subtask failed
+            helpers.forEach(f -> f.cancel(false)); // they'll be done soon, but may not have started yet
+            for (FutureTask<T> future: futures) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    /** Processes a range of items (see {@link #invokeInRanges(int, int, RangeTask)}). */
+    @FunctionalInterface
+    public interface RangeTask<T> {
+        /**
+         * Process a range of items.
+         *
+         * @param from first item to process
+         * @param to item after the last one to process
+         * @return result for this range
+         */
+        T process(int from, int to);
+    }
+
+    /**
+     * Divide items into consecutive ranges and process those in parallel.
+     *
+     * There are at most {@link #maxThreadsPerSearch()} ranges, each containing at
+     * least minItemsPerRange items (unless there's only one range). If there's only
+     * one range, it is processed in the calling thread. Otherwise, the ranges are run
+     * as subtasks of the current search, see {@link #invokeAllParallel(List)}.
+     *
+     * @param numberOfItems number of items to process
+     * @param minItemsPerRange minimum number of items per range
+     * @param task processes a range of items
+     * @param <T> result type
+     * @return results for each range, in order
+     * @throws InterruptedException if the calling thread was interrupted
+     * @throws ExecutionException if a subtask threw an exception
+     */
+    public <T> List<T> invokeInRanges(int numberOfItems, int minItemsPerRange, RangeTask<T> task) throws InterruptedException, ExecutionException {
+        int numberOfRanges = Math.max(1, Math.min(maxThreadsPerSearch, numberOfItems / Math.max(1, minItemsPerRange)));
+        if (numberOfRanges == 1)
+            return Collections.singletonList(task.process(0, numberOfItems));
+        List<Callable<T>> tasks = new ArrayList<>(numberOfRanges);
+        for (int i = 0; i < numberOfRanges; i++) {
+            int from = (int) ((long) numberOfItems * i / numberOfRanges);
+            int to = (int) ((long) numberOfItems * (i + 1) / numberOfRanges);
+            tasks.add(() -> task.process(from, to));
+        }
+        return invokeAllParallel(tasks);
+    }
+
+    /**
+     * If the task hasn't been picked up by a worker thread yet, run it in this thread.
+     *
+     * A task running on our thread pool that needs the result of another task should
+     * call this before waiting for it. That way, the thread pool can't fill up with
+     * tasks waiting for tasks that are still in the queue.
+     *
+     * Does nothing if this is not one of our worker threads (e.g. a request thread,
+     * which should just wait its turn) or if the future wasn't returned by this
+     * executor.
+     *
+     * @param future future returned by this executor
+     */
+    public void runIfQueued(Future<?> future) {
+        if (future instanceof PrioritizedTask && isWorkerThread() && !future.isDone()) {
+            // Remove it from the queue, so the worker threads don't have to skip it later
+            // (if a worker thread started it in the meantime, run() below does nothing)
+            PrioritizedTask<?> task = (PrioritizedTask<?>) future;
+            if (remove(task))
+                task.run();
+        }
+    }
+
+    /** A task with a priority, that can be placed in our priority queue. */
+    private class PrioritizedTask<T> extends FutureTask<T> implements Comparable<PrioritizedTask<?>> {
+
+        private final Priority priority;
+
+        private final long sequenceNumber;
+
+        PrioritizedTask(Callable<T> callable, Priority priority) {
+            super(callable);
+            this.priority = priority;
+            this.sequenceNumber = nextSequenceNumber.getAndIncrement();
+        }
+
+        @Override
+        public void run() {
+            Priority previous = currentPriority.get();
+            currentPriority.set(priority);
+            try {
+                super.run();
+            } finally {
+                currentPriority.set(previous);
+            }
+        }
+
+        @Override
+        public int compareTo(PrioritizedTask<?> o) {
+            int result = priority.compareTo(o.priority);
+            return result != 0 ? result : Long.compare(sequenceNumber, o.sequenceNumber);
+        }
+    }
+}
@@ -1,17 +1,23 @@
 package nl.inl.blacklab.search;
 
+import java.nio.IntBuffer;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 
 import org.eclipse.collections.api.map.primitive.MutableIntIntMap;
 import org.eclipse.collections.api.tuple.primitive.IntIntPair;
 import org.eclipse.collections.impl.factory.primitive.IntIntMaps;
+import org.eclipse.collections.impl.list.mutable.primitive.IntArrayList;
 
+import nl.inl.blacklab.exceptions.BlackLabRuntimeException;
+import nl.inl.blacklab.exceptions.InterruptedSearch;
+import nl.inl.blacklab.forwardindex.AnnotationForwardIndex;
 import nl.inl.blacklab.forwardindex.FiidLookup;
 import nl.inl.blacklab.forwardindex.Terms;
 import nl.inl.blacklab.resultproperty.PropertyValue;
@@ -19,8 +25,8 @@ import nl.inl.blacklab.resultproperty.ResultProperty;
 import nl.inl.blacklab.search.indexmetadata.Annotation;
 import nl.inl.blacklab.search.indexmetadata.MatchSensitivity;
 import nl.inl.blacklab.search.results.ContextSize;
-import nl.inl.blacklab.search.results.Contexts;
 import nl.inl.blacklab.search.results.Hits;
+import nl.inl.blacklab.search.results.Hits.HitsArrays;
 import nl.inl.blacklab.search.results.QueryInfo;
 import nl.inl.blacklab.search.results.ResultGroups;
 import nl.inl.blacklab.search.results.ResultsList;
@@ -38,6 +44,12 @@ public class TermFrequencyList extends ResultsList<TermFrequency, ResultProperty
 
     /**
      * Count occurrences of context words around hit.
+     *
+     * Documents are processed in parallel on the search executor, each subtask counting
+     * term ids in its own map, reading the context windows straight from the forward
+     * index (no Contexts object is built). The merged counts are then folded per sort
+     * position, so only one string per distinct (desensitized) term is created.
+     *
      * @param hits hits to get collocations for
      * @param annotation annotation to use for the collocations, or null if default
      * @param contextSize how many words around hits to use
@@ -46,7 +58,7 @@ public class TermFrequencyList extends ResultsList<TermFrequency, ResultProperty
      *
      * @return the frequency of each occurring token
      */
-    public synchronized static TermFrequencyList collocations(Hits hits, Annotation annotation, ContextSize contextSize, MatchSensitivity sensitivity, boolean sort) {
+    public static TermFrequencyList collocations(Hits hits, Annotation annotation, ContextSize contextSize, MatchSensitivity sensitivity, boolean sort) {
         BlackLabIndex index = hits.index();
         if (annotation == null)
             annotation = index.mainAnnotatedField().mainAnnotation();
@@ -55,56 +67,136 @@ public class TermFrequencyList extends ResultsList<TermFrequency, ResultProperty
         if (sensitivity == null)
             sensitivity = annotation.sensitivity(index.defaultMatchSensitivity()).sensitivity();
 
-        List<Annotation> annotations = Arrays.asList(annotation);
-        List<FiidLookup> fiidLookups = FiidLookup.getList(annotations, hits.queryInfo().index().reader());
-        Contexts contexts = new Contexts(hits, annotations, contextSize, fiidLookups);
-        MutableIntIntMap countPerWord = IntIntMaps.mutable.empty();
-        for (int[] context: contexts) {
-            // Count words
-            int contextHitStart = context[Contexts.HIT_START_INDEX];
-            int contextRightStart = context[Contexts.RIGHT_START_INDEX];
-            int contextLength = context[Contexts.LENGTH_INDEX];
-            int indexInContent = Contexts.NUMBER_OF_BOOKKEEPING_INTS;
-            for (int i = 0; i < contextLength; i++, indexInContent++) {
-                if (i >= contextHitStart && i < contextRightStart)
-                    continue; // don't count words in hit itself, just around [option..?]
-                int wordId = context[indexInContent];
-                int count;
-                if (!countPerWord.containsKey(wordId))
-                    count = 1;
-                else
-                    count = countPerWord.get(wordId) + 1;
-                countPerWord.put(wordId, count);
+        // Find the runs of hits in the same document; these are our units of work
+        // (all hits have been read after size(), so we can use the arrays without locking)
+        int numberOfHits = hits.size();
+        HitsArrays hitsArrays = hits.hitsArrays();
+        IntArrayList docs = hitsArrays.docs(), starts = hitsArrays.starts(), ends = hitsArrays.ends();
+        IntArrayList runStarts = new IntArrayList();
+        for (int i = 0; i < numberOfHits; i++) {
+            if (i == 0 || docs.get(i) != docs.get(i - 1))
+                runStarts.add(i);
+        }
+        runStarts.add(numberOfHits);
+        int numberOfRuns = runStarts.size() - 1;
+
+        // Count term ids around the hits, in parallel if there's enough work
+        AnnotationForwardIndex forwardIndex = index.annotationForwardIndex(annotation);
+        FiidLookup fiidLookup = FiidLookup.get(index.reader(), annotation);
+        MutableIntIntMap countPerWord;
+        int numberOfTasks = Math.max(1, Math.min(index.blackLab().maxThreadsPerSearch(), numberOfRuns / MIN_DOCS_PER_COLLOCATIONS_TASK));
+        if (numberOfTasks == 1) {
+            countPerWord = countContextWords(docs, starts, ends, runStarts, 0, numberOfRuns, fiidLookup, forwardIndex, contextSize);
+        } else {
+            List<Callable<MutableIntIntMap>> tasks = new ArrayList<>();
+            final ContextSize fContextSize = contextSize;
+            for (int task = 0; task < numberOfTasks; task++) {
+                int firstRun = (int) ((long) numberOfRuns * task / numberOfTasks);
+                int lastRun = (int) ((long) numberOfRuns * (task + 1) / numberOfTasks);
+                tasks.add(() -> countContextWords(docs, starts, ends, runStarts, firstRun,
+                        lastRun, fiidLookup, forwardIndex, fContextSize));
+            }
+            try {
+                List<MutableIntIntMap> taskCounts = index.blackLab().searchExecutorService().invokeAllParallel(tasks);
+                countPerWord = taskCounts.get(0);
+                for (int task = 1; task < numberOfTasks; task++) {
+                    MutableIntIntMap target = countPerWord;
+                    taskCounts.get(task).forEachKeyValue(target::addToValue);
+                }
+            } catch (InterruptedException e) {
+                throw new InterruptedSearch(e);
+            } catch (ExecutionException e) {
+                throw BlackLabRuntimeException.wrap(e.getCause());
             }
         }
 
-        // Get the actual words from the sort positions
-        Terms terms = index.annotationForwardIndex(contexts.annotations().get(0)).terms();
-        Map<String, Integer> wordFreq = new HashMap<>();
+        // Fold the term ids per sort position, remembering a term to represent each position
+        Terms terms = forwardIndex.terms();
+        MutableIntIntMap countPerSortPosition = IntIntMaps.mutable.empty();
+        MutableIntIntMap termPerSortPosition = IntIntMaps.mutable.empty();
         for (IntIntPair e : countPerWord.keyValuesView()) {
             int wordId = e.getOne();
-            int count = e.getTwo();
-            String word = terms.get(wordId);
+            int sortPosition = terms.idToSortPosition(wordId, sensitivity);
+            countPerSortPosition.addToValue(sortPosition, e.getTwo());
+            termPerSortPosition.getIfAbsentPut(sortPosition, wordId);
+        }
+
+        // Get the actual words from the sort positions
+        Map<String, Integer> wordFreq = new HashMap<>();
+        for (IntIntPair e : countPerSortPosition.keyValuesView()) {
+            String word = terms.get(termPerSortPosition.get(e.getOne()));
             if (!sensitivity.isDiacriticsSensitive()) {
                 word = StringUtil.stripAccents(word);
             }
             if (!sensitivity.isCaseSensitive()) {
                 word = word.toLowerCase();
             }
-            // Note that multiple ids may map to the same word (because of sensitivity settings)
-            // Here, those groups are merged.
-            Integer mergedCount = wordFreq.get(word);
-            if (mergedCount == null) {
-                mergedCount = 0;
-            }
-            mergedCount += count;
-            wordFreq.put(word, mergedCount);
+            // Different sort positions may still yield the same word (depending on collator
+            // and sensitivity settings). Here, those groups are merged.
+            wordFreq.merge(word, e.getTwo(), Integer::sum);
         }
 
         // Transfer from map to list
         return new TermFrequencyList(hits.queryInfo(), wordFreq, sort);
     }
 
+    /** Minimum number of documents a parallel collocations task should process */
+    private static final int MIN_DOCS_PER_COLLOCATIONS_TASK = 100;
+
+    /**
+     * Count the term ids around the hits in a range of documents.
+     *
+     * @param docs document id per hit
+     * @param starts start per hit
+     * @param ends end per hit
+     * @param runStarts index of the first hit per document, plus the total number of hits
+     * @param firstRun first document (index into runStarts) to process
+     * @param lastRun document after the last one to process
+     * @param fiidLookup to look up forward index ids
+     * @param forwardIndex forward index to get the words from
+     * @param contextSize how many words around hits to use
+     * @return count per term id
+     */
+    private static MutableIntIntMap countContextWords(IntArrayList docs, IntArrayList starts, IntArrayList ends,
+            IntArrayList runStarts, int firstRun, int lastRun, FiidLookup fiidLookup,
+            AnnotationForwardIndex forwardIndex, ContextSize contextSize) {
+        MutableIntIntMap countPerWord = IntIntMaps.mutable.empty();
+        for (int run = firstRun; run < lastRun; run++) {
+            if (Thread.currentThread().isInterrupted())
+                throw new InterruptedSearch();
+            int runStart = runStarts.get(run);
+            int runEnd = runStarts.get(run + 1);
+            int fiid = fiidLookup.get(docs.get(runStart));
+            int docLength = forwardIndex.docLength(fiid);
+
+            // Determine the part of the document we need and get a view of it
+            int windowStart = Integer.MAX_VALUE, windowEnd = 0;
+            for (int i = runStart; i < runEnd; i++) {
+                windowStart = Math.min(windowStart, Math.max(0, starts.get(i) - contextSize.left()));
+                windowEnd = Math.max(windowEnd, Math.min(docLength, ends.get(i) + contextSize.right()));
+            }
+            if (windowStart >= windowEnd)
+                continue;
+            IntBuffer window = forwardIndex.retrievePartView(fiid, windowStart, windowEnd);
+            if (window == null)
+                throw new BlackLabRuntimeException("Document was deleted from forward index. fiid = " + fiid);
+
+            // Count words around each hit (not in the hit itself)
+            for (int i = runStart; i < runEnd; i++) {
+                int hitStart = starts.get(i);
+                int hitEnd = ends.get(i);
+                int from = Math.max(0, hitStart - contextSize.left());
+                int to = Math.min(docLength, hitEnd + contextSize.right());
+                for (int pos = from; pos < to; pos++) {
+                    if (pos >= hitStart && pos < hitEnd)
+                        continue; // don't count words in hit itself, just around [option..?]
+                    countPerWord.addToValue(window.get(pos - windowStart), 1);
+                }
+            }
+        }
+        return countPerWord;
+    }
+
     List<TermFrequency> list;
 
     long totalFrequency = 0;
@@ -0,0 +1,372 @@
+package nl.inl.blacklab.search.fimatch;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import nl.inl.blacklab.exceptions.BlackLabRuntimeException;
+
+/**
+ * A DFA compiled from an acyclic NFA, for faster forward index matching.
+ *
+ * Interpreting an NFA means following every branch recursively. A DFA instead
+ * keeps track of all NFA states we could be in at once (the classic subset
+ * construction). Our input alphabet is the set of all term ids, so instead of
+ * a transition per term id, each DFA state has a list of token tests (the NFA
+ * token states it contains) and a transition table indexed by which of those
+ * tests matched the current token (the token's "class"). Matching then becomes
+ * a tight loop of token tests and table lookups.
+ *
+ * Only NFAs without cycles, consisting of token, regex/wildcard/prefix and OR
+ * states, are compiled; others (e.g. containing NOT or AND states) are left to
+ * the NFA interpreter. If the DFA would become too large, we don't compile
+ * either.
+ *
+ * The NFA must have been finished and its annotation numbers looked up before
+ * compiling.
+ */
+public class Dfa {
+
+    /** Maximum number of DFA states before we give up */
+    private static final int MAX_STATES = 1000;
+
+    /**
+     * Maximum number of token tests per DFA state before we give up (the
+     * transition table for a state has 2^tests entries)
+     */
+    private static final int MAX_TOKEN_TESTS_PER_STATE = 8;
+
+    /** Transition table value meaning there can be no more matches */
+    private static final int NO_STATE = -1;
+
+    /** Should we compile NFAs to DFAs where possible? (disable for testing) */
+    private static boolean enabled = true;
+
+    public static void setEnabled(boolean enabled) {
+        Dfa.enabled = enabled;
+    }
+
+    /**
+     * Compile an NFA into a DFA, if possible.
+     *
+     * @param startingState starting state of the NFA (must have been finished and
+     *            have its annotation numbers looked up)
+     * @return the DFA, or null if the NFA can't be compiled (cyclic, unsupported
+     *         states, too large) or compiling is disabled
+     */
+    public static Dfa fromNfa(NfaState startingState) {
+        if (!enabled || !canCompile(startingState, Collections.newSetFromMap(new IdentityHashMap<>()),
+                Collections.newSetFromMap(new IdentityHashMap<>())))
+            return null;
+        return new Builder(startingState).build();
+    }
+
+    /**
+     * Check that the NFA is acyclic and only contains states we can compile.
+     *
+     * @param state state to check
+     * @param onPath states on the path from the starting state to here
+     * @param checked states we've already checked
+     * @return true if we can compile the NFA starting at state
+     */
+    private static boolean canCompile(NfaState state, Set<NfaState> onPath, Set<NfaState> checked) {
+        if (state == null || state instanceof NfaStateMatch || checked.contains(state))
+            return true;
+        if (onPath.contains(state))
+            return false; // cycle
+        List<NfaState> successors;
+        if (state instanceof NfaTokenState) {
+            successors = Collections.singletonList(((NfaTokenState) state).getNextState());
+        } else if (state instanceof NfaStateOr) {
+            successors = ((NfaStateOr) state).nextStates;
+        } else if (state instanceof NfaStateOrAcyclic) {
+            NfaStateOrAcyclic or = (NfaStateOrAcyclic) state;
+            successors = new ArrayList<>(or.clauses);
+            successors.add(or.nextState);
+        } else {
+            return false; // e.g. NOT or AND
+        }
+        onPath.add(state);
+        for (NfaState successor : successors) {
+            if (!canCompile(successor, onPath, checked))
+                return false;
+        }
+        onPath.remove(state);
+        checked.add(state);
+        return true;
+    }
+
+    /** For each DFA state: have we found a match when we reach it? */
+    private final boolean[] accepting;
+
+    /** For each DFA state: the token tests to perform to find the next state */
+    private final NfaTokenState[][] tokenTests;
+
+    /**
+     * For each DFA state: the next state, indexed by a bitmask of which token tests
+     * matched, or NO_STATE if there can be no more matches.
+     */
+    private final int[][] transitions;
+
+    private Dfa(boolean[] accepting, NfaTokenState[][] tokenTests, int[][] transitions) {
+        this.accepting = accepting;
+        this.tokenTests = tokenTests;
+        this.transitions = transitions;
+    }
+
+    /**
+     * Find all matches for this DFA in the token source.
+     *
+     * @param fiDoc where to read tokens from
+     * @param pos position to start matching at
+     * @param direction matching direction
+     * @param results (out) the match ends found, if any (cleared first; may be
+     *            reused between calls)
+     */
+    public void findMatches(ForwardIndexDocument fiDoc, int pos, int direction, MatchEnds results) {
+        results.clear();
+        int state = 0;
+        while (true) {
+            if (accepting[state])
+                results.add(pos);
+            NfaTokenState[] tests = tokenTests[state];
+            if (tests.length == 0)
+                break;
+            int tokenClass = 0;
+            for (int i = 0; i < tests.length; i++) {
+                if (tests[i].tokenMatches(fiDoc, pos))
+                    tokenClass |= 1 << i;
+            }
+            state = transitions[state][tokenClass];
+            if (state == NO_STATE)
+                break;
+            pos += direction;
+        }
+    }
+
+    /**
+     * Get the number of states in this DFA.
+     *
+     * @return number of states
+     */
+    public int numberOfStates() {
+        return accepting.length;
+    }
+
+    @Override
+    public String toString() {
+        return "DFA(" + numberOfStates() + " states)";
+    }
+
+    /**
+     * Where to continue after reaching the match state of an NFA fragment.
+     *
+     * The clauses of an acyclic OR state end in the match state, after which we
+     * continue at the OR state's next state. The continuation records that
+     * (including the outer continuation if the OR state is nested).
+     */
+    private static final class Continuation {
+
+        final NfaState state;
+
+        final Continuation outer;
+
+        Continuation(NfaState state, Continuation outer) {
+            this.state = state;
+            this.outer = outer;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o)
+                return true;
+            if (!(o instanceof Continuation))
+                return false;
+            Continuation that = (Continuation) o;
+            return state == that.state && Objects.equals(outer, that.outer);
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(state) * 31 + Objects.hashCode(outer);
+        }
+    }
+
+    /** An NFA token state we could be in, with its continuation. */
+    private static final class Item {
+
+        final NfaTokenState state;
+
+        final Continuation continuation;
+
+        Item(NfaTokenState state, Continuation continuation) {
+            this.state = state;
+            this.continuation = continuation;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o)
+                return true;
+            if (!(o instanceof Item))
+                return false;
+            Item that = (Item) o;
+            return state == that.state && Objects.equals(continuation, that.continuation);
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(state) * 31 + Objects.hashCode(continuation);
+        }
+    }
+
+    /** A DFA state being built: the NFA token states we could be in, and whether we've found a match. */
+    private static final class StateKey {
+
+        final Set<Item> items = new LinkedHashSet<>();
+
+        boolean accepting = false;
+
+        boolean isEmpty() {
+            return items.isEmpty() && !accepting;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o)
+                return true;
+            if (!(o instanceof StateKey))
+                return false;
+            StateKey that = (StateKey) o;
+            return accepting == that.accepting && items.equals(that.items);
+        }
+
+        @Override
+        public int hashCode() {
+            return items.hashCode() * 2 + (accepting ? 1 : 0);
+        }
+    }
+
+    /** Performs the subset construction. */
+    private static final class Builder {
+
+        private final List<StateKey> states = new ArrayList<>();
+
+        private final Map<StateKey, Integer> stateIds = new HashMap<>();
+
+        private final List<NfaTokenState[]> tokenTests = new ArrayList<>();
+
+        private final List<int[]> transitions = new ArrayList<>();
+
+        Builder(NfaState startingState) {
+            StateKey start = new StateKey();
+            addClosure(startingState, null, start);
+            stateId(start);
+        }
+
+        /**
+         * Add the NFA token states reachable from state without consuming a token.
+         *
+         * @param state NFA state
+         * @param continuation where to continue when reaching the match state
+         * @param dfaState DFA state to add to
+         */
+        private void addClosure(NfaState state, Continuation continuation, StateKey dfaState) {
+            if (state == null || state instanceof NfaStateMatch) {
+                if (continuation == null)
+                    dfaState.accepting = true;
+                else
+                    addClosure(continuation.state, continuation.outer, dfaState);
+            } else if (state instanceof NfaTokenState) {
+                dfaState.items.add(new Item((NfaTokenState) state, continuation));
+            } else if (state instanceof NfaStateOr) {
+                for (NfaState nextState : ((NfaStateOr) state).nextStates) {
+                    addClosure(nextState, continuation, dfaState);
+                }
+            } else if (state instanceof NfaStateOrAcyclic) {
+                NfaStateOrAcyclic or = (NfaStateOrAcyclic) state;
+                Continuation clauseContinuation = new Continuation(or.nextState, continuation);
+                for (NfaState clause : or.clauses) {
+                    addClosure(clause, clauseContinuation, dfaState);
+                }
+            } else {
+                throw new BlackLabRuntimeException("Cannot compile NFA state to DFA: " + state.getClass().getSimpleName());
+            }
+        }
+
+        /**
+         * Get the id for a DFA state, adding it if it's new.
+         *
+         * @param dfaState the state
+         * @return its id, or NO_STATE if it's too many states
+         */
+        private int stateId(StateKey dfaState) {
+            Integer id = stateIds.get(dfaState);
+            if (id == null) {
+                if (states.size() >= MAX_STATES)
+                    return NO_STATE;
+                id = states.size();
+                states.add(dfaState);
+                stateIds.put(dfaState, id);
+            }
+            return id;
+        }
+
+        /**
+         * Build the DFA.
+         *
+         * @return the DFA, or null if it would be too large
+         */
+        Dfa build() {
+            for (int i = 0; i < states.size(); i++) { // (states are added as we go)
+                StateKey dfaState = states.get(i);
+
+                // Which token tests do we need to perform in this state?
+                Map<NfaTokenState, Integer> testIndex = new IdentityHashMap<>();
+                for (Item item : dfaState.items) {
+                    if (!testIndex.containsKey(item.state))
+                        testIndex.put(item.state, testIndex.size());
+                }
+                if (testIndex.size() > MAX_TOKEN_TESTS_PER_STATE)
+                    return null;
+                NfaTokenState[] tests = new NfaTokenState[testIndex.size()];
+                for (Map.Entry<NfaTokenState, Integer> e : testIndex.entrySet()) {
+                    tests[e.getValue()] = e.getKey();
+                }
+
+                // Determine the next state for each combination of test outcomes
+                int[] stateTransitions = new int[tests.length == 0 ? 0 : 1 << tests.length];
+                for (int tokenClass = 0; tokenClass < stateTransitions.length; tokenClass++) {
+                    StateKey next = new StateKey();
+                    for (Item item : dfaState.items) {
+                        if ((tokenClass & (1 << testIndex.get(item.state))) != 0)
+                            addClosure(item.state.getNextState(), item.continuation, next);
+                    }
+                    if (next.isEmpty()) {
+                        stateTransitions[tokenClass] = NO_STATE;
+                    } else {
+                        int nextId = stateId(next);
+                        if (nextId == NO_STATE)
+                            return null; // too many states
+                        stateTransitions[tokenClass] = nextId;
+                    }
+                }
+                tokenTests.add(tests);
+                transitions.add(stateTransitions);
+            }
+
+            boolean[] accepting = new boolean[states.size()];
+            for (int i = 0; i < accepting.length; i++) {
+                accepting[i] = states.get(i).accepting;
+            }
+            return new Dfa(accepting, tokenTests.toArray(new NfaTokenState[0][]), transitions.toArray(new int[0][]));
+        }
+    }
+
+}
@@ -1,5 +1,7 @@
 package nl.inl.blacklab.search.fimatch;
 
+import java.nio.IntBuffer;
+
 import org.apache.lucene.index.LeafReader;
 import org.eclipse.collections.api.set.primitive.MutableIntSet;
 
@@ -46,6 +48,16 @@ public abstract class ForwardIndexAccessor {
     public abstract void getTermNumbers(MutableIntSet results, int annotationNumber, String annotationValue,
             MatchSensitivity sensitivity);
 
+    /**
+     * Get the number of terms in an annotation's terms list.
+     *
+     * Term ids for this annotation range from 0 to this number (exclusive).
+     *
+     * @param annotationNumber annotation to get the number of terms for
+     * @return number of terms
+     */
+    public abstract int getNumberOfTerms(int annotationNumber);
+
     /**
      * Get the number of annotations
      * 
@@ -87,15 +99,16 @@ public abstract class ForwardIndexAccessor {
         public abstract int getDocLength(int docId);
 
         /**
-         * Get a chunk of tokens from a forward index
+         * Get all tokens in a document from a forward index.
+         *
+         * Implementations should return a view directly into the forward index if
+         * possible, so nothing needs to be copied.
          *
          * @param annotIndex annotation to get tokens for
          * @param docId Lucene document id
-         * @param start first token to get
-         * @param end one more than the last token to get
-         * @return document length in tokens
+         * @return the document's tokens (index 0 is the first token)
          */
-        abstract int[] getChunk(int annotIndex, int docId, int start, int end);
+        abstract IntBuffer getTokens(int annotIndex, int docId);
 
         /**
          * Get the forward index id for the specified annotation and document.
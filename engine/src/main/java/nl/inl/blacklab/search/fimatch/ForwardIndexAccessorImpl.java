@@ -1,5 +1,6 @@
 package nl.inl.blacklab.search.fimatch;
 
+import java.nio.IntBuffer;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -8,6 +9,7 @@ import java.util.Map;
 import org.apache.lucene.index.LeafReader;
 import org.eclipse.collections.api.set.primitive.MutableIntSet;
 
+import nl.inl.blacklab.exceptions.BlackLabRuntimeException;
 import nl.inl.blacklab.forwardindex.AnnotationForwardIndex;
 import nl.inl.blacklab.forwardindex.Terms;
 import nl.inl.blacklab.search.BlackLabIndex;
@@ -77,6 +79,11 @@ class ForwardIndexAccessorImpl extends ForwardIndexAccessor {
         terms.get(annotationNumber).indexOf(results, annotationValue, sensitivity);
     }
 
+    @Override
+    public int getNumberOfTerms(int annotationNumber) {
+        return terms.get(annotationNumber).numberOfTerms();
+    }
+
     public int getTermAtPosition(int fiid, int annotationNumber, int pos) {
         return fis.get(annotationNumber).getToken(fiid, pos);
     }
@@ -141,15 +148,13 @@ class ForwardIndexAccessorImpl extends ForwardIndexAccessor {
             return fis.get(0).docLength(getFiid(0, docId)) - 1;
         }
 
-        int[] starts = { 0 };
-        int[] ends = { 0 };
-
         @Override
-        public int[] getChunk(int annotIndex, int docId, int start, int end) {
-            starts[0] = start;
-            ends[0] = end;
+        public IntBuffer getTokens(int annotIndex, int docId) {
             int fiid = fiidGetter(annotIndex).getFieldValue(docId);
-            return fis.get(annotIndex).retrievePartsInt(fiid, starts, ends).get(0);
+            IntBuffer tokens = fis.get(annotIndex).retrievePartView(fiid, -1, -1);
+            if (tokens == null)
+                throw new BlackLabRuntimeException("Tried to read deleted document from forward index: " + docId);
+            return tokens;
         }
 
         @Override
@@ -1,10 +1,49 @@
 package nl.inl.blacklab.search.fimatch;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import nl.inl.blacklab.search.indexmetadata.MatchSensitivity;
 
 /** Source of tokens for the forward index matching process. */
 public abstract class ForwardIndexDocument {
 
+    /**
+     * Sets of match ends that NFA states can use while matching this document,
+     * so they don't need to allocate new ones each time.
+     */
+    private final List<MatchEnds> matchEndsPool = new ArrayList<>();
+
+    /** How many of the sets in matchEndsPool are currently in use */
+    private int matchEndsInUse = 0;
+
+    /**
+     * Get an empty set of match ends to use while matching.
+     *
+     * Must be returned using {@link #returnMatchEnds(MatchEnds)} when done, in
+     * reverse order of borrowing.
+     *
+     * @return empty set of match ends
+     */
+    MatchEnds borrowMatchEnds() {
+        if (matchEndsInUse == matchEndsPool.size())
+            matchEndsPool.add(new MatchEnds());
+        MatchEnds matchEnds = matchEndsPool.get(matchEndsInUse);
+        matchEndsInUse++;
+        matchEnds.clear();
+        return matchEnds;
+    }
+
+    /**
+     * Return a set of match ends we borrowed using {@link #borrowMatchEnds()}.
+     *
+     * @param matchEnds the set to return
+     */
+    void returnMatchEnds(MatchEnds matchEnds) {
+        matchEndsInUse--;
+        assert matchEndsPool.get(matchEndsInUse) == matchEnds : "match ends must be returned in reverse order";
+    }
+
     /**
      * Return token at specified position.
      *
@@ -1,7 +1,6 @@
 package nl.inl.blacklab.search.fimatch;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.nio.IntBuffer;
 
 import nl.inl.blacklab.forwardindex.Terms;
 import nl.inl.blacklab.search.fimatch.ForwardIndexAccessor.ForwardIndexAccessorLeafReader;
@@ -10,9 +9,6 @@ import nl.inl.blacklab.search.indexmetadata.MatchSensitivity;
 /** Source of tokens for the forward index matching process. */
 class ForwardIndexDocumentImpl extends ForwardIndexDocument {
 
-    /** Default size for our chunks */
-    private static final int CHUNK_SIZE = 10;
-
     /** Where to get our forward indices and forward index ids (fiids) */
     private ForwardIndexAccessorLeafReader fiAccessor;
 
@@ -23,19 +19,18 @@ class ForwardIndexDocumentImpl extends ForwardIndexDocument {
     private int docLengthTokens;
 
     /**
-     * Chunks of the document from the forward index, for each of the annotations.
+     * The document's tokens for each of the annotations, or null if not fetched yet.
+     *
+     * These are views directly into the forward index (if it supports that), so
+     * nothing needs to be copied.
      */
-    private List<List<int[]>> allAnnotChunks = new ArrayList<>();
+    private IntBuffer[] tokensPerAnnotation;
 
     public ForwardIndexDocumentImpl(ForwardIndexAccessorLeafReader fiAccessor, int docId) {
         this.fiAccessor = fiAccessor;
         this.docId = docId;
         this.docLengthTokens = fiAccessor.getDocLength(docId);
-
-        // Create empty lists of chunks for each annotation
-        for (int i = 0; i < fiAccessor.getNumberOfAnnotations(); i++) {
-            allAnnotChunks.add(new ArrayList<int[]>());
-        }
+        this.tokensPerAnnotation = new IntBuffer[fiAccessor.getNumberOfAnnotations()];
     }
 
     @Override
@@ -43,44 +38,13 @@ class ForwardIndexDocumentImpl extends ForwardIndexDocument {
         if (pos < 0 || pos >= docLengthTokens)
             return Terms.NO_TERM;
 
-        // Get the list of chunks for the annotation we're interested in,
-        // and the forward index object to get more.
-        List<int[]> chunks = allAnnotChunks.get(annotIndex);
-
-        // Where can our token be found?
-        int whichChunk = pos / CHUNK_SIZE;
-        int posWithinChunk = pos % CHUNK_SIZE;
-
-        // Make sure we have the chunk we need:
-        // First, make sure the list is long enough.
-        // (we fill with nulls to avoid fetching chunks we don't need)
-        while (chunks.size() <= whichChunk)
-            chunks.add(null);
-        // Now, see if we have the chunk we want, and fetch it if not
-        int[] chunk = chunks.get(whichChunk);
-        if (chunk == null) {
-            chunk = fetchChunk(annotIndex, whichChunk);
-            chunks.set(whichChunk, chunk);
-        }
-
-        return chunk[posWithinChunk];
-
-    }
-
-    /**
-     * Fetch a chunk from the forward index for the specified annotation.
-     * 
-     * @param annotIndex which annotation we want a forward index chunk for
-     * @param number the chunk number to fetch
-     * @return the chunk
-     */
-    protected int[] fetchChunk(int annotIndex, int number) {
-        int start = number * CHUNK_SIZE;
-        int end = start + CHUNK_SIZE;
-        if (end > docLengthTokens) {
-            end = docLengthTokens;
+        // Make sure we have the tokens for the annotation we're interested in
+        IntBuffer tokens = tokensPerAnnotation[annotIndex];
+        if (tokens == null) {
+            tokens = fiAccessor.getTokens(annotIndex, docId);
+            tokensPerAnnotation[annotIndex] = tokens;
         }
-        return fiAccessor.getChunk(annotIndex, docId, start, end);
+        return tokens.get(pos);
     }
 
     @Override
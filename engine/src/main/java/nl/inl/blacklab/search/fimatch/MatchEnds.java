@@ -0,0 +1,115 @@
+package nl.inl.blacklab.search.fimatch;
+
+import java.util.Arrays;
+
+/**
+ * A set of match end positions found by an NFA, kept in ascending order.
+ *
+ * Used instead of a Set&lt;Integer&gt; so NFA matching doesn't need to allocate:
+ * instances are reused, and the backing array only grows when necessary.
+ * Usually only a few match ends are found from a position, so keeping them in
+ * a sorted array is fast.
+ */
+public final class MatchEnds {
+
+    /** Initial capacity of our array */
+    private static final int INITIAL_CAPACITY = 8;
+
+    /** The match end positions, in ascending order (only the first size are valid) */
+    private int[] positions = new int[INITIAL_CAPACITY];
+
+    /** Number of match end positions in the set */
+    private int size = 0;
+
+    /**
+     * Get the number of match ends.
+     *
+     * @return number of match ends
+     */
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Get a match end.
+     *
+     * @param index index of the match end (match ends are in ascending order)
+     * @return the match end position
+     */
+    public int get(int index) {
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException("Index " + index + ", size " + size);
+        return positions[index];
+    }
+
+    /**
+     * Remove all match ends, keeping our array for reuse.
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    public boolean contains(int position) {
+        return Arrays.binarySearch(positions, 0, size, position) >= 0;
+    }
+
+    /**
+     * Add a match end.
+     *
+     * @param position match end position
+     * @return true if it was added, false if it was already in the set
+     */
+    public boolean add(int position) {
+        int i;
+        if (size == 0 || position > positions[size - 1]) {
+            // Most common case: add at the end
+            i = size;
+        } else {
+            i = Arrays.binarySearch(positions, 0, size, position);
+            if (i >= 0)
+                return false; // already present
+            i = -i - 1;
+        }
+        if (size == positions.length)
+            positions = Arrays.copyOf(positions, size * 2);
+        System.arraycopy(positions, i, positions, i + 1, size - i);
+        positions[i] = position;
+        size++;
+        return true;
+    }
+
+    /**
+     * Add all match ends from another set.
+     *
+     * @param other match ends to add
+     */
+    public void addAll(MatchEnds other) {
+        for (int i = 0; i < other.size; i++) {
+            add(other.positions[i]);
+        }
+    }
+
+    /**
+     * Keep only the match ends that also occur in another set.
+     *
+     * @param other match ends to intersect with
+     */
+    public void retainAll(MatchEnds other) {
+        int n = 0;
+        for (int i = 0; i < size; i++) {
+            if (other.contains(positions[i]))
+                positions[n++] = positions[i];
+        }
+        size = n;
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(Arrays.copyOf(positions, size));
+    }
+
+}
@@ -87,7 +87,7 @@ public abstract class NfaState {
      *            to collect them
      * @return true if any (new) matches were found, false if not
      */
-    abstract boolean findMatchesInternal(ForwardIndexDocument fiDoc, int pos, int direction, Set<Integer> matchEnds);
+    abstract boolean findMatchesInternal(ForwardIndexDocument fiDoc, int pos, int direction, MatchEnds matchEnds);
 
     /**
      * Find all matches for this NFA in the token source.
@@ -95,12 +95,11 @@ public abstract class NfaState {
      * @param fiDoc where to read tokens from
      * @param pos current matching position
      * @param direction matching direction
-     * @return the matches found, if any
+     * @param results (out) the match ends found, if any (cleared first; may be reused between calls)
      */
-    public NavigableSet<Integer> findMatches(ForwardIndexDocument fiDoc, int pos, int direction) {
-        NavigableSet<Integer> results = new TreeSet<>();
+    public void findMatches(ForwardIndexDocument fiDoc, int pos, int direction, MatchEnds results) {
+        results.clear();
         findMatchesInternal(fiDoc, pos, direction, results);
-        return results;
     }
 
     /**
@@ -15,25 +15,33 @@ public class NfaStateAnd extends NfaState {
     }
 
     @Override
-    public boolean findMatchesInternal(ForwardIndexDocument fiDoc, int pos, int direction, Set<Integer> matchEnds) {
+    public boolean findMatchesInternal(ForwardIndexDocument fiDoc, int pos, int direction, MatchEnds matchEnds) {
         // Split state. Find matches for all alternatives.
-        Set<Integer> newHitsFound = null;
-        for (NfaState nextState : nextStates) {
-            Set<Integer> matchesForClause = new HashSet<>();
-            if (!nextState.findMatchesInternal(fiDoc, pos, direction, matchesForClause))
-                return false; // short-circuit
-            if (newHitsFound == null) {
-                newHitsFound = matchesForClause;
-            } else {
-                // Calculate intersection
-                newHitsFound.retainAll(matchesForClause);
-                if (newHitsFound.isEmpty())
-                    return false; // no hits left; short-circuit
+        MatchEnds newHitsFound = fiDoc.borrowMatchEnds();
+        MatchEnds matchesForClause = fiDoc.borrowMatchEnds();
+        try {
+            boolean firstClause = true;
+            for (NfaState nextState : nextStates) {
+                matchesForClause.clear();
+                if (!nextState.findMatchesInternal(fiDoc, pos, direction, matchesForClause))
+                    return false; // short-circuit
+                if (firstClause) {
+                    newHitsFound.addAll(matchesForClause);
+                    firstClause = false;
+                } else {
+                    // Calculate intersection
+                    newHitsFound.retainAll(matchesForClause);
+                    if (newHitsFound.isEmpty())
+                        return false; // no hits left; short-circuit
+                }
             }
+            if (matchEnds != null)
+                matchEnds.addAll(newHitsFound);
+            return true;
+        } finally {
+            fiDoc.returnMatchEnds(matchesForClause);
+            fiDoc.returnMatchEnds(newHitsFound);
         }
-        if (matchEnds != null)
-            matchEnds.addAll(newHitsFound);
-        return true;
     }
 
     @Override
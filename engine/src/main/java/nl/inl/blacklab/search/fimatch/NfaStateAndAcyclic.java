@@ -27,33 +27,37 @@ public class NfaStateAndAcyclic extends NfaState {
     }
 
     @Override
-    public boolean findMatchesInternal(ForwardIndexDocument fiDoc, int pos, int direction, Set<Integer> matchEnds) {
+    public boolean findMatchesInternal(ForwardIndexDocument fiDoc, int pos, int direction, MatchEnds matchEnds) {
         // AND state. Find matches for all alternatives.
-        Set<Integer> clausesMatchEnds = null;
-        Set<Integer> matchEndsThisClause = new HashSet<>();
-        for (NfaState clause : clauses) {
-            matchEndsThisClause.clear();
-            if (!clause.findMatchesInternal(fiDoc, pos, direction, matchEndsThisClause))
-                return false; // this clause had no hits; short circuit AND
-            if (clausesMatchEnds == null) {
-                // First matches found
-                clausesMatchEnds = matchEndsThisClause;
-                matchEndsThisClause = new HashSet<>();
-            } else {
-                // Determine intersection with previous matches
-                clausesMatchEnds.retainAll(matchEndsThisClause);
-                if (clausesMatchEnds.isEmpty())
-                    return false; // there are no hits left; short circuit AND
+        MatchEnds clausesMatchEnds = fiDoc.borrowMatchEnds();
+        MatchEnds matchEndsThisClause = fiDoc.borrowMatchEnds();
+        try {
+            boolean firstClause = true;
+            for (NfaState clause : clauses) {
+                matchEndsThisClause.clear();
+                if (!clause.findMatchesInternal(fiDoc, pos, direction, matchEndsThisClause))
+                    return false; // this clause had no hits; short circuit AND
+                if (firstClause) {
+                    // First matches found
+                    clausesMatchEnds.addAll(matchEndsThisClause);
+                    firstClause = false;
+                } else {
+                    // Determine intersection with previous matches
+                    clausesMatchEnds.retainAll(matchEndsThisClause);
+                    if (clausesMatchEnds.isEmpty())
+                        return false; // there are no hits left; short circuit AND
+                }
             }
-        }
-        boolean foundMatch = false;
-        if (!clausesMatchEnds.isEmpty()) {
+            boolean foundMatch = false;
             // Continue matching from the matches to our OR clauses
-            for (Integer clauseMatchEnd : clausesMatchEnds) {
-                foundMatch |= nextState.findMatchesInternal(fiDoc, clauseMatchEnd, direction, matchEnds);
+            for (int i = 0; i < clausesMatchEnds.size(); i++) {
+                foundMatch |= nextState.findMatchesInternal(fiDoc, clausesMatchEnds.get(i), direction, matchEnds);
             }
+            return foundMatch;
+        } finally {
+            fiDoc.returnMatchEnds(matchEndsThisClause);
+            fiDoc.returnMatchEnds(clausesMatchEnds);
         }
-        return foundMatch;
     }
 
     @Override
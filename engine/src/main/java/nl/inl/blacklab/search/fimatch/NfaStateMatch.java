@@ -10,7 +10,7 @@ import java.util.Set;
 public class NfaStateMatch extends NfaState {
 
     @Override
-    public boolean findMatchesInternal(ForwardIndexDocument fiDoc, int pos, int direction, Set<Integer> matchEnds) {
+    public boolean findMatchesInternal(ForwardIndexDocument fiDoc, int pos, int direction, MatchEnds matchEnds) {
         if (matchEnds != null)
             matchEnds.add(pos);
         return true;
@@ -5,14 +5,46 @@ import nl.inl.blacklab.search.indexmetadata.AnnotatedFieldNameUtil;
 import nl.inl.blacklab.search.indexmetadata.MatchSensitivity;
 import nl.inl.util.StringUtil;
 
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Map;
 import java.util.Set;
 
 /**
  * A regex, wildcard or prefix clause.
+ *
+ * Before matching, we check the pattern against all the terms in the
+ * annotation's terms list once, so during matching we only need to look up the
+ * term id in a bitset. For huge lexicons, where that would take too long, we
+ * check each term the first time we encounter it and remember the result.
  */
-public abstract class NfaStateMultiTermPattern extends NfaState {
+public abstract class NfaStateMultiTermPattern extends NfaState implements NfaTokenState {
+
+    /** Default value for maxTermsToPrecompile. */
+    public static final int DEFAULT_MAX_TERMS_TO_PRECOMPILE = 1_000_000;
+
+    /** Value in termMatchCache meaning we haven't checked this term yet */
+    private static final byte TERM_NOT_CHECKED = 0;
+
+    /** Value in termMatchCache meaning this term matches our pattern */
+    private static final byte TERM_MATCHES = 1;
+
+    /** Value in termMatchCache meaning this term doesn't match our pattern */
+    private static final byte TERM_DOESNT_MATCH = 2;
+
+    /**
+     * If the annotation has at most this many terms, we determine which terms
+     * match our pattern before matching starts. Otherwise, we do so lazily.
+     */
+    private static int maxTermsToPrecompile = DEFAULT_MAX_TERMS_TO_PRECOMPILE;
+
+    public static void setMaxTermsToPrecompile(int maxTermsToPrecompile) {
+        NfaStateMultiTermPattern.maxTermsToPrecompile = maxTermsToPrecompile;
+    }
+
+    public static int getMaxTermsToPrecompile() {
+        return maxTermsToPrecompile;
+    }
 
     /** What annotation we're trying to match */
     protected String luceneField;
@@ -32,6 +64,25 @@ public abstract class NfaStateMultiTermPattern extends NfaState {
     /** Match case-/diacritics-sensitively? */
     private MatchSensitivity sensitivity;
 
+    /** Forward index accessor we looked up our annotation (and matching terms) in */
+    private ForwardIndexAccessor fiAccessor = null;
+
+    /**
+     * Term ids that match our pattern, if we checked all terms beforehand.
+     * Only valid after lookupPropertyNumber() called.
+     */
+    private BitSet matchingTerms = null;
+
+    /**
+     * For each term id, whether it matches our pattern (or whether we haven't
+     * checked yet), if we check terms lazily. Only valid after
+     * lookupPropertyNumber() called.
+     *
+     * Several threads may update this concurrently, but that's okay: each entry is
+     * written independently, and at worst a term is checked more than once.
+     */
+    private byte[] termMatchCache = null;
+
     public NfaStateMultiTermPattern(String luceneField, String pattern, NfaState nextState) {
         this.luceneField = luceneField;
         this.sensitivity = AnnotatedFieldNameUtil.sensitivity(luceneField);
@@ -49,18 +100,47 @@ public abstract class NfaStateMultiTermPattern extends NfaState {
      * @return true if any (new) matches were found, false if not
      */
     @Override
-    public boolean findMatchesInternal(ForwardIndexDocument fiDoc, int pos, int direction, Set<Integer> matchEnds) {
+    public boolean findMatchesInternal(ForwardIndexDocument fiDoc, int pos, int direction, MatchEnds matchEnds) {
         // Token state. Check if it matches token from token source, and if so, continue.
-        int actualToken = fiDoc.getToken(propertyNumber, pos);
-        if (actualToken >= 0) {
-            String tokenString = fiDoc.getTermString(propertyNumber, actualToken);
-            if (matchesPattern(desensitize(tokenString))) {
-                return nextState.findMatchesInternal(fiDoc, pos + direction, direction, matchEnds);
-            }
+        if (tokenMatches(fiDoc, pos)) {
+            return nextState.findMatchesInternal(fiDoc, pos + direction, direction, matchEnds);
         }
         return false;
     }
 
+    @Override
+    public boolean tokenMatches(ForwardIndexDocument fiDoc, int pos) {
+        int actualToken = fiDoc.getToken(propertyNumber, pos);
+        return actualToken >= 0 && termMatches(fiDoc, actualToken);
+    }
+
+    @Override
+    public NfaState getNextState() {
+        return nextState;
+    }
+
+    /**
+     * Does the term with this id match our pattern?
+     *
+     * @param fiDoc where to get the term string if we need it
+     * @param termId term id
+     * @return true if it matches, false if not
+     */
+    private boolean termMatches(ForwardIndexDocument fiDoc, int termId) {
+        if (matchingTerms != null)
+            return matchingTerms.get(termId);
+        byte[] cache = termMatchCache;
+        if (cache == null || termId >= cache.length)
+            return matchesPattern(desensitize(fiDoc.getTermString(propertyNumber, termId)));
+        byte result = cache[termId];
+        if (result == TERM_NOT_CHECKED) {
+            boolean matches = matchesPattern(desensitize(fiDoc.getTermString(propertyNumber, termId)));
+            result = matches ? TERM_MATCHES : TERM_DOESNT_MATCH;
+            cache[termId] = result;
+        }
+        return result == TERM_MATCHES;
+    }
+
     private String desensitize(String tokenString) {
         if (!sensitivity.isCaseSensitive())
             tokenString = tokenString.toLowerCase();
@@ -140,6 +220,23 @@ public abstract class NfaStateMultiTermPattern extends NfaState {
         String[] comp = AnnotatedFieldNameUtil.getNameComponents(luceneField);
         String annotationName = comp[1];
         propertyNumber = fiAccessor.getAnnotationNumber(annotationName);
+        if (this.fiAccessor != fiAccessor) {
+            // Determine which terms match our pattern, now or (for huge lexicons) lazily
+            this.fiAccessor = fiAccessor;
+            int numberOfTerms = fiAccessor.getNumberOfTerms(propertyNumber);
+            if (numberOfTerms <= maxTermsToPrecompile) {
+                BitSet matching = new BitSet(numberOfTerms);
+                for (int termId = 0; termId < numberOfTerms; termId++) {
+                    if (matchesPattern(desensitize(fiAccessor.getTermString(propertyNumber, termId))))
+                        matching.set(termId);
+                }
+                matchingTerms = matching;
+                termMatchCache = null;
+            } else {
+                matchingTerms = null;
+                termMatchCache = new byte[numberOfTerms];
+            }
+        }
         if (nextState != null)
             nextState.lookupAnnotationNumbers(fiAccessor, statesVisited);
     }
@@ -19,7 +19,7 @@ public class NfaStateOr extends NfaState {
     }
 
     @Override
-    public boolean findMatchesInternal(ForwardIndexDocument fiDoc, int pos, int direction, Set<Integer> matchEnds) {
+    public boolean findMatchesInternal(ForwardIndexDocument fiDoc, int pos, int direction, MatchEnds matchEnds) {
         // OR/Split state. Find matches for all alternatives.
         boolean result = false;
         for (NfaState nextState : nextStates) {
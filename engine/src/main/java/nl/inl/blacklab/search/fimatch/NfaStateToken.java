@@ -16,7 +16,7 @@ import java.util.Set;
  * Represents both a state in an NFA, and a complete NFA with this as the
  * starting state.
  */
-public class NfaStateToken extends NfaState {
+public class NfaStateToken extends NfaState implements NfaTokenState {
 
     static final String ANY_TOKEN = null;
 
@@ -69,10 +69,9 @@ public class NfaStateToken extends NfaState {
      * @return true if any (new) matches were found, false if not
      */
     @Override
-    public boolean findMatchesInternal(ForwardIndexDocument fiDoc, int pos, int direction, Set<Integer> matchEnds) {
+    public boolean findMatchesInternal(ForwardIndexDocument fiDoc, int pos, int direction, MatchEnds matchEnds) {
         // Token state. Check if it matches token from token source, and if so, continue.
-        int actualToken = fiDoc.getToken(propertyNumber, pos);
-        if (acceptAnyToken && actualToken >= 0 || inputTokens.contains(actualToken)) {
+        if (tokenMatches(fiDoc, pos)) {
             if (nextState == null) {
                 // null stands for the match state
                 if (matchEnds != null)
@@ -84,6 +83,17 @@ public class NfaStateToken extends NfaState {
         return false;
     }
 
+    @Override
+    public boolean tokenMatches(ForwardIndexDocument fiDoc, int pos) {
+        int actualToken = fiDoc.getToken(propertyNumber, pos);
+        return acceptAnyToken && actualToken >= 0 || inputTokens.contains(actualToken);
+    }
+
+    @Override
+    public NfaState getNextState() {
+        return nextState;
+    }
+
     @Override
     void fillDangling(NfaState state) {
         if (nextState == null)
@@ -0,0 +1,27 @@
+package nl.inl.blacklab.search.fimatch;
+
+/**
+ * An NFA state that matches a single token and then continues at its next
+ * state.
+ *
+ * Used to compile NFAs into a {@link Dfa}.
+ */
+interface NfaTokenState {
+
+    /**
+     * Does the token at this position match this state?
+     *
+     * @param fiDoc where to read tokens from
+     * @param pos position of the token
+     * @return true if it matches, false if not (or if pos is outside the document)
+     */
+    boolean tokenMatches(ForwardIndexDocument fiDoc, int pos);
+
+    /**
+     * Get the state to continue at after a matching token.
+     *
+     * @return next state (null stands for the match state)
+     */
+    NfaState getNextState();
+
+}
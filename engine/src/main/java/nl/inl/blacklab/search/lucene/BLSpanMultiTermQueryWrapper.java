@@ -5,6 +5,7 @@ import nl.inl.blacklab.search.fimatch.ForwardIndexAccessor;
 import nl.inl.blacklab.search.fimatch.Nfa;
 import nl.inl.blacklab.search.fimatch.NfaState;
 import nl.inl.blacklab.search.indexmetadata.AnnotatedFieldNameUtil;
+import nl.inl.blacklab.search.lucene.optimize.IndexStatistics;
 import nl.inl.blacklab.search.results.QueryInfo;
 import nl.inl.util.StringUtil;
 import org.apache.lucene.index.IndexReader;
@@ -174,6 +175,14 @@ public class BLSpanMultiTermQueryWrapper<Q extends MultiTermQuery>
     public long reverseMatchingCost(IndexReader reader) {
         String pattern = term.text();
         Query wrapped = query.getWrappedQuery();
+        IndexStatistics stats = IndexStatistics.get(reader);
+        if (wrapped instanceof AutomatonQuery) {
+            // Count the occurrences of the matching terms, if there aren't too many
+            long freq = stats.totalTermFreq((AutomatonQuery) wrapped);
+            if (freq >= 0)
+                return freq;
+            // Matches too many terms to count them; make an estimate instead.
+        }
         int numberOfChars;
         if (wrapped instanceof RegexpQuery) {
             numberOfChars = countRegexWordCharacters(pattern);
@@ -185,12 +194,7 @@ public class BLSpanMultiTermQueryWrapper<Q extends MultiTermQuery>
             // Don't know; just use reverse matching
             numberOfChars = 5;
         }
-        long n;
-        try {
-            n = reader.getSumTotalTermFreq(term.field()); // total terms in field
-        } catch (IOException e) {
-            throw BlackLabRuntimeException.wrap(e);
-        }
+        long n = stats.sumTotalTermFreq(term.field()); // total terms in field
         // Make a very rough estimate of the number of terms that could match
         // this. We tend to over-guess by quite a lot, because clauses matching lots
         // of terms benefit a lot from using NFAs (more than a single very frequent term),
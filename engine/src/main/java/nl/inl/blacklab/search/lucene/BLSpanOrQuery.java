@@ -693,6 +693,14 @@ public final class BLSpanOrQuery extends BLSpanQuery {
         return canBeTokenState;
     }
 
+    @Override
+    public List<BLSpanQuery> getChildren() {
+        List<BLSpanQuery> children = new ArrayList<>();
+        for (SpanQuery clause: getClauses())
+            children.add((BLSpanQuery) clause);
+        return children;
+    }
+
     @Override
     public boolean canMakeNfa() {
         if (clausesAreSimpleTermsInSameAnnotation)
@@ -712,7 +720,7 @@ public final class BLSpanOrQuery extends BLSpanQuery {
         SpanQuery[] clauses = getClauses();
         if (clauses.length == 0)
             return 0;
-        int cost = 0;
+        long cost = 0;
         int skip = getCostCalculationSkip(clauses.length);
         int clausesCalculated = 0;
         for (int i = 0; i < clauses.length; i++) {
@@ -29,6 +29,7 @@ import org.apache.lucene.search.spans.SpanTermQuery;
 
 import java.io.IOException;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -345,6 +346,17 @@ public abstract class BLSpanQuery extends SpanQuery {
         return false;
     }
 
+    /**
+     * Get the queries this query combines or modifies, if any.
+     *
+     * Used to describe how a query will be matched (see {@link nl.inl.blacklab.search.QueryExplanation}).
+     *
+     * @return our clauses (empty if we have none)
+     */
+    public List<BLSpanQuery> getChildren() {
+        return Collections.emptyList();
+    }
+
     public NfaTwoWay getNfaTwoWay(ForwardIndexAccessor fiAccessor, int nativeDirection) {
         Nfa nfa = getNfa(fiAccessor, nativeDirection);
         Nfa nfaRev = getNfa(fiAccessor, -nativeDirection);
@@ -19,6 +19,7 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 
 import org.apache.lucene.index.IndexReader;
@@ -125,6 +126,11 @@ abstract class BLSpanQueryAbstract extends BLSpanQuery {
         return clauses;
     }
 
+    @Override
+    public List<BLSpanQuery> getChildren() {
+        return Collections.unmodifiableList(clauses);
+    }
+
     protected List<BLSpanQuery> rewriteClauses(IndexReader reader) throws IOException {
         List<BLSpanQuery> rewritten = new ArrayList<>(clauses.size());
         boolean someRewritten = false;
@@ -17,11 +17,11 @@ package nl.inl.blacklab.search.lucene;
  * limitations under the License.
  */
 
-import nl.inl.blacklab.exceptions.BlackLabRuntimeException;
 import nl.inl.blacklab.search.fimatch.ForwardIndexAccessor;
 import nl.inl.blacklab.search.fimatch.Nfa;
 import nl.inl.blacklab.search.fimatch.NfaState;
 import nl.inl.blacklab.search.indexmetadata.AnnotatedFieldNameUtil;
+import nl.inl.blacklab.search.lucene.optimize.IndexStatistics;
 import nl.inl.blacklab.search.results.QueryInfo;
 import org.apache.lucene.index.*;
 import org.apache.lucene.search.IndexSearcher;
@@ -222,11 +222,7 @@ public class BLSpanTermQuery extends BLSpanQuery {
 
     @Override
     public long reverseMatchingCost(IndexReader reader) {
-        try {
-            return reader.totalTermFreq(query.getTerm());
-        } catch (IOException e) {
-            throw BlackLabRuntimeException.wrap(e);
-        }
+        return IndexStatistics.get(reader).totalTermFreq(query.getTerm());
     }
 
     @Override
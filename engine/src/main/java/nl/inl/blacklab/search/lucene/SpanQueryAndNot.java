@@ -422,6 +422,13 @@ public class SpanQueryAndNot extends BLSpanQuery {
         return new Nfa(andAcyclic, Arrays.asList(andAcyclic));
     }
 
+    @Override
+    public List<BLSpanQuery> getChildren() {
+        List<BLSpanQuery> children = new ArrayList<>(include);
+        children.addAll(exclude);
+        return children;
+    }
+
     @Override
     public boolean canMakeNfa() {
         if (!exclude.isEmpty())
@@ -29,8 +29,8 @@ import org.apache.lucene.search.IndexSearcher;
 import nl.inl.blacklab.search.fimatch.ForwardIndexAccessor;
 import nl.inl.blacklab.search.fimatch.Nfa;
 import nl.inl.blacklab.search.fimatch.NfaState;
+import nl.inl.blacklab.search.lucene.optimize.IndexStatistics;
 import nl.inl.blacklab.search.results.QueryInfo;
-import nl.inl.util.LuceneUtil;
 
 /**
  * A SpanQuery matching a number of tokens without any restrictions.
@@ -202,7 +202,7 @@ public class SpanQueryAnyToken extends BLSpanQuery {
     public long reverseMatchingCost(IndexReader reader) {
         // Should be rewritten, and if not, it matches all positions in the index.
         int numberOfExpansionSteps = max < 0 ? 50 : max - min + 1;
-        return LuceneUtil.getSumTotalTermFreq(reader, luceneField) * numberOfExpansionSteps;
+        return IndexStatistics.get(reader).sumTotalTermFreq(luceneField) * numberOfExpansionSteps;
     }
 
     @Override
@@ -15,28 +15,48 @@
  *******************************************************************************/
 package nl.inl.blacklab.search.lucene;
 
+import nl.inl.blacklab.search.BlackLabIndexImpl;
+import nl.inl.blacklab.search.fimatch.Dfa;
 import nl.inl.blacklab.search.fimatch.ForwardIndexAccessor;
 import nl.inl.blacklab.search.fimatch.Nfa;
 import nl.inl.blacklab.search.fimatch.NfaState;
 import nl.inl.blacklab.search.fimatch.NfaTwoWay;
+import nl.inl.blacklab.search.lucene.optimize.ClauseCombinerNfa;
+import nl.inl.blacklab.search.lucene.optimize.IndexStatistics;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.ReaderUtil;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.index.TermContext;
 import org.apache.lucene.search.IndexSearcher;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Find hits that match the specified NFA, starting from the specified anchor
  * query (either the start of end of those hits, with a possible offset added),
  * in the specified direction.
+ *
+ * Whether to use NFA matching is decided by ClauseCombinerNfa based on
+ * estimates for the whole index. We reconsider that decision for each index
+ * segment, using estimates for that segment, corrected by the number of anchor
+ * hits we actually found in segments we've already matched. If NFA matching
+ * doesn't seem worth it for a segment, we find the hits for the NFA query in the
+ * reverse index and join them with the anchor hits instead.
  */
 public class SpanQueryFiSeq extends BLSpanQueryAbstract {
 
+    protected static final Logger logger = LogManager.getLogger(SpanQueryFiSeq.class);
+
     public static final int DIR_TO_LEFT = -1;
 
     public static final int DIR_TO_RIGHT = 1;
@@ -45,6 +65,83 @@ public class SpanQueryFiSeq extends BLSpanQueryAbstract {
 
     public static final boolean END_OF_ANCHOR = false;
 
+    /**
+     * Keeps track of how we matched index segments and how many anchor hits we
+     * found compared to our estimates.
+     */
+    public static class MatchingStats {
+
+        private final LongAdder segmentsMatchedUsingNfa = new LongAdder();
+
+        private final LongAdder segmentsMatchedUsingJoin = new LongAdder();
+
+        private final LongAdder anchorHitsEstimated = new LongAdder();
+
+        private final LongAdder anchorHitsFound = new LongAdder();
+
+        /**
+         * Record the number of anchor hits we found in a segment we matched using NFA.
+         *
+         * @param estimated the number of anchor hits we estimated for the segment,
+         *                  or -1 if we didn't estimate it (because we always use NFA matching)
+         * @param found the number of anchor hits we actually checked using the NFA
+         */
+        void addAnchorHits(long estimated, long found) {
+            if (estimated >= 0)
+                anchorHitsEstimated.add(Math.max(1, estimated));
+            anchorHitsFound.add(found);
+        }
+
+        /**
+         * Correct an estimate of the number of anchor hits in a segment, based on
+         * the segments we've already matched.
+         *
+         * @param estimate estimated number of anchor hits
+         * @return corrected estimate
+         */
+        long correctAnchorEstimate(long estimate) {
+            long estimated = anchorHitsEstimated.sum();
+            if (estimated == 0)
+                return estimate; // nothing to go on yet
+            return (long) (estimate * ((double) anchorHitsFound.sum() / estimated));
+        }
+
+        /**
+         * @return number of index segments we matched using NFA
+         */
+        public long segmentsMatchedUsingNfa() {
+            return segmentsMatchedUsingNfa.sum();
+        }
+
+        /**
+         * @return number of index segments we matched by joining anchor and NFA query hits
+         */
+        public long segmentsMatchedUsingJoin() {
+            return segmentsMatchedUsingJoin.sum();
+        }
+
+        /**
+         * @return estimated number of anchor hits in the segments we matched completely using NFA
+         *         (0 if we always use NFA matching, as we don't estimate it then)
+         */
+        public long anchorHitsEstimated() {
+            return anchorHitsEstimated.sum();
+        }
+
+        /**
+         * @return actual number of anchor hits in the segments we matched completely using NFA
+         */
+        public long anchorHitsFound() {
+            return anchorHitsFound.sum();
+        }
+
+        @Override
+        public String toString() {
+            return "segments NFA/join " + segmentsMatchedUsingNfa() + "/" + segmentsMatchedUsingJoin()
+                    + ", anchor hits estimated/found " + anchorHitsEstimated() + "/" + anchorHitsFound();
+        }
+    }
+
     boolean startOfAnchor;
 
     /** Our NFA, both in our own direction and the opposite direction. */
@@ -56,6 +153,24 @@ public class SpanQueryFiSeq extends BLSpanQueryAbstract {
 
     ForwardIndexAccessor fiAccessor;
 
+    /**
+     * NFA threshold when we were created (may be overridden for a single query),
+     * used when deciding whether to use NFA matching for a segment.
+     */
+    private final long nfaThreshold = ClauseCombinerNfa.getNfaThreshold();
+
+    /** How we matched index segments so far */
+    private final MatchingStats matchingStats = new MatchingStats();
+
+    /**
+     * Sequence of anchor and NFA query, for joining their hits instead of using NFA
+     * matching, or null if we can't (see {@link #getJoinQuery(IndexReader)}).
+     */
+    private BLSpanQuery joinQuery;
+
+    /** Have we determined joinQuery yet? */
+    private boolean joinQueryDetermined = false;
+
     /**
      *
      * @param anchor hits to use as anchor to start NFA matching
@@ -95,19 +210,39 @@ public class SpanQueryFiSeq extends BLSpanQueryAbstract {
         nfa.finish();
         nfa.lookupAnnotationNumbers(fiAccessor, new IdentityHashMap<NfaState, Boolean>());
 
+        // Compile the NFA to a DFA for faster matching, if possible
+        NfaState startingState = nfa.getNfa().getStartingState();
+        Dfa dfa = Dfa.fromNfa(startingState);
+        if (BlackLabIndexImpl.traceQueryExecution()) {
+            logger.debug("FISEQ: matching using " + (dfa == null ? "NFA interpreter: " + startingState : dfa));
+        }
+
         BLSpanWeight anchorWeight = clauses.get(0).createWeight(searcher, needsScores);
         Map<Term, TermContext> contexts = needsScores ? getTermContexts(anchorWeight) : null;
-        return new SpanWeightFiSeq(anchorWeight, searcher, contexts);
+        return new SpanWeightFiSeq(anchorWeight, dfa, searcher, contexts, needsScores);
     }
 
     class SpanWeightFiSeq extends BLSpanWeight {
 
         final BLSpanWeight anchorWeight;
 
-        public SpanWeightFiSeq(BLSpanWeight anchorWeight, IndexSearcher searcher, Map<Term, TermContext> terms)
-                throws IOException {
+        /** Our NFA compiled to a DFA, or null if it couldn't be compiled */
+        final Dfa dfa;
+
+        private final IndexSearcher searcher;
+
+        private final boolean needsScores;
+
+        /** Weight for our join query, created when first needed */
+        private BLSpanWeight joinWeight;
+
+        public SpanWeightFiSeq(BLSpanWeight anchorWeight, Dfa dfa, IndexSearcher searcher,
+                Map<Term, TermContext> terms, boolean needsScores) throws IOException {
             super(SpanQueryFiSeq.this, searcher, terms);
             this.anchorWeight = anchorWeight;
+            this.dfa = dfa;
+            this.searcher = searcher;
+            this.needsScores = needsScores;
         }
 
         @Override
@@ -120,15 +255,158 @@ public class SpanQueryFiSeq extends BLSpanQueryAbstract {
             anchorWeight.extractTermContexts(contexts);
         }
 
+        private synchronized BLSpanWeight getJoinWeight() throws IOException {
+            if (joinWeight == null)
+                joinWeight = getJoinQuery(searcher.getIndexReader()).createWeight(searcher, needsScores);
+            return joinWeight;
+        }
+
         @Override
         public BLSpans getSpans(final LeafReaderContext context, Postings requiredPostings) throws IOException {
+            boolean canJoin = canJoin(context);
+            long anchorHitsEstimated = canJoin ? estimateAnchorHits(context) : -1;
+            if (canJoin && !nfaMatchingPreferred(context, anchorHitsEstimated)) {
+                matchingStats.segmentsMatchedUsingJoin.increment();
+                if (BlackLabIndexImpl.traceQueryExecution())
+                    logger.debug("FISEQ: matching segment " + context.ord + " using join (" + matchingStats + ")");
+                BLSpans joinSpans = getJoinWeight().getSpans(context, requiredPostings);
+                return BLSpans.optSortUniq(joinSpans, !joinQuery.hitsStartPointSorted(), !joinQuery.hitsAreUnique());
+            }
+            matchingStats.segmentsMatchedUsingNfa.increment();
             BLSpans anchorSpans = anchorWeight.getSpans(context, requiredPostings);
             if (anchorSpans == null)
                 return null;
             if (!clauses.get(0).hitsAreUnique())
                 anchorSpans = BLSpans.optSortUniq(anchorSpans, !clauses.get(0).hitsStartPointSorted(), true);
-            return new SpansFiSeq(anchorSpans, startOfAnchor, nfa.getNfa().getStartingState(), direction,
-                    fiAccessor.getForwardIndexAccessorLeafReader(context.reader()));
+            return new SpansFiSeq(anchorSpans, startOfAnchor, nfa.getNfa().getStartingState(), dfa, direction,
+                    fiAccessor.getForwardIndexAccessorLeafReader(context.reader()), matchingStats,
+                    anchorHitsEstimated);
+        }
+    }
+
+    /**
+     * Should we use NFA matching for this index segment?
+     *
+     * @param context the index segment
+     * @return true if we should use NFA matching, false if we should join the
+     *         anchor hits with the hits for the NFA query
+     * @throws IOException on error
+     */
+    public boolean useNfa(LeafReaderContext context) throws IOException {
+        return !canJoin(context) || nfaMatchingPreferred(context, estimateAnchorHits(context));
+    }
+
+    /**
+     * Should we consider joining instead of NFA matching for this index segment?
+     *
+     * We don't if the NFA threshold always chooses NFA matching, or if we can't
+     * join. The threshold is checked first, so we don't construct the join query
+     * if we'll never use it.
+     *
+     * @param context the index segment
+     * @return true if we should compare the cost of joining and NFA matching
+     * @throws IOException on error
+     */
+    private boolean canJoin(LeafReaderContext context) throws IOException {
+        if (nfaThreshold == ClauseCombinerNfa.NO_NFA_MATCHING)
+            return false; // NFA matching was explicitly requested (e.g. using _FI1())
+        if (nfaThreshold == ClauseCombinerNfa.MAX_NFA_MATCHING)
+            return false; // always use NFA matching
+        return getJoinQuery(ReaderUtil.getTopLevelContext(context).reader()) != null;
+    }
+
+    /**
+     * Estimate the number of anchor hits in this index segment.
+     *
+     * @param context the index segment
+     * @return estimated number of anchor hits
+     */
+    private long estimateAnchorHits(LeafReaderContext context) {
+        // Make sure the segment statistics can reuse those for the whole index
+        IndexStatistics.get(ReaderUtil.getTopLevelContext(context).reader());
+        return clauses.get(0).reverseMatchingCost(context.reader());
+    }
+
+    /**
+     * Should we use NFA matching for this index segment, or join?
+     *
+     * If we join, we find the hits for the NFA query in the reverse index and join
+     * them with the anchor hits. We use the same cost comparison that made us use
+     * NFA matching in the first place, but with estimates for this segment, and
+     * the number of anchor hits corrected by what we found in other segments.
+     *
+     * @param context the index segment
+     * @param anchorHitsEstimated estimated number of anchor hits in the segment
+     * @return true if we should use NFA matching, false if we should join
+     */
+    private boolean nfaMatchingPreferred(LeafReaderContext context, long anchorHitsEstimated) {
+        long numAnchor = matchingStats.correctAnchorEstimate(anchorHitsEstimated);
+        long numNfa = nfaQuery.reverseMatchingCost(context.reader());
+        return ClauseCombinerNfa.nfaMatchingPreferred(numAnchor, numNfa, nfaQuery.forwardMatchingCost(), nfaThreshold);
+    }
+
+    /**
+     * Get the sequence of anchor and NFA query, so we can join their hits instead
+     * of using NFA matching.
+     *
+     * We can't if the NFA query matches the empty sequence, or if the sequence
+     * doesn't make the guarantees about its hits that we make.
+     *
+     * @param reader index reader, for rewriting the NFA query
+     * @return the join query, or null if we can't join
+     * @throws IOException on error
+     */
+    synchronized BLSpanQuery getJoinQuery(IndexReader reader) throws IOException {
+        if (!joinQueryDetermined) {
+            joinQueryDetermined = true;
+            boolean anchorFirst = direction == DIR_TO_RIGHT;
+            if (anchorFirst == startOfAnchor)
+                return null; // NFA overlaps anchor; not a simple sequence
+            BLSpanQuery rewrittenNfaQuery = nfaQuery.optimize(reader).rewrite(reader);
+            if (rewrittenNfaQuery.matchesEmptySequence())
+                return null;
+            BLSpanQuery seq = anchorFirst ? new SpanQuerySequence(clauses.get(0), rewrittenNfaQuery)
+                    : new SpanQuerySequence(rewrittenNfaQuery, clauses.get(0));
+            // (we sort and make join hits unique if necessary; see SpanWeightFiSeq.getSpans())
+            boolean endSorted = seq.hitsStartPointSorted() && seq.hitsEndPointSorted();
+            if ((!hitsEndPointSorted() || endSorted) && (!hitsHaveUniqueStart() || seq.hitsHaveUniqueStart())
+                    && (!hitsHaveUniqueEnd() || seq.hitsHaveUniqueEnd())) {
+                joinQuery = seq;
+            }
+        }
+        return joinQuery;
+    }
+
+    /**
+     * Get how we matched index segments so far.
+     *
+     * @return matching statistics
+     */
+    public MatchingStats getMatchingStats() {
+        return matchingStats;
+    }
+
+    /**
+     * Find the FISEQ nodes in a query.
+     *
+     * Doesn't look inside the part of a FISEQ that is matched using its NFA.
+     *
+     * @param query query to search
+     * @return the FISEQ nodes, in depth-first order
+     */
+    public static List<SpanQueryFiSeq> findIn(BLSpanQuery query) {
+        List<SpanQueryFiSeq> result = new ArrayList<>();
+        findIn(query, result);
+        return result;
+    }
+
+    private static void findIn(BLSpanQuery query, List<SpanQueryFiSeq> result) {
+        if (query instanceof SpanQueryFiSeq) {
+            result.add((SpanQueryFiSeq) query);
+            findIn(query.getChildren().get(0), result); // the anchor
+        } else {
+            for (BLSpanQuery child: query.getChildren())
+                findIn(child, result);
         }
     }
 
@@ -264,6 +542,16 @@ public class SpanQueryFiSeq extends BLSpanQueryAbstract {
         return clauses.get(0).canMakeNfa();
     }
 
+    /**
+     * Get the anchor and the query our NFA was made from.
+     *
+     * @return anchor and NFA query
+     */
+    @Override
+    public List<BLSpanQuery> getChildren() {
+        return Arrays.asList(clauses.get(0), nfaQuery);
+    }
+
     @Override
     public int hashCode() {
         final int prime = 31;
@@ -30,7 +30,7 @@ import org.apache.lucene.search.IndexSearcher;
 import nl.inl.blacklab.search.fimatch.ForwardIndexAccessor;
 import nl.inl.blacklab.search.fimatch.Nfa;
 import nl.inl.blacklab.search.fimatch.NfaState;
-import nl.inl.util.LuceneUtil;
+import nl.inl.blacklab.search.lucene.optimize.IndexStatistics;
 
 /**
  * Returns all tokens that do not occur in the matches of the specified query.
@@ -185,7 +185,7 @@ public class SpanQueryNot extends BLSpanQueryAbstract {
     public long reverseMatchingCost(IndexReader reader) {
         // Should be rewritten, but if it can't, calculate a rough indication of the number of token hits
         long freq = clauses.get(0).reverseMatchingCost(reader);
-        return LuceneUtil.getSumTotalTermFreq(reader, getRealField()) - freq;
+        return IndexStatistics.get(reader).sumTotalTermFreq(getRealField()) - freq;
     }
 
     @Override
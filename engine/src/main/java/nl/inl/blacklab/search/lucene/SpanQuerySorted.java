@@ -1,6 +1,8 @@
 package nl.inl.blacklab.search.lucene;
 
 import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -177,6 +179,11 @@ class SpanQuerySorted extends BLSpanQuery {
         return true;
     }
 
+    @Override
+    public List<BLSpanQuery> getChildren() {
+        return Collections.singletonList(src);
+    }
+
     @Override
     public long reverseMatchingCost(IndexReader reader) {
         return src.reverseMatchingCost(reader);
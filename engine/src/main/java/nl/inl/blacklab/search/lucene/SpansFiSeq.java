@@ -16,14 +16,14 @@
 package nl.inl.blacklab.search.lucene;
 
 import java.io.IOException;
-import java.util.Iterator;
-import java.util.NavigableSet;
 
 import org.apache.lucene.search.spans.SpanCollector;
 
 import nl.inl.blacklab.search.Span;
+import nl.inl.blacklab.search.fimatch.Dfa;
 import nl.inl.blacklab.search.fimatch.ForwardIndexAccessor.ForwardIndexAccessorLeafReader;
 import nl.inl.blacklab.search.fimatch.ForwardIndexDocument;
+import nl.inl.blacklab.search.fimatch.MatchEnds;
 import nl.inl.blacklab.search.fimatch.NfaState;
 
 /**
@@ -59,25 +59,56 @@ class SpansFiSeq extends BLSpans {
     /** The NFA to use to find matches in the forward index. */
     private NfaState nfa;
 
+    /** The NFA compiled to a DFA (faster), or null if it couldn't be compiled. */
+    private Dfa dfa;
+
     /** The direction to match in (-1 / DIR_TO_LEFT = backward, 1 / DIR_TO_RIGHT = forward). */
     private int direction;
 
     /** Maps from term strings to term indices for each annotation. */
     private ForwardIndexAccessorLeafReader fiAccessor;
 
-    /** Iterator over NFA-matched endpoints */
-    private Iterator<Integer> matchEndPointIt;
+    /** NFA-matched endpoints for the current anchor (reused, so matching doesn't allocate) */
+    private final MatchEnds matchEndPoints = new MatchEnds();
+
+    /** How many of the NFA-matched endpoints we've returned so far */
+    private int matchEndPointsReturned = 0;
 
     /** Current NFA-matched endpoint */
     private int currentMatchEndPoint = -1;
 
-    public SpansFiSeq(BLSpans anchorSpans, boolean startOfAnchor, NfaState nfa, int direction,
-            ForwardIndexAccessorLeafReader fiAccessor) {
+    /** Where to report the number of anchor hits we checked */
+    private SpanQueryFiSeq.MatchingStats matchingStats;
+
+    /** Estimated number of anchor hits in this segment */
+    private long anchorHitsEstimated;
+
+    /** Number of anchor hits we've checked using the NFA */
+    private long anchorHitsChecked = 0;
+
+    /**
+     * Construct SpansFiSeq.
+     *
+     * @param anchorSpans anchor hits
+     * @param startOfAnchor match from the start of the anchor hits? (otherwise from the end)
+     * @param nfa NFA to match
+     * @param dfa NFA compiled to a DFA, or null if it couldn't be compiled
+     * @param direction direction to match in
+     * @param fiAccessor forward index accessor for this segment
+     * @param matchingStats where to report the number of anchor hits once we've checked them all (or null if we don't need to)
+     * @param anchorHitsEstimated estimated number of anchor hits in this segment, or -1 if not estimated
+     */
+    public SpansFiSeq(BLSpans anchorSpans, boolean startOfAnchor, NfaState nfa, Dfa dfa, int direction,
+            ForwardIndexAccessorLeafReader fiAccessor, SpanQueryFiSeq.MatchingStats matchingStats,
+            long anchorHitsEstimated) {
         this.anchor = anchorSpans;
         this.startOfAnchor = startOfAnchor;
         this.nfa = nfa;
+        this.dfa = dfa;
         this.direction = direction;
         this.fiAccessor = fiAccessor;
+        this.matchingStats = matchingStats;
+        this.anchorHitsEstimated = anchorHitsEstimated;
     }
 
     @Override
@@ -115,10 +146,8 @@ class SpansFiSeq extends BLSpans {
         // Advance container
         anchorDoc = anchor.nextDoc();
         anchorStart = -1;
-        if (anchorDoc == NO_MORE_DOCS) {
-            currentFiDoc = null;
-            return NO_MORE_DOCS; // no more containers; we're done.
-        }
+        if (anchorDoc == NO_MORE_DOCS)
+            return noMoreDocs(); // no more containers; we're done.
         currentFiDoc = fiAccessor.getForwardIndexDoc(anchorDoc);
 
         // Find first matching anchor span from here
@@ -140,8 +169,8 @@ class SpansFiSeq extends BLSpans {
         if (anchorStart == NO_MORE_POSITIONS)
             return NO_MORE_POSITIONS;
 
-        if (matchEndPointIt.hasNext()) {
-            currentMatchEndPoint = matchEndPointIt.next();
+        if (matchEndPointsReturned < matchEndPoints.size()) {
+            currentMatchEndPoint = nextMatchEndPoint();
             return startPosition();
         }
 
@@ -199,7 +228,7 @@ class SpansFiSeq extends BLSpans {
             if (anchorDoc != NO_MORE_DOCS) {
                 currentFiDoc = fiAccessor.getForwardIndexDoc(anchorDoc);
             } else {
-                currentFiDoc = null;
+                noMoreDocs();
             }
             anchorStart = -1;
         }
@@ -219,16 +248,17 @@ class SpansFiSeq extends BLSpans {
         while (anchorStart != NO_MORE_POSITIONS) {
 
             // We're at the first unchecked anchor spans. Does our NFA match?
+            anchorHitsChecked++;
             int anchorPos = startOfAnchor ? anchorStart : anchor.endPosition();
             if (direction < 0)
                 anchorPos--;
-            NavigableSet<Integer> setMatchEndpoints = nfa.findMatches(currentFiDoc, anchorPos, direction);
-            if (setMatchEndpoints.size() > 0) {
-                if (direction == 1)
-                    matchEndPointIt = setMatchEndpoints.iterator();
-                else
-                    matchEndPointIt = setMatchEndpoints.descendingSet().iterator();
-                currentMatchEndPoint = matchEndPointIt.next();
+            if (dfa != null)
+                dfa.findMatches(currentFiDoc, anchorPos, direction, matchEndPoints);
+            else
+                nfa.findMatches(currentFiDoc, anchorPos, direction, matchEndPoints);
+            if (!matchEndPoints.isEmpty()) {
+                matchEndPointsReturned = 0;
+                currentMatchEndPoint = nextMatchEndPoint();
                 return startPosition();
             }
 
@@ -241,6 +271,30 @@ class SpansFiSeq extends BLSpans {
         return anchorStart;
     }
 
+    /**
+     * We've run out of anchor hits. Report how many we checked.
+     *
+     * @return NO_MORE_DOCS
+     */
+    private int noMoreDocs() {
+        currentFiDoc = null;
+        if (matchingStats != null) {
+            matchingStats.addAnchorHits(anchorHitsEstimated, anchorHitsChecked);
+            matchingStats = null; // only report once
+        }
+        return NO_MORE_DOCS;
+    }
+
+    /**
+     * Get the next NFA-matched endpoint, in the direction we're matching in.
+     *
+     * @return the next endpoint
+     */
+    private int nextMatchEndPoint() {
+        int i = matchEndPointsReturned++;
+        return direction == 1 ? matchEndPoints.get(i) : matchEndPoints.get(matchEndPoints.size() - 1 - i);
+    }
+
     @Override
     public int advance(int doc) throws IOException {
         alreadyAtFirstMatch = false;
@@ -248,10 +302,8 @@ class SpansFiSeq extends BLSpans {
         // Skip both to doc
         anchorDoc = anchor.advance(doc);
         anchorStart = -1;
-        if (anchorDoc == NO_MORE_DOCS) {
-            currentFiDoc = null;
-            return NO_MORE_DOCS;
-        }
+        if (anchorDoc == NO_MORE_DOCS)
+            return noMoreDocs();
         currentFiDoc = fiAccessor.getForwardIndexDoc(anchorDoc);
 
         // Find first matching anchor span from here
@@ -260,7 +312,7 @@ class SpansFiSeq extends BLSpans {
 
     @Override
     public String toString() {
-        return "SpansFiSeq(" + anchor + ", " + (startOfAnchor ? "START" : "END") + ", " + nfa + ", "
+        return "SpansFiSeq(" + anchor + ", " + (startOfAnchor ? "START" : "END") + ", " + (dfa == null ? nfa : dfa) + ", "
                 + (direction == 1 ? "FORWARD" : "BACKWARD") + ")";
     }
 
@@ -6,7 +6,6 @@ import nl.inl.blacklab.search.fimatch.ForwardIndexAccessor;
 import nl.inl.blacklab.search.fimatch.NfaTwoWay;
 import nl.inl.blacklab.search.lucene.BLSpanQuery;
 import nl.inl.blacklab.search.lucene.SpanQueryFiSeq;
-import nl.inl.util.LuceneUtil;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.apache.lucene.index.IndexReader;
@@ -114,11 +113,9 @@ public class ClauseCombinerNfa extends ClauseCombiner {
         if (nfaThreshold == NO_NFA_MATCHING)
             return 0;
 
-        // Estimate the performance cost of matching the whole sequence using reverse matching.
-        // (this number is a very rough estimation of the expected number of results)
+        // Estimate the number of hits for either clause.
         long numLeft = Math.max(1, left.reverseMatchingCost(reader));
         long numRight = Math.max(1, right.reverseMatchingCost(reader));
-        long seqReverseCost = Math.min(numLeft, numRight) + (numLeft + numRight) / TERM_FREQ_DIVIDER;
 
         // Estimate the performance cost of matching either clause using forward matching.
         // (this number doesn't really mean anything in isolation, only in comparison to other NFA matching costs)
@@ -127,8 +124,8 @@ public class ClauseCombinerNfa extends ClauseCombiner {
 
         // Calculate the ratio of NFA matching versus conventional (reverse) matching the whole sequence,
         // for both directions. The lower the number, the better the NFA approach is.
-        long costNfaToReverseForward = COST_RATIO_CONSTANT_FACTOR * numLeft * fiCostRight / seqReverseCost;
-        long costNfaToReverseBackward = COST_RATIO_CONSTANT_FACTOR * numRight * fiCostLeft / seqReverseCost;
+        long costNfaToReverseForward = costNfaToReverse(numLeft, numRight, fiCostRight);
+        long costNfaToReverseBackward = costNfaToReverse(numRight, numLeft, fiCostLeft);
 
         // Is forward and backward matching even possible?
         boolean backwardPossible = left.canMakeNfa() && !right.matchesEmptySequence();
@@ -171,6 +168,46 @@ public class ClauseCombinerNfa extends ClauseCombiner {
         return 0; // not possible
     }
 
+    /**
+     * Calculate the ratio of the cost of NFA matching versus conventional (reverse)
+     * matching of a sequence of two clauses. The lower the number, the better the
+     * NFA approach is.
+     *
+     * @param numAnchor estimated number of hits for the anchor clause
+     * @param numNfa estimated number of hits for the clause to match using the NFA
+     * @param fiCostNfa forward matching cost of the clause to match using the NFA
+     * @return the cost ratio
+     */
+    private static long costNfaToReverse(long numAnchor, long numNfa, int fiCostNfa) {
+        // Estimate the performance cost of matching the whole sequence using reverse matching.
+        // (this number is a very rough estimation of the expected number of results)
+        long seqReverseCost = Math.min(numAnchor, numNfa) + (numAnchor + numNfa) / TERM_FREQ_DIVIDER;
+        return COST_RATIO_CONSTANT_FACTOR * numAnchor * fiCostNfa / seqReverseCost;
+    }
+
+    /**
+     * Is NFA matching from the anchor hits expected to be faster than finding the
+     * hits for both clauses using the reverse index and joining them?
+     *
+     * This is the comparison we use to decide whether to combine two clauses.
+     * SpanQueryFiSeq uses it to reconsider that decision for each index segment,
+     * once it knows more about the actual number of anchor hits.
+     *
+     * @param numAnchor (estimated) number of hits for the anchor clause
+     * @param numNfa estimated number of hits for the clause to match using the NFA
+     * @param fiCostNfa forward matching cost of the clause to match using the NFA
+     * @param nfaThreshold NFA threshold to use (see {@link #setNfaThreshold(long)})
+     * @return true if NFA matching is preferred
+     */
+    public static boolean nfaMatchingPreferred(long numAnchor, long numNfa, int fiCostNfa, long nfaThreshold) {
+        if (nfaThreshold == MAX_NFA_MATCHING)
+            return true;
+        if (nfaThreshold == NO_NFA_MATCHING)
+            return false;
+        long cost = costNfaToReverse(Math.max(1, numAnchor), Math.max(1, numNfa), fiCostNfa);
+        return cost + 1 <= nfaThreshold;
+    }
+
     @Override
     public int priority(BLSpanQuery left, BLSpanQuery right, IndexReader reader) {
         if (nfaThreshold == NO_NFA_MATCHING) {
@@ -195,8 +232,9 @@ public class ClauseCombinerNfa extends ClauseCombiner {
         }
 
         if (onlyUseNfaForManyUniqueTerms) {
-            long maxTermsRight = LuceneUtil.getMaxTermsPerLeafReader(reader, right.getRealField());
-            long maxTermsLeft = LuceneUtil.getMaxTermsPerLeafReader(reader, left.getRealField());
+            IndexStatistics stats = IndexStatistics.get(reader);
+            long maxTermsRight = stats.maxTermsPerLeafReader(right.getRealField());
+            long maxTermsLeft = stats.maxTermsPerLeafReader(left.getRealField());
             if (BlackLabIndexImpl.traceOptimization())
                 logger.debug("(CCNFA: maxTermsLeft=" + maxTermsLeft + ", maxTermsRight=" + maxTermsRight + ")");
             if (factor > 0 && maxTermsRight < 10_000 ||
@@ -0,0 +1,266 @@
+package nl.inl.blacklab.search.lucene.optimize;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.MultiFields;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.AutomatonQuery;
+import org.apache.lucene.util.automaton.CompiledAutomaton;
+
+import nl.inl.blacklab.exceptions.BlackLabRuntimeException;
+
+/**
+ * Term statistics for an index, used to estimate how many hits (parts of) a
+ * query will produce, so we can decide how to execute it.
+ *
+ * Statistics per field (total number of tokens, number of unique terms) are
+ * gathered when the index is opened. Statistics per term are looked up when
+ * first needed and cached. Frequencies of wildcard, prefix and regex terms are
+ * determined by enumerating the matching terms, unless there are too many.
+ *
+ * Statistics for a single segment of an index we have statistics for (e.g. to
+ * estimate costs per segment while searching) reuse the per-segment field
+ * statistics gathered for the whole index.
+ */
+public class IndexStatistics {
+
+    /** Maximum number of matching terms per segment we enumerate to determine the frequency of a pattern */
+    private static final int MAX_TERMS_TO_ENUMERATE = 10_000;
+
+    /** Maximum number of term or pattern frequencies we cache */
+    private static final int MAX_CACHED_FREQUENCIES = 100_000;
+
+    /** Statistics per open IndexReader (removed when the reader is closed) */
+    private static final Map<IndexReader, IndexStatistics> statsPerReader = new ConcurrentHashMap<>();
+
+    /** Statistics for the whole index each segment reader belongs to */
+    private static final Map<IndexReader, IndexStatistics> indexStatsPerSegment = new ConcurrentHashMap<>();
+
+    /**
+     * Get the statistics for an index, or for a segment of an index.
+     *
+     * @param reader index or segment reader
+     * @return statistics
+     */
+    public static IndexStatistics get(IndexReader reader) {
+        IndexStatistics stats = statsPerReader.get(reader);
+        if (stats == null) {
+            IndexStatistics indexStats = indexStatsPerSegment.get(reader);
+            if (indexStats != null)
+                return indexStats.segment(reader);
+            stats = statsPerReader.computeIfAbsent(reader, IndexStatistics::new);
+            reader.addReaderClosedListener(r -> {
+                IndexStatistics closed = statsPerReader.remove(r);
+                if (closed != null)
+                    closed.segmentOrd.keySet().forEach(segment -> indexStatsPerSegment.remove(segment, closed));
+            });
+        }
+        return stats;
+    }
+
+    /** Statistics for a single field */
+    private static class FieldStats {
+
+        /** Total number of tokens in the field */
+        long sumTotalTermFreq;
+
+        /** Largest number of unique terms in one segment */
+        long maxTermsPerLeafReader;
+
+        /** Number of tokens in the field per segment (null for segment statistics) */
+        long[] sumTotalTermFreqPerSegment;
+
+        /** Number of unique terms in the field per segment (null for segment statistics) */
+        long[] termsPerSegment;
+    }
+
+    private final IndexReader reader;
+
+    /** If these are statistics for a segment: statistics for the whole index, otherwise null */
+    private final IndexStatistics indexStats;
+
+    /** If these are statistics for a segment: its index in the whole index, otherwise -1 */
+    private final int ord;
+
+    /** Index of each of our segments (empty for segment statistics) */
+    private final Map<IndexReader, Integer> segmentOrd = new ConcurrentHashMap<>();
+
+    /** Statistics for our segments, created when first needed */
+    private final Map<IndexReader, IndexStatistics> segmentStats = new ConcurrentHashMap<>();
+
+    /** Statistics per field in the index */
+    private final Map<String, FieldStats> fieldStats = new ConcurrentHashMap<>();
+
+    /** Cached total frequencies of terms */
+    private final Map<Term, Long> termFreqs = new ConcurrentHashMap<>();
+
+    /** Cached total frequencies of patterns (-1 if they match too many terms to count) */
+    private final Map<AutomatonQuery, Long> patternFreqs = new ConcurrentHashMap<>();
+
+    private IndexStatistics(IndexReader reader) {
+        this.reader = reader;
+        this.indexStats = null;
+        this.ord = -1;
+        for (LeafReaderContext ctx: reader.leaves()) {
+            segmentOrd.put(ctx.reader(), ctx.ord);
+            indexStatsPerSegment.put(ctx.reader(), this);
+        }
+        for (String field: MultiFields.getIndexedFields(reader)) {
+            fieldStats.put(field, determineFieldStats(field));
+        }
+    }
+
+    /**
+     * Create statistics for a segment.
+     *
+     * @param indexStats statistics for the whole index
+     * @param reader segment reader
+     * @param ord index of the segment in the whole index
+     */
+    private IndexStatistics(IndexStatistics indexStats, IndexReader reader, int ord) {
+        this.reader = reader;
+        this.indexStats = indexStats;
+        this.ord = ord;
+    }
+
+    /**
+     * Get the statistics for one of our segments.
+     *
+     * @param segmentReader segment reader
+     * @return statistics for the segment
+     */
+    private IndexStatistics segment(IndexReader segmentReader) {
+        return segmentStats.computeIfAbsent(segmentReader,
+                r -> new IndexStatistics(this, r, segmentOrd.get(r)));
+    }
+
+    private FieldStats determineFieldStats(String field) {
+        FieldStats stats = new FieldStats();
+        if (indexStats != null) {
+            // Segment: use the statistics we gathered for the whole index
+            FieldStats indexFieldStats = indexStats.fieldStats(field);
+            stats.sumTotalTermFreq = indexFieldStats.sumTotalTermFreqPerSegment[ord];
+            stats.maxTermsPerLeafReader = indexFieldStats.termsPerSegment[ord];
+            return stats;
+        }
+        List<LeafReaderContext> leaves = reader.leaves();
+        stats.sumTotalTermFreqPerSegment = new long[leaves.size()];
+        stats.termsPerSegment = new long[leaves.size()];
+        try {
+            for (LeafReaderContext ctx: leaves) {
+                Terms terms = ctx.reader().terms(field);
+                if (terms == null)
+                    continue; // this segment doesn't include this field
+                stats.sumTotalTermFreqPerSegment[ctx.ord] = terms.getSumTotalTermFreq();
+                stats.termsPerSegment[ctx.ord] = terms.size();
+                stats.sumTotalTermFreq += terms.getSumTotalTermFreq();
+                stats.maxTermsPerLeafReader = Math.max(stats.maxTermsPerLeafReader, terms.size());
+            }
+        } catch (IOException e) {
+            throw BlackLabRuntimeException.wrap(e);
+        }
+        return stats;
+    }
+
+    private FieldStats fieldStats(String field) {
+        return fieldStats.computeIfAbsent(field, this::determineFieldStats);
+    }
+
+    /**
+     * Get the total number of tokens in a field.
+     *
+     * @param field Lucene field name
+     * @return number of tokens
+     */
+    public long sumTotalTermFreq(String field) {
+        return fieldStats(field).sumTotalTermFreq;
+    }
+
+    /**
+     * Get the largest number of unique terms in a field in any one segment.
+     *
+     * @param field Lucene field name
+     * @return number of unique terms
+     */
+    public long maxTermsPerLeafReader(String field) {
+        return fieldStats(field).maxTermsPerLeafReader;
+    }
+
+    /**
+     * Get the total number of occurrences of a term.
+     *
+     * @param term the term
+     * @return number of occurrences
+     */
+    public long totalTermFreq(Term term) {
+        Long freq = termFreqs.get(term);
+        if (freq == null) {
+            try {
+                freq = reader.totalTermFreq(term);
+            } catch (IOException e) {
+                throw BlackLabRuntimeException.wrap(e);
+            }
+            cache(termFreqs, term, freq);
+        }
+        return freq;
+    }
+
+    /**
+     * Get the total number of occurrences of all terms matching a pattern.
+     *
+     * @param query wildcard, prefix or regex query
+     * @return number of occurrences, or -1 if the pattern matches too many terms to
+     *         count them
+     */
+    public long totalTermFreq(AutomatonQuery query) {
+        Long freq = patternFreqs.get(query);
+        if (freq == null) {
+            freq = countPatternFreq(query);
+            cache(patternFreqs, query, freq);
+        }
+        return freq;
+    }
+
+    private long countPatternFreq(AutomatonQuery query) {
+        CompiledAutomaton automaton;
+        try {
+            automaton = new CompiledAutomaton(query.getAutomaton());
+        } catch (RuntimeException e) {
+            // e.g. too complex to determinize
+            return -1;
+        }
+        long freq = 0;
+        try {
+            for (LeafReaderContext ctx: reader.leaves()) {
+                Terms terms = ctx.reader().terms(query.getField());
+                if (terms == null)
+                    continue;
+                TermsEnum termsEnum = automaton.getTermsEnum(terms);
+                int numberOfTerms = 0;
+                while (termsEnum.next() != null) {
+                    numberOfTerms++;
+                    if (numberOfTerms > MAX_TERMS_TO_ENUMERATE)
+                        return -1;
+                    freq += termsEnum.totalTermFreq();
+                }
+            }
+        } catch (IOException e) {
+            throw BlackLabRuntimeException.wrap(e);
+        }
+        return freq;
+    }
+
+    private static <K> void cache(Map<K, Long> cache, K key, long value) {
+        if (cache.size() >= MAX_CACHED_FREQUENCIES)
+            cache.clear();
+        cache.put(key, value);
+    }
+
+}
@@ -5,7 +5,13 @@ import java.util.Map;
 
 import nl.inl.blacklab.search.Span;
 
-/** Captured group information for a list of hits. */
+/**
+ * Captured group information for a list of hits.
+ *
+ * Groups are stored parallel to the hits, i.e. they are looked up by hit index.
+ * Results derived from a Hits object (sorted, windowed, filtered, ...) get their
+ * own CapturedGroups, in the same order as their hits.
+ */
 public interface CapturedGroups {
 
     /**
@@ -15,45 +21,85 @@ public interface CapturedGroups {
      */
     List<String> names();
 
+    /**
+     * Get the number of hits we have groups for.
+     *
+     * @return number of hits
+     */
+    int size();
+
+    /**
+     * Get the start of a captured group.
+     *
+     * @param hitIndex index of the hit
+     * @param groupIndex index of the group
+     * @return start of the group, or -1 if it wasn't captured for this hit
+     */
+    int start(int hitIndex, int groupIndex);
+
+    /**
+     * Get the end of a captured group.
+     *
+     * @param hitIndex index of the hit
+     * @param groupIndex index of the group
+     * @return end of the group, or -1 if it wasn't captured for this hit
+     */
+    int end(int hitIndex, int groupIndex);
+
     /**
      * Get the captured groups.
      *
-     * @param hit hit to get groups for
-     * @return groups
+     * @param hitIndex index of the hit to get groups for
+     * @return groups (null entries for groups that weren't captured)
      */
-    Span[] get(Hit hit);
+    Span[] get(int hitIndex);
 
     /**
      * Get a map of the captured groups.
      *
-     * Relatively slow. If you care about performance, prefer {@link #get(Hit)}.
+     * Relatively slow. If you care about performance, prefer {@link #get(int)}.
      *
-     * @param hit hit to get groups for
+     * @param hitIndex index of the hit to get groups for
      * @return groups
      */
-    Map<String, Span> getMap(Hit hit);
+    Map<String, Span> getMap(int hitIndex);
 
     /**
-     * Add groups for a hit
+     * Add groups for the next hit
      *
-     * @param hit the hit
-     * @param groups groups for thishit
+     * @param groups groups for this hit (null entries for groups that weren't captured)
      */
-    default void put(Hit hit, Span[] groups) {
+    default void add(Span[] groups) {
         throw new UnsupportedOperationException();
     }
 
-    /** Copy all groups from other */
-    default void putAll(CapturedGroups other) {
+    /**
+     * Copy the groups for a hit from other, as the groups for the next hit
+     *
+     * @param other groups to copy from
+     * @param hitIndex index of the hit in other
+     */
+    default void add(CapturedGroups other, int hitIndex) {
         throw new UnsupportedOperationException();
     }
 
-    /** Copy all groups from other */
-    default void putAll(Map<Hit, Span[]> other) {
+    /** Copy all groups from other, as the groups for the next hits */
+    default void addAll(CapturedGroups other) {
         throw new UnsupportedOperationException();
     }
 
-    Map<? extends Hit, ? extends Span[]> getAll();
+    /**
+     * Copy the groups for the specified hits into a new instance.
+     *
+     * @param indices indices of the hits to copy, in the desired order
+     * @return the selected groups
+     */
+    default CapturedGroups select(int[] indices) {
+        CapturedGroups result = new CapturedGroupsImpl(names());
+        for (int index: indices)
+            result.add(this, index);
+        return result;
+    }
 
     @Override
     String toString();
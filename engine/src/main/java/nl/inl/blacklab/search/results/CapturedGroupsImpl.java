@@ -1,54 +1,184 @@
 package nl.inl.blacklab.search.results;
 
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
-import org.apache.commons.lang3.StringUtils;
+import org.eclipse.collections.impl.list.mutable.primitive.IntArrayList;
 
 import nl.inl.blacklab.search.Span;
 
-/** Captured group information for a list of hits. */
+/**
+ * Captured group information for a list of hits.
+ *
+ * Stored in columns: for each group, an array of starts and an array of ends,
+ * indexed by hit index. This avoids creating objects per hit, and allows us to
+ * copy groups along with the hits when sorting, windowing, etc.
+ */
 public class CapturedGroupsImpl implements CapturedGroups {
 
-    /** The captured groups per hit. */
-    private Map<Hit, Span[]> capturedGroups;
-
     /** Capture group names. */
     private List<String> capturedGroupNames;
 
+    /** Start of each group per hit (-1 if not captured) */
+    private final IntArrayList[] starts;
+
+    /** End of each group per hit (-1 if not captured) */
+    private final IntArrayList[] ends;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
     public CapturedGroupsImpl(List<String> capturedGroupNames) {
         this.capturedGroupNames = capturedGroupNames;
-        capturedGroups = new HashMap<>();
+        starts = new IntArrayList[capturedGroupNames.size()];
+        ends = new IntArrayList[capturedGroupNames.size()];
+        for (int i = 0; i < starts.length; i++) {
+            starts[i] = new IntArrayList();
+            ends[i] = new IntArrayList();
+        }
     }
 
     /**
-     * Add groups for a hit
+     * Construct from existing columns (e.g. read from a file).
+     *
+     * The arrays are used directly, not copied.
      *
-     * @param hit the hit
-     * @param groups groups for thishit
+     * @param capturedGroupNames capture group names
+     * @param starts per group, the start of the group for each hit (-1 if not captured)
+     * @param ends per group, the end of the group for each hit (-1 if not captured)
+     */
+    public CapturedGroupsImpl(List<String> capturedGroupNames, int[][] starts, int[][] ends) {
+        if (starts.length != capturedGroupNames.size() || ends.length != capturedGroupNames.size())
+            throw new IllegalArgumentException("Need starts and ends for each group");
+        this.capturedGroupNames = capturedGroupNames;
+        this.starts = new IntArrayList[starts.length];
+        this.ends = new IntArrayList[ends.length];
+        for (int i = 0; i < starts.length; i++) {
+            if (starts[i].length != starts[0].length || ends[i].length != starts[0].length)
+                throw new IllegalArgumentException("Need a start and end for each hit in each group");
+            this.starts[i] = IntArrayList.newListWith(starts[i]);
+            this.ends[i] = IntArrayList.newListWith(ends[i]);
+        }
+    }
+
+    /**
+     * Add groups for the next hit
+     *
+     * @param groups groups for this hit (null entries for groups that weren't captured)
      */
     @Override
-    public void put(Hit hit, Span[] groups) {
-        capturedGroups.put(hit, groups);
+    public void add(Span[] groups) {
+        lock.writeLock().lock();
+        try {
+            for (int i = 0; i < starts.length; i++) {
+                Span group = groups == null ? null : groups[i];
+                starts[i].add(group == null ? -1 : group.start());
+                ends[i].add(group == null ? -1 : group.end());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
     }
 
-    /** Copy all groups from other */
+    /**
+     * Copy the groups for a hit from other, as the groups for the next hit
+     *
+     * @param other groups to copy from
+     * @param hitIndex index of the hit in other
+     */
     @Override
-    public void putAll(CapturedGroups other) {
-        this.capturedGroups.putAll(other.getAll());
+    public void add(CapturedGroups other, int hitIndex) {
+        if (!(other instanceof CapturedGroupsImpl)) {
+            lock.writeLock().lock();
+            try {
+                for (int i = 0; i < starts.length; i++) {
+                    starts[i].add(other.start(hitIndex, i));
+                    ends[i].add(other.end(hitIndex, i));
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+            return;
+        }
+        // Lock other once, instead of for each value we read
+        CapturedGroupsImpl o = (CapturedGroupsImpl) other;
+        lock.writeLock().lock();
+        o.lock.readLock().lock();
+        try {
+            for (int i = 0; i < starts.length; i++) {
+                starts[i].add(o.starts[i].get(hitIndex));
+                ends[i].add(o.ends[i].get(hitIndex));
+            }
+        } finally {
+            o.lock.readLock().unlock();
+            lock.writeLock().unlock();
+        }
     }
 
+    /** Copy all groups from other, as the groups for the next hits */
     @Override
-    public Map<? extends Hit, ? extends Span[]> getAll() {
-        return capturedGroups;
+    public void addAll(CapturedGroups other) {
+        if (!(other instanceof CapturedGroupsImpl)) {
+            for (int i = 0; i < other.size(); i++)
+                add(other, i);
+            return;
+        }
+        CapturedGroupsImpl o = (CapturedGroupsImpl) other;
+        lock.writeLock().lock();
+        o.lock.readLock().lock();
+        try {
+            for (int i = 0; i < starts.length; i++) {
+                starts[i].addAll(o.starts[i]);
+                ends[i].addAll(o.ends[i]);
+            }
+        } finally {
+            o.lock.readLock().unlock();
+            lock.writeLock().unlock();
+        }
     }
 
-    /** Copy all groups from other */
+    /**
+     * Copy the groups for the specified hits into a new instance.
+     *
+     * @param indices indices of the hits to copy, in the desired order
+     * @return the selected groups
+     */
     @Override
-    public void putAll(Map<Hit, Span[]> other) {
-        this.capturedGroups.putAll(other);
+    public CapturedGroupsImpl select(int[] indices) {
+        CapturedGroupsImpl result = new CapturedGroupsImpl(capturedGroupNames);
+        lock.readLock().lock();
+        try {
+            for (int i = 0; i < starts.length; i++) {
+                IntArrayList s = new IntArrayList(indices.length);
+                IntArrayList e = new IntArrayList(indices.length);
+                for (int index: indices) {
+                    s.add(starts[i].get(index));
+                    e.add(ends[i].get(index));
+                }
+                result.starts[i] = s;
+                result.ends[i] = e;
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return result;
+    }
+
+    /**
+     * Remove all groups.
+     */
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            for (int i = 0; i < starts.length; i++) {
+                starts[i].clear();
+                ends[i].clear();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
     }
 
     /**
@@ -61,37 +191,74 @@ public class CapturedGroupsImpl implements CapturedGroups {
         return capturedGroupNames;
     }
 
+    @Override
+    public int size() {
+        if (starts.length == 0)
+            return 0;
+        lock.readLock().lock();
+        try {
+            return starts[0].size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public int start(int hitIndex, int groupIndex) {
+        lock.readLock().lock();
+        try {
+            return starts[groupIndex].get(hitIndex);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public int end(int hitIndex, int groupIndex) {
+        lock.readLock().lock();
+        try {
+            return ends[groupIndex].get(hitIndex);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
     /**
      * Get the captured groups.
      *
-     * @param hit hit to get groups for
-     * @return groups
+     * @param hitIndex index of the hit to get groups for
+     * @return groups (null entries for groups that weren't captured)
      */
     @Override
-    public Span[] get(Hit hit) {
-        if (capturedGroups == null)
-            return null;
-        return capturedGroups.get(hit);
+    public Span[] get(int hitIndex) {
+        Span[] result = new Span[starts.length];
+        lock.readLock().lock();
+        try {
+            for (int i = 0; i < starts.length; i++) {
+                int start = starts[i].get(hitIndex);
+                if (start >= 0)
+                    result[i] = new Span(start, ends[i].get(hitIndex));
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return result;
     }
 
     /**
      * Get a map of the captured groups.
      *
-     * Relatively slow. If you care about performance, prefer {@link #get(Hit)}.
+     * Relatively slow. If you care about performance, prefer {@link #get(int)}.
      *
-     * @param hit hit to get groups for
+     * @param hitIndex index of the hit to get groups for
      * @return groups
      */
     @Override
-    public Map<String, Span> getMap(Hit hit) {
-        if (capturedGroups == null)
-            return null;
+    public Map<String, Span> getMap(int hitIndex) {
         List<String> names = names();
-        Span[] groups = capturedGroups.get(hit);
-        if (groups == null)
-            return null;
+        Span[] groups = get(hitIndex);
         Map<String, Span> result = new TreeMap<>(); // TreeMap to maintain group ordering
-        for (int i = 0; i < names.size(); i++) {
+        for (int i = 0; i < groups.length; i++) {
             result.put(names.get(i), groups[i]);
         }
         return result;
@@ -99,8 +266,7 @@ public class CapturedGroupsImpl implements CapturedGroups {
 
     @Override
     public String toString() {
-        String grp = StringUtils.abbreviate(capturedGroups.toString(), 80);
-        return "CapturedGroupsImpl(names=" + capturedGroupNames + ", groups=" + grp + ")";
+        return "CapturedGroupsImpl(names=" + capturedGroupNames + ", hits=" + size() + ")";
     }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,395 @@
+package nl.inl.blacklab.search.results;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.eclipse.collections.impl.list.mutable.primitive.IntArrayList;
+import org.eclipse.collections.impl.list.mutable.primitive.LongArrayList;
+
+import nl.inl.blacklab.resultproperty.HitProperty;
+import nl.inl.blacklab.search.results.Hits.EphemeralHit;
+import nl.inl.blacklab.search.results.Hits.HitsArrays;
+
+/**
+ * Append-only list of hits in compact form.
+ *
+ * {@link HitsArrays} stores 12 bytes per hit. Hits from a query are in document
+ * order, so consecutive hits are usually in the same document or a nearby one,
+ * and hits are usually short. We exploit that by encoding each hit as three
+ * variable-length integers: the difference with the previous hit's doc id, its
+ * start (relative to the previous hit's start if in the same document) and its
+ * length. Typically this takes 3-4 bytes per hit.
+ *
+ * Hits are encoded in blocks of {@link #BLOCK_SIZE}; each block starts from
+ * scratch, so we only need to decode one block to access a hit. Recently decoded
+ * blocks are cached, so sequential access (e.g. iterating, or extracting sort
+ * keys) only decodes each block once.
+ *
+ * Meant for the source hits of a query, which are only appended to and are
+ * never sorted in place. Derived results (sorted, windowed, ...) use regular
+ * {@link HitsArrays}.
+ */
+public class CompactHitsArrays extends HitsArrays {
+
+    /** Number of hits per block (a power of two) */
+    static final int BLOCK_SIZE = 64;
+
+    private static final int BLOCK_SHIFT = Integer.numberOfTrailingZeros(BLOCK_SIZE);
+
+    /** Size of a page of encoded bytes (a power of two) */
+    private static final int PAGE_SIZE = 1 << 20;
+
+    private static final int PAGE_SHIFT = Integer.numberOfTrailingZeros(PAGE_SIZE);
+
+    /** Number of decoded blocks we cache */
+    private static final int CACHE_SLOTS = 64;
+
+    /** A decoded block. Immutable, so it can be shared between threads without locking. */
+    private static class DecodedBlock {
+
+        final int block;
+
+        final int[] docs;
+
+        final int[] starts;
+
+        final int[] ends;
+
+        /** Number of hits in this block (the last block may still grow) */
+        final int size;
+
+        DecodedBlock(int block, int[] docs, int[] starts, int[] ends, int size) {
+            this.block = block;
+            this.docs = docs;
+            this.starts = starts;
+            this.ends = ends;
+            this.size = size;
+        }
+    }
+
+    /** Encoded hits, in pages of PAGE_SIZE bytes (the last one may be smaller and is grown as needed) */
+    private final List<byte[]> pages = new ArrayList<>();
+
+    /** Number of bytes written */
+    private long bytesWritten = 0;
+
+    /** Offset of the first byte of each block */
+    private final LongArrayList blockOffsets = new LongArrayList();
+
+    /** Number of hits */
+    private int size = 0;
+
+    /** Previous hit's doc (within current block) */
+    private int prevDoc;
+
+    /** Previous hit's start (within current block) */
+    private int prevStart;
+
+    /** Recently decoded blocks, indexed by block number modulo CACHE_SLOTS */
+    private final DecodedBlock[] cache = new DecodedBlock[CACHE_SLOTS];
+
+    public CompactHitsArrays() {
+        super();
+    }
+
+    /** Append a hit. Caller must hold the write lock. */
+    private void append(int doc, int start, int end) {
+        if ((size & (BLOCK_SIZE - 1)) == 0) {
+            // Start a new block; first hit is encoded relative to zero
+            blockOffsets.add(bytesWritten);
+            prevDoc = 0;
+            prevStart = 0;
+        }
+        int docDelta = doc - prevDoc;
+        writeVarInt(zigZag(docDelta));
+        writeVarInt(zigZag(docDelta == 0 ? start - prevStart : start));
+        writeVarInt(zigZag(end - start));
+        prevDoc = doc;
+        prevStart = start;
+        size++;
+    }
+
+    private static int zigZag(int n) {
+        return (n << 1) ^ (n >> 31);
+    }
+
+    private static int unZigZag(int n) {
+        return (n >>> 1) ^ -(n & 1);
+    }
+
+    private void writeVarInt(int value) {
+        while ((value & ~0x7F) != 0) {
+            writeByte((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        writeByte((byte) value);
+    }
+
+    private void writeByte(byte b) {
+        int pageIndex = (int) (bytesWritten >>> PAGE_SHIFT);
+        int offset = (int) (bytesWritten & (PAGE_SIZE - 1));
+        if (pageIndex == pages.size()) {
+            pages.add(new byte[256]);
+        } else if (offset == pages.get(pageIndex).length) {
+            // Grow the last page (up to PAGE_SIZE, after which we start a new page)
+            pages.set(pageIndex, Arrays.copyOf(pages.get(pageIndex), Math.min(PAGE_SIZE, offset * 2)));
+        }
+        pages.get(pageIndex)[offset] = b;
+        bytesWritten++;
+    }
+
+    /**
+     * Get a decoded block, from the cache if possible. Caller must hold the read lock.
+     *
+     * @param block block number
+     * @param minSize the block must contain at least this many hits
+     * @return decoded block
+     */
+    private DecodedBlock decodedBlock(int block, int minSize) {
+        int slot = block & (CACHE_SLOTS - 1);
+        DecodedBlock decoded = cache[slot];
+        if (decoded != null && decoded.block == block && decoded.size >= minSize)
+            return decoded;
+
+        int n = Math.min(BLOCK_SIZE, size - (block << BLOCK_SHIFT));
+        int[] docs = new int[n];
+        int[] starts = new int[n];
+        int[] ends = new int[n];
+        long[] pos = { blockOffsets.get(block) };
+        int doc = 0, start = 0;
+        for (int i = 0; i < n; i++) {
+            int docDelta = unZigZag(readVarInt(pos));
+            int startValue = unZigZag(readVarInt(pos));
+            start = docDelta == 0 ? start + startValue : startValue;
+            doc += docDelta;
+            docs[i] = doc;
+            starts[i] = start;
+            ends[i] = start + unZigZag(readVarInt(pos));
+        }
+        decoded = new DecodedBlock(block, docs, starts, ends, n);
+        cache[slot] = decoded;
+        return decoded;
+    }
+
+    private int readVarInt(long[] pos) {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            long p = pos[0]++;
+            byte b = pages.get((int) (p >>> PAGE_SHIFT))[(int) (p & (PAGE_SIZE - 1))];
+            value |= (b & 0x7F) << shift;
+            if (b >= 0)
+                return value;
+        }
+    }
+
+    @Override
+    public void add(int doc, int start, int end) {
+        lock.writeLock().lock();
+        try {
+            append(doc, start, end);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void add(EphemeralHit hit) {
+        add(hit.doc, hit.start, hit.end);
+    }
+
+    @Override
+    public void add(Hit hit) {
+        add(hit.doc(), hit.start(), hit.end());
+    }
+
+    @Override
+    public void addAll(IntArrayList docs, IntArrayList starts, IntArrayList ends) {
+        lock.writeLock().lock();
+        try {
+            for (int i = 0; i < docs.size(); i++)
+                append(docs.get(i), starts.get(i), ends.get(i));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void addAll(List<Hit> hits) {
+        lock.writeLock().lock();
+        try {
+            for (Hit hit: hits)
+                append(hit.doc(), hit.start(), hit.end());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void addAll(HitsArrays hits) {
+        lock.writeLock().lock();
+        hits.lock.readLock().lock();
+        try {
+            EphemeralHit hit = new EphemeralHit();
+            int n = hits.sizeUnlocked();
+            for (int i = 0; i < n; i++) {
+                hits.getEphemeralUnlocked(i, hit);
+                append(hit.doc, hit.start, hit.end);
+            }
+        } finally {
+            hits.lock.readLock().unlock();
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void use(int index, HitConsumer cons) {
+        EphemeralHit hit = new EphemeralHit();
+        getEphemeral(index, hit);
+        cons.consume(hit.doc, hit.start, hit.end);
+    }
+
+    @Override
+    public HitImpl get(int index) {
+        EphemeralHit hit = new EphemeralHit();
+        getEphemeral(index, hit);
+        return hit.toHit();
+    }
+
+    @Override
+    public void getEphemeral(int index, EphemeralHit h) {
+        lock.readLock().lock();
+        try {
+            getEphemeralUnlocked(index, h);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    void getEphemeralUnlocked(int index, EphemeralHit h) {
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+        int i = index & (BLOCK_SIZE - 1);
+        DecodedBlock block = decodedBlock(index >>> BLOCK_SHIFT, i + 1);
+        h.doc = block.docs[i];
+        h.start = block.starts[i];
+        h.end = block.ends[i];
+    }
+
+    @Override
+    public int doc(int index) {
+        EphemeralHit hit = new EphemeralHit();
+        getEphemeral(index, hit);
+        return hit.doc;
+    }
+
+    @Override
+    public int start(int index) {
+        EphemeralHit hit = new EphemeralHit();
+        getEphemeral(index, hit);
+        return hit.start;
+    }
+
+    @Override
+    public int end(int index) {
+        EphemeralHit hit = new EphemeralHit();
+        getEphemeral(index, hit);
+        return hit.end;
+    }
+
+    @Override
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    int sizeUnlocked() {
+        return size;
+    }
+
+    /**
+     * Get the doc ids of all hits.
+     *
+     * Note that these hits are stored in compact form, so this returns a decoded
+     * copy, not the internal array.
+     *
+     * @return doc ids
+     */
+    @Override
+    public IntArrayList docs() {
+        return decodeAll(0);
+    }
+
+    /**
+     * Get the starts of all hits.
+     *
+     * Note that these hits are stored in compact form, so this returns a decoded
+     * copy, not the internal array.
+     *
+     * @return starts
+     */
+    @Override
+    public IntArrayList starts() {
+        return decodeAll(1);
+    }
+
+    /**
+     * Get the ends of all hits.
+     *
+     * Note that these hits are stored in compact form, so this returns a decoded
+     * copy, not the internal array.
+     *
+     * @return ends
+     */
+    @Override
+    public IntArrayList ends() {
+        return decodeAll(2);
+    }
+
+    private IntArrayList decodeAll(int what) {
+        lock.readLock().lock();
+        try {
+            IntArrayList result = new IntArrayList(size);
+            EphemeralHit hit = new EphemeralHit();
+            for (int i = 0; i < size; i++) {
+                getEphemeralUnlocked(i, hit);
+                result.add(what == 0 ? hit.doc : what == 1 ? hit.start : hit.end);
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Not supported; compact hits are append-only. Use {@link #sort(HitProperty)}.
+     */
+    @Override
+    public void sortInPlace(HitProperty p) {
+        throw new UnsupportedOperationException("Compact hits cannot be sorted in place");
+    }
+
+    @Override
+    public long sizeInBytes() {
+        lock.readLock().lock();
+        try {
+            long pageBytes = 0;
+            for (byte[] page: pages)
+                pageBytes += page.length;
+            long cachedBytes = 0;
+            for (DecodedBlock block: cache) {
+                if (block != null)
+                    cachedBytes += 12L * block.docs.length;
+            }
+            return pageBytes + 8L * blockOffsets.size() + cachedBytes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+}
@@ -176,36 +176,31 @@ public class Contexts implements Iterable<int[]> {
         int[][] contexts = new int[n][];
         for (AnnotationForwardIndex forwardIndex: contextSources) {
             FiidLookup fiidLookup = fiidLookups.get(fiNumber);
-            // Get all the words from the forward index
-            List<int[]> words;
-            if (forwardIndex != null) {
-                // We have a forward index for this field. Use it.
-                int fiid = fiidLookup.get(doc);
-                words = forwardIndex.retrievePartsInt(fiid, startsOfSnippets, endsOfSnippets);
-            } else {
+            if (forwardIndex == null)
                 throw new BlackLabRuntimeException("Cannot get context without a forward index");
-            }
+            // We have a forward index for this field. Use it.
+            int fiid = fiidLookup.get(doc);
+            int docLength = forwardIndex.docLength(fiid);
 
             // Build the actual concordances
-//            int hitNum = 0;
             for (int i = 0; i < n; ++i) {
                 int hitIndex = start + i;
-                int[] theseWords = words.get(i);
-                hits.getEphemeral(hitIndex, hit);
-
                 int firstWordIndex = startsOfSnippets[i];
 
                 if (fiNumber == 0) {
                     // Allocate context array and set hit and right start and context length
+                    hits.getEphemeral(hitIndex, hit);
+                    int contextLength = Math.min(endsOfSnippets[i], docLength) - firstWordIndex;
                     contexts[i] = new int[NUMBER_OF_BOOKKEEPING_INTS
-                            + theseWords.length * contextSources.size()];
+                            + contextLength * contextSources.size()];
                     contexts[i][HIT_START_INDEX] = hit.start - firstWordIndex;
                     contexts[i][RIGHT_START_INDEX] = hit.end - firstWordIndex;
-                    contexts[i][LENGTH_INDEX] = theseWords.length;
+                    contexts[i][LENGTH_INDEX] = contextLength;
                 }
-                // Copy the context we just retrieved into the context array
-                int copyStart = fiNumber * theseWords.length + NUMBER_OF_BOOKKEEPING_INTS;
-                System.arraycopy(theseWords, 0, contexts[i], copyStart, theseWords.length);
+                // Retrieve the words from the forward index directly into the context array
+                int copyStart = fiNumber * contexts[i][LENGTH_INDEX] + NUMBER_OF_BOOKKEEPING_INTS;
+                if (forwardIndex.retrievePart(fiid, firstWordIndex, endsOfSnippets[i], contexts[i], copyStart) < 0)
+                    throw new BlackLabRuntimeException("Document was deleted from forward index. fiid = " + fiid);
             }
 
             fiNumber++;
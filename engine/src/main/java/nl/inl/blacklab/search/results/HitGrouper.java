@@ -0,0 +1,162 @@
+package nl.inl.blacklab.search.results;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import nl.inl.blacklab.exceptions.BlackLabRuntimeException;
+import nl.inl.blacklab.exceptions.InterruptedSearch;
+import nl.inl.blacklab.resultproperty.HitSortKeys;
+import nl.inl.blacklab.search.SearchExecutor;
+
+/**
+ * Groups hits by their group keys (see {@link HitSortKeys}).
+ *
+ * The hits are divided into consecutive ranges that are grouped in parallel
+ * as subtasks of the current search (see {@link SearchExecutor#invokeInRanges}),
+ * each into its own hash table of primitive keys. The results are then merged
+ * in order, so the hits in each group stay in their original order. Groups are
+ * returned in order of first occurrence.
+ */
+class HitGrouper {
+
+    /** How often to check if we've been interrupted while grouping (must be a power of two) */
+    private static final int CHECK_INTERRUPT_INTERVAL = 1024;
+
+    /** A group of hits with equal keys. */
+    static class Group {
+
+        /** Index of the first hit in this group (its key is the group's key) */
+        final int firstHit;
+
+        /** Total number of hits in this group */
+        int size;
+
+        /** Indices of the hits we store for this group */
+        final IntArrayList storedHits = new IntArrayList();
+
+        Group(int firstHit) {
+            this.firstHit = firstHit;
+        }
+    }
+
+    /**
+     * Hash table from key to group, using open addressing. Keys aren't stored
+     * separately; we compare with the key of each group's first hit.
+     */
+    private static class GroupTable {
+
+        private final HitSortKeys keys;
+
+        private final int maxHitsToStorePerGroup;
+
+        /** The groups, in order of first occurrence */
+        final List<Group> groups = new ArrayList<>();
+
+        /** Group index + 1 for each slot, or 0 if empty */
+        private int[] table = new int[16];
+
+        GroupTable(HitSortKeys keys, int maxHitsToStorePerGroup) {
+            this.keys = keys;
+            this.maxHitsToStorePerGroup = maxHitsToStorePerGroup;
+        }
+
+        /**
+         * Find the group with the same key as this hit, creating it if necessary.
+         *
+         * @param hit hit index
+         * @return the group
+         */
+        Group find(int hit) {
+            int mask = table.length - 1;
+            int slot = mix(keys.hash(hit)) & mask;
+            while (table[slot] != 0) {
+                Group group = groups.get(table[slot] - 1);
+                if (keys.equal(group.firstHit, hit))
+                    return group;
+                slot = (slot + 1) & mask;
+            }
+            Group group = new Group(hit);
+            groups.add(group);
+            table[slot] = groups.size();
+            if (groups.size() * 2 > table.length)
+                rehash();
+            return group;
+        }
+
+        void add(int hit) {
+            Group group = find(hit);
+            group.size++;
+            if (maxHitsToStorePerGroup < 0 || group.storedHits.size() < maxHitsToStorePerGroup)
+                group.storedHits.add(hit);
+        }
+
+        void addAll(Group other) {
+            Group group = find(other.firstHit);
+            group.size += other.size;
+            for (int i = 0; i < other.storedHits.size(); i++) {
+                if (maxHitsToStorePerGroup >= 0 && group.storedHits.size() >= maxHitsToStorePerGroup)
+                    break;
+                group.storedHits.add(other.storedHits.getInt(i));
+            }
+        }
+
+        private void rehash() {
+            table = new int[table.length * 2];
+            int mask = table.length - 1;
+            for (int i = 0; i < groups.size(); i++) {
+                int slot = mix(keys.hash(groups.get(i).firstHit)) & mask;
+                while (table[slot] != 0)
+                    slot = (slot + 1) & mask;
+                table[slot] = i + 1;
+            }
+        }
+
+        private static int mix(int h) {
+            h *= 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+    }
+
+    private HitGrouper() {
+    }
+
+    /**
+     * Group hits by their keys.
+     *
+     * @param keys group keys for the hits
+     * @param maxHitsToStorePerGroup how many hits to store per group at most, or -1 for all
+     * @param executor executor to group ranges of hits on in parallel
+     * @return the groups, in order of first occurrence
+     */
+    static List<Group> group(HitSortKeys keys, int maxHitsToStorePerGroup, SearchExecutor executor) {
+        List<GroupTable> perRange;
+        try {
+            perRange = executor.invokeInRanges(keys.size(), HitSortKeys.MIN_HITS_PER_TASK, (from, to) -> {
+                GroupTable table = new GroupTable(keys, maxHitsToStorePerGroup);
+                for (int hit = from; hit < to; hit++) {
+                    if ((hit & (CHECK_INTERRUPT_INTERVAL - 1)) == 0 && Thread.currentThread().isInterrupted())
+                        throw new InterruptedSearch();
+                    table.add(hit);
+                }
+                return table;
+            });
+        } catch (InterruptedException e) {
+            throw new InterruptedSearch(e);
+        } catch (ExecutionException e) {
+            throw BlackLabRuntimeException.wrap(e.getCause());
+        }
+        if (perRange.size() == 1)
+            return perRange.get(0).groups;
+
+        // Merge the groups from each range, in order
+        GroupTable merged = new GroupTable(keys, maxHitsToStorePerGroup);
+        for (GroupTable table: perRange) {
+            for (Group group: table.groups) {
+                merged.addAll(group);
+            }
+        }
+        return merged.groups;
+    }
+}
@@ -18,6 +18,7 @@ package nl.inl.blacklab.search.results;
 import nl.inl.blacklab.forwardindex.FiidLookup;
 import nl.inl.blacklab.resultproperty.GroupProperty;
 import nl.inl.blacklab.resultproperty.HitProperty;
+import nl.inl.blacklab.resultproperty.HitSortKeys;
 import nl.inl.blacklab.resultproperty.PropertyValue;
 import nl.inl.blacklab.search.indexmetadata.Annotation;
 import nl.inl.blacklab.search.results.Hits.HitsArrays;
@@ -115,8 +116,29 @@ public class HitGroups extends ResultsList<HitGroup, GroupProperty<Hit, HitGroup
         List<FiidLookup> fiidLookups = FiidLookup.getList(requiredContext, hits.queryInfo().index().reader());
         criteria = criteria.copyWith(hits, requiredContext == null ? null : new Contexts(hits, requiredContext, criteria.needsContextSize(hits.index()), fiidLookups));
         
+        // If possible, group by primitive keys, only creating a PropertyValue per group
+        HitSortKeys keys = HitSortKeys.forGrouping(criteria, hits.size(), hits.index().blackLab().searchExecutorService());
+        if (keys != null)
+            groupByKeys(hits, criteria, keys, maxResultsToStorePerGroup);
+        else
+            groupByValues(hits, criteria, maxResultsToStorePerGroup);
+
+        // Make a copy so we don't keep any references to the source hits
+        this.hitsStats = hits.hitsStats().save();
+        this.docsStats = hits.docsStats().save();
+    }
+
+    /**
+     * Group hits by their values, creating a PropertyValue for each hit.
+     *
+     * @param hits the hits to group
+     * @param criteria the criteria to group on (with Hits and Contexts set)
+     * @param maxResultsToStorePerGroup how many results to store per group at most
+     */
+    private void groupByValues(Hits hits, HitProperty criteria, int maxResultsToStorePerGroup) {
         //Thread currentThread = Thread.currentThread();
         Map<PropertyValue, HitsArrays> groupLists = new HashMap<>();
+        Map<PropertyValue, CapturedGroups> groupCapturedGroups = new HashMap<>();
         Map<PropertyValue, Integer> groupSizes = new HashMap<>();
         resultObjects = 0;
         int i = 0;
@@ -129,6 +151,10 @@ public class HitGroups extends ResultsList<HitGroup, GroupProperty<Hit, HitGroup
             }
             if (maxResultsToStorePerGroup < 0 || group.size() < maxResultsToStorePerGroup) {
                 group.add(hit);
+                if (hits.hasCapturedGroups()) {
+                    groupCapturedGroups.computeIfAbsent(identity, __ -> new CapturedGroupsImpl(hits.capturedGroups().names()))
+                            .add(hits.capturedGroups(), i);
+                }
                 resultObjects++;
             }
             Integer groupSize = groupSizes.get(identity);
@@ -146,14 +172,35 @@ public class HitGroups extends ResultsList<HitGroup, GroupProperty<Hit, HitGroup
             PropertyValue groupId = e.getKey();
             HitsArrays hitList = e.getValue();
             Integer groupSize = groupSizes.get(groupId);
-            HitGroup group = HitGroup.fromList(queryInfo(), groupId, hitList, hits.capturedGroups(), groupSize);
+            HitGroup group = HitGroup.fromList(queryInfo(), groupId, hitList, groupCapturedGroups.get(groupId), groupSize);
             groups.put(groupId, group);
             results.add(group);
         }
+    }
 
-        // Make a copy so we don't keep any references to the source hits
-        this.hitsStats = hits.hitsStats().save();
-        this.docsStats = hits.docsStats().save();
+    /**
+     * Group hits by their group keys.
+     *
+     * @param hits the hits to group
+     * @param criteria the criteria to group on (with Hits and Contexts set)
+     * @param keys the group keys for the hits
+     * @param maxResultsToStorePerGroup how many results to store per group at most
+     */
+    private void groupByKeys(Hits hits, HitProperty criteria, HitSortKeys keys, int maxResultsToStorePerGroup) {
+        resultObjects = 0;
+        HitsArrays hitsArrays = hits.hitsArrays();
+        for (HitGrouper.Group g: HitGrouper.group(keys, maxResultsToStorePerGroup, hits.index().blackLab().searchExecutorService())) {
+            PropertyValue groupId = criteria.get(g.firstHit);
+            int[] storedHits = g.storedHits.toIntArray();
+            HitsArrays hitList = hitsArrays.select(storedHits);
+            CapturedGroups capturedGroups = hits.hasCapturedGroups() ? hits.capturedGroups().select(storedHits) : null;
+            resultObjects += hitList.size() + 1;
+            if (g.size > largestGroupSize)
+                largestGroupSize = g.size;
+            HitGroup group = HitGroup.fromList(queryInfo(), groupId, hitList, capturedGroups, g.size);
+            groups.put(groupId, group);
+            results.add(group);
+        }
     }
 
     protected HitGroups(QueryInfo queryInfo, List<HitGroup> groups, HitProperty groupCriteria, SampleParameters sampleParameters, WindowStats windowStats, ResultsStats hitsStats, ResultsStats docsStats) {
@@ -1,11 +1,13 @@
 package nl.inl.blacklab.search.results;
 
 import nl.inl.blacklab.exceptions.BlackLabRuntimeException;
+import nl.inl.blacklab.exceptions.InterruptedSearch;
 import nl.inl.blacklab.forwardindex.AnnotationForwardIndex;
 import nl.inl.blacklab.forwardindex.Terms;
 import nl.inl.blacklab.resultproperty.*;
 import nl.inl.blacklab.search.BlackLabIndex;
 import nl.inl.blacklab.search.DocImpl;
+import nl.inl.blacklab.search.SearchExecutor;
 import nl.inl.blacklab.search.indexmetadata.AnnotatedFieldNameUtil;
 import nl.inl.blacklab.search.indexmetadata.Annotation;
 import nl.inl.blacklab.search.indexmetadata.MatchSensitivity;
@@ -24,10 +26,14 @@ import org.apache.lucene.search.Query;
 import org.apache.lucene.search.SimpleCollector;
 
 import java.io.IOException;
+import java.nio.IntBuffer;
 import java.util.*;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 import java.util.function.IntUnaryOperator;
 import java.util.stream.Collectors;
 
@@ -47,6 +53,9 @@ public class HitGroupsTokenFrequencies {
     /** Document length is always reported as one higher due to punctuation being a trailing value */
     private static final int subtractClosingToken = 1;
 
+    /** Into how many chunks per thread should we divide our work? (more chunks means better load balancing) */
+    private static final int CHUNKS_PER_THREAD = 4;
+
     /** Precalculated hashcode for group id, to save time while grouping and sorting. */
     private static class GroupIdHash {
         private int[] tokenIds;
@@ -192,7 +201,6 @@ public class HitGroupsTokenFrequencies {
 
                 numberOfDocsProcessed = docIds.size();
                 final IndexReader reader = queryInfo.index().reader();
-                final int[] minusOne = new int[] { -1 };
 
                 // Matched all tokens but not grouping by a specific annotation, only metadata
                 // This requires a different approach because we never retrieve the individual tokens if there's no annotation
@@ -204,7 +212,7 @@ public class HitGroupsTokenFrequencies {
                         DocPropertyAnnotatedFieldLength propTokens = new DocPropertyAnnotatedFieldLength(index, fieldName);
                         final int[] emptyTokenValuesArray = new int[0];
 
-                        docIds.parallelStream().forEach(docId -> {
+                        mapInParallel(index, docIds, docId -> {
                             final int docLength = (int) propTokens.get(docId) - subtractClosingToken; // ignore "extra closing token"
                             final DocResult synthesizedDocResult = DocResult.fromDoc(queryInfo, new PropertyValueDoc(new DocImpl(queryInfo.index(), docId)), 0, docLength);
                             final PropertyValue[] metadataValuesForGroup = new PropertyValue[docProperties.size()];
@@ -224,6 +232,7 @@ public class HitGroupsTokenFrequencies {
                                     return MutablePair.of(docLength, 1);
                                 }
                             });
+                            return true;
                         });
                     }
                 } else {
@@ -238,21 +247,21 @@ public class HitGroupsTokenFrequencies {
                     fieldsToLoad.add(lengthTokensFieldName);
                     fieldsToLoad.addAll(annotationFINames);
 
-                    numberOfDocsProcessed = docIds.parallelStream().filter(docId -> {
+                    numberOfDocsProcessed = mapInParallel(index, docIds, docId -> {
                         try {
 
                             // Step 1: read all values for the to-be-grouped annotations for this document
-                            // This will create one int[] for every annotation, containing ids that map to the values for this document for this annotation
+                            // This will create one view for every annotation, containing ids that map to the values for this document for this annotation
+                            // (the views point directly into the forward index, so no token ids are copied)
 
                             final Document doc = reader.document(docId, fieldsToLoad);
-                            final List<int[]> tokenValuesPerAnnotation = new ArrayList<>();
+                            final List<IntBuffer> tokenValuesPerAnnotation = new ArrayList<>();
 
                             try (BlockTimer e = c.child("Read annotations from forward index")) {
                                 for (Triple<AnnotationForwardIndex, MatchSensitivity, Terms> annot : hitProperties) {
                                     final String annotationFIName = annot.getLeft().annotation().forwardIndexIdField();
                                     final int fiid = doc.getField(annotationFIName).numericValue().intValue();
-                                    final List<int[]> tokenValues = annot.getLeft().retrievePartsInt(fiid, minusOne, minusOne);
-                                    tokenValuesPerAnnotation.addAll(tokenValues);
+                                    tokenValuesPerAnnotation.add(annot.getLeft().retrievePartView(fiid, -1, -1));
                                 }
                             }
 
@@ -286,8 +295,8 @@ public class HitGroupsTokenFrequencies {
                                     int[] annotationValuesForThisToken = new int[numAnnotations];
                                     int[] sortPositions = new int[annotationValuesForThisToken.length];
                                     for (int annotationIndex = 0; annotationIndex < numAnnotations; ++annotationIndex) {
-                                        int[] tokenValuesThisAnnotation = tokenValuesPerAnnotation.get(annotationIndex);
-                                        final int termId = annotationValuesForThisToken[annotationIndex] = tokenValuesThisAnnotation[tokenIndex];
+                                        IntBuffer tokenValuesThisAnnotation = tokenValuesPerAnnotation.get(annotationIndex);
+                                        final int termId = annotationValuesForThisToken[annotationIndex] = tokenValuesThisAnnotation.get(tokenIndex);
                                         Triple<AnnotationForwardIndex, MatchSensitivity, Terms> currentHitProp = hitProperties.get(annotationIndex);
                                         MatchSensitivity matchSensitivity = currentHitProp.getMiddle();
                                         Terms terms = currentHitProp.getRight();
@@ -310,7 +319,7 @@ public class HitGroupsTokenFrequencies {
                             throw BlackLabRuntimeException.wrap(e);
                         }
                         return true;
-                    }).count();
+                    }).stream().filter(processed -> processed).count();
                     logger.trace("Number of processed docs: " + numberOfDocsProcessed);
                 }
             }
@@ -320,7 +329,7 @@ public class HitGroupsTokenFrequencies {
             List<HitGroup> groups;
             try (final BlockTimer c = BlockTimer.create("Resolve string values for tokens")) {
                 final int numMetadataValues = docProperties.size();
-                groups = occurances.entrySet().parallelStream().map(e -> {
+                groups = mapInParallel(index, new ArrayList<>(occurances.entrySet()), e -> {
                     final int groupSizeHits = e.getValue().getLeft();
                     final int groupSizeDocs = e.getValue().getRight();
                     final int[] annotationValues = e.getKey().tokenIds;
@@ -352,7 +361,7 @@ public class HitGroupsTokenFrequencies {
                     }
 
                     return new HitGroupWithoutResults(queryInfo, groupId, groupSizeHits, groupSizeDocs, false, false);
-                }).collect(Collectors.toList());
+                });
             }
             logger.debug("fast path used for grouping");
 
@@ -363,4 +372,37 @@ public class HitGroupsTokenFrequencies {
             throw BlackLabRuntimeException.wrap(e);
         }
     }
+
+    /**
+     * Apply a function to a list of items in parallel on the search executor.
+     *
+     * The items are divided into chunks that are processed by at most maxThreadsPerSearch
+     * threads (including the calling thread).
+     *
+     * @param index our index
+     * @param items items to process
+     * @param function function to apply to each item
+     * @return results, in the same order as the items
+     */
+    private static <E, R> List<R> mapInParallel(BlackLabIndex index, List<E> items, Function<E, R> function) {
+        SearchExecutor executor = index.blackLab().searchExecutorService();
+        int numberOfChunks = Math.min(items.size(), executor.maxThreadsPerSearch() * CHUNKS_PER_THREAD);
+        List<Callable<List<R>>> tasks = new ArrayList<>();
+        for (int i = 0; i < numberOfChunks; i++) {
+            List<E> chunk = items.subList((int) ((long) items.size() * i / numberOfChunks),
+                    (int) ((long) items.size() * (i + 1) / numberOfChunks));
+            tasks.add(() -> chunk.stream().map(function).collect(Collectors.toList()));
+        }
+        try {
+            List<R> results = new ArrayList<>(items.size());
+            for (List<R> chunkResults: executor.invokeAllParallel(tasks)) {
+                results.addAll(chunkResults);
+            }
+            return results;
+        } catch (InterruptedException e) {
+            throw new InterruptedSearch(e);
+        } catch (ExecutionException e) {
+            throw BlackLabRuntimeException.wrap(e.getCause());
+        }
+    }
 }
@@ -5,8 +5,10 @@ import nl.inl.blacklab.exceptions.BlackLabRuntimeException;
 import nl.inl.blacklab.exceptions.WildcardTermTooBroad;
 import nl.inl.blacklab.forwardindex.FiidLookup;
 import nl.inl.blacklab.resultproperty.HitProperty;
+import nl.inl.blacklab.resultproperty.HitSortKeys;
 import nl.inl.blacklab.resultproperty.PropertyValue;
 import nl.inl.blacklab.search.ConcordanceType;
+import nl.inl.blacklab.search.SearchExecutor;
 import nl.inl.blacklab.search.TermFrequencyList;
 import nl.inl.blacklab.search.indexmetadata.Annotation;
 import nl.inl.blacklab.search.indexmetadata.MatchSensitivity;
@@ -70,15 +72,13 @@ public abstract class Hits extends Results<Hit, HitProperty> {
 
             @Override
             public boolean hasNext() {
-                // Since this iteration method is not thread-safe anyway, use the direct array to prevent repeatedly acquiring the read lock
-                return this.hits.docs.size() > this.pos;
+                // Since this iteration method is not thread-safe anyway, access the arrays directly to prevent repeatedly acquiring the read lock
+                return this.hits.sizeUnlocked() > this.pos;
             }
 
             @Override
             public EphemeralHit next() {
-                this.hit.doc = this.hits.docs.get(pos);
-                this.hit.start = this.hits.starts.get(pos);
-                this.hit.end = this.hits.ends.get(pos);
+                this.hits.getEphemeralUnlocked(pos, this.hit);
                 ++this.pos;
                 return this.hit;
             }
@@ -96,7 +96,7 @@ public abstract class Hits extends Results<Hit, HitProperty> {
             }
         }
 
-        private ReadWriteLock lock = new ReentrantReadWriteLock();
+        final ReadWriteLock lock = new ReentrantReadWriteLock();
 
         private final IntArrayList docs;
         private final IntArrayList starts;
@@ -248,6 +248,31 @@ public abstract class Hits extends Results<Hit, HitProperty> {
             return size;
         }
 
+        /** Get the number of hits without locking (caller should hold the lock, or know there's no writers). */
+        int sizeUnlocked() {
+            return docs.size();
+        }
+
+        /** Copy values into the ephemeral hit without locking (caller should hold the lock, or know there's no writers). */
+        void getEphemeralUnlocked(int index, EphemeralHit h) {
+            h.doc = docs.get(index);
+            h.start = starts.get(index);
+            h.end = ends.get(index);
+        }
+
+        /**
+         * Estimate how much memory these hits take.
+         *
+         * Although we only store 12 bytes per hit, the arrays may have up to 50% unused
+         * capacity, and derived results often wrap them in other objects, so we assume
+         * {@link SearchResult#BYTES_PER_RESULT_OBJECT} bytes per hit, as we always have.
+         *
+         * @return estimated size in bytes
+         */
+        public long sizeInBytes() {
+            return (long) SearchResult.BYTES_PER_RESULT_OBJECT * size();
+        }
+
         /**
          * Expert use: get the internal docs array.
          * The array is not locked, so care should be taken when reading it.
@@ -319,22 +344,56 @@ public abstract class Hits extends Results<Hit, HitProperty> {
         }
 
         public HitsArrays sort(HitProperty p) {
-            this.lock.readLock().lock();
-
-            int[] indices = new int[this.size()];
-            for (int i = 0; i < indices.length; ++i)
-                indices[i] = i;
+            return select(sortedIndices(p, null));
+        }
 
-            IntArrays.quickSort(indices, p::compare);
+        /**
+         * Determine the order of the hits when sorted by a property.
+         *
+         * @param p property to sort by
+         * @param executor executor to sort in parallel on, or null to sort in the calling thread
+         * @return hit indices in sorted order
+         */
+        public int[] sortedIndices(HitProperty p, SearchExecutor executor) {
+            this.lock.readLock().lock();
+            try {
+                // Extract sort keys and sort by those if possible; otherwise, call p.compare() for each comparison
+                int[] indices = HitSortKeys.sortedIndices(p, this.size(), executor);
+                if (indices == null) {
+                    indices = new int[this.size()];
+                    for (int i = 0; i < indices.length; ++i)
+                        indices[i] = i;
+                    IntArrays.quickSort(indices, p::compare);
+                }
+                return indices;
+            } finally {
+                this.lock.readLock().unlock();
+            }
+        }
 
-            HitsArrays r = new HitsArrays();
-            EphemeralHit eph = new EphemeralHit();
-            for (int i = 0; i < indices.length; ++i) {
-                getEphemeral(indices[i], eph);
-                r.add(eph);
+        /**
+         * Copy the specified hits into a new instance.
+         *
+         * @param indices indices of the hits to copy, in the desired order
+         * @return the selected hits
+         */
+        public HitsArrays select(int[] indices) {
+            IntArrayList d = new IntArrayList(indices.length);
+            IntArrayList s = new IntArrayList(indices.length);
+            IntArrayList e = new IntArrayList(indices.length);
+            EphemeralHit hit = new EphemeralHit();
+            this.lock.readLock().lock();
+            try {
+                for (int index: indices) {
+                    getEphemeralUnlocked(index, hit);
+                    d.add(hit.doc);
+                    s.add(hit.start);
+                    e.add(hit.end);
+                }
+            } finally {
+                this.lock.readLock().unlock();
             }
-            this.lock.readLock().unlock();
-            return r;
+            return new HitsArrays(d, s, e);
         }
     }
 
@@ -358,6 +417,30 @@ public abstract class Hits extends Results<Hit, HitProperty> {
 
     protected static final Logger logger = LogManager.getLogger(Hits.class);
 
+    /** Store the hits found by queries in compact form? (see {@link CompactHitsArrays}) */
+    private static boolean compactSourceHits = false;
+
+    /**
+     * Set whether to store the hits found by queries in compact form.
+     *
+     * Saves a lot of memory for large result sets, at the cost of slightly
+     * slower access. Sorted, windowed, etc. hits are always stored normally.
+     *
+     * @param compactSourceHits true to store hits found by queries in compact form
+     */
+    public static synchronized void setCompactSourceHits(boolean compactSourceHits) {
+        Hits.compactSourceHits = compactSourceHits;
+    }
+
+    /**
+     * Create an empty HitsArrays to store the hits found by a query.
+     *
+     * @return the new HitsArrays
+     */
+    protected static synchronized HitsArrays newSourceHitsArrays() {
+        return compactSourceHits ? new CompactHitsArrays() : new HitsArrays();
+    }
+
     /**
      * Construct a Hits object from a SpanQuery.
      *
@@ -416,6 +499,28 @@ public abstract class Hits extends Results<Hit, HitProperty> {
                             capturedGroups);
     }
 
+    public static Hits fromList(
+                                QueryInfo queryInfo,
+                                HitsArrays hits,
+                                WindowStats windowStats,
+                                SampleParameters sampleParameters,
+                                int hitsCounted,
+                                int docsRetrieved,
+                                int docsCounted,
+                                CapturedGroups capturedGroups,
+                                MaxStats maxStats) {
+        return new HitsList(
+                            queryInfo,
+                            hits,
+                            windowStats,
+                            sampleParameters,
+                            hitsCounted,
+                            docsRetrieved,
+                            docsCounted,
+                            capturedGroups,
+                            maxStats);
+    }
+
     /**
      * Construct an empty Hits object.
      *
@@ -597,7 +702,13 @@ public abstract class Hits extends Results<Hit, HitProperty> {
         int number = hitsProcessedAtLeast(first + windowSize) ? windowSize : size() - first;
 
         // Copy the hits we're interested in.
-        CapturedGroups capturedGroups = hasCapturedGroups() ? new CapturedGroupsImpl(capturedGroups().names()) : null;
+        CapturedGroups capturedGroups = null;
+        if (hasCapturedGroups()) {
+            int[] indices = new int[number];
+            for (int i = 0; i < number; i++)
+                indices[i] = first + i;
+            capturedGroups = capturedGroups().select(indices);
+        }
         MutableInt docsRetrieved = new MutableInt(0); // Bypass warning (enclosing scope must be effectively final)
         HitsArrays window = new HitsArrays();
 
@@ -606,10 +717,6 @@ public abstract class Hits extends Results<Hit, HitProperty> {
             EphemeralHit hit = new EphemeralHit();
             for (int i = first; i < first + number; i++) {
                 h.getEphemeral(i, hit);
-                if (capturedGroups != null) {
-                    Hit hh = hit.toHit();
-                    capturedGroups.put(hh, capturedGroups().get(hh));
-                }
                 // OPT: copy context as well..?
 
                 int doc = hit.doc;
@@ -656,7 +763,9 @@ public abstract class Hits extends Results<Hit, HitProperty> {
         }
 
         MutableInt docsInSample = new MutableInt(0);
-        CapturedGroups capturedGroups = hasCapturedGroups() ? new CapturedGroupsImpl(capturedGroups().names()) : null;
+        CapturedGroups capturedGroups = null;
+        if (hasCapturedGroups())
+            capturedGroups = capturedGroups().select(chosenHitIndices.stream().mapToInt(Integer::intValue).toArray());
         HitsArrays sample = new HitsArrays();
 
         this.hitsArrays.withReadLock(__ -> {
@@ -670,10 +779,6 @@ public abstract class Hits extends Results<Hit, HitProperty> {
                 }
 
                 sample.add(hit);
-                if (capturedGroups != null) {
-                    Hit h = hit.toHit();
-                    capturedGroups.put(h, this.capturedGroups.get(h));
-                }
             }
         });
 
@@ -700,9 +805,11 @@ public abstract class Hits extends Results<Hit, HitProperty> {
 
         // Perform the actual sort.
         this.ensureAllResultsRead();
-        HitsArrays sorted = this.hitsArrays.sort(sortProp); // TODO use wrapper objects
+        int[] sortedIndices = this.hitsArrays.sortedIndices(sortProp, index().blackLab().searchExecutorService());
+        HitsArrays sorted = this.hitsArrays.select(sortedIndices); // TODO use wrapper objects
 
-        CapturedGroups capturedGroups = capturedGroups();
+        // Put the captured groups in the same order
+        CapturedGroups capturedGroups = hasCapturedGroups() ? capturedGroups().select(sortedIndices) : null;
         int hitsCounted = hitsCountedSoFar();
         int docsRetrieved = docsProcessedSoFar();
         int docsCounted = docsCountedSoFar();
@@ -739,7 +846,7 @@ public abstract class Hits extends Results<Hit, HitProperty> {
 
     @Override
     protected boolean resultsProcessedAtLeast(int lowerBound) {
-        return this.hitsArrays.size() >= lowerBound;
+        return hitsProcessedAtLeast(lowerBound);
     }
 
     @Override
@@ -758,6 +865,16 @@ public abstract class Hits extends Results<Hit, HitProperty> {
         return this.hitsArrays.size();
     }
 
+    @Override
+    public long estimatedSizeInBytes() {
+        long size = this.hitsArrays.sizeInBytes();
+        if (capturedGroups != null) {
+            // Start and end per group per hit, plus up to 50% unused capacity
+            size += 12L * capturedGroups.size() * capturedGroups.names().size();
+        }
+        return size;
+    }
+
     @Override
     public Iterator<Hit> iterator() {
         // We need to wrap the internal iterator, as we probably shouldn't
@@ -800,6 +917,18 @@ public abstract class Hits extends Results<Hit, HitProperty> {
      */
     public abstract MaxStats maxStats();
 
+    /**
+     * Get the query that was executed to find these hits.
+     *
+     * NOTE: like {@link #maxStats()}, this is only available for the original Hits
+     * instance (that executes the query), and not for any derived Hits instance.
+     *
+     * @return the optimized and rewritten query, or null if not available for this instance
+     */
+    public BLSpanQuery executedQuery() {
+        return null;
+    }
+
     /**
      * Count occurrences of context words around hit.
      *
@@ -869,12 +998,19 @@ public abstract class Hits extends Results<Hit, HitProperty> {
     public Hits getHitsInDoc(int docid) {
         ensureAllResultsRead();
         HitsArrays r = new HitsArrays();
+        IntArrayList indices = hasCapturedGroups() ? new IntArrayList() : null;
         // all hits read, no lock needed.
+        int i = 0;
         for (EphemeralHit h : this.hitsArrays) {
-            if (h.doc == docid)
+            if (h.doc == docid) {
                 r.add(h);
+                if (indices != null)
+                    indices.add(i);
+            }
+            i++;
         }
-        return new HitsList(queryInfo(), r, null);
+        CapturedGroups groups = indices == null ? null : capturedGroups.select(indices.toArray());
+        return new HitsList(queryInfo(), r, groups);
     }
 
     // Stats
@@ -885,6 +1021,8 @@ public abstract class Hits extends Results<Hit, HitProperty> {
     }
 
     protected boolean hitsProcessedAtLeast(int lowerBound) {
+        if (this.hitsArrays.size() < lowerBound)
+            ensureResultsRead(lowerBound); // we may not have fetched these hits yet
         return this.hitsArrays.size() >= lowerBound;
     }
 
@@ -941,7 +1079,11 @@ public abstract class Hits extends Results<Hit, HitProperty> {
         CapturedGroups capturedGroups = null;
         if (this.capturedGroups != null) {
             capturedGroups = new CapturedGroupsImpl(this.capturedGroups.names());
-            capturedGroups.put(hit, this.capturedGroups.get(hit));
+            int hitIndex = indexOf(hit);
+            if (hitIndex >= 0)
+                capturedGroups.add(this.capturedGroups, hitIndex);
+            else
+                capturedGroups.add(null);
         }
 
         HitsArrays r = new HitsArrays();
@@ -958,6 +1100,20 @@ public abstract class Hits extends Results<Hit, HitProperty> {
             capturedGroups);
     }
 
+    /**
+     * Find the index of a hit in our lists.
+     *
+     * @param hit hit to find
+     * @return index of the hit, or -1 if not found
+     */
+    private int indexOf(Hit hit) {
+        for (int i = 0; i < this.hitsArrays.size(); i++) {
+            if (this.hitsArrays.doc(i) == hit.doc() && this.hitsArrays.start(i) == hit.start() && this.hitsArrays.end(i) == hit.end())
+                return i;
+        }
+        return -1;
+    }
+
     // Captured groups
     //--------------------------------------------------------------------
 
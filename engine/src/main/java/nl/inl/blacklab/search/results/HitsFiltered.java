@@ -50,6 +50,8 @@ public class HitsFiltered extends Hits {
         }
 
         this.filterValue = value;
+        if (hits.hasCapturedGroups())
+            capturedGroups = new CapturedGroupsImpl(hits.capturedGroups().names());
     }
 
     @Override
@@ -98,6 +100,8 @@ public class HitsFiltered extends Hits {
                         Hit hit = source.get(indexInSource);
                         if (filterProperty.get(indexInSource).equals(filterValue)) {
                             // Yes, keep this hit
+                            if (capturedGroups != null)
+                                capturedGroups.add(source.capturedGroups(), indexInSource);
                             hitsArrays.add(hit);
                             hitsCounted++;
                             if (hit.doc() != previousHitDoc) {
@@ -41,6 +41,9 @@ public class HitsFromQuery extends Hits {
      */
     private SpanWeight weight;
 
+    /** The optimized and rewritten query we execute */
+    private BLSpanQuery executedQuery;
+
     /**
      * The LeafReaderContexts we should query in succession.
      */
@@ -92,7 +95,7 @@ public class HitsFromQuery extends Hits {
      * @throws WildcardTermTooBroad if the query is overly broad (expands to too many terms)
      */
     protected HitsFromQuery(QueryInfo queryInfo, BLSpanQuery sourceQuery, SearchSettings searchSettings) throws WildcardTermTooBroad {
-        super(queryInfo, false);
+        super(queryInfo, newSourceHitsArrays());
         this.searchSettings = searchSettings;
         this.maxStats = new MaxStats();
         hitsCounted = 0;
@@ -126,6 +129,7 @@ public class HitsFromQuery extends Hits {
             termContexts = new HashMap<>();
             Set<Term> terms = new HashSet<>();
             spanQuery = BLSpanQuery.ensureSortedUnique(spanQuery);
+            executedQuery = spanQuery;
             weight = spanQuery.createWeight(index.searcher(), false);
             weight.extractTerms(terms);
             for (Term term : terms) {
@@ -272,13 +276,13 @@ public class HitsFromQuery extends Hits {
                         previousHitDoc = hitDoc;
                     }
                     if (!maxHitsProcessed) {
-                        Hit hit = Hit.create(currentSourceSpans.docID() + currentDocBase, currentSourceSpans.startPosition(), currentSourceSpans.endPosition());
                         if (capturedGroups != null) {
+                            // Add the groups first, so they're available as soon as the hit is
                             Span[] groups = new Span[hitQueryContext.numberOfCapturedGroups()];
                             hitQueryContext.getCapturedGroups(groups);
-                            capturedGroups.put(hit, groups);
+                            capturedGroups.add(groups);
                         }
-                        hitsArrays.add(hit);
+                        hitsArrays.add(hitDoc, currentSourceSpans.startPosition(), currentSourceSpans.endPosition());
                         if (maxHitsToProcess >= 0 && hitsArrays.size() >= maxHitsToProcess) {
                             maxStats.setHitsProcessedExceededMaximum();
                         }
@@ -320,4 +324,9 @@ public class HitsFromQuery extends Hits {
         return maxStats;
     }
 
+    @Override
+    public BLSpanQuery executedQuery() {
+        return executedQuery;
+    }
+
 }
@@ -3,13 +3,13 @@ package nl.inl.blacklab.search.results;
 import nl.inl.blacklab.exceptions.BlackLabRuntimeException;
 import nl.inl.blacklab.exceptions.InterruptedSearch;
 import nl.inl.blacklab.search.BlackLabIndex;
+import nl.inl.blacklab.search.SearchExecutor;
 import nl.inl.blacklab.search.Span;
 import nl.inl.blacklab.search.lucene.BLSpanQuery;
 import nl.inl.blacklab.search.lucene.BLSpanWeight;
 import nl.inl.blacklab.search.lucene.BLSpans;
 import nl.inl.blacklab.search.lucene.HitQueryContext;
 import nl.inl.blacklab.search.lucene.optimize.ClauseCombinerNfa;
-import nl.inl.blacklab.search.results.Hits.HitsArrays.HitIterator;
 import nl.inl.util.ThreadAborter;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.LeafReaderContext;
@@ -22,9 +22,11 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Future;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.IntUnaryOperator;
@@ -32,9 +34,6 @@ import java.util.stream.Collectors;
 
 public class HitsFromQueryParallel extends Hits {
 
-    /** If another thread is busy fetching hits and we're monitoring it, how often should we check? */
-    private static final int HIT_POLLING_TIME_MS = 50;
-
     private static class SpansReader implements Runnable {
 
         /** How many hits should we collect (at least) before we add them to the global results? */
@@ -66,8 +65,10 @@ public class HitsFromQueryParallel extends Hits {
         final AtomicInteger globalHitsToCount;
         /** Master list of hits, shared between SpansReaders, should always be locked before writing! */
         private final HitsArrays globalResults;
-        /** Master list of capturedGroups (only set if any groups to capture. Should always be locked before writing! */
+        /** Master list of capturedGroups (only set if any groups to capture). Only written while holding the write lock on globalResults! */
         private CapturedGroups globalCapturedGroups;
+        /** Called whenever we've added hits to the global results, so waiting threads can check them */
+        private final Runnable hitsAddedListener;
 
         // Internal state
         private boolean isDone = false;
@@ -124,6 +125,7 @@ public class HitsFromQueryParallel extends Hits {
          * @param globalHitsCounted global hits counter (includes ones that weren't retrieved because of max. settings)
          * @param globalHitsToProcess how many more hits to retrieve
          * @param globalHitsToCount how many more hits to count
+         * @param hitsAddedListener called after we've added hits to the global results
          */
         private SpansReader(
             BLSpanWeight weight,
@@ -137,7 +139,8 @@ public class HitsFromQueryParallel extends Hits {
             AtomicInteger globalHitsProcessed,
             AtomicInteger globalHitsCounted,
             AtomicInteger globalHitsToProcess,
-            AtomicInteger globalHitsToCount
+            AtomicInteger globalHitsToCount,
+            Runnable hitsAddedListener
         ) {
             this.spans = null; // inverted for uninitialized version
             this.weight = weight;
@@ -155,6 +158,7 @@ public class HitsFromQueryParallel extends Hits {
             this.globalHitsCounted = globalHitsCounted;
             this.globalHitsToCount = globalHitsToCount;
             this.globalHitsToProcess = globalHitsToProcess;
+            this.hitsAddedListener = hitsAddedListener;
 
             this.docBase = leafReaderContext.docBase;
 
@@ -225,7 +229,7 @@ public class HitsFromQueryParallel extends Hits {
                 return;
 
             final int numCaptureGroups = hitQueryContext.numberOfCapturedGroups();
-            final ArrayList<Span[]> capturedGroups = numCaptureGroups > 0 ? new ArrayList<Span[]>() : null;
+            final CapturedGroupsImpl capturedGroups = numCaptureGroups > 0 ? new CapturedGroupsImpl(hitQueryContext.getCapturedGroupNames()) : null;
 
             final HitsArrays results = new HitsArrays();
             final Bits liveDocs = leafReaderContext.reader().getLiveDocs();
@@ -303,27 +307,23 @@ public class HitsFromQueryParallel extends Hits {
             this.leafReaderContext = null;
         }
 
-        void addToGlobalResults(HitsArrays hits, List<Span[]> capturedGroups) {
-            globalResults.addAll(hits);
-
-            if (globalCapturedGroups != null) {
-                synchronized (globalCapturedGroups) {
-                    HitIterator it = hits.iterator();
-                    int i = 0;
-                    while (it.hasNext()) {
-                        Hit h = it.next().toHit();
-                        globalCapturedGroups.put(h, capturedGroups.get(i));
-                        ++i;
-                    }
-                    capturedGroups.clear();
-                }
-            }
+        void addToGlobalResults(HitsArrays hits, CapturedGroupsImpl capturedGroups) {
+            // Add hits and groups while holding the write lock, so they stay aligned
+            globalResults.withWriteLock(__ -> {
+                if (globalCapturedGroups != null)
+                    globalCapturedGroups.addAll(capturedGroups);
+                globalResults.addAll(hits);
+            });
+            if (capturedGroups != null)
+                capturedGroups.clear();
 
             hits.withWriteLock(__ -> {
                 hits.docs().clear();
                 hits.starts().clear();
                 hits.ends().clear();
             });
+
+            hitsAddedListener.run();
         }
 
         public HitQueryContext getHitContext() {
@@ -353,11 +353,17 @@ public class HitsFromQueryParallel extends Hits {
     // state
     protected final HitQueryContext hitQueryContext = new HitQueryContext();
     protected final Lock ensureHitsReadLock = new ReentrantLock();
+    /** Guards {@link #progress} */
+    private final Lock progressLock = new ReentrantLock();
+    /** Signalled when hits were added or the thread fetching hits is done */
+    private final Condition progress = progressLock.newCondition();
     protected final List<SpansReader> spansReaders = new ArrayList<>();
-    protected boolean allSourceSpansFullyRead = false;
+    protected volatile boolean allSourceSpansFullyRead = false;
+    /** The optimized and rewritten query we execute */
+    private BLSpanQuery executedQuery;
 
     protected HitsFromQueryParallel(QueryInfo queryInfo, BLSpanQuery sourceQuery, SearchSettings searchSettings) {
-        super(queryInfo, new HitsArrays()); // explicitly construct HitsArrays so they're writeable
+        super(queryInfo, newSourceHitsArrays()); // explicitly construct HitsArrays so they're writeable
         this.searchSettings = searchSettings;
         final BlackLabIndex index = queryInfo.index();
         final IndexReader reader = index.reader();
@@ -400,6 +406,8 @@ public class HitsFromQueryParallel extends Hits {
                 }
             }
 
+            executedQuery = optimizedQuery;
+
             // This call can take a long time
             BLSpanWeight weight = optimizedQuery.createWeight(index.searcher(), false);
 
@@ -416,7 +424,8 @@ public class HitsFromQueryParallel extends Hits {
                     this.globalHitsProcessed,
                     this.globalHitsCounted,
                     this.requestedHitsToProcess,
-                    this.requestedHitsToCount
+                    this.requestedHitsToCount,
+                    this::signalProgress
                 );
                 spansReaders.add(spansReader);
 
@@ -466,41 +475,34 @@ public class HitsFromQueryParallel extends Hits {
             /*
              * Another thread is already working on hits, we don't want to straight up block until it's done
              * as it might be counting/retrieving all results, while we might only want trying to retrieve a small fraction
-             * So instead poll our own state, then if we're still missing results after that just count them ourselves
+             * So instead wait until hits are added (or the other thread is done), check our own state, and if
+             * we're still missing results after the other thread is done, just count them ourselves
              */
-            while (!ensureHitsReadLock.tryLock()) {
-                if (allSourceSpansFullyRead || (hitsArrays.size() >= clampedNumber)) {
-                    return;
+            progressLock.lock();
+            try {
+                while (true) {
+                    if (allSourceSpansFullyRead || (hitsArrays.size() >= clampedNumber)) {
+                        return;
+                    }
+                    if (ensureHitsReadLock.tryLock()) {
+                        hasLock = true;
+                        break;
+                    }
+                    progress.await();
                 }
-
-                Thread.sleep(HIT_POLLING_TIME_MS);
+            } finally {
+                progressLock.unlock();
             }
-            hasLock = true;
             // This is the blocking portion, retrieve all hits from the other threads.
             try {
-                final ExecutorService executorService = queryInfo().index().blackLab().searchExecutorService();
-
-                final AtomicInteger i = new AtomicInteger();
-                final int numThreads = Math.max(queryInfo().index().blackLab().maxThreadsPerSearch(), 1);
-                List<Future<?>> pendingResults = spansReaders
-                    .stream()
-                    .collect(Collectors.groupingBy(sr -> i.getAndIncrement() % numThreads)) // subdivide the list, one sublist per thread to use.
-                    .values()
-                    .stream()
-                    .map(list -> executorService.submit(() -> list.forEach(SpansReader::run))) // now submit one task per sublist
-                    .collect(Collectors.toList()); // gather the futures
-
-                // Wait for workers to complete.
-                try {
-                    while (!pendingResults.stream().allMatch(f -> f.isCancelled() || f.isDone())) {
-                        Thread.sleep(HIT_POLLING_TIME_MS);
-                        threadAborter.checkAbort();
-                    }
-                } catch (InterruptedException e) {
-                    // Interrupt our worker threads as well
-                    pendingResults.forEach(f -> f.cancel(true));
-                    throw e;
-                }
+                // Run the SpansReaders (we help out, and at most maxThreadsPerSearch threads work on them
+                // at the same time). This blocks until they're all done. If we're interrupted, the SpansReaders
+                // on other threads are cancelled as well.
+                final SearchExecutor executorService = queryInfo().index().blackLab().searchExecutorService();
+                List<Callable<Void>> tasks = spansReaders.stream()
+                    .map(sr -> Executors.callable(sr, (Void) null))
+                    .collect(Collectors.toList());
+                executorService.invokeAllParallel(tasks);
 
                 // Remove all SpansReaders that have finished.
                 Iterator<SpansReader> it = spansReaders.iterator();
@@ -509,9 +511,7 @@ public class HitsFromQueryParallel extends Hits {
                         it.remove();
                 }
                 this.allSourceSpansFullyRead = spansReaders.isEmpty();
-            } catch (Exception e) {
-                if (!(e instanceof InterruptedException))
-                    e.printStackTrace();
+            } catch (ExecutionException e) {
                 throw e.getCause(); // Something went wrong in one of the worker threads (interrupted?), process exception using outer catch
             }
         } catch (InterruptedException e) {
@@ -519,11 +519,30 @@ public class HitsFromQueryParallel extends Hits {
         } catch (Throwable e) {
             throw BlackLabRuntimeException.wrap(e);
         } finally {
-            if (hasLock)
+            if (hasLock) {
                 ensureHitsReadLock.unlock();
+                signalProgress(); // wake up waiting threads, so they can check if they need to take over
+            }
+        }
+    }
+
+    /**
+     * Wake up threads waiting for hits in {@link #ensureResultsRead(int)}.
+     */
+    private void signalProgress() {
+        progressLock.lock();
+        try {
+            progress.signalAll();
+        } finally {
+            progressLock.unlock();
         }
     }
 
+    @Override
+    public BLSpanQuery executedQuery() {
+        return executedQuery;
+    }
+
     @Override
     public MaxStats maxStats() {
         return new MaxStats(this.globalHitsCounted.get() >= this.maxHitsToProcess, this.globalHitsCounted.get() >= this.maxHitsToCount);
@@ -12,6 +12,9 @@ public class HitsList extends Hits {
     /** Our sample parameters, if any. null if not a sample of a larger result set */
     private SampleParameters sampleParameters;
 
+    /** Whether the hits this was created from exceeded the maximum to process/count */
+    private MaxStats maxStats = MaxStats.NOT_EXCEEDED;
+
     /**
      * Make a wrapper Hits object for a list of Hit objects.
      *
@@ -62,6 +65,26 @@ public class HitsList extends Hits {
         this.capturedGroups = capturedGroups;
     }
 
+    /**
+     * Construct a HitsList from all its components, including max stats.
+     *
+     * Should only be used internally.
+     */
+    protected HitsList(
+                       QueryInfo queryInfo,
+                       HitsArrays hits,
+                       WindowStats windowStats,
+                       SampleParameters sampleParameters,
+                       int hitsCounted,
+                       int docsRetrieved,
+                       int docsCounted,
+                       CapturedGroups capturedGroups,
+                       MaxStats maxStats
+                       ) {
+        this(queryInfo, hits, windowStats, sampleParameters, hitsCounted, docsRetrieved, docsCounted, capturedGroups);
+        this.maxStats = maxStats;
+    }
+
     @Override
     public String toString() {
         return "HitsList#" + hitsObjId + " (hits.size()=" + this.size() + "; isWindow=" + isWindow() + ")";
@@ -96,6 +119,6 @@ public class HitsList extends Hits {
 
     @Override
     public MaxStats maxStats() {
-        return MaxStats.NOT_EXCEEDED;
+        return maxStats;
     }
 }
@@ -16,5 +16,21 @@ public interface SearchResult {
      * @return how many hits are stored in this result object
      */
     int numberOfResultObjects();
-    
+
+    /**
+     * Estimate how much memory this search result takes.
+     *
+     * Used for estimating the cache size. By default, assumes each result object
+     * takes {@link #BYTES_PER_RESULT_OBJECT} bytes. Results that know better
+     * (e.g. Hits, which may be stored in compact form) override this.
+     *
+     * @return estimated size in bytes
+     */
+    default long estimatedSizeInBytes() {
+        return (long) numberOfResultObjects() * BYTES_PER_RESULT_OBJECT;
+    }
+
+    /** Bytes per result object we assume when estimating the size of a result */
+    int BYTES_PER_RESULT_OBJECT = 24;
+
 }
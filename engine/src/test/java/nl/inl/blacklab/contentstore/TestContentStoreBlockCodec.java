@@ -0,0 +1,120 @@
+package nl.inl.blacklab.contentstore;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+import nl.inl.blacklab.exceptions.ErrorOpeningIndex;
+import nl.inl.util.UtilsForTesting;
+
+@RunWith(Parameterized.class)
+public class TestContentStoreBlockCodec {
+
+    @Parameters(name = "codec {0}")
+    public static Collection<BlockCodec> codecs() {
+        return Arrays.asList(BlockCodec.DEFLATE, BlockCodec.LZ4, BlockCodec.ZSTD);
+    }
+
+    private final BlockCodec codec;
+
+    private File dir;
+
+    private String[] doc = new String[4];
+
+    public TestContentStoreBlockCodec(BlockCodec codec) {
+        this.codec = codec;
+    }
+
+    @Before
+    public void setUp() {
+        UtilsForTesting.removeBlackLabTestDirs();
+        dir = UtilsForTesting.createBlackLabTestDir("ContentStoreBlockCodec");
+
+        // Create documents that span different numbers of blocks
+        // (somewhat compressible, like natural language)
+        Random random = new Random(12_345);
+        String[] words = { "the", "quick", "brown", "fox", "jumps", "over", "lazy", "dog", "één", "ĳsbeer" };
+        for (int i = 0; i < doc.length; i++) {
+            StringBuilder b = new StringBuilder();
+            for (int j = 0; j < i * 6000 + 200; j++) {
+                b.append(words[random.nextInt(words.length)]).append(random.nextInt(100)).append(' ');
+            }
+            doc[i] = b.toString();
+        }
+    }
+
+    @After
+    public void tearDown() {
+        UtilsForTesting.removeBlackLabTestDirs();
+    }
+
+    private void assertStoredCorrectly(ContentStore store) {
+        Random random = new Random(23_456);
+        for (int i = 0; i < doc.length; i++) {
+            Assert.assertEquals(doc[i], store.retrieve(i + 1));
+            int start = random.nextInt(doc[i].length() - 10);
+            int end = start + 1 + random.nextInt(doc[i].length() - start);
+            Assert.assertEquals(doc[i].substring(start, end), store.retrievePart(i + 1, start, end));
+        }
+    }
+
+    @Test
+    public void testStoreRetrieve() throws ErrorOpeningIndex {
+        ContentStore store = ContentStore.open(dir, true, true, codec);
+        try {
+            for (int i = 0; i < doc.length; i++) {
+                Assert.assertEquals(i + 1, store.store(doc[i]));
+            }
+        } finally {
+            store.close();
+        }
+
+        store = ContentStore.open(dir, false, false);
+        try {
+            Assert.assertEquals(codec, ((ContentStoreFixedBlock) store).getCodec());
+            assertStoredCorrectly(store);
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    public void testConvert() throws ErrorOpeningIndex {
+        // Create a version 1 store with a deleted document
+        ContentStore store = ContentStore.open(dir, true, true);
+        try {
+            for (int i = 0; i < doc.length; i++) {
+                store.store(doc[i]);
+            }
+            int deletedId = store.store("to be deleted");
+            store.delete(deletedId);
+            store.store(""); // empty document
+        } finally {
+            store.close();
+        }
+
+        File convertedDir = new File(dir.getParentFile(), dir.getName() + "-converted");
+        ContentStoreFixedBlockWriter.convert(dir, convertedDir, codec);
+
+        store = ContentStore.open(convertedDir, false, false);
+        try {
+            Assert.assertEquals(codec, ((ContentStoreFixedBlock) store).getCodec());
+            assertStoredCorrectly(store);
+            Assert.assertTrue(store.isDeleted(doc.length + 1));
+            Assert.assertFalse(store.isDeleted(doc.length + 2));
+            Assert.assertEquals(0, store.docLength(doc.length + 2));
+        } finally {
+            store.close();
+        }
+    }
+
+}
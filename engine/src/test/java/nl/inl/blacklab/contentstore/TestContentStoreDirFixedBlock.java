@@ -23,6 +23,10 @@ import java.util.List;
 import java.util.Map;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.junit.After;
 import org.junit.Assert;
@@ -111,6 +115,47 @@ public class TestContentStoreDirFixedBlock {
         Assert.assertEquals(doc[1].substring(15, 18), parts[1]);
     }
 
+    @Test
+    public void testRetrieveConcurrently() throws InterruptedException, ExecutionException {
+        ensureMode(false);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                final int seed = t;
+                results.add(executor.submit(() -> {
+                    Random random = new Random(seed);
+                    for (int i = 0; i < 100; i++) {
+                        int docIndex = random.nextInt(doc.length);
+                        int start = random.nextInt(doc[docIndex].length() - 10);
+                        int end = start + 1 + random.nextInt(doc[docIndex].length() - start);
+                        if (!doc[docIndex].substring(start, end).equals(store.retrievePart(docIndex + 1, start, end)))
+                            return false;
+                    }
+                    return true;
+                }));
+            }
+            for (Future<Boolean> result: results) {
+                Assert.assertTrue(result.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testRetrieveWithoutBlockCache() {
+        ContentStoreFixedBlockReader.setBlockCacheSizeBytes(0);
+        try {
+            ensureMode(false);
+            for (int i = 0; i < doc.length; i++) {
+                Assert.assertEquals(doc[i], store.retrieve(i + 1));
+            }
+        } finally {
+            ContentStoreFixedBlockReader.setBlockCacheSizeBytes(ContentStoreFixedBlockReader.DEFAULT_BLOCK_CACHE_SIZE_BYTES);
+        }
+    }
+
     @Test
     public void testDelete() {
         store.delete(2);
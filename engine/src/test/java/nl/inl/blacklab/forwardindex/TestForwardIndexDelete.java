@@ -45,7 +45,7 @@ public class TestForwardIndexDelete {
         // Create new test dir
         dir = UtilsForTesting.createBlackLabTestDir("ForwardIndexDelete");
 
-        fi = new AnnotationForwardIndexWriter(null, dir, Collators.defaultCollator(), true);
+        fi = new AnnotationForwardIndexWriter(null, dir, Collators.defaultCollator(), true, true);
         // Store strings
         List<Integer> toDelete = new ArrayList<>();
         for (int j = 0; j < docLengths.length; j++) {
@@ -0,0 +1,105 @@
+package nl.inl.blacklab.forwardindex;
+
+import java.io.File;
+import java.nio.IntBuffer;
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import nl.inl.util.UtilsForTesting;
+
+public class TestForwardIndexReader {
+
+    /** Lengths of the documents to add (with small chunks, these span several chunks) */
+    private static final int[] DOC_LENGTHS = { 10, 3, 25, 7, 18, 1, 30 };
+
+    private static int oldChunkSize;
+
+    private AnnotationForwardIndex fi;
+
+    @BeforeClass
+    public static void setUpChunkSize() {
+        // Make sure we need multiple chunks for our tokens file
+        oldChunkSize = AnnotationForwardIndex.preferredChunkSizeBytes;
+        AnnotationForwardIndex.preferredChunkSizeBytes = 40 * AnnotationForwardIndex.SIZEOF_INT;
+    }
+
+    @AfterClass
+    public static void restoreChunkSize() {
+        AnnotationForwardIndex.preferredChunkSizeBytes = oldChunkSize;
+    }
+
+    private void setUpForwardIndex() {
+        UtilsForTesting.removeBlackLabTestDirs();
+        File dir = UtilsForTesting.createBlackLabTestDir("ForwardIndexReader");
+
+        fi = AnnotationForwardIndex.open(dir, true, Collator.getInstance(), true, null, true);
+        try {
+            for (int length: DOC_LENGTHS) {
+                List<String> content = new ArrayList<>();
+                for (int i = 0; i < length; i++) {
+                    content.add(Integer.toString(i));
+                }
+                fi.addDocument(content);
+            }
+        } finally {
+            fi.close(); // close so everything is guaranteed to be written
+        }
+        fi = AnnotationForwardIndex.open(dir, false, Collator.getInstance(), false, null, true);
+    }
+
+    @After
+    public void tearDown() {
+        if (fi != null)
+            fi.close();
+        UtilsForTesting.removeBlackLabTestDirs();
+    }
+
+    private String term(int termId) {
+        return fi.terms().get(termId);
+    }
+
+    @Test
+    public void testRetrieveMethodsAgree() {
+        setUpForwardIndex();
+        for (int fiid = 0; fiid < DOC_LENGTHS.length; fiid++) {
+            int length = DOC_LENGTHS[fiid];
+            Assert.assertEquals(length, fi.docLength(fiid));
+            int start = length / 3;
+            int end = length + 5; // should be clamped to document length
+
+            int[] copy = fi.retrievePartsInt(fiid, new int[] { start }, new int[] { end }).get(0);
+            int[] buffer = new int[length + 2];
+            int n = fi.retrievePart(fiid, start, end, buffer, 2);
+            IntBuffer view = fi.retrievePartView(fiid, start, end);
+
+            Assert.assertEquals(length - start, copy.length);
+            Assert.assertEquals(length - start, n);
+            Assert.assertEquals(length - start, view.remaining());
+            for (int i = 0; i < n; i++) {
+                String expected = Integer.toString(start + i);
+                Assert.assertEquals(expected, term(copy[i]));
+                Assert.assertEquals(expected, term(buffer[2 + i]));
+                Assert.assertEquals(expected, term(view.get(i)));
+                Assert.assertEquals(expected, term(fi.getToken(fiid, start + i)));
+            }
+        }
+    }
+
+    @Test
+    public void testRetrieveWholeDocumentView() {
+        setUpForwardIndex();
+        int fiid = DOC_LENGTHS.length - 1;
+        IntBuffer view = fi.retrievePartView(fiid, -1, -1);
+        Assert.assertEquals(DOC_LENGTHS[fiid], view.remaining());
+        Assert.assertEquals("0", term(view.get(0)));
+        Assert.assertEquals(Integer.toString(DOC_LENGTHS[fiid] - 1), term(view.get(DOC_LENGTHS[fiid] - 1)));
+    }
+
+}
@@ -24,18 +24,42 @@ import org.junit.After;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
 
 import java.io.File;
 import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+@RunWith(Parameterized.class)
 public class TestTerms {
+
+    @Parameters(name = "mapped format {0}")
+    public static Collection<Boolean> formats() {
+        return Arrays.asList(false, true);
+    }
+
+    /** Write the memory-mappable terms file format? (otherwise block-based) */
+    private final boolean mappedFormat;
+
     private Terms t;
 
     private File dir;
 
     String[] str = { "the", "quick", "brown", "fox", "jumps", "over", "the", "lazy", "dog" };
 
+    public TestTerms(boolean mappedFormat) {
+        this.mappedFormat = mappedFormat;
+    }
+
     @Before
     public void setUp() {
 
@@ -48,7 +72,7 @@ public class TestTerms {
         // Store some terms
         Collator coll = Collator.getInstance(new Locale("en", "GB"));
         Collators colls = new Collators(coll, CollatorVersion.V2);
-        t = Terms.openForWriting(colls, null);
+        t = Terms.openForWriting(colls, null, mappedFormat);
         if (t instanceof TermsWriter)
             ((TermsWriter) t).setMaxBlockSize(18);
         for (int i = 0; i < str.length; i++) {
@@ -138,4 +162,73 @@ public class TestTerms {
             Assert.assertEquals(expected[i], results.intIterator().next());
         }
     }
+
+    /**
+     * Test that terms that are insensitively equal are found together, and that
+     * term ids are kept when adding to an existing terms file.
+     */
+    @Test
+    public void testInsensitiveGroupsAndAppend() {
+        Collators colls = new Collators(Collator.getInstance(new Locale("en", "GB")), CollatorVersion.V2);
+        Terms terms = Terms.openForWriting(colls, null, mappedFormat);
+        for (String term: new String[] { "the", "quick", "The", "fox", "THE" }) {
+            terms.indexOf(term);
+        }
+        File f = new File(dir, "terms2.dat");
+        terms.write(f);
+
+        // Add some terms to the existing file
+        terms = Terms.openForWriting(colls, f, mappedFormat);
+        Assert.assertEquals(2, terms.indexOf("The"));
+        Assert.assertEquals(5, terms.indexOf("quiCK"));
+        terms.write(f);
+
+        terms = Terms.openForReading(colls, f, true);
+        Assert.assertEquals(mappedFormat, terms instanceof TermsReaderMapped);
+        Assert.assertEquals(6, terms.numberOfTerms());
+        Assert.assertEquals("quiCK", terms.get(5));
+        Assert.assertEquals(4, terms.indexOf("THE"));
+        Assert.assertEquals(-1, terms.indexOf("dog"));
+        MutableIntSet results = new IntHashSet();
+        terms.indexOf(results, "tHe", MatchSensitivity.INSENSITIVE);
+        Assert.assertEquals(new IntHashSet(0, 2, 4), results);
+        results.clear();
+        terms.indexOf(results, "QUICK", MatchSensitivity.INSENSITIVE);
+        Assert.assertEquals(new IntHashSet(1, 5), results);
+        Assert.assertTrue(terms.termsEqual(new int[] { 0, 2, 4 }, MatchSensitivity.INSENSITIVE));
+        Assert.assertFalse(terms.termsEqual(new int[] { 0, 2 }, MatchSensitivity.SENSITIVE));
+        Assert.assertTrue(terms.idToSortPosition(3, MatchSensitivity.SENSITIVE) < terms.idToSortPosition(1, MatchSensitivity.SENSITIVE));
+    }
+
+    /**
+     * Test that adding terms from several threads at once assigns each term a single id.
+     */
+    @Test
+    public void testConcurrentIndexOf() throws Exception {
+        Collators colls = new Collators(Collator.getInstance(new Locale("en", "GB")), CollatorVersion.V2);
+        Terms terms = Terms.openForWriting(colls, null, mappedFormat);
+        int numberOfThreads = 4;
+        int numberOfTerms = 1000;
+        ExecutorService executor = Executors.newFixedThreadPool(numberOfThreads);
+        try {
+            List<Future<int[]>> futures = new ArrayList<>();
+            for (int thread = 0; thread < numberOfThreads; thread++) {
+                futures.add(executor.submit(() -> {
+                    int[] ids = new int[numberOfTerms];
+                    for (int i = 0; i < numberOfTerms; i++) {
+                        ids[i] = terms.indexOf("term" + i);
+                    }
+                    return ids;
+                }));
+            }
+            int[] expected = futures.get(0).get();
+            for (Future<int[]> future : futures) {
+                Assert.assertArrayEquals(expected, future.get());
+            }
+            IntHashSet distinct = new IntHashSet(expected);
+            Assert.assertEquals(numberOfTerms, distinct.size());
+        } finally {
+            executor.shutdown();
+        }
+    }
 }
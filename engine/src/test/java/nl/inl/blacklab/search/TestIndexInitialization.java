@@ -0,0 +1,61 @@
+package nl.inl.blacklab.search;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestIndexInitialization {
+
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() {
+        executor = Executors.newFixedThreadPool(2);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testProgress() throws InterruptedException {
+        IndexInitialization initialization = new IndexInitialization(executor);
+        Assert.assertTrue(initialization.isDone());
+
+        CountDownLatch release = new CountDownLatch(1);
+        initialization.submit("waits", () -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        initialization.submit("fails", () -> {
+            throw new IllegalStateException("test");
+        });
+        Assert.assertEquals(2, initialization.componentsTotal());
+        Assert.assertFalse(initialization.isDone());
+
+        release.countDown();
+        executor.shutdown();
+        Assert.assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        // Failed initializations count as finished too (component retries on first use)
+        Assert.assertEquals(2, initialization.componentsInitialized());
+        Assert.assertTrue(initialization.isDone());
+    }
+
+    @Test
+    public void testRejected() {
+        executor.shutdown();
+        IndexInitialization initialization = new IndexInitialization(executor);
+        initialization.submit("rejected", () -> {});
+        Assert.assertTrue(initialization.isDone());
+    }
+}
@@ -0,0 +1,147 @@
+package nl.inl.blacklab.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import nl.inl.blacklab.search.SearchExecutor.Priority;
+
+public class TestSearchExecutor {
+
+    private SearchExecutor executor;
+
+    @Before
+    public void setUp() {
+        executor = new SearchExecutor(1, 3, "TestSearchThread-");
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testInvokeAllParallelResultOrder() throws InterruptedException, ExecutionException {
+        List<Callable<Integer>> tasks = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            final int n = i;
+            tasks.add(() -> n * n);
+        }
+        List<Integer> results = executor.invokeAllParallel(tasks);
+        for (int i = 0; i < 20; i++) {
+            Assert.assertEquals(i * i, (int) results.get(i));
+        }
+    }
+
+    @Test
+    public void testInvokeInRanges() throws InterruptedException, ExecutionException {
+        // At most maxThreadsPerSearch (3) consecutive ranges of at least 10 items, covering all items
+        List<int[]> ranges = executor.invokeInRanges(100, 10, (from, to) -> new int[] { from, to });
+        Assert.assertEquals(3, ranges.size());
+        int expectedFrom = 0;
+        for (int[] range: ranges) {
+            Assert.assertEquals(expectedFrom, range[0]);
+            Assert.assertTrue(range[1] - range[0] >= 10);
+            expectedFrom = range[1];
+        }
+        Assert.assertEquals(100, expectedFrom);
+
+        // Too few items for more than one range
+        ranges = executor.invokeInRanges(15, 10, (from, to) -> new int[] { from, to });
+        Assert.assertEquals(1, ranges.size());
+        Assert.assertArrayEquals(new int[] { 0, 15 }, ranges.get(0));
+    }
+
+    @Test
+    public void testInvokeAllParallelFromSaturatedPool() throws Exception {
+        // Our only thread runs a task that runs subtasks; it must not wait for a free thread
+        AtomicInteger subtasksRun = new AtomicInteger();
+        Future<List<Integer>> future = executor.submit(() -> {
+            List<Callable<Integer>> tasks = Collections.nCopies(5, subtasksRun::incrementAndGet);
+            return executor.invokeAllParallel(tasks);
+        }, Priority.NORMAL);
+        Assert.assertEquals(5, future.get(10, TimeUnit.SECONDS).size());
+        Assert.assertEquals(5, subtasksRun.get());
+    }
+
+    @Test
+    public void testInvokeAllParallelException() throws InterruptedException {
+        List<Callable<Integer>> tasks = Arrays.asList(() -> 1, () -> { throw new IllegalStateException("test"); });
+        try {
+            executor.invokeAllParallel(tasks);
+            Assert.fail("Expected ExecutionException");
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+    }
+
+    @Test
+    public void testRunIfQueued() throws Exception {
+        // Our only thread runs a task that waits for another task that can't get a thread
+        Future<Integer> future = executor.submit(() -> {
+            Future<Integer> dependency = executor.submit(() -> 42, Priority.NORMAL);
+            executor.runIfQueued(dependency);
+            return dependency.get();
+        }, Priority.NORMAL);
+        Assert.assertEquals(42, (int) future.get(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testPriority() throws Exception {
+        // Occupy our only thread, then queue tasks with different priorities
+        CountDownLatch blocker = new CountDownLatch(1);
+        executor.submit(() -> { blocker.await(); return null; }, Priority.NORMAL);
+        List<Priority> order = Collections.synchronizedList(new ArrayList<>());
+        List<Future<?>> futures = new ArrayList<>();
+        for (Priority priority: Arrays.asList(Priority.BACKGROUND, Priority.NORMAL, Priority.INTERACTIVE, Priority.BACKGROUND)) {
+            futures.add(executor.submit(() -> { order.add(priority); }, priority));
+        }
+        blocker.countDown();
+        for (Future<?> f: futures)
+            f.get(10, TimeUnit.SECONDS);
+        Assert.assertEquals(Arrays.asList(Priority.INTERACTIVE, Priority.NORMAL, Priority.BACKGROUND, Priority.BACKGROUND), order);
+    }
+
+    @Test
+    public void testSubmitJob() throws Exception {
+        // Virtual threads may or may not be supported by this JDK; jobs should run either way
+        boolean virtual = executor.setUseVirtualThreads(true);
+        Assert.assertEquals(virtual, executor.isUsingVirtualThreads());
+        AtomicInteger jobsRun = new AtomicInteger();
+        executor.submitJob(jobsRun::incrementAndGet, Priority.INTERACTIVE).get(10, TimeUnit.SECONDS);
+        Assert.assertFalse(executor.setUseVirtualThreads(false));
+        executor.submitJob(jobsRun::incrementAndGet, Priority.INTERACTIVE).get(10, TimeUnit.SECONDS);
+        Assert.assertEquals(2, jobsRun.get());
+    }
+
+    @Test
+    public void testSubmitJobSubtaskPriority() throws Exception {
+        // Subtasks of a job should inherit its priority, whether the job runs on a virtual thread or not
+        for (boolean useVirtualThreads: Arrays.asList(false, true)) {
+            if (executor.setUseVirtualThreads(useVirtualThreads) != useVirtualThreads)
+                continue; // virtual threads not supported by this JDK
+            Future<?> job = executor.submitJob(() -> {
+                try {
+                    Future<Priority> subtask = executor.submit(SearchExecutor::currentPriority);
+                    executor.runIfQueued(subtask); // (our only pool thread may be running this job)
+                    Assert.assertEquals(Priority.BACKGROUND, subtask.get(10, TimeUnit.SECONDS));
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }, Priority.BACKGROUND);
+            job.get(10, TimeUnit.SECONDS);
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package nl.inl.blacklab.search.fimatch;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestMatchEnds {
+
+    private static MatchEnds of(int... positions) {
+        MatchEnds matchEnds = new MatchEnds();
+        for (int position: positions)
+            matchEnds.add(position);
+        return matchEnds;
+    }
+
+    @Test
+    public void testAddKeepsSortedWithoutDuplicates() {
+        MatchEnds matchEnds = of(5, 3, 8, 3, -1, 20, 5, 9, 10, 11, 12, 13);
+        Assert.assertEquals("[-1, 3, 5, 8, 9, 10, 11, 12, 13, 20]", matchEnds.toString());
+        Assert.assertTrue(matchEnds.contains(-1));
+        Assert.assertFalse(matchEnds.contains(4));
+        Assert.assertFalse(matchEnds.add(20));
+    }
+
+    @Test
+    public void testRetainAll() {
+        MatchEnds matchEnds = of(1, 2, 3, 4, 5);
+        matchEnds.retainAll(of(0, 2, 4, 6));
+        Assert.assertEquals("[2, 4]", matchEnds.toString());
+        matchEnds.retainAll(of(3));
+        Assert.assertTrue(matchEnds.isEmpty());
+    }
+
+    @Test
+    public void testClearAndReuse() {
+        MatchEnds matchEnds = of(1, 2, 3);
+        matchEnds.clear();
+        Assert.assertEquals(0, matchEnds.size());
+        matchEnds.addAll(of(7, 6));
+        Assert.assertEquals(2, matchEnds.size());
+        Assert.assertEquals(6, matchEnds.get(0));
+        Assert.assertEquals(7, matchEnds.get(1));
+    }
+}
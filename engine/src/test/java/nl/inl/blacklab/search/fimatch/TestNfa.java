@@ -42,6 +42,11 @@ public class TestNfa {
             return getAnnotationNumber(annotation.name());
         }
 
+        @Override
+        public int getNumberOfTerms(int annotationNumber) {
+            return Character.MAX_VALUE + 1; // term id is the character code
+        }
+
         @Override
         public ForwardIndexAccessorLeafReader getForwardIndexAccessorLeafReader(LeafReader reader) {
             return null;
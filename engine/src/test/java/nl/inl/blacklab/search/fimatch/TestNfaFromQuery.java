@@ -1,5 +1,6 @@
 package nl.inl.blacklab.search.fimatch;
 
+import java.nio.IntBuffer;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
@@ -80,6 +81,11 @@ public class TestNfaFromQuery {
             return 1;
         }
 
+        @Override
+        public int getNumberOfTerms(int annotationNumber) {
+            return terms.size();
+        }
+
         @Override
         public ForwardIndexAccessorLeafReader getForwardIndexAccessorLeafReader(LeafReader reader) {
             return new ForwardIndexAccessorLeafReader(reader) {
@@ -99,12 +105,12 @@ public class TestNfaFromQuery {
                 }
 
                 @Override
-                public int[] getChunk(int annotIndex, int docId, int start, int end) {
+                public IntBuffer getTokens(int annotIndex, int docId) {
                     if (annotIndex != 0)
                         throw new IllegalArgumentException("Unknown annotation " + annotIndex);
                     if (docId != 0)
                         throw new IllegalArgumentException("Unknown document " + docId);
-                    return Arrays.copyOfRange(termIds, start, end);
+                    return IntBuffer.wrap(termIds).asReadOnlyBuffer();
                 }
 
                 @Override
@@ -179,6 +185,18 @@ public class TestNfaFromQuery {
             Assert.assertEquals("Test " + i, matches.contains(i),
                     start.matches(fiDoc, startPos + direction * i, direction));
         }
+
+        // If the NFA can be compiled to a DFA, that should find the same match ends
+        Dfa dfa = Dfa.fromNfa(start);
+        if (dfa != null) {
+            MatchEnds nfaMatchEnds = new MatchEnds();
+            MatchEnds dfaMatchEnds = new MatchEnds();
+            for (int i = 0; i < tests; i++) {
+                start.findMatches(fiDoc, startPos + direction * i, direction, nfaMatchEnds);
+                dfa.findMatches(fiDoc, startPos + direction * i, direction, dfaMatchEnds);
+                Assert.assertEquals("DFA test " + i, nfaMatchEnds.toString(), dfaMatchEnds.toString());
+            }
+        }
     }
 
     private static SpanQueryRepetition rep(BLSpanQuery clause, int min, int max) {
@@ -0,0 +1,82 @@
+package nl.inl.blacklab.search.results;
+
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import nl.inl.blacklab.search.results.Hits.EphemeralHit;
+import nl.inl.blacklab.search.results.Hits.HitsArrays;
+
+public class TestCompactHitsArrays {
+
+    private static void assertSameHits(HitsArrays expected, HitsArrays actual) {
+        Assert.assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            Assert.assertEquals(expected.get(i), actual.get(i));
+        }
+        int i = 0;
+        for (EphemeralHit hit: actual) {
+            Assert.assertEquals(expected.get(i), hit.toHit());
+            i++;
+        }
+        Assert.assertEquals(expected.size(), i);
+        Assert.assertEquals(expected.docs(), actual.docs());
+        Assert.assertEquals(expected.starts(), actual.starts());
+        Assert.assertEquals(expected.ends(), actual.ends());
+    }
+
+    @Test
+    public void testEncodeDecode() {
+        Random random = new Random(12345);
+        HitsArrays expected = new HitsArrays();
+        CompactHitsArrays actual = new CompactHitsArrays();
+        int doc = 0, start = 0;
+        for (int i = 0; i < 10_000; i++) {
+            switch (random.nextInt(4)) {
+            case 0:
+                // Next document
+                doc += random.nextInt(100) + 1;
+                start = random.nextInt(1000);
+                break;
+            case 1:
+                // Jump back (hits from another segment), or extreme values
+                doc = random.nextBoolean() ? random.nextInt(1000) : Integer.MAX_VALUE - random.nextInt(10);
+                start = random.nextBoolean() ? random.nextInt(1000) : Integer.MAX_VALUE / 2;
+                break;
+            default:
+                // Same document
+                start += random.nextInt(20);
+                break;
+            }
+            int end = start + random.nextInt(10);
+            expected.add(doc, start, end);
+            actual.add(doc, start, end);
+            if (i % 1000 == 0) {
+                // Check while still appending (partial last block)
+                Assert.assertEquals(expected.get(i), actual.get(i));
+            }
+        }
+        assertSameHits(expected, actual);
+
+        // Select and addAll
+        int[] indices = { 9999, 0, 64, 63, 5000 };
+        assertSameHits(expected.select(indices), actual.select(indices));
+        CompactHitsArrays copy = new CompactHitsArrays();
+        copy.addAll(actual);
+        assertSameHits(expected, copy);
+    }
+
+    @Test
+    public void testSize() {
+        HitsArrays normal = new HitsArrays();
+        CompactHitsArrays compact = new CompactHitsArrays();
+        for (int doc = 0; doc < 1000; doc++) {
+            for (int start = 0; start < 1000; start += 10) {
+                normal.add(doc, start, start + 1);
+                compact.add(doc, start, start + 1);
+            }
+        }
+        Assert.assertTrue(compact.sizeInBytes() * 2 < normal.sizeInBytes());
+    }
+}
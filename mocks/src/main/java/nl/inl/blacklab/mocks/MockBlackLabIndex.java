@@ -242,4 +242,9 @@ public class MockBlackLabIndex implements BlackLabIndex {
     public BlackLabEngine blackLab() {
         return blackLab;
     }
+
+    @Override
+    public IndexInitialization initialization() {
+        return new IndexInitialization(blackLab.initializationExecutorService());
+    }
 }
@@ -20,6 +20,7 @@ import nl.inl.blacklab.server.requesthandlers.Response;
 import nl.inl.blacklab.server.requesthandlers.SearchParameters;
 import nl.inl.blacklab.server.search.SearchManager;
 import nl.inl.blacklab.server.util.ServletUtil;
+import nl.inl.blacklab.server.util.StreamingResponseWriter;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -47,6 +48,9 @@ public class BlackLabServer extends HttpServlet {
 
     static final Charset OUTPUT_ENCODING = Charset.forName("utf-8");
 
+    /** How much of a streaming response to buffer before we start sending it (see RequestHandler.isStreamingResponse()) */
+    private static final int STREAMING_RESPONSE_BUFFER_CHARS = 1_000_000;
+
     /** Manages all our searches */
     private SearchManager searchManager;
 
@@ -275,7 +279,16 @@ public class BlackLabServer extends HttpServlet {
 
         // === Handle the request
         StringWriter buf = new StringWriter();
-        PrintWriter out = new PrintWriter(buf);
+        StreamingResponseWriter streamingOut = null;
+        if (requestHandler.isStreamingResponse()) {
+            // Large responses are sent while we're still producing them, to save memory
+            final DataFormat streamingOutputType = outputType;
+            streamingOut = new StreamingResponseWriter(buf, STREAMING_RESPONSE_BUFFER_CHARS, () -> {
+                writeResponseHeaders(responseObject, HttpServletResponse.SC_OK, isJsonp, streamingOutputType, cacheTime);
+                return new OutputStreamWriter(responseObject.getOutputStream(), OUTPUT_ENCODING);
+            });
+        }
+        PrintWriter out = new PrintWriter(streamingOut != null ? streamingOut : buf);
         DataStream ds = DataStream.create(outputType, out, prettyPrint, callbackFunction);
         ds.setOmitEmptyAnnotations(searchManager.config().getProtocol().isOmitEmptyProperties());
         ds.startDocument(rootEl);
@@ -303,29 +316,39 @@ public class BlackLabServer extends HttpServlet {
             } catch (InterruptedSearch e) {
                 httpCode = Response.error(es, "INTERRUPTED", e.getMessage(), HttpServletResponse.SC_SERVICE_UNAVAILABLE);
             } catch (RuntimeException e) {
+                if (e instanceof UncheckedIOException && streamingOut != null && streamingOut.isCommitted()) {
+                    // Client cancelled the request while we were streaming the response.
+                    // This is okay, don't raise the alarm.
+                    logger.debug("(couldn't send response, client probably cancelled the request)");
+                    return;
+                }
                 httpCode = Response.internalError(es, e, debugMode, "INTERR_HANDLING_REQUEST");
             } finally {
                 requestHandler.cleanup(); // close logger
             }
         }
         ds.endDocument(rootEl);
+        boolean errorOccurred = errorBuf.getBuffer().length() > errorBufLengthBefore;
 
-        // === Write the response headers
+        if (streamingOut != null && streamingOut.isCommitted()) {
+            // Headers and part of the response have already been sent; send the rest.
+            // We can't report errors to the client anymore, so the response will just be truncated.
+            if (errorOccurred)
+                logger.error("Error after response was partially sent, response truncated: " + errorBuf);
+            try {
+                out.flush();
+            } catch (UncheckedIOException e) {
+                logger.debug("(couldn't send response, client probably cancelled the request)");
+            }
+            return;
+        }
 
-        // Write HTTP headers (status code, encoding, content type and cache)
-        if (!isJsonp) // JSONP request always returns 200 OK because otherwise script doesn't load
-            responseObject.setStatus(httpCode);
-        responseObject.setCharacterEncoding(OUTPUT_ENCODING.name().toLowerCase());
-        responseObject.setContentType(ServletUtil.getContentType(outputType));
-        String allowOrigin = searchManager.config().getProtocol().getAccessControlAllowOrigin();
-        if (allowOrigin != null)
-            responseObject.addHeader("Access-Control-Allow-Origin", allowOrigin);
-        ServletUtil.writeCacheHeaders(responseObject, cacheTime);
+        // === Write the response headers
+        writeResponseHeaders(responseObject, httpCode, isJsonp, outputType, cacheTime);
 
         // === Write the response that was captured in buf
         try {
             Writer realOut = new OutputStreamWriter(responseObject.getOutputStream(), OUTPUT_ENCODING);
-            boolean errorOccurred = errorBuf.getBuffer().length() > errorBufLengthBefore;
             StringWriter writeWhat = errorOccurred ? errorBuf : buf;
             realOut.write(writeWhat.toString());
             realOut.flush();
@@ -337,6 +360,27 @@ public class BlackLabServer extends HttpServlet {
         }
     }
 
+    /**
+     * Write HTTP headers (status code, encoding, content type and cache)
+     *
+     * @param responseObject response to write headers to
+     * @param httpCode HTTP status code
+     * @param isJsonp is this a JSONP request?
+     * @param outputType output type of the response
+     * @param cacheTime how long the client may cache the response (seconds)
+     */
+    private void writeResponseHeaders(HttpServletResponse responseObject, int httpCode, boolean isJsonp,
+            DataFormat outputType, int cacheTime) {
+        if (!isJsonp) // JSONP request always returns 200 OK because otherwise script doesn't load
+            responseObject.setStatus(httpCode);
+        responseObject.setCharacterEncoding(OUTPUT_ENCODING.name().toLowerCase());
+        responseObject.setContentType(ServletUtil.getContentType(outputType));
+        String allowOrigin = searchManager.config().getProtocol().getAccessControlAllowOrigin();
+        if (allowOrigin != null)
+            responseObject.addHeader("Access-Control-Allow-Origin", allowOrigin);
+        ServletUtil.writeCacheHeaders(responseObject, cacheTime);
+    }
+
     @Override
     public void destroy() {
 
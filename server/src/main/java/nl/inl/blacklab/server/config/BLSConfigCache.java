@@ -24,6 +24,10 @@ public class BLSConfigCache {
 
     private String implementation = "";
 
+    private String spillDir = "";
+
+    private int maxSpillSizeMegs = 1000;
+
     @Deprecated
     public int getMaxSizeMegs() {
         return maxSizeMegs;
@@ -108,4 +112,20 @@ public class BLSConfigCache {
         this.implementation = implementation;
     }
 
+    public String getSpillDir() {
+        return spillDir;
+    }
+
+    public void setSpillDir(String spillDir) {
+        this.spillDir = spillDir;
+    }
+
+    public int getMaxSpillSizeMegs() {
+        return maxSpillSizeMegs;
+    }
+
+    public void setMaxSpillSizeMegs(int maxSpillSizeMegs) {
+        this.maxSpillSizeMegs = maxSpillSizeMegs;
+    }
+
 }
\ No newline at end of file
@@ -3,6 +3,8 @@ package nl.inl.blacklab.server.config;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import nl.inl.blacklab.search.BlackLabEngine;
+
 public class BLSConfigPerformance {
 
     static final int MAX_CONCURRENT_SEARCHES_AT_LEAST = 4;
@@ -19,6 +21,10 @@ public class BLSConfigPerformance {
 
     int maxRunningJobsPerUser = 10;
 
+    boolean useVirtualThreads = false;
+
+    int initializationThreads = BlackLabEngine.DEFAULT_INITIALIZATION_THREADS;
+
     public int getMaxConcurrentSearches() {
         return maxConcurrentSearches;
     }
@@ -68,6 +74,22 @@ public class BLSConfigPerformance {
         //this.pausingEnabled = pausingEnabled;
     }
 
+    public boolean isUseVirtualThreads() {
+        return useVirtualThreads;
+    }
+
+    public void setUseVirtualThreads(boolean useVirtualThreads) {
+        this.useVirtualThreads = useVirtualThreads;
+    }
+
+    public int getInitializationThreads() {
+        return initializationThreads;
+    }
+
+    public void setInitializationThreads(int initializationThreads) {
+        this.initializationThreads = initializationThreads;
+    }
+
     public boolean isAutodetectMaxConcurrent() {
         return autodetectMaxConcurrent;
     }
@@ -18,6 +18,18 @@ public class DataStreamPlain extends DataStream {
         super(out, prettyPrint);
     }
 
+    /**
+     * Get the writer we write to.
+     *
+     * Useful for writing a large response bit by bit (e.g. using a CSVPrinter),
+     * instead of building it in memory and passing it to {@link #plain(String)}.
+     *
+     * @return the writer
+     */
+    public PrintWriter writer() {
+        return out;
+    }
+
     @Override
     public DataStream startDocument(String rootEl) {
         return this;
@@ -8,6 +8,8 @@ import nl.inl.blacklab.resultproperty.DocGroupProperty;
 import nl.inl.blacklab.resultproperty.DocProperty;
 import nl.inl.blacklab.search.*;
 import nl.inl.blacklab.search.indexmetadata.*;
+import nl.inl.blacklab.search.lucene.BLSpanQuery;
+import nl.inl.blacklab.search.lucene.SpanQueryFiSeq;
 import nl.inl.blacklab.search.results.*;
 import nl.inl.blacklab.searches.SearchFacets;
 import nl.inl.blacklab.server.BlackLabServer;
@@ -444,6 +446,21 @@ public abstract class RequestHandler {
         return false;
     }
 
+    /**
+     * May the response be sent while it's still being produced?
+     *
+     * Normally, the whole response is buffered, so we can still send an error
+     * response if something goes wrong. For operations that may produce very large
+     * responses (e.g. CSV exports), this uses too much memory. If this returns true,
+     * the response is sent in parts once it gets large; errors after that point are
+     * logged and the response is truncated.
+     *
+     * @return true if the response may be streamed
+     */
+    public boolean isStreamingResponse() {
+        return false;
+    }
+
     protected boolean isDocsOperation() {
         return false;
     }
@@ -527,6 +544,57 @@ public abstract class RequestHandler {
         ds.endMap();
     }
 
+    /**
+     * Write how a query will be matched, with the optimizer's estimates.
+     *
+     * @param ds where to write
+     * @param node (part of) the query plan
+     */
+    protected static void dataStreamQueryPlan(DataStream ds, QueryExplanation.PlanNode node) {
+        ds.startMap()
+                .entry("type", node.query().getClass().getSimpleName())
+                .entry("query", node.query().toString())
+                .entry("matchedUsing", node.matchedUsing())
+                .entry("estimatedNumberOfHits", node.estimatedNumberOfHits())
+                .entry("forwardMatchingCost", node.forwardMatchingCost());
+        if (node.matchedUsing().equals(QueryExplanation.PlanNode.FISEQ)) {
+            ds.entry("segmentsUsingNfa", node.segmentsUsingNfa())
+                    .entry("segmentsUsingJoin", node.segmentsUsingJoin());
+        }
+        if (!node.children().isEmpty()) {
+            ds.startEntry("clauses").startList();
+            for (QueryExplanation.PlanNode child: node.children()) {
+                ds.startItem("clause");
+                dataStreamQueryPlan(ds, child);
+                ds.endItem();
+            }
+            ds.endList().endEntry();
+        }
+        ds.endMap();
+    }
+
+    /**
+     * Stream how the forward index matching (FISEQ) parts of an executed query
+     * matched the index segments so far.
+     *
+     * @param ds where to stream
+     * @param executedQuery the optimized and rewritten query that was executed
+     */
+    protected static void dataStreamMatchingStats(DataStream ds, BLSpanQuery executedQuery) {
+        ds.startList();
+        for (SpanQueryFiSeq fiSeq: SpanQueryFiSeq.findIn(executedQuery)) {
+            SpanQueryFiSeq.MatchingStats stats = fiSeq.getMatchingStats();
+            ds.startItem("fiseq").startMap()
+                    .entry("query", fiSeq.toString())
+                    .entry("segmentsMatchedUsingNfa", stats.segmentsMatchedUsingNfa())
+                    .entry("segmentsMatchedUsingJoin", stats.segmentsMatchedUsingJoin())
+                    .entry("anchorHitsEstimated", stats.anchorHitsEstimated())
+                    .entry("anchorHitsFound", stats.anchorHitsFound())
+                    .endMap().endItem();
+        }
+        ds.endList();
+    }
+
     protected static void dataStreamMetadataGroupInfo(DataStream ds, BlackLabIndex index) {
         MetadataFieldGroups metaGroups = index.metadata().metadataFields().groups();
         synchronized (metaGroups) { // concurrent requests
@@ -939,6 +1007,7 @@ public abstract class RequestHandler {
 
         ds.startEntry("hits").startList();
         Set<Annotation> annotationsToList = new HashSet<>(getAnnotationsToWrite());
+        int hitIndex = 0;
         for (Hit hit : hits) {
             ds.startItem("hit").startMap();
 
@@ -958,7 +1027,7 @@ public abstract class RequestHandler {
             ds.entry("end", hit.end());
 
             if (hits.hasCapturedGroups()) {
-                Map<String, Span> capturedGroups = hits.capturedGroups().getMap(hit);
+                Map<String, Span> capturedGroups = hits.capturedGroups().getMap(hitIndex);
                 if (capturedGroups != null) {
                     ds.startEntry("captureGroups").startList();
 
@@ -1002,6 +1071,7 @@ public abstract class RequestHandler {
                 }
             }
             ds.endMap().endItem();
+            hitIndex++;
         }
         ds.endList().endEntry();
     }
@@ -140,12 +140,13 @@ public class RequestHandlerDocsCsv extends RequestHandler {
         return searchParam.getBoolean("csvsepline");
     }
 
-    private CSVPrinter createHeader(List<String> row) throws IOException {
-        // Create the header, then explicitly declare the separator, as excel normally uses a locale-dependent CSV-separator...
+    private CSVPrinter createHeader(List<String> row, DataStreamPlain ds) throws IOException {
+        // Explicitly declare the separator, as excel normally uses a locale-dependent CSV-separator...
+        // Then create the header. We write directly to the response, so it can be streamed.
+        if (declareSeparator())
+            ds.writer().append("sep=,\r\n");
         CSVFormat format = CSVFormat.EXCEL.withHeader(row.toArray(new String[0]));
-        CSVPrinter printer = format.print(new StringBuilder(declareSeparator() ? "sep=,\r\n" : ""));
-
-        return printer;
+        return format.print(ds.writer());
     }
 
     private void writeGroups(DocResults inputDocsForGroups, DocGroups groups, DocResults subcorpusResults, DataStreamPlain ds) throws BlsException {
@@ -163,7 +164,7 @@ public class RequestHandlerDocsCsv extends RequestHandler {
                 row.add("subcorpusSize.documents");
             }
 
-            CSVPrinter printer = createHeader(row);
+            CSVPrinter printer = createHeader(row, ds);
             if (includeSearchParameters()) {
                 addSummaryCsvDocs(printer, row.size(), inputDocsForGroups, groups, subcorpusResults.subcorpusSize());
             }
@@ -191,7 +192,6 @@ public class RequestHandlerDocsCsv extends RequestHandler {
             }
 
             printer.flush();
-            ds.plain(printer.getOut().toString());
         } catch (IOException e) {
             throw new InternalServerError("Cannot write response: " + e.getMessage(), "INTERR_WRITING_DOCS_CSV1");
         }
@@ -218,7 +218,7 @@ public class RequestHandlerDocsCsv extends RequestHandler {
 
             row.addAll(metadataFieldIds); // NOTE: use the raw field IDs for headers, not the display names, CSVPrinter can't handle duplicate names
 
-            CSVPrinter printer = createHeader(row);
+            CSVPrinter printer = createHeader(row, ds);
             addSummaryCsvDocs(printer, row.size(), docs, fromGroups, globalSubcorpusSize.subcorpusSize());
 
             StringBuilder sb = new StringBuilder();
@@ -279,7 +279,6 @@ public class RequestHandlerDocsCsv extends RequestHandler {
             }
 
             printer.flush();
-            ds.plain(printer.getOut().toString());
         } catch (IOException e) {
             throw new InternalServerError("Cannot write response: " + e.getMessage(), "INTERR_WRITING_DOCS_CSV2");
         }
@@ -301,6 +300,11 @@ public class RequestHandlerDocsCsv extends RequestHandler {
         return DataFormat.CSV;
     }
 
+    @Override
+    public boolean isStreamingResponse() {
+        return true;
+    }
+
     @Override
     protected boolean isDocsOperation() {
         return true;
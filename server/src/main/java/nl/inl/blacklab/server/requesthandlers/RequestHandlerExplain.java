@@ -45,6 +45,9 @@ public class RequestHandlerExplain extends RequestHandler {
                     .entry("textPattern", patt)
                     .entry("originalQuery", explanation.originalQuery())
                     .entry("rewrittenQuery", explanation.rewrittenQuery());
+            ds.startEntry("plan");
+            dataStreamQueryPlan(ds, explanation.plan());
+            ds.endEntry();
             ds.endMap();
         } catch (TooManyClauses e) {
             return Response.badRequest(ds, "QUERY_TOO_BROAD",
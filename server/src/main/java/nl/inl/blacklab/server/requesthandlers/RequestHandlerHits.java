@@ -185,7 +185,17 @@ public class RequestHandlerHits extends RequestHandler {
                 ds.startEntry("explanation").startMap()
                         .entry("originalQuery", explanation.originalQuery())
                         .entry("rewrittenQuery", explanation.rewrittenQuery())
-                        .endMap().endEntry();
+                        .startEntry("plan");
+                dataStreamQueryPlan(ds, explanation.plan());
+                ds.endEntry();
+                // How the query we executed actually matched (so far)
+                Hits originalHits = hits.executedQuery() != null ? hits : searchParam.hits().execute();
+                if (originalHits.executedQuery() != null) {
+                    ds.startEntry("matchingStats");
+                    dataStreamMatchingStats(ds, originalHits.executedQuery());
+                    ds.endEntry();
+                }
+                ds.endMap().endEntry();
             } catch (RegexpTooLarge e) {
                 throw new BadRequest("REGEXP_TOO_LARGE", "Regular expression too large.");
             } catch (WildcardTermTooBroad e) {
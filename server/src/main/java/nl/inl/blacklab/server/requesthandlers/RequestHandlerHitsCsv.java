@@ -31,6 +31,10 @@ import java.util.concurrent.ExecutionException;
  * Request handler for hit results.
  */
 public class RequestHandlerHitsCsv extends RequestHandler {
+
+    /** How many hits to retrieve KWICs for at a time (so we don't need to keep them all in memory) */
+    private static final int KWIC_BATCH_SIZE = 1000;
+
     private static class Result {
         public final Hits hits;
         public final HitGroups groups;
@@ -157,7 +161,7 @@ public class RequestHandlerHitsCsv extends RequestHandler {
                 row.add("subcorpusSize.tokens");
             }
 
-            CSVPrinter printer = createHeader(row);
+            CSVPrinter printer = createHeader(row, ds);
             if (this.includeSearchParameters()) {
                 addSummaryCsvHits(printer, row.size(), inputHitsForGroups, groups, subcorpusResults.subcorpusSize());
             }
@@ -183,17 +187,18 @@ public class RequestHandlerHitsCsv extends RequestHandler {
             }
 
             printer.flush();
-            ds.plain(printer.getOut().toString());
         } catch (IOException e) {
             throw new InternalServerError("Cannot write response: " + e.getMessage(), "INTERR_WRITING_HITS_CSV1");
         }
     }
 
-    private CSVPrinter createHeader(List<String> row) throws IOException {
-        // Create the header, then explicitly declare the separator, as excel normally uses a locale-dependent CSV-separator...
+    private CSVPrinter createHeader(List<String> row, DataStreamPlain ds) throws IOException {
+        // Explicitly declare the separator, as excel normally uses a locale-dependent CSV-separator...
+        // Then create the header. We write directly to the response, so it can be streamed.
+        if (declareSeparator())
+            ds.writer().append("sep=,\r\n");
         CSVFormat format = CSVFormat.EXCEL.withHeader(row.toArray(new String[0]));
-        CSVPrinter printer = format.print(new StringBuilder(declareSeparator() ? "sep=,\r\n" : ""));
-        return printer;
+        return format.print(ds.writer());
     }
 
     @SuppressWarnings("static-method")
@@ -265,25 +270,31 @@ public class RequestHandlerHitsCsv extends RequestHandler {
                  row.add(f.name());
             }
 
-            CSVPrinter printer = createHeader(row);
+            CSVPrinter printer = createHeader(row, ds);
             if (includeSearchParameters()) {
                 hits.hitsStats().countedTotal(); // block for a bit
                 addSummaryCsvHits(printer, row.size(), hits, groups, subcorpusResults.subcorpusSize());
             }
 
+            // Retrieve KWICs and documents per batch of hits and write the rows as we go,
+            // so memory use doesn't depend on the number of hits we export
+            ContextSize contextSize = blIndex().defaultContextSize();
             Map<Integer, Document> luceneDocs = new HashMap<>();
-            Kwics kwics = hits.kwics(blIndex().defaultContextSize());
-            for (Hit hit : hits) {
-                Document doc = luceneDocs.get(hit.doc());
-                if (doc == null) {
-                    doc = blIndex().doc(hit.doc()).luceneDoc();
-                    luceneDocs.put(hit.doc(), doc);
+            for (int first = 0; hits.hitsStats().processedAtLeast(first + 1); first += KWIC_BATCH_SIZE) {
+                Hits batch = hits.window(first, KWIC_BATCH_SIZE);
+                Kwics kwics = batch.kwics(contextSize);
+                luceneDocs.clear();
+                for (Hit hit : batch) {
+                    Document doc = luceneDocs.get(hit.doc());
+                    if (doc == null) {
+                        doc = blIndex().doc(hit.doc()).luceneDoc();
+                        luceneDocs.put(hit.doc(), doc);
+                    }
+                    writeHit(kwics.get(hit), doc, mainTokenProperty, annotationsToWrite, getDocumentPid(blIndex(), hit.doc(), doc), metadataFieldsToWrite, row);
+                    printer.printRecord(row);
                 }
-                writeHit(kwics.get(hit), doc, mainTokenProperty, annotationsToWrite, getDocumentPid(blIndex(), hit.doc(), doc), metadataFieldsToWrite, row);
-                printer.printRecord(row);
             }
             printer.flush();
-            ds.plain(printer.getOut().toString());
         } catch (IOException e) {
             throw new InternalServerError("Cannot write response: " + e.getMessage(), "INTERR_WRITING_HITS_CSV2");
         } catch (BlsException e) {
@@ -307,6 +318,11 @@ public class RequestHandlerHitsCsv extends RequestHandler {
         return DataFormat.CSV;
     }
 
+    @Override
+    public boolean isStreamingResponse() {
+        return true;
+    }
+
     private static List<String> interleave(List<String> a, List<String> b) {
         List<String> out = new ArrayList<>();
 
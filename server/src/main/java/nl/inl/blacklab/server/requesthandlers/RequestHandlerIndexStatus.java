@@ -4,6 +4,7 @@ import javax.servlet.http.HttpServletRequest;
 
 import nl.inl.blacklab.exceptions.IndexTooOld;
 import nl.inl.blacklab.index.IndexListener;
+import nl.inl.blacklab.search.IndexInitialization;
 import nl.inl.blacklab.search.indexmetadata.IndexMetadata;
 import nl.inl.blacklab.server.BlackLabServer;
 import nl.inl.blacklab.server.datastream.DataStream;
@@ -62,6 +63,16 @@ public class RequestHandlerIndexStatus extends RequestHandler {
                             .entry("tokensProcessed", indexProgress.getTokensProcessed())
                             .endMap().endEntry();
                 }
+            } else {
+                // Forward indexes and content stores are initialized in the background after opening.
+                // Queries can already be run, but may have to wait for the components they need.
+                IndexInitialization initialization = index.blIndex().initialization();
+                if (!initialization.isDone()) {
+                    ds.startEntry("initializationProgress").startMap()
+                            .entry("componentsInitialized", initialization.componentsInitialized())
+                            .entry("componentsTotal", initialization.componentsTotal())
+                            .endMap().endEntry();
+                }
             }
 
             ds.endMap();
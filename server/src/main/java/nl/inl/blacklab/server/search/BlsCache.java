@@ -1,5 +1,6 @@
 package nl.inl.blacklab.server.search;
 
+import java.io.File;
 import java.lang.Thread.UncaughtExceptionHandler;
 import java.util.ArrayList;
 import java.util.Comparator;
@@ -43,9 +44,6 @@ public class BlsCache implements SearchCache {
     /** Bytes in one gigabyte */
     private static final long ONE_GB_BYTES = ONE_MB_BYTES * 1_000;
 
-    /** Very rough measure of how large result objects are, based on a Hit (3 ints + 12 bytes object overhead) */
-    public static final int SIZE_OF_HIT = 24;
-
     /**
      * A thread that regularly calls cleanUpSearches() to
      * ensure that cache cleanup continues even if no new requests are coming in.
@@ -74,6 +72,7 @@ public class BlsCache implements SearchCache {
                 }
 
                 updateCache();
+                spillEvictedResults();
             }
         }
 
@@ -110,6 +109,12 @@ public class BlsCache implements SearchCache {
 
     private String previousCacheStatsMessage = "";
 
+    /** Where to spill finished results to when freeing up memory, or null if not enabled */
+    private BlsCacheDisk diskCache;
+
+    /** Evicted searches whose results should be spilled to disk (by the cleanup thread) */
+    private List<BlsCacheEntry<?>> searchesToSpill = new ArrayList<>();
+
     @SuppressWarnings("deprecation")
     public BlsCache(BLSConfigCache config, int maxConcurrentSearches, int abandonedCountAbortTimeSec, boolean trace) {
         this.config = config;
@@ -127,6 +132,9 @@ public class BlsCache implements SearchCache {
                 }
             };
 
+            if (!config.getSpillDir().isEmpty())
+                diskCache = new BlsCacheDisk(new File(config.getSpillDir()), config.getMaxSpillSizeMegs() * ONE_MB_BYTES);
+
             cleanupThread = new CleanupSearchesThread();
             cleanupThread.setDaemon(true); // don't prevent JVM from exiting.
             cleanupThread.start();
@@ -162,6 +170,8 @@ public class BlsCache implements SearchCache {
                 it.remove();
             }
         }
+        if (diskCache != null)
+            diskCache.removeSearchesForIndex(index);
     }
 
     /**
@@ -175,6 +185,9 @@ public class BlsCache implements SearchCache {
             cachedSearch.cancel(true);
         }
         searches.clear();
+        searchesToSpill.clear();
+        if (diskCache != null)
+            diskCache.clear();
         traceInfo("Cache cleared.");
     }
 
@@ -190,7 +203,11 @@ public class BlsCache implements SearchCache {
         boolean useCache = search.queryInfo().useCache() && !cacheDisabled;
         future = useCache ? (BlsCacheEntry<R>) searches.get(search) : null;
         if (future == null) {
-            logger.info("not found in cache, starting search: " + search);
+            boolean onDisk = useCache && diskCache != null && diskCache.contains(search);
+            if (onDisk)
+                logger.info("not found in cache, reading results from disk: " + search);
+            else
+                logger.info("not found in cache, starting search: " + search);
             int numQueued = numberOfQueuedSearches();
             if (numQueued >= config.getMaxQueuedSearches()) {
                 logger.warn("Can't start new search, too many queued searches (numQueued = " + numQueued + ", maxQueuedSearches = " + config.getMaxQueuedSearches() + ")");
@@ -200,7 +217,8 @@ public class BlsCache implements SearchCache {
             // Create the cache entry.
             // Note that all entries start "queued" (i.e. the search itself hasn't been started yet).
             // We will see if it can be started below.
-            future = new BlsCacheEntry<>(search);
+            // If the results were spilled to disk, the "search" reads them from there.
+            future = onDisk ? new BlsCacheEntry<>(search, () -> (R) diskCache.load(search)) : new BlsCacheEntry<>(search);
             if (useCache)
                 searches.put(search, future);
 
@@ -292,21 +310,42 @@ public class BlsCache implements SearchCache {
     }
 
     /**
-     * Estimate number of result objects (e.g. Hits) in cache.
+     * Write the results of searches evicted by {@link #updateCache()} to disk.
+     *
+     * Called by the cleanup thread after updating the cache. We don't hold the
+     * cache lock while writing, so requests aren't blocked.
+     */
+    void spillEvictedResults() {
+        List<BlsCacheEntry<?>> toSpill;
+        synchronized (this) {
+            if (searchesToSpill.isEmpty())
+                return;
+            toSpill = searchesToSpill;
+            searchesToSpill = new ArrayList<>();
+        }
+        for (BlsCacheEntry<?> entry: toSpill) {
+            SearchResult result = entry.finishedResult();
+            if (result != null && diskCache.spill(entry.search(), result))
+                traceInfo("-- SPILLED:  {}", entry.search());
+        }
+    }
+
+    /**
+     * Estimate the size of the results in cache.
      *
      * This may not be accurate because Hits are sometimes but not always duplicated
      * between tasks (e.g. gather, sort, group). It gives a rough estimate though
      * that we can use to decide when to clean up.
      *
-     * @return estimate of number of Hits in cache
+     * @return estimated size of the results in cache in bytes
      */
-    private synchronized long estimateResultObjectsInCache() {
+    private synchronized long estimateCacheSizeBytes() {
         // Estimate the total cache size
-        long resultsObjectsInCache = 0;
+        long bytesInCache = 0;
         for (BlsCacheEntry<?> search : searches.values()) {
-            resultsObjectsInCache += search.numberOfStoredHits();
+            bytesInCache += search.estimatedSizeInBytes();
         }
-        return resultsObjectsInCache;
+        return bytesInCache;
     }
 
     void traceInfo(String msg, Object... params) {
@@ -370,8 +409,7 @@ public class BlsCache implements SearchCache {
      * Remove older finished searches from cache. Start a queued search if load is low enough.
      */
     synchronized void updateCache() {
-        long resultsObjectsInCache = estimateResultObjectsInCache();
-        cacheSizeBytes = resultsObjectsInCache * SIZE_OF_HIT;
+        cacheSizeBytes = estimateCacheSizeBytes();
 
         List<BlsCacheEntry<?>> searches = new ArrayList<>(this.searches.values());
 
@@ -437,12 +475,18 @@ public class BlsCache implements SearchCache {
                 }
                 traceInfo("-- REMOVE ({}): {}", reason, search);
                 remove(search.search());
+                if (diskCache != null && !isSearchTooOld && search.finishedResult() != null)
+                    searchesToSpill.add(search);
 
-                memoryToFreeUpMegs -= (long)search.numberOfStoredHits() * SIZE_OF_HIT / ONE_MB_BYTES; // NB very rough guess, but ok
+                memoryToFreeUpMegs -= search.estimatedSizeInBytes() / ONE_MB_BYTES; // NB very rough guess, but ok
                 searches.remove(i);
             }
         }
 
+        // Get rid of spilled results that haven't been accessed in a while.
+        if (diskCache != null && checkLastAccessTime)
+            diskCache.removeUnused(config.getMaxJobAgeSec() * 1000L);
+
         //------------------
         // STEP 2: abort any long-running counts that no client has asked about for a while.
         for (int i = 0; i < searches.size(); i++) {
@@ -0,0 +1,267 @@
+package nl.inl.blacklab.server.search;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import nl.inl.blacklab.exceptions.BlackLabRuntimeException;
+import nl.inl.blacklab.search.BlackLabIndex;
+import nl.inl.blacklab.search.results.SearchResult;
+import nl.inl.blacklab.searches.Search;
+
+/**
+ * Disk tier for {@link BlsCache}.
+ *
+ * When the cache needs to free up memory, it offers finished results to us
+ * before evicting them. Results we can store (see {@link ResultsFile}) are
+ * written to a file in our directory, so when the same search is requested
+ * again, its results can be read from that file instead of executing the
+ * search again.
+ *
+ * Files are kept until they haven't been used for a while, the index is
+ * closed, or we need room for other files. If a search is evicted from memory
+ * again, we reuse the existing file.
+ */
+class BlsCacheDisk {
+
+    private static final Logger logger = LogManager.getLogger(BlsCacheDisk.class);
+
+    /** Extension for our results files */
+    private static final String FILE_EXT = ".results";
+
+    /** A results file we've written */
+    private static class SpilledResults {
+
+        final File file;
+
+        final long sizeBytes;
+
+        long lastAccessTime;
+
+        SpilledResults(File file) {
+            this.file = file;
+            sizeBytes = file.length();
+            lastAccessTime = System.currentTimeMillis();
+        }
+    }
+
+    /** Where to write our files */
+    private final File dir;
+
+    /** Maximum total size of our files */
+    private final long maxSizeBytes;
+
+    /** Our files per search, least recently used first */
+    private final Map<Search<?>, SpilledResults> spilled = new LinkedHashMap<>(16, 0.75f, true);
+
+    /** Total size of our files */
+    private long sizeBytes = 0;
+
+    /** Number for the next file we write */
+    private long nextFileNumber = 0;
+
+    /**
+     * Incremented when we remove files for searches that may be being spilled,
+     * so files that were being written at that time are discarded
+     */
+    private long generation = 0;
+
+    /**
+     * Construct the disk tier.
+     *
+     * Deletes results files left over in the directory, as they refer to indexes as
+     * they were opened by a previous run.
+     *
+     * @param dir where to write our files
+     * @param maxSizeBytes maximum total size of our files
+     */
+    BlsCacheDisk(File dir, long maxSizeBytes) {
+        this.dir = dir;
+        this.maxSizeBytes = maxSizeBytes;
+        if (!dir.isDirectory() && !dir.mkdirs())
+            throw new BlackLabRuntimeException("Could not create cache spill directory " + dir);
+        File[] leftovers = dir.listFiles((d, name) -> name.endsWith(FILE_EXT));
+        if (leftovers != null) {
+            for (File file: leftovers)
+                delete(file);
+        }
+    }
+
+    /**
+     * Write the results of a search to disk, if we can.
+     *
+     * The file is written without holding our lock, so this can take a while
+     * without blocking {@link #contains(Search)} or {@link #load(Search)}. If
+     * {@link #clear()} or {@link #removeSearchesForIndex(BlackLabIndex)} is called
+     * meanwhile, the file is discarded.
+     *
+     * @param search the search
+     * @param result its (finished) results
+     * @return true if the results are now on disk
+     */
+    boolean spill(Search<?> search, SearchResult result) {
+        File file;
+        long generationAtStart;
+        synchronized (this) {
+            if (spilled.get(search) != null)
+                return true; // still have the file from the previous time
+            if (!ResultsFile.canWrite(result))
+                return false;
+            file = new File(dir, "search" + nextFileNumber + FILE_EXT);
+            nextFileNumber++;
+            generationAtStart = generation;
+        }
+        try {
+            ResultsFile.write(result, file);
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Could not write results of " + search + " to " + file, e);
+            delete(file);
+            return false;
+        }
+        SpilledResults results = new SpilledResults(file);
+        if (results.sizeBytes > maxSizeBytes || results.sizeBytes > Integer.MAX_VALUE) {
+            // Too large to keep or to memory-map in one piece
+            delete(file);
+            return false;
+        }
+        synchronized (this) {
+            if (generation != generationAtStart) {
+                // Files were removed while we were writing; our search may have been one of them
+                delete(file);
+                return false;
+            }
+            SpilledResults previous = spilled.put(search, results);
+            if (previous != null)
+                remove(previous);
+            sizeBytes += results.sizeBytes;
+            // (our new file is the most recently used one, so it won't be removed here)
+            Iterator<SpilledResults> it = spilled.values().iterator();
+            while (sizeBytes > maxSizeBytes && it.hasNext()) {
+                remove(it.next());
+                it.remove();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Do we have the results of this search on disk?
+     *
+     * @param search the search
+     * @return true if we do
+     */
+    synchronized boolean contains(Search<?> search) {
+        return spilled.containsKey(search);
+    }
+
+    /**
+     * Read the results of a search from disk.
+     *
+     * @param search the search
+     * @return the results, or null if we don't have them or they couldn't be read
+     */
+    SearchResult load(Search<?> search) {
+        File file;
+        synchronized (this) {
+            SpilledResults results = spilled.get(search);
+            if (results == null)
+                return null;
+            results.lastAccessTime = System.currentTimeMillis();
+            file = results.file;
+        }
+        try {
+            SearchResult result = ResultsFile.read(file, search.queryInfo());
+            logger.debug("Read results of " + search + " from " + file);
+            return result;
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Could not read results of " + search + " from " + file, e);
+            synchronized (this) {
+                SpilledResults results = spilled.get(search);
+                if (results != null && results.file.equals(file)) {
+                    spilled.remove(search);
+                    remove(results);
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Remove files that haven't been used for a while.
+     *
+     * @param maxUnusedMs remove files that haven't been used for longer than this (ms)
+     */
+    synchronized void removeUnused(long maxUnusedMs) {
+        long now = System.currentTimeMillis();
+        Iterator<SpilledResults> it = spilled.values().iterator();
+        while (it.hasNext()) {
+            SpilledResults results = it.next();
+            if (now - results.lastAccessTime > maxUnusedMs) {
+                remove(results);
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Remove files for searches in the specified index.
+     *
+     * @param index the index
+     */
+    synchronized void removeSearchesForIndex(BlackLabIndex index) {
+        generation++;
+        Iterator<Entry<Search<?>, SpilledResults>> it = spilled.entrySet().iterator();
+        while (it.hasNext()) {
+            Entry<Search<?>, SpilledResults> entry = it.next();
+            if (entry.getKey().queryInfo().index() == index) {
+                remove(entry.getValue());
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Remove all our files.
+     */
+    synchronized void clear() {
+        generation++;
+        for (SpilledResults results: spilled.values())
+            remove(results);
+        spilled.clear();
+    }
+
+    /**
+     * Get the number of searches we have results files for.
+     *
+     * @return number of searches
+     */
+    synchronized int size() {
+        return spilled.size();
+    }
+
+    /**
+     * Get the total size of our files.
+     *
+     * @return size in bytes
+     */
+    synchronized long sizeInBytes() {
+        return sizeBytes;
+    }
+
+    private void remove(SpilledResults results) {
+        sizeBytes -= results.sizeBytes;
+        delete(results.file);
+    }
+
+    private static void delete(File file) {
+        if (file.exists() && !file.delete())
+            logger.warn("Could not delete " + file);
+    }
+
+}
@@ -5,16 +5,20 @@ import java.io.StringWriter;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.logging.log4j.ThreadContext;
 
 import nl.inl.blacklab.exceptions.BlackLabRuntimeException;
 import nl.inl.blacklab.exceptions.InterruptedSearch;
+import nl.inl.blacklab.search.SearchExecutor;
+import nl.inl.blacklab.search.SearchExecutor.Priority;
 import nl.inl.blacklab.search.results.SearchResult;
 import nl.inl.blacklab.searches.Search;
 import nl.inl.blacklab.searches.SearchCacheEntry;
@@ -22,9 +26,6 @@ import nl.inl.blacklab.searches.SearchCount;
 
 public class BlsCacheEntry<T extends SearchResult> extends SearchCacheEntry<T> {
 
-    /** When waiting for the task to complete, poll how often? (ms) */
-    static final int POLLING_TIME_MS = 100;
-
     /** id for the next job started */
     private static Long nextEntryId = 0L;
 
@@ -47,6 +48,9 @@ public class BlsCacheEntry<T extends SearchResult> extends SearchCacheEntry<T> {
     /** Our search */
     private Search<T> search;
 
+    /** Supplies previously saved results for our search (or null if there are none), or null to always execute the search */
+    private Supplier<T> savedResult;
+
 
     // OUTCOMES
 
@@ -57,6 +61,12 @@ public class BlsCacheEntry<T extends SearchResult> extends SearchCacheEntry<T> {
      */
     private Future<?> future = null;
 
+    /**
+     * Completed when the search is finished or cancelled.
+     * Threads waiting for our result wait for this (instead of polling).
+     */
+    private final CompletableFuture<Void> finished = new CompletableFuture<>();
+
     /** Result of the search (set directly by thread) */
     private T result = null;
 
@@ -106,6 +116,20 @@ public class BlsCacheEntry<T extends SearchResult> extends SearchCacheEntry<T> {
         createTime = lastAccessTime = now();
     }
 
+    /**
+     * Construct a cache entry for a search whose results were saved earlier.
+     *
+     * When started, the entry gets the results from savedResult instead of
+     * executing the search, unless that returns null.
+     *
+     * @param search the search
+     * @param savedResult supplies the saved results (or null if they're unavailable)
+     */
+    public BlsCacheEntry(Search<T> search, Supplier<T> savedResult) {
+        this(search);
+        this.savedResult = savedResult;
+    }
+
     /**
      * Start performing the task.
      */
@@ -115,10 +139,16 @@ public class BlsCacheEntry<T extends SearchResult> extends SearchCacheEntry<T> {
             throw new RuntimeException("Search already started");
         started = true;
         final String requestId = ThreadContext.get("requestId");
-        future = search.queryInfo().index().blackLab().searchExecutorService().submit(() -> {
+        // Counting hits runs in the background; other searches are needed to respond to a request
+        Priority priority = search instanceof SearchCount ? Priority.BACKGROUND : Priority.INTERACTIVE;
+        future = searchExecutor().submitJob(() -> {
             ThreadContext.put("requestId", requestId);
             executeSearch();
-        });
+        }, priority);
+    }
+
+    private SearchExecutor searchExecutor() {
+        return search.queryInfo().index().blackLab().searchExecutorService();
     }
 
     /** Perform the requested search.
@@ -127,7 +157,8 @@ public class BlsCacheEntry<T extends SearchResult> extends SearchCacheEntry<T> {
      */
     public void executeSearch() {
         try {
-            result = search.executeInternal();
+            T saved = savedResult == null ? null : savedResult.get();
+            result = saved != null ? saved : search.executeInternal();
         } catch (Throwable e) {
 
             if (e instanceof InterruptedSearch) {
@@ -145,6 +176,7 @@ public class BlsCacheEntry<T extends SearchResult> extends SearchCacheEntry<T> {
             exceptionThrown = e;
         } finally {
             doneTime = now();
+            finished.complete(null);
         }
     }
 
@@ -187,7 +219,7 @@ public class BlsCacheEntry<T extends SearchResult> extends SearchCacheEntry<T> {
      */
     @Override
     public boolean isDone() {
-        return future != null && future.isDone() || cancelled;
+        return finished.isDone() || future != null && future.isDone() || cancelled;
     }
 
     /**
@@ -259,11 +291,18 @@ public class BlsCacheEntry<T extends SearchResult> extends SearchCacheEntry<T> {
 
     @Override
     public T get(long time, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
-        // Wait until result available
+        // If we're a search thread waiting for a search that hasn't been picked up by
+        // another thread yet, run it ourselves (so we can't run out of search threads)
+        Future<?> theFuture = future;
+        if (theFuture != null)
+            searchExecutor().runIfQueued(theFuture);
+
+        // Wait until result available (or search cancelled)
         long ms = unit.toMillis(time);
-        while (ms > 0 && !isDone() && !isCancelled()) {
-            Thread.sleep(POLLING_TIME_MS);
-            ms -= POLLING_TIME_MS;
+        try {
+            finished.get(ms, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            throw new TimeoutException("Result still not available after " + ms + "ms");
         }
         if (isCancelled()) {
             InterruptedSearch interruptedSearch = new InterruptedSearch("Search was cancelled");
@@ -272,8 +311,6 @@ public class BlsCacheEntry<T extends SearchResult> extends SearchCacheEntry<T> {
         }
         if (exceptionThrown != null)
             throw new ExecutionException(exceptionThrown);
-        if (!isDone())
-            throw new TimeoutException("Result still not available after " + ms + "ms");
         return result;
     }
 
@@ -305,7 +342,7 @@ public class BlsCacheEntry<T extends SearchResult> extends SearchCacheEntry<T> {
             // - the smaller, the worthier
 
             // Size score from 1-100; 1M per unit, so 100 corresponds to 100M or larger
-            int sizeScore = Math.max(1, Math.min(100, numberOfStoredHits() * BlsCache.SIZE_OF_HIT / 1000000));
+            int sizeScore = (int) Math.max(1, Math.min(100, estimatedSizeInBytes() / 1000000));
 
             // Run time score from 1-10000; 0.03s per unit, so 10000 corresponds to 5 minutes or longer
             long runTimeScore = Math.max(1, Math.min(10000, timeUserWaitedMs() * 10 / 300));
@@ -351,6 +388,7 @@ public class BlsCacheEntry<T extends SearchResult> extends SearchCacheEntry<T> {
             this.result = null;
 
             doneTime = now();
+            finished.complete(null);
         }
         return result;
     }
@@ -359,12 +397,32 @@ public class BlsCacheEntry<T extends SearchResult> extends SearchCacheEntry<T> {
         return exceptionThrown != null;
     }
 
+    /**
+     * Get our result, if the search finished successfully.
+     *
+     * @return the result, or null if the search isn't finished, was cancelled or threw an exception
+     */
+    public T finishedResult() {
+        return isDone() && !isCancelled() ? result : null;
+    }
+
     public int numberOfStoredHits() {
         if (result == null)
             return 0;
         return result.numberOfResultObjects();
     }
 
+    /**
+     * Estimate how much memory our result takes.
+     *
+     * @return estimated size in bytes, or 0 if we don't have a result yet
+     */
+    public long estimatedSizeInBytes() {
+        if (result == null)
+            return 0;
+        return result.estimatedSizeInBytes();
+    }
+
     public String status() {
         if (!wasStarted())
             return "queued";
@@ -0,0 +1,282 @@
+package nl.inl.blacklab.server.search;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.collections.impl.list.mutable.primitive.IntArrayList;
+
+import nl.inl.blacklab.resultproperty.HitProperty;
+import nl.inl.blacklab.resultproperty.PropertyValue;
+import nl.inl.blacklab.resultproperty.PropertyValueDoc;
+import nl.inl.blacklab.search.results.CapturedGroups;
+import nl.inl.blacklab.search.results.CapturedGroupsImpl;
+import nl.inl.blacklab.search.results.DocResult;
+import nl.inl.blacklab.search.results.DocResults;
+import nl.inl.blacklab.search.results.HitGroup;
+import nl.inl.blacklab.search.results.HitGroups;
+import nl.inl.blacklab.search.results.Hits;
+import nl.inl.blacklab.search.results.Hits.HitsArrays;
+import nl.inl.blacklab.search.results.MaxStats;
+import nl.inl.blacklab.search.results.QueryInfo;
+import nl.inl.blacklab.search.results.ResultsStats;
+import nl.inl.blacklab.search.results.ResultsStatsStatic;
+import nl.inl.blacklab.search.results.SearchResult;
+
+/**
+ * Binary file format for finished search results, so {@link BlsCacheDisk} can
+ * write them to disk and read them back later.
+ *
+ * Supports complete (i.e. not windowed, sampled or still being read) Hits,
+ * HitGroups and DocResults. Hits are stored as columns of ints (docs, starts,
+ * ends, and starts and ends per captured group) that are read in bulk from a
+ * memory-mapped file. Group identities and criteria are stored in their
+ * serialized form, so they can only be read back for the same index.
+ */
+class ResultsFile {
+
+    /** Start of each results file ("BLSR") */
+    private static final int MAGIC = 0x424C5352;
+
+    private static final int VERSION = 1;
+
+    private static final byte TYPE_HITS = 1;
+
+    private static final byte TYPE_HIT_GROUPS = 2;
+
+    private static final byte TYPE_DOC_RESULTS = 3;
+
+    private ResultsFile() {
+    }
+
+    /**
+     * Can we write this result to a file?
+     *
+     * @param result search result
+     * @return true if the result is of a supported type and complete
+     */
+    static boolean canWrite(SearchResult result) {
+        if (result instanceof Hits) {
+            Hits hits = (Hits) result;
+            return hits.doneProcessingAndCounting() && hits.windowStats() == null && hits.sampleParameters() == null;
+        }
+        if (result instanceof HitGroups) {
+            HitGroups groups = (HitGroups) result;
+            return groups.groupCriteria() != null && groups.windowStats() == null && groups.sampleParameters() == null;
+        }
+        if (result instanceof DocResults) {
+            // (DocResults created from a Query re-execute it to determine subcorpus size; we can't store that)
+            DocResults docs = (DocResults) result;
+            return docs.doneProcessingAndCounting() && docs.query() == null && docs.windowStats() == null
+                    && docs.sampleParameters() == null;
+        }
+        return false;
+    }
+
+    /**
+     * Write a result to a file.
+     *
+     * @param result result to write (see {@link #canWrite(SearchResult)})
+     * @param file file to write
+     * @throws IOException on write error
+     */
+    static void write(SearchResult result, File file) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            if (result instanceof Hits) {
+                out.writeByte(TYPE_HITS);
+                writeHits(out, (Hits) result);
+            } else if (result instanceof HitGroups) {
+                HitGroups groups = (HitGroups) result;
+                out.writeByte(TYPE_HIT_GROUPS);
+                writeString(out, groups.groupCriteria().serialize());
+                writeStats(out, groups.hitsStats());
+                writeStats(out, groups.docsStats());
+                out.writeInt(groups.size());
+                for (HitGroup group: groups) {
+                    writeString(out, group.identity().serialize());
+                    out.writeInt(group.size());
+                    writeHits(out, group.storedResults());
+                }
+            } else if (result instanceof DocResults) {
+                DocResults docs = (DocResults) result;
+                out.writeByte(TYPE_DOC_RESULTS);
+                out.writeInt(docs.size());
+                for (DocResult doc: docs) {
+                    out.writeInt(doc.identity().id());
+                    out.writeInt(doc.size());
+                    writeHits(out, doc.storedResults());
+                }
+            } else {
+                throw new IllegalArgumentException("Cannot write results of type " + result.getClass().getName());
+            }
+        }
+    }
+
+    private static void writeHits(DataOutputStream out, Hits hits) throws IOException {
+        out.writeInt(hits.size());
+        out.writeInt(hits.hitsStats().countedTotal());
+        out.writeInt(hits.docsStats().processedTotal());
+        out.writeInt(hits.docsStats().countedTotal());
+        writeMaxStats(out, hits.maxStats());
+        HitsArrays hitsArrays = hits.hitsArrays();
+        writeInts(out, hitsArrays.docs());
+        writeInts(out, hitsArrays.starts());
+        writeInts(out, hitsArrays.ends());
+
+        CapturedGroups capturedGroups = hits.capturedGroups();
+        if (capturedGroups == null) {
+            out.writeInt(-1);
+            return;
+        }
+        List<String> names = capturedGroups.names();
+        out.writeInt(names.size());
+        for (String name: names)
+            writeString(out, name);
+        for (int group = 0; group < names.size(); group++) {
+            for (int i = 0; i < hits.size(); i++)
+                out.writeInt(capturedGroups.start(i, group));
+            for (int i = 0; i < hits.size(); i++)
+                out.writeInt(capturedGroups.end(i, group));
+        }
+    }
+
+    private static void writeInts(DataOutputStream out, IntArrayList values) throws IOException {
+        for (int i = 0; i < values.size(); i++)
+            out.writeInt(values.get(i));
+    }
+
+    private static void writeStats(DataOutputStream out, ResultsStats stats) throws IOException {
+        out.writeInt(stats.processedTotal());
+        out.writeInt(stats.countedTotal());
+        writeMaxStats(out, stats.maxStats());
+    }
+
+    private static void writeMaxStats(DataOutputStream out, MaxStats maxStats) throws IOException {
+        out.writeBoolean(maxStats.hitsProcessedExceededMaximum());
+        out.writeBoolean(maxStats.hitsCountedExceededMaximum());
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        // (not writeUTF, which is limited to 64K)
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Read a result from a file.
+     *
+     * @param file file to read
+     * @param queryInfo query info for the result (must refer to the index the
+     *            result was written for)
+     * @return the result
+     * @throws IOException if the file could not be read or is not a valid results file
+     */
+    static SearchResult read(File file, QueryInfo queryInfo) throws IOException {
+        ByteBuffer buf;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            buf = channel.map(MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (buf.getInt() != MAGIC || buf.getInt() != VERSION)
+            throw new IOException("Not a results file, or wrong version: " + file);
+        byte type = buf.get();
+        switch (type) {
+        case TYPE_HITS:
+            return readHits(buf, queryInfo);
+        case TYPE_HIT_GROUPS:
+            HitProperty groupCriteria = HitProperty.deserialize(queryInfo.index(), queryInfo.field(), readString(buf));
+            if (groupCriteria == null)
+                throw new IOException("Could not deserialize group criteria in " + file);
+            ResultsStats hitsStats = readStats(buf);
+            ResultsStats docsStats = readStats(buf);
+            int numberOfGroups = buf.getInt();
+            List<HitGroup> groups = new ArrayList<>(numberOfGroups);
+            for (int i = 0; i < numberOfGroups; i++) {
+                PropertyValue identity = PropertyValue.deserialize(queryInfo.index(), queryInfo.field(), readString(buf));
+                if (identity == null)
+                    throw new IOException("Could not deserialize group identity in " + file);
+                int size = buf.getInt();
+                groups.add(HitGroup.fromHits(identity, readHits(buf, queryInfo), size));
+            }
+            return HitGroups.fromList(queryInfo, groups, groupCriteria, null, null, hitsStats, docsStats);
+        case TYPE_DOC_RESULTS:
+            int numberOfDocs = buf.getInt();
+            List<DocResult> docs = new ArrayList<>(numberOfDocs);
+            for (int i = 0; i < numberOfDocs; i++) {
+                PropertyValueDoc doc = new PropertyValueDoc(queryInfo.index().doc(buf.getInt()));
+                int size = buf.getInt();
+                docs.add(DocResult.fromHits(doc, readHits(buf, queryInfo), size));
+            }
+            return DocResults.fromList(queryInfo, docs, null, null);
+        default:
+            throw new IOException("Unknown results type " + type + " in " + file);
+        }
+    }
+
+    private static Hits readHits(ByteBuffer buf, QueryInfo queryInfo) {
+        int size = buf.getInt();
+        int hitsCounted = buf.getInt();
+        int docsRetrieved = buf.getInt();
+        int docsCounted = buf.getInt();
+        MaxStats maxStats = readMaxStats(buf);
+        int[] docs = readInts(buf, size);
+        int[] starts = readInts(buf, size);
+        int[] ends = readInts(buf, size);
+        HitsArrays hitsArrays = new HitsArrays(IntArrayList.newListWith(docs), IntArrayList.newListWith(starts),
+                IntArrayList.newListWith(ends));
+
+        CapturedGroupsImpl capturedGroups = null;
+        int numberOfGroups = buf.getInt();
+        if (numberOfGroups >= 0) {
+            List<String> names = new ArrayList<>(numberOfGroups);
+            for (int group = 0; group < numberOfGroups; group++)
+                names.add(readString(buf));
+            int[][] groupStarts = new int[numberOfGroups][];
+            int[][] groupEnds = new int[numberOfGroups][];
+            for (int group = 0; group < numberOfGroups; group++) {
+                groupStarts[group] = readInts(buf, size);
+                groupEnds[group] = readInts(buf, size);
+            }
+            capturedGroups = new CapturedGroupsImpl(names, groupStarts, groupEnds);
+        }
+        return Hits.fromList(queryInfo, hitsArrays, null, null, hitsCounted, docsRetrieved, docsCounted,
+                capturedGroups, maxStats);
+    }
+
+    private static int[] readInts(ByteBuffer buf, int n) {
+        int[] values = new int[n];
+        buf.asIntBuffer().get(values);
+        buf.position(buf.position() + n * Integer.BYTES);
+        return values;
+    }
+
+    private static ResultsStats readStats(ByteBuffer buf) {
+        int processed = buf.getInt();
+        int counted = buf.getInt();
+        return new ResultsStatsStatic(processed, counted, readMaxStats(buf));
+    }
+
+    private static MaxStats readMaxStats(ByteBuffer buf) {
+        boolean processedExceeded = buf.get() != 0;
+        boolean countedExceeded = buf.get() != 0;
+        return new MaxStats(processedExceeded, countedExceeded);
+    }
+
+    private static String readString(ByteBuffer buf) {
+        byte[] bytes = new byte[buf.getInt()];
+        buf.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+}
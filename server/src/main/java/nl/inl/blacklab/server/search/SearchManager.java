@@ -3,6 +3,8 @@ package nl.inl.blacklab.server.search;
 import java.lang.reflect.Constructor;
 import java.util.concurrent.ExecutorService;
 
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Metrics;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -10,6 +12,7 @@ import org.apache.logging.log4j.Logger;
 import nl.inl.blacklab.exceptions.BlackLabRuntimeException;
 import nl.inl.blacklab.search.BlackLab;
 import nl.inl.blacklab.search.BlackLabEngine;
+import nl.inl.blacklab.search.PageCacheWarmer;
 import nl.inl.blacklab.searches.SearchCache;
 import nl.inl.blacklab.server.config.BLSConfig;
 import nl.inl.blacklab.server.exceptions.ConfigurationException;
@@ -44,6 +47,14 @@ public class SearchManager {
         int numberOfSearchThreads = config.getPerformance().getMaxConcurrentSearches();
         int maxThreadsPerSearch = config.getPerformance().getMaxThreadsPerSearch();
         blackLab = BlackLab.createEngine(numberOfSearchThreads, maxThreadsPerSearch);
+        blackLab.setInitializationThreads(config.getPerformance().getInitializationThreads());
+        registerPageCacheMetrics(blackLab.pageCacheWarmer());
+        if (config.getPerformance().isUseVirtualThreads()) {
+            if (blackLab.searchExecutorService().setUseVirtualThreads(true))
+                logger.info("Running search jobs on virtual threads");
+            else
+                logger.warn("useVirtualThreads is enabled, but this JVM doesn't support virtual threads; using regular search threads");
+        }
 
         // Create the cache
         String cacheClass = config.getCache().getImplementation();
@@ -56,6 +67,25 @@ public class SearchManager {
         authSystem = new AuthManager(config.getAuthentication());
     }
 
+    /**
+     * Expose page cache warm-up statistics through the metrics registry.
+     *
+     * @param warmer the page cache warmer
+     */
+    private static void registerPageCacheMetrics(PageCacheWarmer warmer) {
+        Gauge.builder("blacklab.pagecache.warmup.indexes", warmer, PageCacheWarmer::numberOfIndexes)
+                .description("Number of indexes whose files are kept in the page cache")
+                .register(Metrics.globalRegistry);
+        Gauge.builder("blacklab.pagecache.warmup.targeted", warmer, PageCacheWarmer::bytesTargeted)
+                .description("Size of the index files kept in the page cache")
+                .baseUnit("bytes")
+                .register(Metrics.globalRegistry);
+        Gauge.builder("blacklab.pagecache.warmup.resident", warmer, PageCacheWarmer::residentBytes)
+                .description("Estimated size of the warmed index files that is currently in the page cache")
+                .baseUnit("bytes")
+                .register(Metrics.globalRegistry);
+    }
+
     /**
      * Clean up resources.
      *
@@ -0,0 +1,98 @@
+package nl.inl.blacklab.server.util;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+
+/**
+ * Buffers a response until it gets large, then streams the rest to the client.
+ *
+ * Responses are normally buffered completely, so we can still send an error
+ * response if something goes wrong while producing them. Very large responses
+ * (e.g. CSV exports) would use too much memory that way. Once the buffer is
+ * full, we commit the response (send the headers and what we have so far) and
+ * write the rest directly to the client. After that, errors can no longer be
+ * reported to the client.
+ *
+ * Errors writing to the client (usually because the client cancelled the
+ * request) are thrown as {@link UncheckedIOException}, so they abort the
+ * request handler even when writing through a PrintWriter (which swallows
+ * regular IOExceptions).
+ */
+public class StreamingResponseWriter extends Writer {
+
+    /** Commits the response: writes the headers and returns the writer for the response body. */
+    public interface Committer {
+        Writer commit() throws IOException;
+    }
+
+    /** Where we buffer the response until it gets too large */
+    private final StringWriter buffer;
+
+    /** How many characters to buffer before we commit the response */
+    private final int maxBufferedChars;
+
+    /** Commits the response */
+    private final Committer committer;
+
+    /** Writer for the response body, or null if not committed yet */
+    private Writer out = null;
+
+    /**
+     * Create the writer.
+     *
+     * @param buffer where to buffer the response until it gets too large
+     * @param maxBufferedChars how many characters to buffer before we commit the response
+     * @param committer commits the response
+     */
+    public StreamingResponseWriter(StringWriter buffer, int maxBufferedChars, Committer committer) {
+        this.buffer = buffer;
+        this.maxBufferedChars = maxBufferedChars;
+        this.committer = committer;
+    }
+
+    /**
+     * Have we committed the response?
+     *
+     * If so, the buffer is no longer used and errors can no longer be sent to the client.
+     *
+     * @return true if we have committed the response
+     */
+    public boolean isCommitted() {
+        return out != null;
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) {
+        try {
+            if (out == null) {
+                buffer.write(cbuf, off, len);
+                if (buffer.getBuffer().length() > maxBufferedChars) {
+                    out = committer.commit();
+                    out.write(buffer.toString());
+                    buffer.getBuffer().setLength(0);
+                }
+            } else {
+                out.write(cbuf, off, len);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void flush() {
+        try {
+            if (out != null)
+                out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        flush();
+    }
+}
@@ -0,0 +1,167 @@
+package nl.inl.blacklab.server.search;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Objects;
+
+import org.eclipse.collections.impl.list.mutable.primitive.IntArrayList;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import nl.inl.blacklab.mocks.MockBlackLabIndex;
+import nl.inl.blacklab.search.results.Hits;
+import nl.inl.blacklab.search.results.Hits.HitsArrays;
+import nl.inl.blacklab.search.results.MaxStats;
+import nl.inl.blacklab.search.results.QueryInfo;
+import nl.inl.blacklab.searches.AbstractSearch;
+
+public class TestBlsCacheDisk {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final QueryInfo queryInfo = QueryInfo.create(new MockBlackLabIndex());
+
+    /** Size of the file for the results of one of our searches */
+    private long fileSize;
+
+    /** A search that returns fixed hits, identified by its name */
+    private class TestSearch extends AbstractSearch<Hits> {
+
+        private final String name;
+
+        private int timesExecuted = 0;
+
+        TestSearch(String name) {
+            super(queryInfo);
+            this.name = name;
+        }
+
+        @Override
+        public Hits executeInternal() {
+            timesExecuted++;
+            return hits();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return super.equals(obj) && name.equals(((TestSearch) obj).name);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(super.hashCode(), name);
+        }
+
+        @Override
+        public String toString() {
+            return toString("test", name);
+        }
+    }
+
+    private Hits hits() {
+        HitsArrays hitsArrays = new HitsArrays(IntArrayList.newListWith(1, 1, 3, 7), IntArrayList.newListWith(2, 5, 0, 4),
+                IntArrayList.newListWith(4, 6, 3, 5));
+        return Hits.fromList(queryInfo, hitsArrays, null, null, 4, 3, 3, null, new MaxStats(false, false));
+    }
+
+    @Before
+    public void determineFileSize() throws IOException {
+        BlsCacheDisk disk = new BlsCacheDisk(folder.newFolder(), Long.MAX_VALUE);
+        Assert.assertTrue(disk.spill(new TestSearch("size"), hits()));
+        fileSize = disk.sizeInBytes();
+        Assert.assertTrue(fileSize > 0);
+    }
+
+    @Test
+    public void testSpillAndLoad() throws IOException {
+        BlsCacheDisk disk = new BlsCacheDisk(folder.newFolder(), Long.MAX_VALUE);
+        TestSearch search = new TestSearch("a");
+        Assert.assertNull(disk.load(search));
+        Assert.assertTrue(disk.spill(search, hits()));
+        Assert.assertTrue(disk.contains(new TestSearch("a")));
+        Hits read = (Hits) disk.load(new TestSearch("a"));
+        Hits expected = hits();
+        Assert.assertEquals(expected.size(), read.size());
+        for (int i = 0; i < expected.size(); i++)
+            Assert.assertEquals(expected.get(i), read.get(i));
+    }
+
+    @Test
+    public void testEvictLeastRecentlyUsed() throws IOException {
+        BlsCacheDisk disk = new BlsCacheDisk(folder.newFolder(), fileSize * 2 + fileSize / 2);
+        TestSearch a = new TestSearch("a"), b = new TestSearch("b"), c = new TestSearch("c");
+        Assert.assertTrue(disk.spill(a, hits()));
+        Assert.assertTrue(disk.spill(b, hits()));
+        Assert.assertNotNull(disk.load(a)); // a is now used more recently than b
+        Assert.assertTrue(disk.spill(c, hits()));
+        Assert.assertTrue(disk.contains(a));
+        Assert.assertFalse(disk.contains(b));
+        Assert.assertTrue(disk.contains(c));
+        Assert.assertEquals(2, disk.size());
+        Assert.assertEquals(fileSize * 2, disk.sizeInBytes());
+    }
+
+    @Test
+    public void testRejectTooLarge() throws IOException {
+        File dir = folder.newFolder();
+        BlsCacheDisk disk = new BlsCacheDisk(dir, fileSize - 1);
+        Assert.assertFalse(disk.spill(new TestSearch("a"), hits()));
+        Assert.assertFalse(disk.contains(new TestSearch("a")));
+        Assert.assertEquals(0, disk.sizeInBytes());
+        Assert.assertEquals(0, dir.listFiles().length);
+    }
+
+    @Test
+    public void testSpillAgainReusesFile() throws IOException {
+        File dir = folder.newFolder();
+        BlsCacheDisk disk = new BlsCacheDisk(dir, Long.MAX_VALUE);
+        Assert.assertTrue(disk.spill(new TestSearch("a"), hits()));
+        File[] files = dir.listFiles();
+        Assert.assertEquals(1, files.length);
+        long modified = files[0].lastModified();
+        Assert.assertTrue(disk.spill(new TestSearch("a"), hits()));
+        Assert.assertArrayEquals(files, dir.listFiles());
+        Assert.assertEquals(modified, files[0].lastModified());
+        Assert.assertEquals(1, disk.size());
+        Assert.assertEquals(fileSize, disk.sizeInBytes());
+    }
+
+    @Test
+    public void testCorruptFile() throws IOException {
+        File dir = folder.newFolder();
+        BlsCacheDisk disk = new BlsCacheDisk(dir, Long.MAX_VALUE);
+        Assert.assertTrue(disk.spill(new TestSearch("a"), hits()));
+        File file = dir.listFiles()[0];
+        Files.write(file.toPath(), "not a results file".getBytes(StandardCharsets.UTF_8));
+        Assert.assertNull(disk.load(new TestSearch("a")));
+        Assert.assertFalse(disk.contains(new TestSearch("a")));
+        Assert.assertEquals(0, disk.size());
+        Assert.assertEquals(0, disk.sizeInBytes());
+        Assert.assertFalse(file.exists());
+    }
+
+    @Test
+    public void testSavedResultUnavailable() throws Exception {
+        // If the saved results can't be read, the entry executes the search instead
+        TestSearch search = new TestSearch("a");
+        BlsCacheEntry<Hits> entry = new BlsCacheEntry<>(search, () -> null);
+        entry.executeSearch();
+        Assert.assertEquals(1, search.timesExecuted);
+        Assert.assertEquals(4, entry.get().size());
+
+        // If they can, it doesn't
+        TestSearch search2 = new TestSearch("b");
+        Hits saved = hits();
+        entry = new BlsCacheEntry<>(search2, () -> saved);
+        entry.executeSearch();
+        Assert.assertEquals(0, search2.timesExecuted);
+        Assert.assertSame(saved, entry.get());
+    }
+
+}
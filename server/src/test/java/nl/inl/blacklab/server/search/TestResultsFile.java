@@ -0,0 +1,121 @@
+package nl.inl.blacklab.server.search;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import org.eclipse.collections.impl.list.mutable.primitive.IntArrayList;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import nl.inl.blacklab.mocks.MockBlackLabIndex;
+import nl.inl.blacklab.resultproperty.HitPropertyDocumentId;
+import nl.inl.blacklab.resultproperty.PropertyValueInt;
+import nl.inl.blacklab.search.Span;
+import nl.inl.blacklab.search.results.CapturedGroupsImpl;
+import nl.inl.blacklab.search.results.DocResult;
+import nl.inl.blacklab.search.results.DocResults;
+import nl.inl.blacklab.search.results.HitGroup;
+import nl.inl.blacklab.search.results.HitGroups;
+import nl.inl.blacklab.search.results.Hits;
+import nl.inl.blacklab.search.results.Hits.HitsArrays;
+import nl.inl.blacklab.search.results.MaxStats;
+import nl.inl.blacklab.search.results.QueryInfo;
+import nl.inl.blacklab.search.results.ResultsStatsStatic;
+import nl.inl.blacklab.search.results.SearchResult;
+
+public class TestResultsFile {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final QueryInfo queryInfo = QueryInfo.create(new MockBlackLabIndex());
+
+    private Hits hits() {
+        HitsArrays hitsArrays = new HitsArrays(IntArrayList.newListWith(1, 1, 3, 7), IntArrayList.newListWith(2, 5, 0, 4),
+                IntArrayList.newListWith(4, 6, 3, 5));
+        CapturedGroupsImpl capturedGroups = new CapturedGroupsImpl(Arrays.asList("A", "B"));
+        capturedGroups.add(new Span[] { new Span(2, 3), null });
+        capturedGroups.add(new Span[] { new Span(5, 6), new Span(5, 5) });
+        capturedGroups.add(new Span[] { null, null });
+        capturedGroups.add(new Span[] { new Span(4, 5), new Span(4, 4) });
+        return Hits.fromList(queryInfo, hitsArrays, null, null, 10, 3, 5, capturedGroups, new MaxStats(true, false));
+    }
+
+    private static void assertHitsEqual(Hits expected, Hits actual) {
+        Assert.assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            Assert.assertEquals(expected.get(i), actual.get(i));
+            for (int group = 0; expected.capturedGroups() != null && group < expected.capturedGroups().names().size(); group++) {
+                Assert.assertEquals(expected.capturedGroups().start(i, group), actual.capturedGroups().start(i, group));
+                Assert.assertEquals(expected.capturedGroups().end(i, group), actual.capturedGroups().end(i, group));
+            }
+        }
+        Assert.assertEquals(expected.hitsStats().countedTotal(), actual.hitsStats().countedTotal());
+        Assert.assertEquals(expected.docsStats().processedTotal(), actual.docsStats().processedTotal());
+        Assert.assertEquals(expected.docsStats().countedTotal(), actual.docsStats().countedTotal());
+        Assert.assertEquals(expected.maxStats(), actual.maxStats());
+    }
+
+    private File writeAndCheck(SearchResult result) throws IOException {
+        File file = folder.newFile();
+        Assert.assertTrue(ResultsFile.canWrite(result));
+        ResultsFile.write(result, file);
+        return file;
+    }
+
+    @Test
+    public void testHits() throws IOException {
+        Hits hits = hits();
+        File file = writeAndCheck(hits);
+        Hits read = (Hits) ResultsFile.read(file, queryInfo);
+        Assert.assertEquals(Arrays.asList("A", "B"), read.capturedGroups().names());
+        assertHitsEqual(hits, read);
+    }
+
+    @Test
+    public void testHitsWindowNotWritten() {
+        Assert.assertFalse(ResultsFile.canWrite(hits().window(0, 2)));
+    }
+
+    @Test
+    public void testHitGroups() throws IOException {
+        Hits hits = hits();
+        List<HitGroup> groupList = Arrays.asList(
+                HitGroup.fromHits(new PropertyValueInt(1), hits.window(0, 2), 2),
+                HitGroup.fromHits(new PropertyValueInt(3), Hits.immutableEmptyList(queryInfo), 5));
+        HitGroups groups = HitGroups.fromList(queryInfo, groupList, new HitPropertyDocumentId(), null, null,
+                new ResultsStatsStatic(7, 7, MaxStats.NOT_EXCEEDED), new ResultsStatsStatic(2, 2, MaxStats.NOT_EXCEEDED));
+        File file = writeAndCheck(groups);
+        HitGroups read = (HitGroups) ResultsFile.read(file, queryInfo);
+        Assert.assertEquals(groups.groupCriteria().serialize(), read.groupCriteria().serialize());
+        Assert.assertEquals(7, read.hitsStats().countedTotal());
+        Assert.assertEquals(2, read.docsStats().countedTotal());
+        Assert.assertEquals(2, read.size());
+        for (int i = 0; i < groups.size(); i++) {
+            Assert.assertEquals(groups.get(i).identity(), read.get(i).identity());
+            Assert.assertEquals(groups.get(i).size(), read.get(i).size());
+            assertHitsEqual(groups.get(i).storedResults(), read.get(i).storedResults());
+        }
+    }
+
+    @Test
+    public void testDocResults() throws IOException {
+        Hits hits = hits();
+        DocResults docs = DocResults.fromHits(queryInfo, hits, -1);
+        Assert.assertEquals(3, docs.size()); // (reads all hits, so docs is complete)
+        File file = writeAndCheck(docs);
+        DocResults read = (DocResults) ResultsFile.read(file, queryInfo);
+        Assert.assertEquals(docs.size(), read.size());
+        for (int i = 0; i < docs.size(); i++) {
+            DocResult doc = docs.get(i);
+            Assert.assertEquals(doc.identity(), read.get(i).identity());
+            Assert.assertEquals(doc.size(), read.get(i).size());
+            Assert.assertEquals(doc.storedResults().size(), read.get(i).storedResults().size());
+        }
+    }
+
+}
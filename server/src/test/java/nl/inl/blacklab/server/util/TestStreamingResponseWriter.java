@@ -0,0 +1,93 @@
+package nl.inl.blacklab.server.util;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestStreamingResponseWriter {
+
+    /** Number of times the response was committed */
+    private int commits = 0;
+
+    /** What was written to the client after committing */
+    private final StringWriter client = new StringWriter();
+
+    private StreamingResponseWriter writer(StringWriter buffer, int maxBufferedChars) {
+        return new StreamingResponseWriter(buffer, maxBufferedChars, () -> {
+            commits++;
+            return client;
+        });
+    }
+
+    @Test
+    public void testBufferBelowThreshold() throws IOException {
+        StringWriter buffer = new StringWriter();
+        StreamingResponseWriter writer = writer(buffer, 10);
+        writer.write("12345");
+        writer.write("67890");
+        writer.flush();
+        Assert.assertFalse(writer.isCommitted());
+        Assert.assertEquals(0, commits);
+        Assert.assertEquals("1234567890", buffer.toString());
+        Assert.assertEquals("", client.toString());
+    }
+
+    @Test
+    public void testCommitAtThreshold() throws IOException {
+        StringWriter buffer = new StringWriter();
+        StreamingResponseWriter writer = writer(buffer, 10);
+        writer.write("1234567890");
+        writer.write("ab");
+        Assert.assertTrue(writer.isCommitted());
+        Assert.assertEquals(1, commits);
+        Assert.assertEquals("1234567890ab", client.toString());
+        Assert.assertEquals("", buffer.toString());
+
+        writer.write("cd");
+        writer.write("efghijklmnop");
+        writer.close();
+        Assert.assertEquals(1, commits);
+        Assert.assertEquals("1234567890abcdefghijklmnop", client.toString());
+        Assert.assertEquals("", buffer.toString());
+    }
+
+    @Test
+    public void testClientErrorIsUnchecked() throws IOException {
+        Writer failing = new Writer() {
+            @Override
+            public void write(char[] cbuf, int off, int len) throws IOException {
+                throw new IOException("client cancelled");
+            }
+
+            @Override
+            public void flush() throws IOException {
+                throw new IOException("client cancelled");
+            }
+
+            @Override
+            public void close() {
+                // nothing to close
+            }
+        };
+        StreamingResponseWriter writer = new StreamingResponseWriter(new StringWriter(), 4, () -> failing);
+        writer.write("1234");
+        try {
+            writer.write("5");
+            Assert.fail("Expected UncheckedIOException");
+        } catch (UncheckedIOException e) {
+            Assert.assertEquals("client cancelled", e.getCause().getMessage());
+        }
+        Assert.assertTrue(writer.isCommitted());
+        try {
+            writer.flush();
+            Assert.fail("Expected UncheckedIOException");
+        } catch (UncheckedIOException e) {
+            Assert.assertEquals("client cancelled", e.getCause().getMessage());
+        }
+    }
+
+}
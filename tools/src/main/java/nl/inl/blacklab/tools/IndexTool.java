@@ -21,6 +21,7 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.Reader;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
@@ -30,9 +31,12 @@ import java.util.Properties;
 import java.util.Set;
 import java.util.TreeMap;
 
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.text.WordUtils;
 import org.apache.lucene.queryparser.classic.ParseException;
 
+import nl.inl.blacklab.contentstore.BlockCodec;
+import nl.inl.blacklab.contentstore.ContentStoreFixedBlockWriter;
 import nl.inl.blacklab.exceptions.BlackLabRuntimeException;
 import nl.inl.blacklab.exceptions.DocumentFormatNotFound;
 import nl.inl.blacklab.exceptions.ErrorOpeningIndex;
@@ -70,9 +74,10 @@ public class IndexTool {
         String docFormat = null;
         boolean createNewIndex = false;
         String command = "";
-        Set<String> commands = new HashSet<>(Arrays.asList("add", "create", "delete"));
+        Set<String> commands = new HashSet<>(Arrays.asList("add", "create", "delete", "convert-cs"));
         boolean addingFiles = true;
         String deleteQuery = null;
+        String codecName = null;
         int numberOfThreadsToUse = BlackLab.config().getIndexing().getNumberOfThreads();
         List<File> linkedFileDirs = new ArrayList<>();
         for (int i = 0; i < args.length; i++) {
@@ -187,6 +192,8 @@ public class IndexTool {
                     docFormat = arg;
                 } else if (command.equals("delete") && deleteQuery == null) {
                     deleteQuery = arg;
+                } else if (command.equals("convert-cs") && codecName == null) {
+                    codecName = arg;
                 } else {
                     System.err.println("Too many arguments!");
                     usage();
@@ -212,6 +219,10 @@ public class IndexTool {
             commandDelete(indexDir, deleteQuery);
             return;
         }
+        if (command.equals("convert-cs")) {
+            commandConvertContentStores(indexDir, codecName);
+            return;
+        }
         if (command.equals("create"))
             createNewIndex = true;
 
@@ -351,6 +362,44 @@ public class IndexTool {
         }
     }
 
+    private static void commandConvertContentStores(File indexDir, String codecName) throws ErrorOpeningIndex {
+        if (codecName == null) {
+            System.err.println("No codec given.");
+            usage();
+            return;
+        }
+        BlockCodec codec;
+        try {
+            codec = BlockCodec.fromName(codecName);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            usage();
+            return;
+        }
+        File[] contentStoreDirs = indexDir.listFiles(f -> f.isDirectory() && f.getName().startsWith("cs_"));
+        if (contentStoreDirs == null || contentStoreDirs.length == 0) {
+            System.err.println("No content stores found in " + indexDir);
+            return;
+        }
+        try {
+            for (File dir: contentStoreDirs) {
+                // Write the converted content store next to the original, then swap them
+                System.out.println("Converting " + dir + " to codec " + codec + "...");
+                File convertedDir = new File(indexDir, dir.getName() + ".converting");
+                File oldDir = new File(indexDir, dir.getName() + ".old");
+                if (convertedDir.exists())
+                    FileUtils.deleteDirectory(convertedDir);
+                ContentStoreFixedBlockWriter.convert(dir, convertedDir, codec);
+                Files.move(dir.toPath(), oldDir.toPath());
+                Files.move(convertedDir.toPath(), dir.toPath());
+                FileUtils.deleteDirectory(oldDir);
+            }
+        } catch (IOException e) {
+            throw BlackLabRuntimeException.wrap(e);
+        }
+        System.out.println("Done.");
+    }
+
     private static void usage() {
         System.err.flush();
         System.out.flush();
@@ -358,6 +407,9 @@ public class IndexTool {
                 .println("Usage:\n"
                         + "  IndexTool {add|create} [options] <indexdir> <inputdir> <format>\n"
                         + "  IndexTool delete <indexdir> <filterQuery>\n"
+                        + "  IndexTool convert-cs <indexdir> <codec>\n"
+                        + "      (convert content stores to use codec deflate, lz4 or zstd;\n"
+                        + "       make sure the index is not in use while converting)\n"
                         + "\n"
                         + "Options:\n"
                         + "  --maxdocs <n>          Stop after indexing <n> documents\n"
@@ -1542,6 +1542,7 @@ public class QueryTool {
         List<HitToShow> toShow = new ArrayList<>();
         int leftContextMaxSize = 10; // number of characters to reserve on screen for left context
         Concordances concordances = window.concordances(contextSize, concType);
+        int hitIndex = 0;
         for (Hit hit : window) {
             Concordance conc = concordances.get(hit);
 
@@ -1553,10 +1554,11 @@ public class QueryTool {
 
             Map<String, Span> capturedGroups = null;
             if (window.hasCapturedGroups())
-                capturedGroups = window.capturedGroups().getMap(hit);
+                capturedGroups = window.capturedGroups().getMap(hitIndex);
             toShow.add(new HitToShow(hit.doc(), left, hitText, right, capturedGroups));
             if (leftContextMaxSize < left.length())
                 leftContextMaxSize = left.length();
+            hitIndex++;
         }
 
         // Display hits
@@ -47,9 +47,12 @@ public abstract class SimpleResourcePool<T> {
 
     /**
      * Cleanup the resources in the free pool.
+     *
+     * Resources released after this are destroyed instead of pooled.
      */
-    public void close() {
+    public synchronized void close() {
         clear();
+        neverPool = true;
     }
 
     /**
@@ -59,6 +62,7 @@ public abstract class SimpleResourcePool<T> {
         for (T resource : freePool) {
             destroyResource(resource);
         }
+        freePool.clear();
     }
 
     /**
@@ -110,14 +114,10 @@ public abstract class SimpleResourcePool<T> {
      * @param resource
      */
     public synchronized void release(T resource) {
-        if (neverPool)
-            return;
-        synchronized (this) {
-            if (freePool.size() < maxFreePoolSize) {
-                freePool.add(resource);
-            } else {
-                destroyResource(resource);
-            }
+        if (!neverPool && freePool.size() < maxFreePoolSize) {
+            freePool.add(resource);
+        } else {
+            destroyResource(resource);
         }
     }
 